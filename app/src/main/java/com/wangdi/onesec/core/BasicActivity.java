@@ -44,6 +44,7 @@ import com.wangdi.onesec.data.Recorder;
 import com.wangdi.onesec.utils.BasicUtils;
 import com.wangdi.onesec.utils.Constants;
 import com.wangdi.onesec.utils.FileHelper;
+import com.wangdi.onesec.utils.Scheduler;
 
 import org.javatuples.Pair;
 
@@ -126,6 +127,7 @@ public abstract class BasicActivity extends AppCompatActivity
         try
         {
             this.logger = this.getLogger();
+            Recorder.setLogger(Logger.create(this.internal.logDirectory, Recorder.class));
         }
         catch (Exception e)
         {
@@ -134,7 +136,7 @@ public abstract class BasicActivity extends AppCompatActivity
 
         this.preferences = this.getSharedPreferences(Constants.GLOBAL_PREFERENCE_KEY, Context.MODE_PRIVATE);
 
-        new Thread(() ->
+        Scheduler.execute(Scheduler.READ, () ->
         {
             try
             {
@@ -144,15 +146,15 @@ public abstract class BasicActivity extends AppCompatActivity
                 if (this.multiplayerDirectory.exists() && !FileHelper.createNewDirectories(this.multiplayerDirectory))
                     throw new IOException("Create directory false: " + this.multiplayerDirectory.getAbsolutePath());
 
-                Pair<ConfigManager, Boolean> temp = ConfigManager.autoSync(this.internal.dataDirectory, ConfigManager.USER_CONFIGS_FILE_NAME);
+                Pair<ConfigManager, Boolean> temp = Registry.getConfigSync(this.internal.dataDirectory, ConfigManager.USER_CONFIGS_FILE_NAME);
                 this.userConfigs = temp.getValue0();
                 if (temp.getValue1()) this.initUserConfig();
 
-                temp = ConfigManager.autoSync(this.internal.dataDirectory, ConfigManager.APP_SETTINGS_FILE_NAME);
+                temp = Registry.getConfigSync(this.internal.dataDirectory, ConfigManager.APP_SETTINGS_FILE_NAME);
                 this.userSettings = temp.getValue0();
                 if (temp.getValue1()) this.initSettings();
 
-                temp = ConfigManager.autoSync(this.internal.dataDirectory, ConfigManager.GAME_DATA_FILE_NAME);
+                temp = Registry.getConfigSync(this.internal.dataDirectory, ConfigManager.GAME_DATA_FILE_NAME);
                 this.gameData = temp.getValue0();
                 if (temp.getValue1()) this.initGameData();
 
@@ -162,18 +164,31 @@ public abstract class BasicActivity extends AppCompatActivity
                         throw new RuntimeException("Cannot read language file");
                 }
 
-                this.classicalRecorder = Recorder.autoSync(new File(this.soloDirectory, "classic"), 1000, Data.NUMBER_RESPONSE_TYPE);
-                this.challengeRecorder = Recorder.autoSync(new File(this.soloDirectory, "challenge"), 1000, Data.NUMBER_RESPONSE_TYPE);
-                this.blindRecorder = Recorder.autoSync(new File(this.soloDirectory, "blind"), 1000, Data.NUMBER_RESPONSE_TYPE);
-
-                System.out.println(this.classicalRecorder);
-                System.out.println(this.challengeRecorder);
-                System.out.println(this.blindRecorder);
+                this.classicalRecorder = Registry.getRecorderSync(new File(this.soloDirectory, "classic"), 1000, Data.NUMBER_RESPONSE_TYPE, Recorder.BINARY_STORAGE);
+                this.challengeRecorder = Registry.getRecorderSync(new File(this.soloDirectory, "challenge"), 1000, Data.NUMBER_RESPONSE_TYPE, Recorder.BINARY_STORAGE);
+                this.blindRecorder = Registry.getRecorderSync(new File(this.soloDirectory, "blind"), 1000, Data.NUMBER_RESPONSE_TYPE, Recorder.BINARY_STORAGE);
             }
             catch (Exception e) {this.logger.fatal(BasicUtils.getStackTraceAsString(e));}
 
             mHandler.post(this::initializeViews);
-        }).start();
+        });
+    }
+
+    /**
+     * Releases the recorders and the config managers got from {@link Registry}, they stay open for
+     * the next activity.
+     */
+    @Override
+    protected void onDestroy()
+    {
+        super.onDestroy();
+
+        Registry.release(this.classicalRecorder);
+        Registry.release(this.challengeRecorder);
+        Registry.release(this.blindRecorder);
+        Registry.release(this.userConfigs);
+        Registry.release(this.userSettings);
+        Registry.release(this.gameData);
     }
 
     /**
@@ -5,9 +5,6 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 import org.javatuples.Pair;
 import org.json.JSONObject;
@@ -18,11 +15,10 @@ import com.wangdi.onesec.interfaces.AsyncTask;
 import com.wangdi.onesec.interfaces.SyncTask;
 import com.wangdi.onesec.utils.BasicUtils;
 import com.wangdi.onesec.utils.FileHelper;
+import com.wangdi.onesec.utils.Scheduler;
 
 public final class ConfigManager
 {
-    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(1);
-
     public static final String USER_CONFIGS_NAME_KEY = "name";
     public static final String USER_CONFIGS_ID_KEY = "id";
 
@@ -40,26 +36,6 @@ public final class ConfigManager
     private final Map<String, Object> preferences;
     private final JSONObject json;
 
-    static
-    {
-        Runtime.getRuntime().addShutdownHook(new Thread(() ->
-        {
-            System.out.println("Shutting down ConfigManager's executor...");
-            shutdown();
-
-            try
-            {
-                if (!EXECUTOR.awaitTermination(5, TimeUnit.SECONDS))
-                    EXECUTOR.shutdownNow();
-
-            }
-            catch (InterruptedException e)
-            {
-                EXECUTOR.shutdownNow();
-            }
-        }));
-    }
-
     /**
      * Creates a new ConfigManager instance with the given directory and filename.
      * This method is synchronized, meaning that only one thread can call this method
@@ -95,7 +71,7 @@ public final class ConfigManager
     @AsyncTask
     public static ConfigManager create(final File directory, String filename) throws Exception
     {
-        return BasicUtils.handleFutureResult(EXECUTOR.submit(() -> createSync(directory, filename)));
+        return BasicUtils.handleFutureResult(Scheduler.submit(Scheduler.READ, () -> createSync(directory, filename)));
     }
 
     /**
@@ -132,7 +108,7 @@ public final class ConfigManager
     @AsyncTask
     public static ConfigManager load(final File directory, String filename) throws Exception
     {
-        return BasicUtils.handleFutureResult(EXECUTOR.submit(() -> loadSync(directory, filename)));
+        return BasicUtils.handleFutureResult(Scheduler.submit(Scheduler.READ, () -> loadSync(directory, filename)));
     }
 
     /**
@@ -170,21 +146,7 @@ public final class ConfigManager
     @AsyncTask
     public static Pair<ConfigManager, Boolean> auto(final File directory, String filename) throws Exception
     {
-        return BasicUtils.handleFutureResult(EXECUTOR.submit(() -> autoSync(directory, filename)));
-    }
-
-    /**
-     * Shuts down the executor service, and all the threads in it.
-     * 
-     * <p>
-     * This method is intended to be called in the main thread, before the application is
-     * exited.
-     * </p>
-     */
-    @SyncTask
-    public static void shutdown()
-    {
-        EXECUTOR.shutdown();
+        return BasicUtils.handleFutureResult(Scheduler.submit(Scheduler.READ, () -> autoSync(directory, filename)));
     }
 
     @SyncTask
@@ -274,7 +236,7 @@ public final class ConfigManager
     @AsyncTask
     public void saveToFile() throws Exception
     {
-        BasicUtils.handleFutureResult(EXECUTOR.submit(this::saveTofileSync));
+        BasicUtils.handleFutureResult(Scheduler.submit(Scheduler.PERSIST, this::saveTofileSync));
     }
 
     @NonNull
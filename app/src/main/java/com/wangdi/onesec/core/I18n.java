@@ -41,8 +41,6 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * I18n class (Internationalization) is aim to translate text to different languages,
@@ -59,8 +57,6 @@ public final class I18n
     @SuppressWarnings("unused")
     public static final byte ZH_CN = 2;
 
-    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(1);
-
     private static final String LANG_DIRECTORY = "lang/";
 
     private static final String ES_ES_FILE = "es-ES.json";
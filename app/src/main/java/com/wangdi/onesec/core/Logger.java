@@ -30,9 +30,6 @@ import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 import android.annotation.SuppressLint;
 
@@ -40,6 +37,7 @@ import com.wangdi.onesec.interfaces.AsyncTask;
 import com.wangdi.onesec.interfaces.SyncTask;
 import com.wangdi.onesec.utils.BasicUtils;
 import com.wangdi.onesec.utils.FileHelper;
+import com.wangdi.onesec.utils.Scheduler;
 
 /**
  * Logger class is used to print error messages or logs in console,
@@ -59,7 +57,6 @@ public final class Logger
     public static final byte ERROR = 3;
     public static final byte FATAL = 4;
 
-    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(4);
     private static final String DEBUG_STRING = "DEBUG";
     private static final String INFO_STRING = "INFO";
     private static final String WARNING_STRING = "WARNING";
@@ -111,7 +108,7 @@ public final class Logger
     @AsyncTask
     public static Logger create(final File directory, Class<?> clazz) throws Exception
     {
-        return BasicUtils.handleFutureResult(EXECUTOR.submit(() -> createSync(directory, clazz)));
+        return BasicUtils.handleFutureResult(Scheduler.submit(Scheduler.READ, () -> createSync(directory, clazz)));
     }
 
     /**
@@ -144,46 +141,12 @@ public final class Logger
         };
     }
 
-    /**
-     * Shuts down the executor service, and all the threads in it.
-     *
-     * <p>
-     * This method is intended to be called in the main thread, before the application is
-     * exited.
-     * </p>
-     */
-    @SyncTask
-    private static void shutdown()
-    {
-        EXECUTOR.shutdown();
-    }
-
     private final Calendar calendar;
     private final String logFormat;
     private final File currentFile;
     private final File directory;
     private final Class<?> clazz;
 
-    static
-    {
-        Runtime.getRuntime().addShutdownHook(new Thread(() ->
-        {
-            System.out.println("Shutting down logger's executor...");
-            shutdown();
-
-            try
-            {
-                if (!EXECUTOR.awaitTermination(5, TimeUnit.SECONDS))
-                    EXECUTOR.shutdownNow();
-
-            }
-            catch (InterruptedException e)
-            {
-                EXECUTOR.shutdownNow();
-            }
-        }));
-    }
-
     @SyncTask
     private Logger(final File directory, Class<?> clazz) throws Exception
     {
@@ -223,7 +186,7 @@ public final class Logger
     @AsyncTask
     public boolean clearAllLogs() throws Exception
     {
-        return BasicUtils.handleFutureResult(EXECUTOR.submit(this::clearAllLogsSync));
+        return BasicUtils.handleFutureResult(Scheduler.submit(Scheduler.BACKGROUND, this::clearAllLogsSync));
     }
 
     /**
@@ -254,7 +217,7 @@ public final class Logger
     @AsyncTask
     public void debug(Object... messages)
     {
-        EXECUTOR.submit(() -> this.debugSync(messages));
+        Scheduler.execute(Scheduler.BACKGROUND, () -> this.debugSync(messages));
     }
 
     /**
@@ -296,7 +259,7 @@ public final class Logger
     @AsyncTask
     public void info(Object... messages)
     {
-        EXECUTOR.submit(() -> this.infoSync(messages));
+        Scheduler.execute(Scheduler.BACKGROUND, () -> this.infoSync(messages));
     }
 
     /**
@@ -329,7 +292,7 @@ public final class Logger
     @AsyncTask
     public void warning(Object... messages)
     {
-        EXECUTOR.submit(() -> this.warningSync(messages));
+        Scheduler.execute(Scheduler.BACKGROUND, () -> this.warningSync(messages));
     }
 
     /**
@@ -362,7 +325,7 @@ public final class Logger
     @AsyncTask
     public void fatal(Object... messages)
     {
-        EXECUTOR.submit(() -> this.errorSync(messages));
+        Scheduler.execute(Scheduler.BACKGROUND, () -> this.errorSync(messages));
     }
 
     /**
@@ -395,7 +358,7 @@ public final class Logger
     @AsyncTask
     public void error(Object... messages)
     {
-        EXECUTOR.submit(() -> this.fatalSync(messages));
+        Scheduler.execute(Scheduler.BACKGROUND, () -> this.fatalSync(messages));
     }
 
     /**
@@ -407,7 +370,7 @@ public final class Logger
     @AsyncTask
     public String getLogContent() throws Exception
     {
-        return BasicUtils.handleFutureResult(EXECUTOR.submit(() -> FileHelper.read(this.currentFile)));
+        return BasicUtils.handleFutureResult(Scheduler.submit(Scheduler.READ, () -> FileHelper.read(this.currentFile)));
     }
 
     /**
@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ */
+
+package com.wangdi.onesec.core;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.javatuples.Pair;
+
+import com.wangdi.onesec.data.Recorder;
+import com.wangdi.onesec.interfaces.AsyncTask;
+import com.wangdi.onesec.interfaces.SyncTask;
+import com.wangdi.onesec.utils.BasicUtils;
+import com.wangdi.onesec.utils.Scheduler;
+
+/**
+ * <p>
+ * Registry keeps the recorders and config managers of the whole process. Every store is opened from disk
+ * the first time it is asked for, then the same instance is handed to every activity, so switching between
+ * activities does not read the files again and two activities never write one directory with two instances.
+ * </p>
+ *
+ * <p>
+ * An activity releases the stores it got when it is destroyed. A store nobody holds stays open for the next
+ * activity, only its queued writes are flushed.
+ * </p>
+ *
+ * @see BasicActivity
+ * @author Di Wang
+ * @version 1.0
+ */
+
+public final class Registry
+{
+    // a recorder is loaded outside any lock, the callers asking for the same directory wait for its future
+    private static final Map<String, CompletableFuture<Entry<Recorder>>> RECORDERS = new ConcurrentHashMap<>();
+    private static final Map<String, Entry<ConfigManager>> CONFIGS = new HashMap<>();
+
+    /**
+     * Returns the shared recorder of the given directory, the recorder is created or loaded by
+     * {@link Recorder#autoSync(File, int, byte, byte)} if it is not opened yet. Call {@link #release(Object)}
+     * when the recorder is not used anymore. Loading a recorder only blocks the callers of the same directory.
+     *
+     * @param rootDirectory     the directory of the recorder
+     * @param groupSize         number of records per file, only used if the recorder is created
+     * @param dataType          the type of data to record
+     * @param storage           the storage of the data files, only used if the recorder is created
+     * @return                  the shared recorder
+     *
+     * @throws Exception        if the recorder cannot be created or loaded
+     */
+    @SyncTask
+    public static Recorder getRecorderSync(final File rootDirectory, int groupSize, byte dataType, byte storage) throws Exception
+    {
+        final String key = rootDirectory.getAbsolutePath();
+        final CompletableFuture<Entry<Recorder>> created = new CompletableFuture<>();
+        final CompletableFuture<Entry<Recorder>> opening = RECORDERS.putIfAbsent(key, created);
+
+        if (opening == null)
+        {
+            try
+            {
+                created.complete(new Entry<>(Recorder.autoSync(rootDirectory, groupSize, dataType, storage)));
+            }
+            catch (Exception e)
+            {
+                // the next caller tries to load the recorder again
+                RECORDERS.remove(key, created);
+                created.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        final Entry<Recorder> entry = BasicUtils.handleFutureResult((opening == null) ? created : opening);
+
+        synchronized (entry)
+        {
+            entry.references++;
+            return entry.value;
+        }
+    }
+
+    /**
+     * Returns the shared recorder of the given directory in specific thread (recommended).
+     *
+     * @param rootDirectory     the directory of the recorder
+     * @param groupSize         number of records per file, only used if the recorder is created
+     * @param dataType          the type of data to record
+     * @param storage           the storage of the data files, only used if the recorder is created
+     * @return                  the shared recorder
+     *
+     * @throws Exception        if the recorder cannot be created or loaded
+     * @see #getRecorderSync(File, int, byte, byte)
+     */
+    @AsyncTask
+    public static Recorder getRecorder(final File rootDirectory, int groupSize, byte dataType, byte storage) throws Exception
+    {
+        return BasicUtils.handleFutureResult(Scheduler.submit(Scheduler.READ, () -> getRecorderSync(rootDirectory, groupSize, dataType, storage)));
+    }
+
+    /**
+     * Returns the shared config manager of the given file, the config manager is created or loaded by
+     * {@link ConfigManager#autoSync(File, String)} if it is not opened yet. Call {@link #release(Object)}
+     * when the config manager is not used anymore.
+     *
+     * @param directory         the directory of the JSON file
+     * @param filename          the filename of the JSON file
+     * @return                  a Pair containing the shared config manager and a boolean indicating
+     *                          whether the file was created by this call (true) or not (false)
+     *
+     * @throws Exception        if the config manager cannot be created or loaded
+     */
+    @SyncTask
+    public static Pair<ConfigManager, Boolean> getConfigSync(final File directory, String filename) throws Exception
+    {
+        final String key = new File(directory, filename).getAbsolutePath();
+
+        synchronized (CONFIGS)
+        {
+            Entry<ConfigManager> entry = CONFIGS.get(key);
+            boolean create = false;
+
+            if (entry == null)
+            {
+                final Pair<ConfigManager, Boolean> opened = ConfigManager.autoSync(directory, filename);
+                entry = new Entry<>(opened.getValue0());
+                create = opened.getValue1();
+                CONFIGS.put(key, entry);
+            }
+
+            entry.references++;
+            return new Pair<>(entry.value, create);
+        }
+    }
+
+    /**
+     * Returns the shared config manager of the given file in specific thread (recommended).
+     *
+     * @param directory         the directory of the JSON file
+     * @param filename          the filename of the JSON file
+     * @return                  a Pair containing the shared config manager and a boolean indicating
+     *                          whether the file was created by this call (true) or not (false)
+     *
+     * @throws Exception        if the config manager cannot be created or loaded
+     * @see #getConfigSync(File, String)
+     */
+    @AsyncTask
+    public static Pair<ConfigManager, Boolean> getConfig(final File directory, String filename) throws Exception
+    {
+        return BasicUtils.handleFutureResult(Scheduler.submit(Scheduler.READ, () -> getConfigSync(directory, filename)));
+    }
+
+    /**
+     * Releases a recorder or a config manager got from this registry. The store stays open, the queued writes
+     * of a recorder nobody holds are flushed in background.
+     *
+     * @param store             the recorder or the config manager to release, null is ignored
+     */
+    public static void release(final Object store)
+    {
+        if (store instanceof Recorder)
+        {
+            for (final CompletableFuture<Entry<Recorder>> future : RECORDERS.values())
+            {
+                final Entry<Recorder> entry = getOpened(future);
+
+                if (entry != null && entry.value == store)
+                {
+                    synchronized (entry)
+                    {
+                        if ((entry.references = Math.max(entry.references - 1, 0)) == 0)
+                            entry.value.flush();
+                    }
+
+                    return;
+                }
+            }
+        }
+        else if (store instanceof ConfigManager)
+        {
+            synchronized (CONFIGS)
+            {
+                release(CONFIGS, store);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the recorder of the given directory is opened, which means getting it costs no I / O.
+     *
+     * @param rootDirectory     the directory of the recorder
+     * @return                  whether the recorder is opened
+     */
+    public static boolean isRecorderOpen(final File rootDirectory)
+    {
+        return getOpened(RECORDERS.get(rootDirectory.getAbsolutePath())) != null;
+    }
+
+    /**
+     * Returns the number of activities or other users holding the recorder of the given directory.
+     *
+     * @param rootDirectory     the directory of the recorder
+     * @return                  the number of holders, 0 if the recorder is not opened or nobody holds it
+     */
+    public static int getReferenceCount(final File rootDirectory)
+    {
+        final Entry<Recorder> entry = getOpened(RECORDERS.get(rootDirectory.getAbsolutePath()));
+
+        if (entry == null)
+            return 0;
+
+        synchronized (entry)
+        {
+            return entry.references;
+        }
+    }
+
+    /**
+     * Flushes all the recorders and forgets all the stores, the next call of a getter opens the store from disk
+     * again. This method is intended to be called before the application is exited or its files are replaced.
+     *
+     * @throws Exception        if a queued write of a recorder fails
+     */
+    @SyncTask
+    public static void closeAllSync() throws Exception
+    {
+        for (final String key : RECORDERS.keySet())
+        {
+            final CompletableFuture<Entry<Recorder>> future = RECORDERS.remove(key);
+
+            // a recorder which is still loading is flushed after it is loaded
+            if (future != null && !future.isCompletedExceptionally())
+                BasicUtils.handleFutureResult(BasicUtils.handleFutureResult(future).value.flush());
+        }
+
+        synchronized (CONFIGS)
+        {
+            CONFIGS.clear();
+        }
+    }
+
+    /**
+     * Returns the entry of a recorder which is loaded, or null if it is not asked for, still loading or failed.
+     *
+     * @param future            the future of the entry, can be null
+     * @return                  the loaded entry, or null
+     */
+    private static Entry<Recorder> getOpened(final CompletableFuture<Entry<Recorder>> future)
+    {
+        return (future == null || future.isCompletedExceptionally()) ? null : future.getNow(null);
+    }
+
+    private static <T> int release(final Map<String, Entry<T>> entries, final Object store)
+    {
+        for (Entry<T> entry : entries.values())
+        {
+            if (entry.value == store)
+                return entry.references = Math.max(entry.references - 1, 0);
+        }
+
+        return -1;
+    }
+
+    private Registry()
+    {
+
+    }
+
+    /**
+     * An opened store and the number of its holders.
+     */
+    private static final class Entry<T>
+    {
+        private final T value;
+        private int references;
+
+        private Entry(final T value)
+        {
+            this.value = value;
+            this.references = 0;
+        }
+    }
+}
\ No newline at end of file
@@ -50,6 +50,9 @@ public final class Analyser
     public final List<Double> AO12data;
     public final List<Double> AO100data;
 
+    // the median, p90 and p99 of the valid times
+    public final QuantileSketch quantiles;
+
     public Analyser(final List<Double> data)
     {
         final Iterator<Double> it = data.iterator();
@@ -58,6 +61,7 @@ public final class Analyser
         this.AO5data = new LinkedList<>();
         this.AO12data = new LinkedList<>();
         this.AO100data = new LinkedList<>();
+        this.quantiles = new QuantileSketch();
 
         final StreamingAggregator.MO mo3 = new StreamingAggregator.MO(3);
         final StreamingAggregator.AO ao5 = new StreamingAggregator.AO(5);
@@ -74,6 +78,7 @@ public final class Analyser
 
             if (value != Data.DNF)
             {
+                this.quantiles.add(value);
                 average = (average * effectiveIndex + value) / (++effectiveIndex);
 
                 if (best == null || value < best) best = value;
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ */
+
+package com.wangdi.onesec.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * A chunk is the decoded content of one data file of a number response recorder.
+ * The records are kept in primitive columns (serial, time, flags), so reading a chunk
+ * does not need to build a map or a JSON object for every record.
+ *
+ * @see RecordLog
+ * @author Di Wang
+ * @version 1.0
+ */
+
+public final class Chunk
+{
+    public final int size;
+    public final int[] serials;
+    public final double[] times;
+    public final byte[] flags;
+
+    public Chunk(final int[] serials, final double[] times, final byte[] flags, int size)
+    {
+        this.size = size;
+        this.serials = serials;
+        this.times = times;
+        this.flags = flags;
+    }
+
+    /**
+     * Decodes a chunk from the records array of a JSON data file.
+     *
+     * @param records           the records array of the data file
+     * @return                  the decoded chunk
+     *
+     * @throws Exception        if a record does not contain a serial
+     */
+    public static Chunk fromJson(final JSONArray records) throws Exception
+    {
+        final int size = records.length();
+        final int[] serials = new int[size];
+        final double[] times = new double[size];
+        final byte[] flags = new byte[size];
+
+        for (int i = 0; i < size; i++)
+        {
+            final JSONObject record = records.getJSONObject(i);
+            serials[i] = record.getInt(Data.NUMBER_RESPONSE_SERIAL);
+            times[i] = record.has(Data.NUMBER_RESPONSE_TIME) ? record.getDouble(Data.NUMBER_RESPONSE_TIME) : Data.DNF;
+            flags[i] = RecordLog.getFlags(times[i]);
+        }
+
+        return new Chunk(serials, times, flags, size);
+    }
+
+    /**
+     * Copies the records in range [from, to) into a new chunk. A chunk can be shared by a cache,
+     * so the columns of the returned chunk must not be modified.
+     *
+     * @param from              the first position to copy, inclusive
+     * @param to                the last position to copy, exclusive, it is clamped to the size
+     * @return                  the copied records, this chunk itself if the range covers all the records
+     */
+    public Chunk slice(int from, int to)
+    {
+        final int start = Math.max(from, 0), end = Math.max(Math.min(to, this.size), start);
+
+        if (start == 0 && end == this.size)
+            return this;
+
+        return new Chunk(Arrays.copyOfRange(this.serials, start, end), Arrays.copyOfRange(this.times, start, end),
+                         Arrays.copyOfRange(this.flags, start, end), end - start);
+    }
+
+    /**
+     * Returns whether the record at the given position is valid, which means it is not DNF.
+     *
+     * @param index             the position of the record in this chunk
+     * @return                  whether the record is valid
+     */
+    public boolean isValid(int index)
+    {
+        return (this.flags[index] & RecordLog.DNF_FLAG) == 0;
+    }
+
+    /**
+     * Creates the Data object of the record at the given position.
+     *
+     * @param index             the position of the record in this chunk
+     * @return                  the Data object of the record
+     *
+     * @throws Exception        if the Data object cannot be created
+     */
+    public Data getData(int index) throws Exception
+    {
+        return new Data.NumberResponse(this.serials[index], this.times[index], this.flags[index]);
+    }
+
+    /**
+     * Creates the Data objects of all the records in this chunk.
+     *
+     * @return                  the Data objects in serial order
+     *
+     * @throws Exception        if a Data object cannot be created
+     */
+    public List<Data> toDataList() throws Exception
+    {
+        final List<Data> list = new ArrayList<>(this.size);
+
+        for (int i = 0; i < this.size; i++)
+            list.add(this.getData(i));
+
+        return list;
+    }
+}
\ No newline at end of file
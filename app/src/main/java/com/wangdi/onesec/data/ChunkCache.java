@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ */
+
+package com.wangdi.onesec.data;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of decoded chunks, the key is the data file of the chunk. The least recently used
+ * chunks are evicted when the estimated size of all the chunks is over the byte budget.
+ * All the methods are thread safe, so the chunks can be decoded concurrently.
+ *
+ * @see Chunk
+ * @author Di Wang
+ * @version 1.0
+ */
+
+public final class ChunkCache
+{
+    // object headers and array headers of a chunk
+    private static final int CHUNK_OVERHEAD = 96;
+
+    private final LinkedHashMap<File, Chunk> chunks;
+    private long budget;
+    private long usedBytes;
+    private long hits;
+    private long misses;
+
+    public ChunkCache(long budget)
+    {
+        this.chunks = new LinkedHashMap<>(16, 0.75f, true);
+        this.budget = Math.max(budget, 0);
+        this.usedBytes = 0;
+        this.hits = this.misses = 0;
+    }
+
+    /**
+     * Returns the estimated number of bytes the given chunk uses in memory.
+     *
+     * @param chunk             the chunk to estimate
+     * @return                  the estimated size in bytes
+     */
+    public static long sizeOf(final Chunk chunk)
+    {
+        return CHUNK_OVERHEAD + (long)(chunk.serials.length) * Integer.BYTES + (long)(chunk.times.length) * Double.BYTES + chunk.flags.length;
+    }
+
+    /**
+     * Returns the cached chunk of the given data file, and marks it as the most recently used.
+     *
+     * @param dataFile          the data file of the chunk
+     * @return                  the cached chunk, null if it is not cached
+     */
+    public synchronized Chunk get(final File dataFile)
+    {
+        final Chunk chunk = this.chunks.get(dataFile);
+
+        if (chunk == null) this.misses++;
+        else this.hits++;
+
+        return chunk;
+    }
+
+    /**
+     * Caches the chunk of the given data file, the least recently used chunks are evicted if the budget is exceeded.
+     * A chunk larger than the whole budget is not cached.
+     *
+     * @param dataFile          the data file of the chunk
+     * @param chunk             the decoded chunk
+     */
+    public synchronized void put(final File dataFile, final Chunk chunk)
+    {
+        this.invalidate(dataFile);
+
+        final long size = sizeOf(chunk);
+
+        if (size > this.budget)
+            return;
+
+        this.chunks.put(dataFile, chunk);
+        this.usedBytes += size;
+        this.evict();
+    }
+
+    /**
+     * Removes the chunk of the given data file, it must be called after the data file is changed.
+     *
+     * @param dataFile          the data file of the chunk
+     */
+    public synchronized void invalidate(final File dataFile)
+    {
+        final Chunk chunk = this.chunks.remove(dataFile);
+
+        if (chunk != null)
+            this.usedBytes -= sizeOf(chunk);
+    }
+
+    /**
+     * Removes all the cached chunks.
+     */
+    public synchronized void clear()
+    {
+        this.chunks.clear();
+        this.usedBytes = 0;
+    }
+
+    /**
+     * Sets the byte budget of the cache, the least recently used chunks are evicted if the new budget is exceeded.
+     *
+     * @param budget            the maximum estimated size of all the chunks in bytes, 0 disables the cache
+     */
+    public synchronized void setBudget(long budget)
+    {
+        this.budget = Math.max(budget, 0);
+        this.evict();
+    }
+
+    public synchronized long getBudget()
+    {
+        return this.budget;
+    }
+
+    public synchronized long getUsedBytes()
+    {
+        return this.usedBytes;
+    }
+
+    public synchronized long getHits()
+    {
+        return this.hits;
+    }
+
+    public synchronized long getMisses()
+    {
+        return this.misses;
+    }
+
+    private void evict()
+    {
+        final Iterator<Map.Entry<File, Chunk>> it = this.chunks.entrySet().iterator();
+
+        while (this.usedBytes > this.budget && it.hasNext())
+        {
+            this.usedBytes -= sizeOf(it.next().getValue());
+            it.remove();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ */
+
+package com.wangdi.onesec.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.zip.DataFormatException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.wangdi.onesec.interfaces.SyncTask;
+import com.wangdi.onesec.utils.BasicUtils;
+
+/**
+ * <p>
+ * ChunkCodec provided methods to write a sealed chunk in a compact format and read it back.
+ * The serials are implicit (first serial and count), the times are fixed-point ticks of
+ * 1 / {@link #TICKS_PER_SECOND} second, and each record is the zig-zag varint of the delta
+ * to the ticks of the previous record, so a record usually takes 2 or 3 bytes.
+ * </p>
+ *
+ * <p>
+ * A DNF record and a time which cannot be represented by ticks exactly are escaped, the latter is stored
+ * as a raw double, so decoding always gives back the same times. The records can also be compressed by DEFLATE.
+ * </p>
+ *
+ * <pre>
+ * | version (byte) | flags (byte) | ticks per second (varint) | first serial (varint) | count (varint) | records |
+ * </pre>
+ *
+ * @see Chunk
+ * @author Di Wang
+ * @version 1.0
+ */
+
+public final class ChunkCodec
+{
+    public static final byte VERSION = 1;
+    public static final byte DEFLATE_FLAG = 0x01;
+    public static final int TICKS_PER_SECOND = 10000;
+
+    // a record token is (zig-zag delta << 1) for a tick time, odd tokens are escapes
+    private static final long DNF_TOKEN = 1;
+    private static final long RAW_TOKEN = 3;
+
+    /**
+     * Writes the given chunk to the given file in the compact format, an existing file is overwritten.
+     *
+     * @param file              target file
+     * @param chunk             the records to write, the serials must be continuous
+     * @param deflate           whether the records are compressed by DEFLATE
+     *
+     * @throws IOException      if the serials of the chunk are not continuous
+     */
+    @SyncTask
+    public static void write(final File file, final Chunk chunk, boolean deflate) throws Exception
+    {
+        final ByteArrayOutputStream records = new ByteArrayOutputStream(chunk.size * 3 + 16);
+        final OutputStream output = deflate ? new DeflaterOutputStream(records) : records;
+        long previous = 0;
+
+        for (int i = 0; i < chunk.size; i++)
+        {
+            if (chunk.serials[i] != chunk.serials[0] + i)
+                throw new IOException(BasicUtils.combined("Serials are not continuous at: ", chunk.serials[i]));
+
+            final double time = chunk.times[i];
+
+            if (!chunk.isValid(i))
+            {
+                writeVarint(output, DNF_TOKEN);
+                continue;
+            }
+
+            final long ticks = Math.round(time * TICKS_PER_SECOND);
+
+            // compare bits, so -0.0 and NaN are kept by the raw escape
+            if (Double.compare((double)(ticks) / TICKS_PER_SECOND, time) != 0 || Math.abs(ticks) > (1L << 52))
+            {
+                writeVarint(output, RAW_TOKEN);
+                writeLong(output, Double.doubleToRawLongBits(time));
+                continue;
+            }
+
+            writeVarint(output, zigzag(ticks - previous) << 1);
+            previous = ticks;
+        }
+
+        output.close();
+
+        final ByteArrayOutputStream header = new ByteArrayOutputStream(16);
+        header.write(VERSION);
+        header.write(deflate ? DEFLATE_FLAG : 0);
+        writeVarint(header, TICKS_PER_SECOND);
+        writeVarint(header, (chunk.size == 0) ? 0 : chunk.serials[0]);
+        writeVarint(header, chunk.size);
+
+        try (final FileOutputStream stream = new FileOutputStream(file, false))
+        {
+            header.writeTo(stream);
+            records.writeTo(stream);
+        }
+    }
+
+    /**
+     * Reads the chunk in the given file which is written by {@link #write(File, Chunk, boolean)}.
+     *
+     * @param file              target file
+     * @return                  the decoded records
+     *
+     * @throws DataFormatException if the file is not in the compact format
+     */
+    @SyncTask
+    public static Chunk read(final File file) throws Exception
+    {
+        final byte[] bytes = new byte[(int)(file.length())];
+
+        try (final RandomAccessFile input = new RandomAccessFile(file, "r"))
+        {
+            input.readFully(bytes);
+        }
+
+        final ByteArrayInputStream header = new ByteArrayInputStream(bytes);
+
+        if (header.read() != VERSION)
+            throw new DataFormatException(BasicUtils.combined("Unknown version of packed file: ", file.getAbsolutePath()));
+
+        final int flags = header.read();
+        final long ticksPerSecond = readVarint(header);
+        final int firstSerial = (int)(readVarint(header));
+        final int size = (int)(readVarint(header));
+
+        final InputStream input = ((flags & DEFLATE_FLAG) != 0) ? new InflaterInputStream(header) : header;
+        final int[] serials = new int[size];
+        final double[] times = new double[size];
+        final byte[] recordFlags = new byte[size];
+        long previous = 0;
+
+        for (int i = 0; i < size; i++)
+        {
+            final long token = readVarint(input);
+            serials[i] = firstSerial + i;
+
+            if (token == DNF_TOKEN)
+                times[i] = Data.DNF;
+            else if (token == RAW_TOKEN)
+                times[i] = Double.longBitsToDouble(readLong(input));
+            else if ((token & 1) == 0)
+            {
+                previous += unzigzag(token >>> 1);
+                times[i] = (double)(previous) / ticksPerSecond;
+            }
+            else
+                throw new DataFormatException(BasicUtils.combined("Unknown token: ", token, " in packed file: ", file.getAbsolutePath()));
+
+            recordFlags[i] = RecordLog.getFlags(times[i]);
+        }
+
+        return new Chunk(serials, times, recordFlags, size);
+    }
+
+    private static long zigzag(long value)
+    {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void writeVarint(final OutputStream output, long value) throws IOException
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            output.write((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        output.write((int)(value));
+    }
+
+    static long readVarint(final InputStream input) throws IOException
+    {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            final int b = input.read();
+
+            if (b == -1)
+                throw new EOFException("Packed file is truncated");
+
+            value |= (long)(b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0)
+                return value;
+        }
+
+        throw new IOException("Varint is too long");
+    }
+
+    private static void writeLong(final OutputStream output, long value) throws IOException
+    {
+        for (int shift = 56; shift >= 0; shift -= 8)
+            output.write((int)(value >>> shift));
+    }
+
+    private static long readLong(final InputStream input) throws IOException
+    {
+        long value = 0;
+
+        for (int i = 0; i < Long.BYTES; i++)
+        {
+            final int b = input.read();
+
+            if (b == -1)
+                throw new EOFException("Packed file is truncated");
+
+            value = (value << 8) | b;
+        }
+
+        return value;
+    }
+
+    public ChunkCodec()
+    {
+
+    }
+}
\ No newline at end of file
@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ */
+
+package com.wangdi.onesec.data;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+
+import com.wangdi.onesec.interfaces.SyncTask;
+import com.wangdi.onesec.utils.BasicUtils;
+
+/**
+ * <p>
+ * A ChunkSummary holds the aggregates of the records in a range of serials: count, valid count, DNF count,
+ * sum and sum of squares of the absolute times, the best and worst time, and the first and last serial.
+ * Summaries of neighbouring ranges can be merged, so the statistics of many data files are computed
+ * from their summaries without decoding any record.
+ * </p>
+ *
+ * <p>
+ * The summaries of the sealed data files of a recorder are stored in a sidecar file, one fixed-width
+ * entry of {@link #ENTRY_SIZE} bytes per data file.
+ * </p>
+ *
+ * @see Chunk
+ * @author Di Wang
+ * @version 1.0
+ */
+
+public final class ChunkSummary
+{
+    public static final int ENTRY_SIZE = Integer.BYTES * 5 + Double.BYTES * 4;
+
+    public static final ChunkSummary EMPTY = new ChunkSummary(0, 0, 0, 0.0, 0.0, Data.DNF, -Data.DNF, -1, -1);
+
+    public final int count;
+    public final int validCount;
+    public final int dnfCount;
+    public final double sum;
+    public final double sumOfSquares;
+    // the best and worst absolute time, DNF and -DNF if there is no valid record
+    public final double min;
+    public final double max;
+    public final int firstSerial;
+    public final int lastSerial;
+
+    public ChunkSummary(int count, int validCount, int dnfCount, double sum, double sumOfSquares,
+                        double min, double max, int firstSerial, int lastSerial)
+    {
+        this.count = count;
+        this.validCount = validCount;
+        this.dnfCount = dnfCount;
+        this.sum = sum;
+        this.sumOfSquares = sumOfSquares;
+        this.min = min;
+        this.max = max;
+        this.firstSerial = firstSerial;
+        this.lastSerial = lastSerial;
+    }
+
+    /**
+     * Computes the summary of all the records in the given chunk.
+     *
+     * @param chunk             the records to summarise
+     * @return                  the summary of the chunk
+     */
+    public static ChunkSummary of(final Chunk chunk)
+    {
+        if (chunk.size == 0)
+            return EMPTY;
+
+        int validCount = 0;
+        double sum = 0.0, sumOfSquares = 0.0, min = Data.DNF, max = -Data.DNF;
+
+        for (int i = 0; i < chunk.size; i++)
+        {
+            if (!chunk.isValid(i))
+                continue;
+
+            final double time = Math.abs(chunk.times[i]);
+            validCount++;
+            sum += time;
+            sumOfSquares += time * time;
+            min = Math.min(min, time);
+            max = Math.max(max, time);
+        }
+
+        return new ChunkSummary(chunk.size, validCount, chunk.size - validCount, sum, sumOfSquares,
+                                min, max, chunk.serials[0], chunk.serials[chunk.size - 1]);
+    }
+
+    /**
+     * Computes the summary of one record.
+     *
+     * @param serial            the serial of the record
+     * @param time              the time of the record, {@link Data#DNF} for an attempt not finished
+     * @return                  the summary of the record
+     */
+    public static ChunkSummary of(int serial, double time)
+    {
+        if (time == Data.DNF)
+            return new ChunkSummary(1, 0, 1, 0.0, 0.0, Data.DNF, -Data.DNF, serial, serial);
+
+        final double absolute = Math.abs(time);
+        return new ChunkSummary(1, 1, 0, absolute, absolute * absolute, absolute, absolute, serial, serial);
+    }
+
+    /**
+     * Merges this summary with the summary of the records which follow it.
+     *
+     * @param next              the summary of the following records
+     * @return                  the summary of both ranges
+     */
+    public ChunkSummary merge(final ChunkSummary next)
+    {
+        if (next.count == 0) return this;
+        if (this.count == 0) return next;
+
+        return new ChunkSummary(this.count + next.count, this.validCount + next.validCount, this.dnfCount + next.dnfCount,
+                                this.sum + next.sum, this.sumOfSquares + next.sumOfSquares, Math.min(this.min, next.min),
+                                Math.max(this.max, next.max), this.firstSerial, next.lastSerial);
+    }
+
+    /**
+     * Returns the average of the valid absolute times.
+     *
+     * @return                  the average, null if there is no valid record
+     */
+    public Double getAverage()
+    {
+        return (this.validCount == 0) ? null : this.sum / this.validCount;
+    }
+
+    /**
+     * Returns the population variance of the valid absolute times.
+     *
+     * @return                  the variance, null if there is no valid record
+     */
+    public Double getVariance()
+    {
+        if (this.validCount == 0)
+            return null;
+
+        final double average = this.sum / this.validCount;
+        return Math.max(this.sumOfSquares / this.validCount - average * average, 0.0);
+    }
+
+    /**
+     * Returns the ratio of the records which are not finished.
+     *
+     * @return                  the DNF rate from 0 to 1, null if there is no record
+     */
+    public Double getDnfRate()
+    {
+        return (this.count == 0) ? null : (double)(this.dnfCount) / this.count;
+    }
+
+    public Double getBest()
+    {
+        return (this.validCount == 0) ? null : this.min;
+    }
+
+    public Double getWorst()
+    {
+        return (this.validCount == 0) ? null : this.max;
+    }
+
+    /**
+     * Returns the best, worst and average time of the summary in the same form as {@link Analyser#all}.
+     *
+     * @return                  the statistics of the summary
+     */
+    public Data.Statics<Double> toStatics()
+    {
+        return new Data.Statics<>(this.getBest(), this.getWorst(), this.getAverage());
+    }
+
+    /**
+     * Reads all the summaries in the given sidecar file, a torn entry at the end is ignored.
+     *
+     * @param file              target sidecar file
+     * @return                  the summaries in data file order, empty if the file does not exist
+     *
+     * @throws Exception        if error occurs, for example permission denied
+     */
+    @SyncTask
+    public static List<ChunkSummary> readAll(final File file) throws Exception
+    {
+        final int count = (int)(file.length() / ENTRY_SIZE);
+        final List<ChunkSummary> summaries = new ArrayList<>(count);
+
+        if (count == 0)
+            return summaries;
+
+        final byte[] bytes = new byte[count * ENTRY_SIZE];
+
+        try (final RandomAccessFile input = new RandomAccessFile(file, "r"))
+        {
+            input.readFully(bytes);
+        }
+
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+        for (int i = 0; i < count; i++)
+            summaries.add(read(buffer));
+
+        return summaries;
+    }
+
+    /**
+     * Appends the given summary to the end of the sidecar file.
+     *
+     * @param file              target sidecar file
+     * @param summary           the summary to append
+     *
+     * @throws Exception        if error occurs, for example permission denied
+     */
+    @SyncTask
+    public static void append(final File file, final ChunkSummary summary) throws Exception
+    {
+        try (final FileOutputStream output = new FileOutputStream(file, true))
+        {
+            output.write(summary.toBytes());
+        }
+    }
+
+    /**
+     * Overwrites the summary at the given index of the sidecar file, for example after a record
+     * of a full data file is changed.
+     *
+     * @param file              target sidecar file
+     * @param index             the index of the data file
+     * @param summary           the new summary of the data file
+     *
+     * @throws Exception        if the index is out of range or error occurs, for example permission denied
+     */
+    @SyncTask
+    public static void set(final File file, int index, final ChunkSummary summary) throws Exception
+    {
+        if (index < 0 || (long)(index + 1) * ENTRY_SIZE > file.length())
+            throw new IOException(BasicUtils.combined("Summary: ", index, " is not in sidecar file: ", file.getAbsolutePath()));
+
+        try (final RandomAccessFile access = new RandomAccessFile(file, "rw"))
+        {
+            access.seek((long)(index) * ENTRY_SIZE);
+            access.write(summary.toBytes());
+        }
+    }
+
+    /**
+     * Truncates the sidecar file to the given number of summaries.
+     *
+     * @param file              target sidecar file
+     * @param count             the number of summaries to keep
+     *
+     * @throws Exception        if error occurs, for example permission denied
+     */
+    @SyncTask
+    public static void truncate(final File file, int count) throws Exception
+    {
+        final long length = (long)(count) * ENTRY_SIZE;
+
+        if (file.length() <= length)
+            return;
+
+        try (final RandomAccessFile access = new RandomAccessFile(file, "rw"))
+        {
+            access.setLength(length);
+        }
+    }
+
+    /**
+     * Decodes one summary encoded by {@link #toBytes()}.
+     *
+     * @param buffer            the buffer at the start of the summary
+     * @return                  the decoded summary
+     */
+    static ChunkSummary read(final ByteBuffer buffer)
+    {
+        return new ChunkSummary(buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getDouble(),
+                                buffer.getDouble(), buffer.getDouble(), buffer.getDouble(), buffer.getInt(), buffer.getInt());
+    }
+
+    /**
+     * Encodes this summary in {@link #ENTRY_SIZE} bytes.
+     *
+     * @return                  the encoded summary
+     */
+    byte[] toBytes()
+    {
+        final ByteBuffer buffer = ByteBuffer.allocate(ENTRY_SIZE);
+        buffer.putInt(this.count).putInt(this.validCount).putInt(this.dnfCount).putDouble(this.sum)
+              .putDouble(this.sumOfSquares).putDouble(this.min).putDouble(this.max)
+              .putInt(this.firstSerial).putInt(this.lastSerial);
+
+        return buffer.array();
+    }
+
+    @NonNull
+    @Override
+    public String toString()
+    {
+        return BasicUtils.combined("serial ", this.firstSerial, " - ", this.lastSerial, ", count: ", this.count,
+                                   ", valid: ", this.validCount, ", DNF: ", this.dnfCount, ", average: ", this.getAverage(),
+                                   ", best: ", this.getBest(), ", worst: ", this.getWorst());
+    }
+}
\ No newline at end of file
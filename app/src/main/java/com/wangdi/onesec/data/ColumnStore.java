@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ */
+
+package com.wangdi.onesec.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.wangdi.onesec.interfaces.SyncTask;
+import com.wangdi.onesec.utils.BasicUtils;
+
+/**
+ * <p>
+ * ColumnStore is a column file of a number response recorder, which is mapped into memory by
+ * {@link MappedByteBuffer}. A column file has a fixed capacity and it is laid out as:
+ * </p>
+ *
+ * <pre>
+ * | size (int) | capacity (int) | times (double * capacity) | serials (int * capacity) | flags (byte * capacity) |
+ * </pre>
+ *
+ * <p>
+ * The record at a position is read from the columns directly, so random access is O(1) and a full scan
+ * copies the columns in bulk without creating any JSON object. The size is written after the columns,
+ * so a record is committed only when the size contains it.
+ * </p>
+ *
+ * @see Chunk
+ * @author Di Wang
+ * @version 1.0
+ */
+
+public final class ColumnStore
+{
+    public static final int HEADER_SIZE = Integer.BYTES * 2;
+
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int serialsOffset;
+    private final int flagsOffset;
+    private int size;
+
+    private ColumnStore(final MappedByteBuffer buffer)
+    {
+        this.buffer = buffer;
+        this.size = buffer.getInt(0);
+        this.capacity = buffer.getInt(Integer.BYTES);
+        this.serialsOffset = HEADER_SIZE + this.capacity * Double.BYTES;
+        this.flagsOffset = this.serialsOffset + this.capacity * Integer.BYTES;
+    }
+
+    /**
+     * Returns the length of a column file with the given capacity.
+     *
+     * @param capacity          the number of records the file can hold
+     * @return                  the length of the file in bytes
+     */
+    public static long getLength(int capacity)
+    {
+        return HEADER_SIZE + (long)(capacity) * (Double.BYTES + Integer.BYTES + Byte.BYTES);
+    }
+
+    /**
+     * Creates an empty column file with the given capacity, an existing file is overwritten.
+     *
+     * @param file              target column file
+     * @param capacity          the number of records the file can hold
+     *
+     * @throws Exception        if error occurs, for example no such file, permission denied
+     */
+    @SyncTask
+    public static void create(final File file, int capacity) throws Exception
+    {
+        try (final RandomAccessFile access = new RandomAccessFile(file, "rw"))
+        {
+            access.setLength(0);
+            access.setLength(getLength(capacity));
+            access.writeInt(0);
+            access.writeInt(capacity);
+        }
+    }
+
+    /**
+     * Maps the given column file into memory.
+     *
+     * @param file              target column file
+     * @param writable          whether records can be appended to the mapped file
+     * @return                  the mapped column file
+     *
+     * @throws IOException      if the file is too short for its header
+     */
+    @SyncTask
+    public static ColumnStore open(final File file, boolean writable) throws Exception
+    {
+        try (final RandomAccessFile access = new RandomAccessFile(file, writable ? "rw" : "r"))
+        {
+            final long length = access.length();
+
+            if (length < HEADER_SIZE)
+                throw new IOException(BasicUtils.combined("Column file is truncated: ", file.getAbsolutePath()));
+
+            // the mapping stays valid after the channel is closed
+            final MappedByteBuffer buffer = access.getChannel().map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0, length);
+
+            if (length != getLength(buffer.getInt(Integer.BYTES)))
+                throw new IOException(BasicUtils.combined("Column file is truncated: ", file.getAbsolutePath()));
+
+            return new ColumnStore(buffer);
+        }
+    }
+
+    /**
+     * Reads all the records in the given column file.
+     *
+     * @param file              target column file
+     * @return                  the decoded records
+     *
+     * @throws Exception        if error occurs, for example no such file, permission denied
+     */
+    @SyncTask
+    public static Chunk read(final File file) throws Exception
+    {
+        return open(file, false).toChunk();
+    }
+
+    /**
+     * Returns the number of committed records.
+     *
+     * @return                  the number of committed records
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of records the file can hold.
+     *
+     * @return                  the capacity of the file
+     */
+    public int getCapacity()
+    {
+        return this.capacity;
+    }
+
+    public int getSerial(int index)
+    {
+        return this.buffer.getInt(this.serialsOffset + index * Integer.BYTES);
+    }
+
+    public double getTime(int index)
+    {
+        return this.buffer.getDouble(HEADER_SIZE + index * Double.BYTES);
+    }
+
+    public byte getFlags(int index)
+    {
+        return this.buffer.get(this.flagsOffset + index);
+    }
+
+    /**
+     * Creates the Data object of the record at the given position.
+     *
+     * @param index             the position of the record in this file
+     * @return                  the Data object of the record
+     *
+     * @throws Exception        if the position is not committed or the Data object cannot be created
+     */
+    public Data getData(int index) throws Exception
+    {
+        if (index < 0 || index >= this.size)
+            throw new IndexOutOfBoundsException(BasicUtils.combined("Index: ", index, " size: ", this.size));
+
+        return new Data.NumberResponse(this.getSerial(index), this.getTime(index), this.getFlags(index));
+    }
+
+    /**
+     * Appends one record after the committed records.
+     *
+     * @param serial            the serial of the record
+     * @param time              the time of the record, {@link Data#DNF} if it is not finished
+     * @param flags             the flags of the record
+     *
+     * @throws IOException      if the file is full
+     */
+    @SyncTask
+    public void append(int serial, double time, byte flags) throws Exception
+    {
+        this.checkCapacity(1);
+        this.put(this.size, serial, time, flags);
+        this.commit(this.size + 1);
+    }
+
+    /**
+     * Appends the records of the given chunk in range [from, to) after the committed records,
+     * the size is committed once.
+     *
+     * @param chunk             the records to append
+     * @param from              the first position to append, inclusive
+     * @param to                the last position to append, exclusive
+     *
+     * @throws IOException      if the file does not have enough space
+     */
+    @SyncTask
+    public void append(final Chunk chunk, int from, int to) throws Exception
+    {
+        this.checkCapacity(to - from);
+
+        for (int i = from; i < to; i++)
+            this.put(this.size + i - from, chunk.serials[i], chunk.times[i], chunk.flags[i]);
+
+        this.commit(this.size + to - from);
+    }
+
+    /**
+     * Overwrites the time and flags of a committed record, the serial is kept.
+     *
+     * @param index             the position of the record
+     * @param time              the new time of the record, {@link Data#DNF} if it is not finished
+     * @param flags             the new flags of the record
+     *
+     * @throws IOException      if the record is not committed
+     */
+    @SyncTask
+    public void set(int index, double time, byte flags) throws Exception
+    {
+        if (index < 0 || index >= this.size)
+            throw new IOException(BasicUtils.combined("Record: ", index, " is not committed, size: ", this.size));
+
+        this.put(index, this.getSerial(index), time, flags);
+    }
+
+    /**
+     * Drops the committed records after the given size, the space is reused by the next append.
+     *
+     * @param size              the number of records to keep
+     */
+    @SyncTask
+    public void truncate(int size)
+    {
+        if (size < this.size)
+            this.commit(Math.max(size, 0));
+    }
+
+    /**
+     * Copies all the committed records into primitive columns in bulk.
+     *
+     * @return                  the decoded records
+     */
+    public Chunk toChunk()
+    {
+        return this.toChunk(0, this.size);
+    }
+
+    /**
+     * Copies the committed records in range [from, to) into primitive columns in bulk.
+     *
+     * @param from              the first position to copy, inclusive
+     * @param to                the last position to copy, exclusive, it is clamped to the size
+     * @return                  the decoded records
+     */
+    public Chunk toChunk(int from, int to)
+    {
+        final int start = Math.max(from, 0);
+        final int size = Math.max(Math.min(to, this.size) - start, 0);
+        final int[] serials = new int[size];
+        final double[] times = new double[size];
+        final byte[] flags = new byte[size];
+
+        final ByteBuffer view = this.buffer.duplicate();
+        ((ByteBuffer)(view.position(HEADER_SIZE + start * Double.BYTES))).asDoubleBuffer().get(times);
+        ((ByteBuffer)(view.position(this.serialsOffset + start * Integer.BYTES))).asIntBuffer().get(serials);
+        ((ByteBuffer)(view.position(this.flagsOffset + start))).get(flags);
+
+        return new Chunk(serials, times, flags, size);
+    }
+
+    /**
+     * Forces the changes of the mapped file to be written to the storage device.
+     */
+    @SyncTask
+    public void force()
+    {
+        this.buffer.force();
+    }
+
+    private void checkCapacity(int count) throws IOException
+    {
+        if (this.size + count > this.capacity)
+            throw new IOException(BasicUtils.combined("Column file is full, capacity: ", this.capacity, " size: ", this.size, " append: ", count));
+    }
+
+    private void put(int index, int serial, double time, byte flags)
+    {
+        this.buffer.putDouble(HEADER_SIZE + index * Double.BYTES, time);
+        this.buffer.putInt(this.serialsOffset + index * Integer.BYTES, serial);
+        this.buffer.put(this.flagsOffset + index, flags);
+    }
+
+    private void commit(int size)
+    {
+        this.buffer.putInt(0, size);
+        this.size = size;
+    }
+}
\ No newline at end of file
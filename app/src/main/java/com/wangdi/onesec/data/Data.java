@@ -25,6 +25,9 @@
 
 package com.wangdi.onesec.data;
 
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -42,7 +45,8 @@ import com.wangdi.onesec.utils.BasicUtils;
 /**
  * Data class is aimed to record people's sessions in 1Sec APP.
  * The Data class can be initialised by Map or by a Json object.
- * The NumberResponse class record people's reaction time in number test session
+ * The NumberResponse class record people's reaction time in number test session, it keeps the serial
+ * and the time in primitive fields and builds its JSON object only when it is needed.
  *
  * @see NumberResponse
  * @author Di Wang
@@ -106,7 +110,7 @@ public class Data
 
     public static final String NUMBER_RESPONSE_SERIAL = "serial";
     public static final String NUMBER_RESPONSE_TIME = "time";
-    private static final Set<String> NUMBER_RESPONSE_PARAM = new HashSet<>() {{this.add(NUMBER_RESPONSE_SERIAL); this.add(NUMBER_RESPONSE_TIME);}};
+    private static final Set<String> NUMBER_RESPONSE_PARAM = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(NUMBER_RESPONSE_SERIAL, NUMBER_RESPONSE_TIME)));
 
     /**
      * If the given Double value is null or DNF, return null; otherwise return the value itself.
@@ -150,47 +154,35 @@ public class Data
     {
         switch (dataType)
         {
-            case NUMBER_RESPONSE_TYPE: return new NumberResponse().load(json);
+            case NUMBER_RESPONSE_TYPE: return NumberResponse.fromJson(json);
             default: throw new DataFormatException(BasicUtils.combined("Cannot format to ", dataType, ". No such data type"));
         }
     }
 
     protected final Set<String> parameters;
+    // the data types which keep their values in fields give a view over the fields, it is changed by set and load
     protected final Map<String, Object> content;
-    protected final JSONObject json;
 
     private Data(final Set<String> parameters)
     {
-        this.parameters = parameters;
-        this.content = new HashMap<>();
-        this.json = new JSONObject();
+        this(parameters, new HashMap<>());
     }
 
-    private Data(final Set<String> parameters, final Map<String, Object> content) throws Exception
+    private Data(final Set<String> parameters, final Map<String, Object> content)
     {
-        this(parameters);
-
-        for (String key : content.keySet())
-        {
-            if (parameters.contains(key))
-            {
-                final Object value = content.get(key);
-                this.json.put(key, value);
-                this.content.put(key, value);
-            }
-            else
-                throw new DataFormatException(BasicUtils.combined("Data format error: additional ", key, " is given."));
-        }
+        this.parameters = parameters;
+        this.content = content;
     }
 
     /**
-     * Returns the JSONObject representation of this Data object.
+     * Returns the JSONObject representation of this Data object, a new JSONObject is created on each call,
+     * so changing it does not change this Data object.
      * 
      * @return                  the JSONObject representation of this Data object
      */
-    public final JSONObject toJson()
+    public JSONObject toJson()
     {
-        return this.json;
+        return new JSONObject(this.content);
     }
 
     /**
@@ -204,10 +196,7 @@ public class Data
     public void set(final String key, final Object value) throws Exception
     {
         if (this.parameters.contains(key))
-        {
-            this.json.put(key, value);
             this.content.put(key, value);
-        }
         else
             throw new DataFormatException(BasicUtils.combined("Data format error: additional ", key, " is given."));
     }
@@ -263,10 +252,7 @@ public class Data
             final Object value = json.get(key);
 
             if (this.parameters.contains(key))
-            {
-                this.json.put(key, value);
                 this.content.put(key, value);
-            }
             else
                 throw new DataFormatException(BasicUtils.combined("Data load error: additional ", key, " is given."));
         }
@@ -281,7 +267,7 @@ public class Data
      * 
      * @return                  the value of the given key
      */
-    public final Object get(String key)
+    public Object get(String key)
     {
         return this.content.get(key);
     }
@@ -295,36 +281,218 @@ public class Data
     @Override
     public final String toString()
     {
-        return this.json.toString();
+        return this.toJson().toString();
     }
 
-    // if the time is Double.Max, it will be DNF
+    // if the time is DNF, the record is not finished and its JSON object does not have the time
     public static final class NumberResponse extends Data
     {
-        private NumberResponse()
+        /**
+         * The serial and the time of a record in primitive fields, it is the content of the record.
+         * It cannot be changed as a map, {@link NumberResponse#set(String, Object)} checks and changes the fields.
+         */
+        private static final class Values extends AbstractMap<String, Object>
         {
-            super(NUMBER_RESPONSE_PARAM);
+            private int serial;
+            private double time;
+
+            private Values(int serial, double time)
+            {
+                this.serial = serial;
+                this.time = time;
+            }
+
+            @Override
+            public Object get(Object key)
+            {
+                if (NUMBER_RESPONSE_SERIAL.equals(key))
+                    return this.serial;
+
+                if (NUMBER_RESPONSE_TIME.equals(key))
+                    return (this.time == DNF) ? null : this.time;
+
+                return null;
+            }
+
+            @Override
+            public boolean containsKey(Object key)
+            {
+                return NUMBER_RESPONSE_SERIAL.equals(key) || (NUMBER_RESPONSE_TIME.equals(key) && this.time != DNF);
+            }
+
+            @NonNull
+            @Override
+            public Set<Entry<String, Object>> entrySet()
+            {
+                final Entry<String, Object> serial = new SimpleImmutableEntry<>(NUMBER_RESPONSE_SERIAL, this.serial);
+
+                if (this.time == DNF)
+                    return Collections.singleton(serial);
+
+                return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(serial, new SimpleImmutableEntry<>(NUMBER_RESPONSE_TIME, this.time))));
+            }
         }
 
+        private final Values values;
+
         private NumberResponse(Map<String, Object> content) throws Exception
         {
-            super(NUMBER_RESPONSE_PARAM, content);
+            this(getSerial(content), getTime(content));
+
+            for (final String key : content.keySet())
+            {
+                if (!NUMBER_RESPONSE_PARAM.contains(key))
+                    throw new DataFormatException(BasicUtils.combined("Data format error: additional ", key, " is given."));
+            }
+        }
+
+        private NumberResponse(final Values values)
+        {
+            super(NUMBER_RESPONSE_PARAM, values);
+            this.values = values;
         }
 
         public NumberResponse(int numberSerial, double time) throws Exception
         {
-            super(NUMBER_RESPONSE_PARAM, new HashMap<>() {{
-                this.put(NUMBER_RESPONSE_SERIAL, numberSerial);
-                this.put(NUMBER_RESPONSE_TIME, time);
-            }});
+            this(new Values(numberSerial, checkTime(numberSerial, time)));
         }
 
         public NumberResponse(int numberSerial) throws Exception
         {
-            super(NUMBER_RESPONSE_PARAM, new HashMap<>() {{
-                this.put(NUMBER_RESPONSE_SERIAL, numberSerial);
-                this.put(NUMBER_RESPONSE_TIME, null);
-            }});
+            this(numberSerial, DNF);
+        }
+
+        /**
+         * Creates a record with the given flags, the time is ignored if the record is not finished.
+         *
+         * @param numberSerial  the serial of the record
+         * @param time          the time of the record
+         * @param flags         the flags of the record, see {@link RecordLog#DNF_FLAG}
+         *
+         * @throws Exception    if the time is not a number
+         */
+        public NumberResponse(int numberSerial, double time, byte flags) throws Exception
+        {
+            this(numberSerial, ((flags & RecordLog.DNF_FLAG) == 0) ? time : DNF);
+        }
+
+        /**
+         * Loads a NumberResponse object from the given JSONObject, a record without the time is not finished.
+         *
+         * @param json          the JSONObject to load from
+         * @return              the loaded NumberResponse object
+         *
+         * @throws Exception    if the serial is missing or an additional key is given
+         */
+        public static NumberResponse fromJson(final JSONObject json) throws Exception
+        {
+            final Iterator<String> it = json.keys();
+
+            while (it.hasNext())
+            {
+                final String key = it.next();
+
+                if (!NUMBER_RESPONSE_PARAM.contains(key))
+                    throw new DataFormatException(BasicUtils.combined("Data load error: additional ", key, " is given."));
+            }
+
+            final boolean finished = json.has(NUMBER_RESPONSE_TIME) && !json.isNull(NUMBER_RESPONSE_TIME);
+            return new NumberResponse(json.getInt(NUMBER_RESPONSE_SERIAL), finished ? json.getDouble(NUMBER_RESPONSE_TIME) : DNF);
+        }
+
+        private static int getSerial(Map<String, Object> content) throws Exception
+        {
+            final Object value = content.get(NUMBER_RESPONSE_SERIAL);
+
+            if (!(value instanceof Number))
+                throw new DataFormatException(BasicUtils.combined("Data format error: ", NUMBER_RESPONSE_SERIAL, " is not given."));
+
+            return ((Number)(value)).intValue();
+        }
+
+        private static double getTime(Map<String, Object> content)
+        {
+            final Object value = content.get(NUMBER_RESPONSE_TIME);
+            return (value == null) ? DNF : ((Number)(value)).doubleValue();
+        }
+
+        private static double checkTime(int serial, double time) throws Exception
+        {
+            if (Double.isNaN(time) || time == Double.NEGATIVE_INFINITY)
+                throw new DataFormatException(BasicUtils.combined("Data format error: time: ", time, " of serial: ", serial));
+
+            return time;
+        }
+
+        /**
+         * Returns the JSONObject representation of this record, it is built from the fields on each call.
+         *
+         * @return              the JSONObject representation of this record
+         */
+        @Override
+        public JSONObject toJson()
+        {
+            final JSONObject json = new JSONObject().put(NUMBER_RESPONSE_SERIAL, this.values.serial);
+
+            if (this.isValid())
+                json.put(NUMBER_RESPONSE_TIME, this.values.time);
+
+            return json;
+        }
+
+        /**
+         * Sets the serial or the time of this record, a null time marks the record as not finished.
+         *
+         * @param key           {@link #NUMBER_RESPONSE_SERIAL} or {@link #NUMBER_RESPONSE_TIME}
+         * @param value         the new serial or time
+         *
+         * @throws Exception    if the key is not a parameter or the value is not a number
+         */
+        @Override
+        public void set(final String key, final Object value) throws Exception
+        {
+            if (!this.parameters.contains(key))
+                throw new DataFormatException(BasicUtils.combined("Data format error: additional ", key, " is given."));
+
+            if (value != null && !(value instanceof Number))
+                throw new DataFormatException(BasicUtils.combined("Data format error: ", key, ": ", value, " is not a number."));
+
+            if (NUMBER_RESPONSE_TIME.equals(key))
+                this.values.time = checkTime(this.values.serial, (value == null) ? DNF : ((Number)(value)).doubleValue());
+            else if (value == null)
+                throw new DataFormatException(BasicUtils.combined("Data format error: ", NUMBER_RESPONSE_SERIAL, " is not given."));
+            else
+                this.values.serial = ((Number)(value)).intValue();
+        }
+
+        /**
+         * Loads the values in the given JSONObject into this record, a null time marks the record as not finished.
+         *
+         * @param json          the JSONObject to load from
+         * @return              this record
+         *
+         * @throws Exception    if an additional key is given or a value is not a number
+         */
+        @Override
+        public Data load(final JSONObject json) throws Exception
+        {
+            final Iterator<String> it = json.keys();
+
+            while (it.hasNext())
+            {
+                final String key = it.next();
+
+                if (!this.parameters.contains(key))
+                    throw new DataFormatException(BasicUtils.combined("Data load error: additional ", key, " is given."));
+            }
+
+            if (json.has(NUMBER_RESPONSE_SERIAL))
+                this.set(NUMBER_RESPONSE_SERIAL, json.isNull(NUMBER_RESPONSE_SERIAL) ? null : json.get(NUMBER_RESPONSE_SERIAL));
+
+            if (json.has(NUMBER_RESPONSE_TIME))
+                this.set(NUMBER_RESPONSE_TIME, json.isNull(NUMBER_RESPONSE_TIME) ? null : json.get(NUMBER_RESPONSE_TIME));
+
+            return this;
         }
 
         /**
@@ -332,12 +500,11 @@ public class Data
          * A Data object is valid if it is not DNF.
          * 
          * @return                  whether the Data object is valid or not
-         * @throws Exception        if error occurs, for example no such data type
          */
         @Override
-        public boolean isValid() throws Exception
+        public boolean isValid()
         {
-            return !this.getIsDNF();
+            return this.values.time != DNF;
         }
 
         /**
@@ -356,29 +523,40 @@ public class Data
          * 
          * @param other         the NumberResponse object to compare with
          * @return              a negative integer, zero, or a positive integer as this NumberResponse object is less than, equal to, or greater than the given NumberResponse object
-         * 
-         * @throws Exception    if error occurs, for example no such data type
          */
         @Override
-        public byte compare(final Data other) throws Exception
+        public byte compare(final Data other)
+        {
+            final NumberResponse response = (NumberResponse)(other);
+            return compare(this.values.serial, this.values.time, response.values.serial, response.values.time);
+        }
+
+        /**
+         * Compares two records by their primitive values without creating any object. The smaller absolute time
+         * is better, and the later serial is better if the times are the same.
+         *
+         * @param serial        the serial of the first record
+         * @param time          the time of the first record
+         * @param otherSerial   the serial of the second record
+         * @param otherTime     the time of the second record
+         * @return              {@link #BETTER}, {@link #EQUALS} or {@link #WORSE} for the first record
+         */
+        public static byte compare(int serial, double time, int otherSerial, double otherTime)
         {
-            final double thisTime = Math.abs(this.getTime()),
-                         otherTime = Math.abs(((NumberResponse)(other)).getTime());
+            final double thisTime = Math.abs(time), thatTime = Math.abs(otherTime);
 
-            if (thisTime < otherTime)
+            if (thisTime < thatTime)
                 return BETTER;
 
-            if (thisTime > otherTime)
+            if (thisTime > thatTime)
                 return WORSE;
 
+            final int thisSerial = Math.abs(serial), thatSerial = Math.abs(otherSerial);
 
-            final double thisSerial = Math.abs(this.getSerial()),
-                         otherSerial = Math.abs(((NumberResponse)(other)).getSerial());
-
-            if (thisSerial > otherSerial)
+            if (thisSerial > thatSerial)
                 return BETTER;
 
-            if (thisSerial < otherSerial)
+            if (thisSerial < thatSerial)
                 return WORSE;
 
             return EQUALS;
@@ -388,42 +566,30 @@ public class Data
          * Gets the serial number of the number in the number test session.
          *
          * @return              the serial number of the number in the number test session
-         * @throws Exception    if error occurs, for example JSON does not contain the key
          */
-        public int getSerial() throws Exception
+        public int getSerial()
         {
-            return this.json.getInt(NUMBER_RESPONSE_SERIAL);
+            return this.values.serial;
         }
 
         /**
          * Gets the time cost to finish the number in the number test session.
          *
-         * @return              the time cost to finish the number in the number test session
-         * @throws Exception    if error occurs, for example JSON does not contain the key
+         * @return              the time cost to finish the number in the number test session, DNF if it is not finished
          */
-        public double getTime() throws Exception
+        public double getTime()
         {
-            if (this.content.containsKey(NUMBER_RESPONSE_TIME))
-            {
-                final Object value = this.content.get(NUMBER_RESPONSE_TIME);
-                return value == null ? DNF : ((Number)(value)).doubleValue();
-            }
-
-            return DNF;
+            return this.values.time;
         }
 
         /**
-         * Gets whether the user did not finish the session.
+         * Gets the flags of the record, see {@link RecordLog#DNF_FLAG}.
          *
-         * @return              whether the user did not finish the session
-         * @throws Exception    if error occurs, for example JSON does not contain the key
+         * @return              the flags of the record
          */
-        private boolean getIsDNF() throws Exception
+        public byte getFlags()
         {
-            if (this.content.containsKey(NUMBER_RESPONSE_TIME))
-                return this.content.get(NUMBER_RESPONSE_TIME) == null;
-
-            return true;
+            return RecordLog.getFlags(this.values.time);
         }
     }
 }
\ No newline at end of file
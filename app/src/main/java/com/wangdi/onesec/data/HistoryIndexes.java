@@ -0,0 +1,668 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ */
+
+package com.wangdi.onesec.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.CompletableFuture;
+
+import org.json.JSONObject;
+
+import com.wangdi.onesec.interfaces.AsyncTask;
+import com.wangdi.onesec.interfaces.SyncTask;
+import com.wangdi.onesec.utils.Scheduler;
+
+/**
+ * <p>
+ * HistoryIndexes keeps the indexes of the whole history of a number response recorder in memory, so they are
+ * read without any file: the daily and weekly {@link Rollups}, the {@link RankIndex}, the {@link TimingHistogram}
+ * and the {@link QuantileSketch} of the valid times.
+ * </p>
+ *
+ * <p>
+ * The rollups, the rank index and the histogram are stored in snapshot files at every checkpoint, a snapshot
+ * older than the records is brought up to date from the records after it. The sketch is stored in the manifest
+ * file by the recorder. A sketch cannot remove a time, so it is built again in background after a record is
+ * removed or changed. The records are read from the recorder through {@link Source}, the caller keeps the
+ * indexes in step with the records under the append lock of the recorder.
+ * </p>
+ *
+ * @see Recorder.NumberResponse
+ * @author Di Wang
+ * @version 1.0
+ */
+
+final class HistoryIndexes
+{
+    private static final String ROLLUP_FILE_NAME = "rollups.bin";
+    private static final String RANK_FILE_NAME = "ranks.bin";
+    private static final String HISTOGRAM_FILE_NAME = "histogram.bin";
+
+    /**
+     * Source reads the records which the indexes are built from.
+     */
+    interface Source
+    {
+        /**
+         * Returns the number of records, the caller holds the append lock if it must not change.
+         *
+         * @return              the number of records
+         */
+        int getSize();
+
+        /**
+         * Returns the number of records read at a time.
+         *
+         * @return              the number of records per data file
+         */
+        int getGroupSize();
+
+        /**
+         * Returns the records in serial range [from, to).
+         *
+         * @param from          the first serial, inclusive
+         * @param to            the last serial, exclusive, it is clamped to the size
+         * @return              the records in primitive columns
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        Chunk getRangeSync(int from, int to) throws Exception;
+
+        /**
+         * Returns the times of the records from the given serial in serial order, {@link Data#DNF} for invalid ones.
+         *
+         * @param fromSerial    the first serial, inclusive
+         * @return              the iterator of the times
+         */
+        PrimitiveIterator.OfDouble timeIterator(int fromSerial);
+
+        /**
+         * Waits until the records can be read by range, the data files of older directories are aligned
+         * after opening.
+         *
+         * @throws Exception    if aligning fails, for example no such file, permission denied
+         */
+        void awaitAlignedSync() throws Exception;
+    }
+
+    private final Source source;
+    // held by the recorder while appending, removing and changing records
+    private final Object appendLock;
+    // wall-clock time of every record by serial
+    private final File timestampFile;
+
+    // the daily and weekly rollups, stored at every checkpoint
+    private final Rollups rollups;
+    private final File rollupFile;
+
+    // the valid times of all the records in order, stored at every checkpoint
+    private final RankIndex rankIndex;
+    private final File rankFile;
+
+    // the valid times in fixed log-linear buckets, stored at every checkpoint
+    private TimingHistogram histogram;
+    private final File histogramFile;
+
+    // the distribution of the valid times in bounded memory, stored in the manifest file by the recorder
+    private volatile QuantileSketch quantiles;
+    // the future is completed when the sketch agrees with the records again
+    private volatile CompletableFuture<Void> quantileRebuild;
+    private int quantileGeneration;
+
+    /**
+     * Creates empty indexes of the recorder in the given directory, the rollups, the rank index and the histogram
+     * are read by {@link #loadSync(int)}.
+     *
+     * @param directory     the directory of the recorder
+     * @param timestampFile the file of the wall-clock time of every record
+     * @param quantiles     the sketch stored in the manifest file, or a new sketch
+     * @param source        the records of the recorder
+     * @param appendLock    the append lock of the recorder
+     */
+    HistoryIndexes(final File directory, final File timestampFile, final QuantileSketch quantiles, final Source source, final Object appendLock)
+    {
+        this.source = source;
+        this.appendLock = appendLock;
+        this.timestampFile = timestampFile;
+        this.rollups = new Rollups();
+        this.rollupFile = new File(directory, ROLLUP_FILE_NAME);
+        this.rankIndex = new RankIndex();
+        this.rankFile = new File(directory, RANK_FILE_NAME);
+        this.histogram = new TimingHistogram();
+        this.histogramFile = new File(directory, HISTOGRAM_FILE_NAME);
+        this.quantiles = quantiles;
+        this.quantileRebuild = CompletableFuture.completedFuture(null);
+        this.quantileGeneration = 0;
+    }
+
+    /**
+     * Reads the rollups, the rank index and the histogram from their snapshot files and adds the records after
+     * each snapshot up to the given size, only a missing or broken snapshot is built again from all the records.
+     * The records appended meanwhile are added by {@link #addRange(int, int)} under the append lock.
+     *
+     * @param size          the number of records to index
+     * @return              whether a snapshot is built again, then it is written by {@link #writeSnapshots(int)}
+     *                      so the next load reads it
+     *
+     * @throws Exception    if error occurs, for example no such file, permission denied
+     */
+    @SyncTask
+    boolean loadSync(int size) throws Exception
+    {
+        final int rollupSize = this.readRollupSnapshot(size);
+        final int rankSize = this.readRankSnapshot(size);
+        final int histogramSize = this.readHistogramSnapshot(size);
+        this.indexRecords(Math.min(rollupSize, Math.min(rankSize, histogramSize)), size, rollupSize, rankSize, histogramSize);
+        return rollupSize == 0 || rankSize == 0 || histogramSize == 0;
+    }
+
+    /**
+     * Adds the records in serial range [from, to) to the rollups, the rank index and the histogram.
+     *
+     * @param from          the first serial, inclusive
+     * @param to            the last serial, exclusive
+     *
+     * @throws Exception    if error occurs, for example no such file, permission denied
+     */
+    @SyncTask
+    void addRange(int from, int to) throws Exception
+    {
+        this.indexRecords(from, to, from, from, from);
+    }
+
+    /**
+     * Adds the records in serial range [from, to) to the rollups, the rank index and the histogram, a record
+     * is added to an index only if its serial is not less than the size the index already covers.
+     *
+     * @param from          the first serial, inclusive
+     * @param to            the last serial, exclusive
+     * @param rollupSize    the number of records in the rollups
+     * @param rankSize      the number of records in the rank index
+     * @param histogramSize the number of records in the histogram
+     *
+     * @throws Exception    if error occurs, for example no such file, permission denied
+     */
+    @SyncTask
+    private void indexRecords(int from, int to, int rollupSize, int rankSize, int histogramSize) throws Exception
+    {
+        final int groupSize = this.source.getGroupSize();
+
+        for (int serial = from; serial < to; serial += groupSize)
+        {
+            final int end = Math.min(serial + groupSize, to);
+            final Chunk records = this.source.getRangeSync(serial, end);
+            final long[] timestamps = TimestampLog.read(this.timestampFile, serial, end);
+
+            for (int i = 0; i < records.size; i++)
+            {
+                final double time = records.isValid(i) ? records.times[i] : Data.DNF;
+
+                if (records.serials[i] >= rollupSize)
+                    this.rollups.add(records.serials[i], time, timestamps[i]);
+
+                if (records.serials[i] >= rankSize)
+                    this.rankIndex.add(time);
+
+                if (records.serials[i] >= histogramSize)
+                    this.histogram.add(time);
+            }
+        }
+    }
+
+    /**
+     * Adds the appended record to the rollups, the rank index and the histogram, the caller must hold the
+     * append lock. The records appended while the indexes are loading are added by loading them instead.
+     *
+     * @param serial        the serial of the record
+     * @param time          the time of the record, {@link Data#DNF} if it is not valid
+     * @param timestamp     the timestamp of the record, {@link TimestampLog#NO_TIMESTAMP} if it is not in any rollup
+     */
+    void add(int serial, double time, long timestamp)
+    {
+        this.rollups.add(serial, time, timestamp);
+        this.rankIndex.add(time);
+        this.histogram.add(time);
+    }
+
+    /**
+     * Adds the time of the appended record to the quantile sketch, the caller must hold the append lock.
+     * The sketch is stored in the manifest file, so it is kept up to date while the other indexes are loading.
+     *
+     * @param time          the time of the record, a DNF time is ignored by the sketch
+     */
+    void addQuantile(double time)
+    {
+        this.quantiles.add(time);
+    }
+
+    /**
+     * Removes the given records from the indexes before they are truncated, the caller must hold the append lock.
+     *
+     * @param removed       the removed records
+     * @param timestamps    the timestamps of the removed records
+     *
+     * @throws Exception    if error occurs, for example no such file, permission denied
+     */
+    @SyncTask
+    void remove(final Chunk removed, final long[] timestamps) throws Exception
+    {
+        for (int i = 0; i < removed.size; i++)
+        {
+            if (!removed.isValid(i))
+                continue;
+
+            this.rankIndex.remove(removed.times[i]);
+            this.histogram.remove(removed.times[i]);
+        }
+
+        this.invalidateQuantiles();
+        this.resummarizeRollups(timestamps);
+    }
+
+    /**
+     * Changes the time of a record in the indexes after the record is patched, the caller must hold the append lock.
+     *
+     * @param oldTime       the old time of the record, {@link Data#DNF} if it is not valid
+     * @param time          the new time of the record
+     * @param timestamp     the timestamp of the record
+     *
+     * @throws Exception    if error occurs, for example no such file, permission denied
+     */
+    @SyncTask
+    void edit(double oldTime, double time, long timestamp) throws Exception
+    {
+        this.rankIndex.remove(oldTime);
+        this.rankIndex.add(time);
+        this.histogram.remove(oldTime);
+        this.histogram.add(time);
+        this.invalidateQuantiles();
+        this.resummarizeRollups(new long[] {timestamp});
+    }
+
+    /**
+     * Computes again the rows of the days and weeks which contain the given timestamps, only the records
+     * between the first and last serial of every row are read.
+     *
+     * @param timestamps    the timestamps of the changed or removed records
+     *
+     * @throws Exception    if error occurs, for example no such file, permission denied
+     */
+    @SyncTask
+    private void resummarizeRollups(final long[] timestamps) throws Exception
+    {
+        for (final byte period : new byte[] {Rollups.DAY, Rollups.WEEK})
+        {
+            final Set<Integer> keys = new HashSet<>();
+
+            for (final long timestamp : timestamps)
+            {
+                if (timestamp != TimestampLog.NO_TIMESTAMP)
+                    keys.add(this.rollups.getKey(period, timestamp));
+            }
+
+            for (final int key : keys)
+            {
+                final ChunkSummary row = this.rollups.get(period, key);
+
+                if (row == null)
+                    continue;
+
+                final int from = row.firstSerial, to = Math.min(row.lastSerial + 1, this.source.getSize());
+                final Chunk records = this.source.getRangeSync(from, to);
+                final long[] stamps = TimestampLog.read(this.timestampFile, from, to);
+                ChunkSummary summary = ChunkSummary.EMPTY;
+
+                for (int i = 0; i < records.size; i++)
+                {
+                    if (stamps[i] != TimestampLog.NO_TIMESTAMP && this.rollups.getKey(period, stamps[i]) == key)
+                        summary = summary.merge(ChunkSummary.of(records.serials[i], records.isValid(i) ? records.times[i] : Data.DNF));
+                }
+
+                this.rollups.put(period, key, summary);
+            }
+        }
+    }
+
+    /**
+     * Writes the rollups, the rank index and the histogram to their snapshot files, they agree with the manifest
+     * file written by the same checkpoint.
+     *
+     * @param size          the number of records in the indexes
+     *
+     * @throws Exception    if error occurs, for example permission denied
+     */
+    @SyncTask
+    void writeSnapshots(int size) throws Exception
+    {
+        final byte[] rows = this.rollups.toBytes();
+        SnapshotFile.write(this.rollupFile, ByteBuffer.allocate(Integer.BYTES + rows.length).putInt(size).put(rows).array());
+
+        final byte[] ranks = this.rankIndex.toBytes();
+        SnapshotFile.write(this.rankFile, ByteBuffer.allocate(Integer.BYTES + ranks.length).putInt(size).put(ranks).array());
+
+        final byte[] buckets = this.histogram.toBytes();
+        SnapshotFile.write(this.histogramFile, ByteBuffer.allocate(Integer.BYTES + buckets.length).putInt(size).put(buckets).array());
+    }
+
+    /**
+     * Reads the daily and weekly rollups from the rollup file, the records after the returned size are
+     * added by the caller. If the file does not exist or it is written with a greater size, the rollups
+     * are cleared and computed again from all the records.
+     *
+     * @param size          the number of records
+     * @return              the number of records in the rollups which are read, 0 if they are cleared
+     *
+     * @throws Exception    if error occurs, for example permission denied
+     */
+    @SyncTask
+    private int readRollupSnapshot(int size) throws Exception
+    {
+        final ByteBuffer buffer = SnapshotFile.read(this.rollupFile, size);
+
+        try
+        {
+            if (buffer != null)
+            {
+                final int count = buffer.getInt();
+                this.rollups.read(buffer);
+                return count;
+            }
+        }
+        catch (BufferUnderflowException e)
+        {
+            Recorder.logWarning("Rollup file is truncated and ignored: ", this.rollupFile.getAbsolutePath());
+        }
+
+        this.rollups.clear();
+        return 0;
+    }
+
+    /**
+     * Reads the order-statistic index of the valid times from the rank file, the records after the returned
+     * size are added by the caller. If the file does not exist or it is written with a greater size, the index
+     * is cleared and built again from all the records.
+     *
+     * @param size          the number of records
+     * @return              the number of records in the index which is read, 0 if it is cleared
+     *
+     * @throws Exception    if error occurs, for example permission denied
+     */
+    @SyncTask
+    private int readRankSnapshot(int size) throws Exception
+    {
+        final ByteBuffer buffer = SnapshotFile.read(this.rankFile, size);
+
+        try
+        {
+            if (buffer != null)
+            {
+                final int count = buffer.getInt();
+                this.rankIndex.read(buffer);
+                return count;
+            }
+        }
+        catch (BufferUnderflowException e)
+        {
+            Recorder.logWarning("Rank file is truncated and ignored: ", this.rankFile.getAbsolutePath());
+        }
+
+        this.rankIndex.clear();
+        return 0;
+    }
+
+    /**
+     * Reads the histogram of the valid times from the histogram file, the records after the returned size
+     * are added by the caller. If the file does not exist or it is written with a greater size, the histogram
+     * is built again from all the records with the default layout.
+     *
+     * @param size          the number of records
+     * @return              the number of records in the histogram which is read, 0 if it is new
+     *
+     * @throws Exception    if error occurs, for example permission denied
+     */
+    @SyncTask
+    private int readHistogramSnapshot(int size) throws Exception
+    {
+        final ByteBuffer buffer = SnapshotFile.read(this.histogramFile, size);
+
+        try
+        {
+            if (buffer != null)
+            {
+                final int count = buffer.getInt();
+                this.histogram = TimingHistogram.read(buffer);
+                return count;
+            }
+        }
+        catch (IOException | IllegalArgumentException e)
+        {
+            Recorder.logWarning("Histogram file is broken and ignored: ", this.histogramFile.getAbsolutePath());
+        }
+
+        this.histogram = new TimingHistogram();
+        return 0;
+    }
+
+    /**
+     * Returns the daily or weekly rollups with key in range [fromKey, toKey).
+     *
+     * @param period        {@link Rollups#DAY} or {@link Rollups#WEEK}
+     * @param fromKey       the first key, inclusive
+     * @param toKey         the last key, exclusive
+     * @return              the summaries of the records in every period in key order
+     */
+    SortedMap<Integer, ChunkSummary> getRollups(byte period, int fromKey, int toKey)
+    {
+        return this.rollups.getRange(period, fromKey, toKey);
+    }
+
+    /**
+     * Returns the rank of the given time among all the valid times.
+     *
+     * @param time          the time to rank
+     * @return              1 for the best, null if the time is {@link Data#DNF}
+     */
+    Integer getRank(double time)
+    {
+        return this.rankIndex.getRank(time);
+    }
+
+    /**
+     * Returns the percentage of the valid times which are not slower than the given time.
+     *
+     * @param time          the time of an attempt
+     * @return              the percentage from 0 to 100, null if the time is {@link Data#DNF} or no time is valid
+     */
+    Double getPercentile(double time)
+    {
+        return this.rankIndex.getPercentile(time);
+    }
+
+    /**
+     * Returns the number of valid times in the rank index.
+     *
+     * @return              the number of valid times
+     */
+    int getRankedSize()
+    {
+        return this.rankIndex.getCount();
+    }
+
+    /**
+     * Returns a copy of the histogram of all the valid times.
+     *
+     * @return              the copy of the histogram
+     */
+    TimingHistogram getHistogram()
+    {
+        return this.histogram.copy();
+    }
+
+    /**
+     * Returns the time at the given quantile of all the valid times estimated by the sketch.
+     *
+     * @param quantile      from 0 to 1
+     * @return              the estimated time, null if no time is valid
+     */
+    Double getQuantile(double quantile)
+    {
+        return this.quantiles.getQuantile(quantile);
+    }
+
+    /**
+     * Returns a copy of the quantile sketch of all the valid times.
+     *
+     * @return              the copy of the sketch
+     */
+    QuantileSketch getQuantiles()
+    {
+        return this.quantiles.copy();
+    }
+
+    /**
+     * Returns a copy of the quantile sketch after it agrees with the records.
+     *
+     * @return              the future of the copy of the sketch
+     */
+    @AsyncTask
+    CompletableFuture<QuantileSketch> awaitQuantiles()
+    {
+        return this.quantileRebuild.thenApply(ignored -> this.getQuantiles());
+    }
+
+    /**
+     * Returns the quantile sketch to store in the manifest file, a sketch which is being built again is not
+     * stored, so the next load builds it again if the application is killed meanwhile.
+     *
+     * @return              the sketch in json, null if it does not agree with the records
+     */
+    JSONObject getQuantilesJson()
+    {
+        final CompletableFuture<Void> rebuild = this.quantileRebuild;
+        return (rebuild.isDone() && !rebuild.isCompletedExceptionally()) ? this.quantiles.toJson() : null;
+    }
+
+    /**
+     * Marks the quantile sketch as not agreeing with the records and builds it again in background, the caller
+     * must hold the append lock. The times added while building are added to the old sketch, and to the new one
+     * before it replaces the old one.
+     */
+    void invalidateQuantiles()
+    {
+        this.quantileGeneration++;
+
+        // a running build sees the new generation and starts again
+        if (!this.quantileRebuild.isDone())
+            return;
+
+        final CompletableFuture<Void> rebuild = new CompletableFuture<>();
+        this.quantileRebuild = rebuild;
+
+        Scheduler.execute(Scheduler.BACKGROUND, () -> {
+            try
+            {
+                this.rebuildQuantilesSync();
+                rebuild.complete(null);
+            }
+            catch (Exception e)
+            {
+                Recorder.logError(e);
+                rebuild.completeExceptionally(e);
+            }
+        });
+    }
+
+    /**
+     * Builds the quantile sketch again from the records without holding the append lock, then adds the
+     * times appended meanwhile under the lock and replaces the sketch. If a record is removed or changed
+     * while building, the sketch is built again.
+     *
+     * @throws Exception    if error occurs, for example no such file, permission denied
+     */
+    @SyncTask
+    private void rebuildQuantilesSync() throws Exception
+    {
+        this.source.awaitAlignedSync();
+
+        while (true)
+        {
+            final int generation, size;
+
+            synchronized (this.appendLock)
+            {
+                generation = this.quantileGeneration;
+                size = this.source.getSize();
+            }
+
+            final QuantileSketch sketch = new QuantileSketch();
+
+            try
+            {
+                addValidTimes(sketch, this.source.timeIterator(0), size);
+            }
+            catch (Exception e)
+            {
+                // the records are truncated by removing attempts while they are read
+                synchronized (this.appendLock)
+                {
+                    if (generation == this.quantileGeneration)
+                        throw e;
+                }
+
+                continue;
+            }
+
+            synchronized (this.appendLock)
+            {
+                if (generation != this.quantileGeneration)
+                    continue;
+
+                addValidTimes(sketch, this.source.timeIterator(size), this.source.getSize() - size);
+                this.quantiles = sketch;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Adds the given number of times of the given iterator to the given sketch, DNF times are ignored by the sketch.
+     *
+     * @param sketch        the sketch to add to
+     * @param times         the times in serial order
+     * @param count         the number of times to add
+     */
+    private static void addValidTimes(final QuantileSketch sketch, final PrimitiveIterator.OfDouble times, int count)
+    {
+        for (int i = 0; i < count && times.hasNext(); i++)
+            sketch.add(times.nextDouble());
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ */
+
+package com.wangdi.onesec.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import com.wangdi.onesec.interfaces.SyncTask;
+import com.wangdi.onesec.utils.BasicUtils;
+import com.wangdi.onesec.utils.FileHelper;
+
+/**
+ * <p>
+ * HistoryReader reads the times of an exported number response history from a stream, one record at a time,
+ * so a long history can be imported without holding it in memory. Three formats are supported:
+ * </p>
+ *
+ * <ul>
+ *     <li>{@link #JSON_FORMAT}: the document written by {@link Recorder#exportSync(java.io.Writer)},
+ *     or only its records array, the timestamps of the records are read as well</li>
+ *     <li>{@link #CSV_FORMAT}: one record per line, "serial,time" or "time", "DNF" or an empty time
+ *     for an attempt not finished, a header line is skipped</li>
+ *     <li>{@link #BINARY_FORMAT}: the fixed-width records of {@link RecordLog}</li>
+ * </ul>
+ *
+ * <p>
+ * A gzip stream is detected and decompressed. The serials in the stream must be increasing, the times are
+ * returned in the order of the stream.
+ * </p>
+ *
+ * @see Recorder.NumberResponse#importHistorySync(InputStream, byte)
+ * @author Di Wang
+ * @version 1.0
+ */
+
+public final class HistoryReader implements Closeable
+{
+    public static final byte JSON_FORMAT = 0;
+    public static final byte CSV_FORMAT = 1;
+    public static final byte BINARY_FORMAT = 2;
+
+    private static final String DNF_TEXT = "DNF";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final byte format;
+    private final InputStream input;
+    private final BufferedReader reader;
+    private final DataInputStream binary;
+    private final JSONTokener tokener;
+
+    private int lastSerial;
+    private long timestamp;
+    private int line;
+    // whether the JSON tokener is in the records array, and whether the array is finished
+    private boolean inRecords;
+    private boolean finished;
+
+    /**
+     * Creates a reader of the given stream, the stream is closed by {@link #close()}.
+     *
+     * @param input             the stream of the exported history, it can be compressed by gzip
+     * @param format            {@link #JSON_FORMAT}, {@link #CSV_FORMAT} or {@link #BINARY_FORMAT}
+     *
+     * @throws Exception        if error occurs while reading the head of the stream
+     */
+    @SyncTask
+    public HistoryReader(final InputStream input, byte format) throws Exception
+    {
+        this.format = format;
+        this.input = decompress(input);
+        this.reader = (format == BINARY_FORMAT) ? null : new BufferedReader(new InputStreamReader(this.input, FileHelper.STANDARD_FORMAT), BUFFER_SIZE);
+        this.binary = (format == BINARY_FORMAT) ? new DataInputStream(this.input) : null;
+        this.tokener = (format == JSON_FORMAT) ? new JSONTokener(this.reader) : null;
+        this.lastSerial = -1;
+        this.timestamp = TimestampLog.NO_TIMESTAMP;
+        this.line = 0;
+        this.inRecords = this.finished = false;
+
+        if (format != JSON_FORMAT && format != CSV_FORMAT && format != BINARY_FORMAT)
+            throw new IllegalArgumentException(BasicUtils.combined("Unknown history format: ", format));
+    }
+
+    /**
+     * Wraps the given stream with a buffer, and a gzip stage if the stream starts with the gzip magic number.
+     *
+     * @param input             the stream to wrap
+     * @return                  the buffered stream of the uncompressed content
+     *
+     * @throws Exception        if error occurs while reading
+     */
+    @SyncTask
+    private static InputStream decompress(final InputStream input) throws Exception
+    {
+        final BufferedInputStream buffered = new BufferedInputStream(input, BUFFER_SIZE);
+
+        buffered.mark(2);
+        final int first = buffered.read(), second = buffered.read();
+        buffered.reset();
+
+        if (first == (GZIPInputStream.GZIP_MAGIC & 0xFF) && second == (GZIPInputStream.GZIP_MAGIC >>> 8))
+            return new BufferedInputStream(new GZIPInputStream(buffered, BUFFER_SIZE), BUFFER_SIZE);
+
+        return buffered;
+    }
+
+    /**
+     * Reads the times of the next records into the given buffer.
+     *
+     * @param times             the buffer of the times, {@link Data#DNF} for an attempt not finished
+     * @return                  the number of times read, 0 if the stream is finished
+     *
+     * @throws Exception        if the stream is not in the format or error occurs while reading
+     */
+    @SyncTask
+    public int read(final double[] times) throws Exception
+    {
+        return this.read(times, null);
+    }
+
+    /**
+     * Reads the times and the timestamps of the next records into the given buffers.
+     *
+     * @param times             the buffer of the times, {@link Data#DNF} for an attempt not finished
+     * @param timestamps        the buffer of the timestamps, {@link TimestampLog#NO_TIMESTAMP} for a record without one,
+     *                          null if the timestamps are not needed
+     * @return                  the number of records read, 0 if the stream is finished
+     *
+     * @throws Exception        if the stream is not in the format or error occurs while reading
+     */
+    @SyncTask
+    public int read(final double[] times, final long[] timestamps) throws Exception
+    {
+        int count = 0;
+
+        while (count < times.length && !this.finished)
+        {
+            final double time;
+
+            switch (this.format)
+            {
+                case BINARY_FORMAT: time = this.readBinary(); break;
+                case CSV_FORMAT: time = this.readCsv(); break;
+                default: time = this.readJson(); break;
+            }
+
+            if (this.finished)
+                break;
+
+            if (timestamps != null)
+                timestamps[count] = this.timestamp;
+
+            times[count++] = time;
+        }
+
+        return count;
+    }
+
+    @SyncTask
+    private double readBinary() throws Exception
+    {
+        final int serial;
+
+        try
+        {
+            serial = this.binary.readInt();
+        }
+        catch (EOFException e)
+        {
+            this.finished = true;
+            return Data.DNF;
+        }
+
+        final double time = this.binary.readDouble();
+        final byte flags = this.binary.readByte();
+
+        this.checkSerial(serial);
+        return ((flags & RecordLog.DNF_FLAG) != 0) ? Data.DNF : time;
+    }
+
+    @SyncTask
+    private double readCsv() throws Exception
+    {
+        String text;
+
+        do
+        {
+            text = this.reader.readLine();
+            this.line++;
+        }
+        while (text != null && text.trim().isEmpty());
+
+        if (text == null)
+        {
+            this.finished = true;
+            return Data.DNF;
+        }
+
+        final String[] columns = text.split(",", -1);
+        final String time = columns[columns.length - 1].trim();
+
+        try
+        {
+            if (columns.length > 1)
+                this.checkSerial(Integer.parseInt(columns[0].trim()));
+
+            return (time.isEmpty() || time.equalsIgnoreCase(DNF_TEXT)) ? Data.DNF : Double.parseDouble(time);
+        }
+        catch (NumberFormatException e)
+        {
+            // the header line
+            if (this.line == 1)
+                return this.readCsv();
+
+            throw new DataFormatException(BasicUtils.combined("Wrong record at line ", this.line, ": ", text));
+        }
+    }
+
+    @SyncTask
+    private double readJson() throws Exception
+    {
+        if (!this.inRecords)
+            this.findRecords();
+
+        char next = this.tokener.nextClean();
+
+        if (next == ',')
+            next = this.tokener.nextClean();
+
+        if (next == ']' || next == 0)
+        {
+            this.finished = true;
+            return Data.DNF;
+        }
+
+        this.tokener.back();
+        final JSONObject record = (JSONObject)(this.tokener.nextValue());
+
+        this.checkSerial(record.getInt(Data.NUMBER_RESPONSE_SERIAL));
+        this.timestamp = record.optLong(Recorder.TIMESTAMP_KEY, TimestampLog.NO_TIMESTAMP);
+        return record.has(Data.NUMBER_RESPONSE_TIME) ? record.getDouble(Data.NUMBER_RESPONSE_TIME) : Data.DNF;
+    }
+
+    /**
+     * Moves the JSON tokener to the first record, the values before the records array are skipped.
+     *
+     * @throws Exception        if the document does not contain the records array
+     */
+    @SyncTask
+    private void findRecords() throws Exception
+    {
+        this.inRecords = true;
+        final char first = this.tokener.nextClean();
+
+        if (first == '[')
+            return;
+
+        if (first != '{')
+            throw new DataFormatException(BasicUtils.combined("Expected a JSON object or array, but given: ", first));
+
+        while (true)
+        {
+            final char next = this.tokener.nextClean();
+
+            if (next == '}' || next == 0)
+                throw new DataFormatException("The document does not contain the records array");
+
+            if (next != ',')
+                this.tokener.back();
+
+            final String key = this.tokener.nextValue().toString();
+
+            if (this.tokener.nextClean() != ':')
+                throw new DataFormatException(BasicUtils.combined("Expected ':' after key: ", key));
+
+            if (key.equals(Recorder.RECORDS_KEY))
+            {
+                if (this.tokener.nextClean() != '[')
+                    throw new DataFormatException("The records is not an array");
+
+                return;
+            }
+
+            this.tokener.nextValue();
+        }
+    }
+
+    private void checkSerial(int serial) throws DataFormatException
+    {
+        if (serial <= this.lastSerial)
+            throw new DataFormatException(BasicUtils.combined("Serial: ", serial, " is not after serial: ", this.lastSerial));
+
+        this.lastSerial = serial;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.input.close();
+    }
+}
\ No newline at end of file
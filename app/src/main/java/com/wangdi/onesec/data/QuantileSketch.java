@@ -0,0 +1,373 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ */
+
+package com.wangdi.onesec.data;
+
+import java.util.Arrays;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import androidx.annotation.NonNull;
+
+import com.wangdi.onesec.utils.BasicUtils;
+
+/**
+ * <p>
+ * QuantileSketch is a KLL sketch of the valid absolute times, it answers the median, p90, p99 or any other
+ * quantile in bounded memory: with the default k of {@value #DEFAULT_K} it holds at most about 3k times
+ * (a few KB) no matter how many times are added, and the rank of a returned quantile is off by about
+ * 1.7 / k of the count at most in practice.
+ * </p>
+ *
+ * <p>
+ * The times are kept in levels, a time in level h stands for 2^h times. When a level is full it is sorted
+ * and every other time is promoted to the next level, the offset alternates between compactions, so the
+ * sketch is deterministic. Sketches are mergeable, so the sketch of the classic, challenge and blind
+ * recorders together is the merge of their sketches. A sketch cannot remove a time, see
+ * {@link Recorder.NumberResponse#getQuantiles()}.
+ * </p>
+ *
+ * @see RankIndex
+ * @author Di Wang
+ * @version 1.0
+ */
+
+public final class QuantileSketch
+{
+    public static final int DEFAULT_K = 200;
+
+    private static final double CAPACITY_RATIO = 2.0 / 3.0;
+    private static final int MIN_CAPACITY = 2;
+
+    public static final String K_KEY = "k";
+    public static final String COUNT_KEY = "count";
+    public static final String MIN_KEY = "min";
+    public static final String MAX_KEY = "max";
+    public static final String LEVELS_KEY = "levels";
+
+    private final int k;
+    // levels[h][0, sizes[h]) are the times kept in level h, every one has a weight of 2^h
+    private double[][] levels;
+    private int[] sizes;
+    private long count;
+    private double min;
+    private double max;
+    // the parity of the next compaction, it chooses the even or odd times to promote
+    private boolean odd;
+
+    public QuantileSketch()
+    {
+        this(DEFAULT_K);
+    }
+
+    public QuantileSketch(int k)
+    {
+        this.k = Math.max(k, MIN_CAPACITY);
+        this.clear();
+    }
+
+    /**
+     * Adds the given time to the sketch in O(1) amortised.
+     *
+     * @param time              the time of the attempt, the sign is ignored, {@link Data#DNF} is ignored
+     */
+    public synchronized void add(double time)
+    {
+        if (time == Data.DNF)
+            return;
+
+        final double value = Math.abs(time);
+        this.push(0, value);
+        this.count++;
+        this.min = Math.min(this.min, value);
+        this.max = Math.max(this.max, value);
+        this.compress();
+    }
+
+    /**
+     * Merges the given sketch into this sketch, the given sketch is not changed.
+     *
+     * @param other             the sketch to merge, for example the sketch of another recorder
+     * @return                  this sketch
+     */
+    public QuantileSketch merge(final QuantileSketch other)
+    {
+        final QuantileSketch copy = other.copy();
+
+        synchronized (this)
+        {
+            for (int h = 0; h < copy.levels.length; h++)
+            {
+                for (int i = 0; i < copy.sizes[h]; i++)
+                    this.push(h, copy.levels[h][i]);
+            }
+
+            this.count += copy.count;
+            this.min = Math.min(this.min, copy.min);
+            this.max = Math.max(this.max, copy.max);
+            this.compress();
+            return this;
+        }
+    }
+
+    /**
+     * Returns the number of times added to the sketch, including the times of the merged sketches.
+     *
+     * @return                  the number of times
+     */
+    public synchronized long getCount()
+    {
+        return this.count;
+    }
+
+    /**
+     * Returns the time at the given quantile, for example 0.5 for the median and 0.9 for p90.
+     *
+     * @param quantile          from 0 to 1, 0 returns the best time and 1 returns the worst time
+     * @return                  the estimated time, null if the sketch is empty
+     */
+    public synchronized Double getQuantile(double quantile)
+    {
+        if (this.count == 0)
+            return null;
+
+        if (quantile <= 0.0) return this.min;
+        if (quantile >= 1.0) return this.max;
+
+        final int retained = this.getRetained();
+        final double[] values = new double[retained];
+        final long[] weights = new long[retained];
+        final Integer[] order = new Integer[retained];
+        long total = 0;
+
+        for (int h = 0, i = 0; h < this.levels.length; h++)
+        {
+            for (int j = 0; j < this.sizes[h]; j++, i++)
+            {
+                values[i] = this.levels[h][j];
+                weights[i] = 1L << h;
+                order[i] = i;
+                total += weights[i];
+            }
+        }
+
+        Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+        final double target = quantile * total;
+        long cumulative = 0;
+
+        for (final int i : order)
+        {
+            cumulative += weights[i];
+
+            if (cumulative >= target)
+                return values[i];
+        }
+
+        return this.max;
+    }
+
+    public Double getMedian()
+    {
+        return this.getQuantile(0.5);
+    }
+
+    public Double getP90()
+    {
+        return this.getQuantile(0.9);
+    }
+
+    public Double getP99()
+    {
+        return this.getQuantile(0.99);
+    }
+
+    /**
+     * Removes all the times.
+     */
+    public synchronized void clear()
+    {
+        this.levels = new double[1][this.getCapacity(0, 1)];
+        this.sizes = new int[1];
+        this.count = 0;
+        this.min = Data.DNF;
+        this.max = -Data.DNF;
+        this.odd = false;
+    }
+
+    /**
+     * Returns a copy of this sketch.
+     *
+     * @return                  the copy
+     */
+    public synchronized QuantileSketch copy()
+    {
+        final QuantileSketch copy = new QuantileSketch(this.k);
+        copy.levels = new double[this.levels.length][];
+
+        for (int h = 0; h < this.levels.length; h++)
+            copy.levels[h] = this.levels[h].clone();
+
+        copy.sizes = this.sizes.clone();
+        copy.count = this.count;
+        copy.min = this.min;
+        copy.max = this.max;
+        copy.odd = this.odd;
+        return copy;
+    }
+
+    /**
+     * Returns the JSON representation of this sketch, which is stored in the manifest file.
+     *
+     * @return                  the JSON representation, see {@link #fromJson(JSONObject)}
+     */
+    public synchronized JSONObject toJson()
+    {
+        final JSONArray levels = new JSONArray();
+
+        for (int h = 0; h < this.levels.length; h++)
+        {
+            final JSONArray level = new JSONArray();
+
+            for (int i = 0; i < this.sizes[h]; i++)
+                level.put(this.levels[h][i]);
+
+            levels.put(level);
+        }
+
+        final JSONObject json = new JSONObject().put(K_KEY, this.k).put(COUNT_KEY, this.count).put(LEVELS_KEY, levels);
+
+        if (this.count != 0)
+            json.put(MIN_KEY, this.min).put(MAX_KEY, this.max);
+
+        return json;
+    }
+
+    /**
+     * Creates a sketch from its JSON representation.
+     *
+     * @param json              the JSON representation created by {@link #toJson()}
+     * @return                  the sketch
+     *
+     * @throws org.json.JSONException if the JSON representation misses a key
+     */
+    public static QuantileSketch fromJson(final JSONObject json)
+    {
+        final QuantileSketch sketch = new QuantileSketch(json.getInt(K_KEY));
+        final JSONArray levels = json.getJSONArray(LEVELS_KEY);
+
+        for (int h = 0; h < levels.length(); h++)
+        {
+            final JSONArray level = levels.getJSONArray(h);
+
+            for (int i = 0; i < level.length(); i++)
+                sketch.push(h, level.getDouble(i));
+        }
+
+        sketch.count = json.getLong(COUNT_KEY);
+        sketch.min = json.has(MIN_KEY) ? json.getDouble(MIN_KEY) : Data.DNF;
+        sketch.max = json.has(MAX_KEY) ? json.getDouble(MAX_KEY) : -Data.DNF;
+        sketch.compress();
+        return sketch;
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString()
+    {
+        return BasicUtils.combined("count: ", this.count, ", median: ", this.getMedian(), ", p90: ", this.getP90(), ", p99: ", this.getP99());
+    }
+
+    private int getCapacity(int level, int height)
+    {
+        // the top level holds k times, every level below holds 2/3 of the level above
+        return Math.max((int)(Math.ceil(this.k * Math.pow(CAPACITY_RATIO, height - 1 - level))), MIN_CAPACITY);
+    }
+
+    private void push(int level, double value)
+    {
+        while (level >= this.levels.length)
+        {
+            this.levels = Arrays.copyOf(this.levels, this.levels.length + 1);
+            this.levels[this.levels.length - 1] = new double[MIN_CAPACITY];
+            this.sizes = Arrays.copyOf(this.sizes, this.sizes.length + 1);
+        }
+
+        if (this.sizes[level] == this.levels[level].length)
+            this.levels[level] = Arrays.copyOf(this.levels[level], this.levels[level].length * 2);
+
+        this.levels[level][this.sizes[level]++] = value;
+    }
+
+    private void compress()
+    {
+        while (this.getRetained() >= this.getTotalCapacity())
+        {
+            // the lowest full level is compacted, a new level makes the levels below smaller
+            int h = 0;
+
+            while (this.sizes[h] < this.getCapacity(h, this.levels.length))
+                h++;
+
+            final double[] level = this.levels[h];
+            final int size = this.sizes[h], pairs = size / 2;
+            Arrays.sort(level, 0, size);
+
+            final int offset = this.odd ? 1 : 0;
+            this.odd = !this.odd;
+
+            // a time of an odd level stays, the pairs are compacted to one time of weight 2^(h + 1)
+            final double left = level[size - 1];
+
+            for (int i = 0; i < pairs; i++)
+                this.push(h + 1, level[i * 2 + offset]);
+
+            this.sizes[h] = 0;
+
+            if (size % 2 == 1)
+                this.levels[h][this.sizes[h]++] = left;
+        }
+    }
+
+    private int getRetained()
+    {
+        int retained = 0;
+
+        for (final int size : this.sizes)
+            retained += size;
+
+        return retained;
+    }
+
+    private int getTotalCapacity()
+    {
+        int capacity = 0;
+
+        for (int h = 0; h < this.levels.length; h++)
+            capacity += this.getCapacity(h, this.levels.length);
+
+        return capacity;
+    }
+}
\ No newline at end of file
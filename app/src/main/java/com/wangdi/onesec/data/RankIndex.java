@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ */
+
+package com.wangdi.onesec.data;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * RankIndex is an order-statistic index of the valid times of a number response recorder, it answers
+ * how many attempts are better than a time in O(log n), so the rank and percentile of an attempt are shown
+ * right after it is added. The index is a Fenwick tree over quantised absolute times: 1 ms buckets under
+ * 1 minute, 10 ms buckets under 10 minutes and 1 s buckets under 1 hour, the slower times share the last bucket.
+ * The attempts in the same bucket share a rank. The DNF attempts are not in the index.
+ * </p>
+ *
+ * <p>
+ * The tree starts small and doubles when a slower time is added, doubling only copies the tree and sets the new
+ * root, so adding is O(log n) amortised. The index is stored as the counts of the buckets which are not empty.
+ * </p>
+ *
+ * @see Recorder.NumberResponse#getRank(double)
+ * @author Di Wang
+ * @version 1.0
+ */
+
+public final class RankIndex
+{
+    public static final int MILLIS_BUCKETS = 60000;
+    public static final int CENTIS_BUCKETS = 54000;
+    public static final int SECONDS_BUCKETS = 3000;
+    public static final int BUCKET_COUNT = MILLIS_BUCKETS + CENTIS_BUCKETS + SECONDS_BUCKETS + 1;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // 1-based Fenwick tree, tree[i] is the number of times in buckets (i - lowbit(i), i]
+    private int[] tree;
+    private int count;
+
+    public RankIndex()
+    {
+        this.tree = new int[INITIAL_CAPACITY + 1];
+        this.count = 0;
+    }
+
+    /**
+     * Returns the bucket of the given time.
+     *
+     * @param time              the time in seconds, the sign is ignored
+     * @return                  the bucket from 0 to {@link #BUCKET_COUNT} - 1
+     */
+    public static int getBucket(double time)
+    {
+        final long millis = (long)(Math.abs(time) * 1000.0);
+
+        if (millis < MILLIS_BUCKETS)
+            return (int)(millis);
+
+        if (millis < MILLIS_BUCKETS * 10L)
+            return MILLIS_BUCKETS + (int)((millis - MILLIS_BUCKETS) / 10);
+
+        return (int)(Math.min(MILLIS_BUCKETS + CENTIS_BUCKETS + (millis - MILLIS_BUCKETS * 10L) / 1000, BUCKET_COUNT - 1));
+    }
+
+    /**
+     * Adds the given time to the index.
+     *
+     * @param time              the time of the attempt, {@link Data#DNF} is ignored
+     */
+    public synchronized void add(double time)
+    {
+        if (time == Data.DNF)
+            return;
+
+        final int bucket = getBucket(time);
+
+        while (bucket >= this.getCapacity())
+            this.grow();
+
+        this.update(bucket + 1, 1);
+        this.count++;
+    }
+
+    /**
+     * Removes the given time from the index, for example the attempt is removed or edited.
+     *
+     * @param time              the time of the attempt which was added, {@link Data#DNF} is ignored
+     */
+    public synchronized void remove(double time)
+    {
+        final int bucket = getBucket(time);
+
+        if (time == Data.DNF || bucket >= this.getCapacity())
+            return;
+
+        this.update(bucket + 1, -1);
+        this.count--;
+    }
+
+    /**
+     * Returns the number of valid times in the index.
+     *
+     * @return                  the number of valid times
+     */
+    public synchronized int getCount()
+    {
+        return this.count;
+    }
+
+    /**
+     * Returns the rank of the given time among the valid times in the index, 1 is the best.
+     *
+     * @param time              the time to rank, usually a time in the index
+     * @return                  1 + the number of times in faster buckets, null if the time is {@link Data#DNF}
+     */
+    public synchronized Integer getRank(double time)
+    {
+        if (time == Data.DNF)
+            return null;
+
+        return this.getPrefix(Math.min(getBucket(time), this.getCapacity())) + 1;
+    }
+
+    /**
+     * Returns the percentage of the valid times in the index which are not slower than the given time,
+     * for example 0.07 means the time is in the top 0.07%.
+     *
+     * @param time              the time of an attempt in the index
+     * @return                  the rank divided by the number of valid times in percent, null if the time is
+     *                          {@link Data#DNF} or the index is empty
+     */
+    public synchronized Double getPercentile(double time)
+    {
+        if (time == Data.DNF || this.count == 0)
+            return null;
+
+        return Math.min(100.0 * this.getRank(time) / this.count, 100.0);
+    }
+
+    /**
+     * Removes all the times.
+     */
+    public synchronized void clear()
+    {
+        this.tree = new int[INITIAL_CAPACITY + 1];
+        this.count = 0;
+    }
+
+    /**
+     * Encodes the index as the number of buckets which are not empty, followed by the bucket and count of each.
+     *
+     * @return                  the encoded index
+     */
+    public synchronized byte[] toBytes()
+    {
+        final int[] counts = this.getCounts();
+        int used = 0;
+
+        for (int i = 1; i < counts.length; i++)
+            used += (counts[i] == 0) ? 0 : 1;
+
+        final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + used * Integer.BYTES * 2);
+        buffer.putInt(used);
+
+        for (int i = 1; i < counts.length; i++)
+        {
+            if (counts[i] != 0)
+                buffer.putInt(i - 1).putInt(counts[i]);
+        }
+
+        return buffer.array();
+    }
+
+    /**
+     * Replaces the index with the index encoded by {@link #toBytes()}, the tree is built in O(buckets).
+     *
+     * @param buffer            the encoded index
+     *
+     * @throws java.nio.BufferUnderflowException if the index is incomplete
+     */
+    public synchronized void read(final ByteBuffer buffer)
+    {
+        final int used = buffer.getInt();
+        int capacity = INITIAL_CAPACITY, count = 0;
+        final int[] buckets = new int[used], counts = new int[used];
+
+        for (int i = 0; i < used; i++)
+        {
+            buckets[i] = Math.min(Math.max(buffer.getInt(), 0), BUCKET_COUNT - 1);
+            counts[i] = buffer.getInt();
+
+            while (buckets[i] >= capacity)
+                capacity <<= 1;
+        }
+
+        final int[] tree = new int[capacity + 1];
+
+        for (int i = 0; i < used; i++)
+        {
+            tree[buckets[i] + 1] += counts[i];
+            count += counts[i];
+        }
+
+        // every node adds itself to its parent once, in increasing order
+        for (int i = 1; i <= capacity; i++)
+        {
+            final int parent = i + (i & -i);
+
+            if (parent <= capacity)
+                tree[parent] += tree[i];
+        }
+
+        this.tree = tree;
+        this.count = count;
+    }
+
+    private int getCapacity()
+    {
+        return this.tree.length - 1;
+    }
+
+    private void grow()
+    {
+        // the new nodes below the new root only cover empty buckets, the new root covers all of them
+        final int capacity = this.getCapacity();
+        this.tree = Arrays.copyOf(this.tree, capacity * 2 + 1);
+        this.tree[capacity * 2] = this.count;
+    }
+
+    private void update(int index, int delta)
+    {
+        for (int i = index; i < this.tree.length; i += i & -i)
+            this.tree[i] += delta;
+    }
+
+    private int getPrefix(int index)
+    {
+        int sum = 0;
+
+        for (int i = index; i > 0; i -= i & -i)
+            sum += this.tree[i];
+
+        return sum;
+    }
+
+    private int[] getCounts()
+    {
+        final int[] counts = this.tree.clone();
+
+        // reverts the building of read(ByteBuffer), in decreasing order
+        for (int i = counts.length - 1; i > 0; i--)
+        {
+            final int parent = i + (i & -i);
+
+            if (parent < counts.length)
+                counts[parent] -= counts[i];
+        }
+
+        return counts;
+    }
+}
\ No newline at end of file
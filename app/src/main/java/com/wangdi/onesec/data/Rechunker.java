@@ -0,0 +1,455 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ */
+
+package com.wangdi.onesec.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONObject;
+
+import com.wangdi.onesec.interfaces.SyncTask;
+import com.wangdi.onesec.utils.BasicUtils;
+import com.wangdi.onesec.utils.FileHelper;
+
+/**
+ * <p>
+ * Rechunker copies the records of a number response recorder in serial order into new data files in the rechunk
+ * directory, every new data file except the last one contains exactly groupSize records. The summaries of the
+ * full new data files are appended to the summary files in the rechunk directory, so they are swapped in with
+ * the new data files.
+ * </p>
+ *
+ * <p>
+ * The records are read from the recorder through {@link Source}, the caller decides which records are copied
+ * without any lock and swaps the new data files in while appending is stopped. A resumable rechunker writes its
+ * progress after every full new data file, so a copy stopped by closing the application goes on from there.
+ * </p>
+ *
+ * @see Recorder.NumberResponse
+ * @author Di Wang
+ * @version 1.0
+ */
+
+final class Rechunker
+{
+    private static final String PROGRESS_FILE_NAME = "progress.json";
+    private static final String PROGRESS_FILES_KEY = "files";
+    private static final String PROGRESS_SOURCE_KEY = "source";
+
+    /**
+     * Source reads the records of the recorder which is rechunked.
+     */
+    interface Source
+    {
+        /**
+         * Returns whether the data file n of the recorder contains the records from n * groupSize.
+         *
+         * @return              whether the data files are aligned
+         */
+        boolean isAligned();
+
+        /**
+         * Returns the number of records per data file of the recorder.
+         *
+         * @return              the current group size
+         */
+        int getGroupSize();
+
+        /**
+         * Returns the records in serial range [from, to) of aligned data files, the data files are kept
+         * from being renamed while reading.
+         *
+         * @param from          the first serial, inclusive
+         * @param to            the last serial, exclusive
+         * @return              the records in primitive columns
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        Chunk readRangeSync(int from, int to) throws Exception;
+
+        /**
+         * Returns the data files of the recorder sorted by index.
+         *
+         * @return              the data files
+         */
+        List<File> getDataFiles();
+
+        /**
+         * Returns all the records of the given data file in any storage.
+         *
+         * @param dataFile      the data file to read
+         * @return              the records of the data file
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        Chunk readChunk(final File dataFile) throws Exception;
+    }
+
+    private final Source source;
+    private final File rootDirectory;
+    private final File staging;
+    private final File summaryFile;
+    private final File windowFile;
+    private final File progressFile;
+    private final int groupSize;
+    // the storage of the new data files, the copy is started again if the recorder is migrated meanwhile
+    private final byte storage;
+    private final boolean resumable;
+    private final int[] serials;
+    private final double[] times;
+    private final byte[] flags;
+    // names of the written data files, and summaries of the full ones
+    private final List<String> names;
+    private final List<ChunkSummary> summaries;
+    private final List<WindowSummary> windowSummaries;
+    private final WindowSummary.Builder windows;
+
+    private int next;
+    private int count;
+    // the index of the old data file which contains the next record
+    private int sourceIndex;
+
+    /**
+     * Creates a rechunker in an empty rechunk directory, or goes on from the progress in the rechunk
+     * directory if it is resumable and the progress is written with the same group size and storage.
+     *
+     * @param rootDirectory the root directory of the recorder
+     * @param source        the records of the recorder
+     * @param storage       the storage of the new data files
+     * @param groupSize     the number of records per new data file
+     * @param resumable     whether the progress is written after every full new data file
+     *
+     * @throws Exception    if error occurs, for example permission denied
+     */
+    @SyncTask
+    Rechunker(final File rootDirectory, final Source source, byte storage, int groupSize, boolean resumable) throws Exception
+    {
+        this.source = source;
+        this.rootDirectory = rootDirectory;
+        this.staging = new File(rootDirectory, Recorder.RECHUNK_DIRECTORY_NAME);
+        this.summaryFile = new File(this.staging, Recorder.SUMMARY_FILE_NAME);
+        this.windowFile = new File(this.staging, Recorder.WINDOW_FILE_NAME);
+        this.progressFile = new File(this.staging, PROGRESS_FILE_NAME);
+        this.groupSize = groupSize;
+        this.storage = storage;
+        this.resumable = resumable;
+        this.serials = new int[groupSize];
+        this.times = new double[groupSize];
+        this.flags = new byte[groupSize];
+        this.names = new ArrayList<>();
+        this.summaries = new ArrayList<>();
+        this.windowSummaries = new ArrayList<>();
+        this.windows = new WindowSummary.Builder();
+        this.next = this.count = this.sourceIndex = 0;
+
+        final JSONObject progress = (resumable && this.progressFile.exists()) ? new JSONObject(FileHelper.read(this.progressFile)) : null;
+
+        if (progress != null && progress.getInt(Recorder.GROUP_SIZE_KEY) == groupSize && progress.getInt(Recorder.STORAGE_KEY) == storage)
+            this.resume(progress.getInt(PROGRESS_FILES_KEY), progress.getInt(PROGRESS_SOURCE_KEY));
+        else
+            this.clear();
+    }
+
+    /**
+     * Returns whether a resumable rechunker left its progress in the rechunk directory of the given recorder,
+     * then the rechunk directory is kept after opening.
+     *
+     * @param rootDirectory the root directory of the recorder
+     * @return              whether the progress file exists
+     */
+    static boolean hasProgress(final File rootDirectory)
+    {
+        return new File(new File(rootDirectory, Recorder.RECHUNK_DIRECTORY_NAME), PROGRESS_FILE_NAME).exists();
+    }
+
+    /**
+     * Returns the storage of the new data files.
+     *
+     * @return              the storage which the rechunker is created with
+     */
+    byte getStorage()
+    {
+        return this.storage;
+    }
+
+    /**
+     * Returns the number of records per new data file.
+     *
+     * @return              the group size which the rechunker is created with
+     */
+    int getGroupSize()
+    {
+        return this.groupSize;
+    }
+
+    /**
+     * Returns the rechunk directory which contains the new files.
+     *
+     * @return              the rechunk directory
+     */
+    File getStaging()
+    {
+        return this.staging;
+    }
+
+    /**
+     * Returns the names of the new files in the rechunk directory, the summary files are included after
+     * {@link #finish(int)}.
+     *
+     * @return              the names of the new files
+     */
+    List<String> getNames()
+    {
+        return this.names;
+    }
+
+    /**
+     * Returns the window summaries of the first full new data files.
+     *
+     * @param count         the number of the full new data files
+     * @return              the window summaries
+     */
+    List<WindowSummary> getWindowSummaries(int count)
+    {
+        return this.windowSummaries.subList(0, count);
+    }
+
+    /**
+     * Deletes the rechunk directory and creates it again with empty summary files.
+     *
+     * @throws Exception    if error occurs, for example permission denied
+     */
+    @SyncTask
+    private void clear() throws Exception
+    {
+        FileHelper.deleteDirectories(this.staging, true);
+
+        if (!FileHelper.createNewDirectories(this.staging))
+            throw new IOException(BasicUtils.combined("Create directory false: ", this.staging.getAbsolutePath()));
+
+        FileHelper.createNewFile(this.summaryFile);
+        FileHelper.createNewFile(this.windowFile);
+    }
+
+    /**
+     * Keeps the given number of full new data files and their summaries, the files written after the
+     * progress are deleted. The windows are filled again by the last records of the kept data files.
+     *
+     * @param files         the number of full new data files in the progress
+     * @param sourceIndex   the index of the old data file which contains the first record to copy
+     *
+     * @throws Exception    if error occurs, for example no such file, permission denied
+     */
+    @SyncTask
+    private void resume(int files, int sourceIndex) throws Exception
+    {
+        for (final File staged : FileHelper.listFiles(this.staging, Recorder.ANY_DATA_FILE_REGEX))
+        {
+            if (Recorder.getDataFileIndex(staged) >= files)
+                FileHelper.deleteFile(staged);
+        }
+
+        for (final File temporary : FileHelper.listFiles(this.staging, Recorder.TEMPORARY_FILE_REGEX))
+            FileHelper.deleteFile(temporary);
+
+        ChunkSummary.truncate(this.summaryFile, files);
+        WindowSummary.truncate(this.windowFile, files);
+        this.summaries.addAll(ChunkSummary.readAll(this.summaryFile));
+        this.windowSummaries.addAll(WindowSummary.readAll(this.windowFile));
+
+        if (this.summaries.size() != files || this.windowSummaries.size() != files)
+        {
+            this.summaries.clear();
+            this.windowSummaries.clear();
+            this.clear();
+            return;
+        }
+
+        for (int i = 0; i < files; i++)
+            this.names.add(BasicUtils.combined(Recorder.DATA_FILE_PREFIX, i, Recorder.getDataFileExtension(this.storage)));
+
+        this.next = files * this.groupSize;
+        this.sourceIndex = sourceIndex;
+
+        // the windows of the next records start in the last records which are already copied
+        final int from = Math.max(this.next - WindowSummary.MAX_WINDOW_SIZE + 1, 0);
+
+        for (int i = from / this.groupSize; i < files; i++)
+        {
+            final Chunk chunk = this.source.readChunk(new File(this.staging, this.names.get(i)));
+
+            for (int j = 0; j < chunk.size; j++)
+            {
+                if (chunk.serials[j] >= from)
+                    this.windows.skip(((chunk.flags[j] & RecordLog.DNF_FLAG) == 0) ? Math.abs(chunk.times[j]) : Data.DNF);
+            }
+        }
+
+        this.windows.build();
+    }
+
+    /**
+     * Copies the records from the next serial to the given serial from the old data files.
+     *
+     * @param to            the last serial to copy, exclusive
+     *
+     * @throws Exception    if a record is missing or error occurs while reading
+     */
+    @SyncTask
+    void copy(int to) throws Exception
+    {
+        // aligned data files are read by range
+        while (this.source.isAligned() && this.next < to)
+        {
+            final int groupSize = this.source.getGroupSize();
+            final Chunk chunk = this.source.readRangeSync(this.next, Math.min((this.next / groupSize + 1) * groupSize, to));
+
+            for (int i = 0; i < chunk.size; i++)
+                this.add(chunk.serials[i], chunk.times[i], chunk.flags[i]);
+        }
+
+        for (final File dataFile : this.source.getDataFiles())
+        {
+            if (this.next >= to)
+                break;
+
+            if (Recorder.getDataFileIndex(dataFile) < this.sourceIndex)
+                continue;
+
+            this.sourceIndex = Recorder.getDataFileIndex(dataFile);
+            final Chunk chunk = this.source.readChunk(dataFile);
+
+            for (int i = 0; i < chunk.size && this.next < to; i++)
+            {
+                // old directories may contain a record in two data files
+                if (chunk.serials[i] < this.next)
+                    continue;
+
+                if (chunk.serials[i] != this.next)
+                    throw new IOException(BasicUtils.combined("Record: ", this.next, " is missing in data file: ", dataFile.getAbsolutePath()));
+
+                this.add(chunk.serials[i], chunk.times[i], chunk.flags[i]);
+            }
+        }
+
+        if (this.next < to)
+            throw new IOException(BasicUtils.combined("Records from: ", this.next, " are missing in: ", this.rootDirectory.getAbsolutePath()));
+    }
+
+    @SyncTask
+    private void add(int serial, double time, byte flags) throws Exception
+    {
+        this.serials[this.count] = serial;
+        this.times[this.count] = time;
+        this.flags[this.count] = flags;
+        this.windows.add(((flags & RecordLog.DNF_FLAG) == 0) ? Math.abs(time) : Data.DNF);
+        this.count++;
+        this.next++;
+
+        if (this.count == this.groupSize)
+            this.flush();
+    }
+
+    /**
+     * Writes the records which are not written yet to the next new data file. The summaries of a full data
+     * file are appended to the summary files, then the progress is written if the rechunker is resumable.
+     *
+     * @throws Exception    if error occurs, for example permission denied
+     */
+    @SyncTask
+    private void flush() throws Exception
+    {
+        final Chunk chunk = new Chunk(this.serials, this.times, this.flags, this.count);
+        final File dataFile = new File(this.staging, BasicUtils.combined(Recorder.DATA_FILE_PREFIX, this.names.size(), Recorder.getDataFileExtension(this.storage)));
+
+        Recorder.writeDataFile(dataFile, chunk, this.groupSize, this.storage);
+        this.names.add(dataFile.getName());
+
+        if (this.count == this.groupSize)
+        {
+            final ChunkSummary summary = ChunkSummary.of(chunk);
+            final WindowSummary windowSummary = this.windows.build();
+
+            ChunkSummary.append(this.summaryFile, summary);
+            WindowSummary.append(this.windowFile, windowSummary);
+            this.summaries.add(summary);
+            this.windowSummaries.add(windowSummary);
+
+            if (this.resumable)
+                this.writeProgress();
+        }
+
+        this.count = 0;
+    }
+
+    /**
+     * Writes the number of full new data files and the old data file to go on from to the progress file,
+     * it is written to a temporary file and renamed.
+     *
+     * @throws Exception    if error occurs, for example permission denied
+     */
+    @SyncTask
+    private void writeProgress() throws Exception
+    {
+        final JSONObject progress = new JSONObject().put(Recorder.GROUP_SIZE_KEY, this.groupSize).put(Recorder.STORAGE_KEY, this.storage)
+                                                    .put(PROGRESS_FILES_KEY, this.names.size()).put(PROGRESS_SOURCE_KEY, this.sourceIndex);
+        final File temporary = new File(this.staging, BasicUtils.combined(PROGRESS_FILE_NAME, Recorder.TEMPORARY_EXTENSION_NAME));
+        FileHelper.write(temporary, progress.toString(), false);
+
+        if (!temporary.renameTo(this.progressFile))
+            throw new IOException(BasicUtils.combined("Rename file false: ", temporary.getAbsolutePath()));
+    }
+
+    /**
+     * Writes the last new data file, which may be empty, and truncates the summary files to the full new data
+     * files before the new current data file of the given size. Appending must be stopped by the caller, then
+     * the files in {@link #getNames()} are swapped in.
+     *
+     * @param size          the number of records which are copied
+     * @return              the summaries of the full new data files before the new current data file
+     *
+     * @throws Exception    if error occurs, for example permission denied
+     */
+    @SyncTask
+    List<ChunkSummary> finish(int size) throws Exception
+    {
+        if (this.count > 0 || this.names.isEmpty())
+            this.flush();
+
+        final int current = (size == 0) ? 0 : (size - 1) / this.groupSize;
+        final List<ChunkSummary> summaries = new ArrayList<>(this.summaries.subList(0, Math.min(current, this.summaries.size())));
+
+        // the current data file is full if the size is a multiple of the group size, its summary is written later
+        ChunkSummary.truncate(this.summaryFile, summaries.size());
+        WindowSummary.truncate(this.windowFile, summaries.size());
+
+        this.names.add(Recorder.SUMMARY_FILE_NAME);
+        this.names.add(Recorder.WINDOW_FILE_NAME);
+        return summaries;
+    }
+}
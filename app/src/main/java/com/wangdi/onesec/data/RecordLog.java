@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ */
+
+package com.wangdi.onesec.data;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import com.wangdi.onesec.interfaces.SyncTask;
+import com.wangdi.onesec.utils.BasicUtils;
+
+/**
+ * <p>
+ * RecordLog provided methods to read and write the binary segment files of a number response recorder.
+ * A segment is an append-only file of fixed-width records, every record is a serial (int), a time (double)
+ * and some flags (byte).
+ * </p>
+ *
+ * <p>
+ * Appending a record only writes {@link #RECORD_SIZE} bytes at the end of the file, so the cost does not
+ * depend on how many records the segment already contains.
+ * </p>
+ *
+ * @see Chunk
+ * @author Di Wang
+ * @version 1.0
+ */
+
+public final class RecordLog
+{
+    public static final int RECORD_SIZE = Integer.BYTES + Double.BYTES + Byte.BYTES;
+
+    public static final byte DNF_FLAG = 0x01;
+
+    /**
+     * Returns the flags of a record with the given time.
+     *
+     * @param time              the time of the record
+     * @return                  the flags of the record
+     */
+    public static byte getFlags(double time)
+    {
+        return (time == Data.DNF) ? DNF_FLAG : 0;
+    }
+
+    /**
+     * Appends one record to the end of the given segment file.
+     *
+     * @param file              target segment file
+     * @param serial            the serial of the record
+     * @param time              the time of the record, {@link Data#DNF} if it is not finished
+     * @param flags             the flags of the record
+     *
+     * @throws Exception        if error occurs, for example no such file, permission denied
+     */
+    @SyncTask
+    public static void append(final File file, int serial, double time, byte flags) throws Exception
+    {
+        final ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        buffer.putInt(serial).putDouble(time).put(flags);
+
+        try (final FileOutputStream output = new FileOutputStream(file, true))
+        {
+            output.write(buffer.array());
+        }
+    }
+
+    /**
+     * Appends the records of the given chunk in range [from, to) to the end of the given segment file
+     * with one write.
+     *
+     * @param file              target segment file
+     * @param chunk             the records to append
+     * @param from              the first position to append, inclusive
+     * @param to                the last position to append, exclusive
+     *
+     * @throws Exception        if error occurs, for example no such file, permission denied
+     */
+    @SyncTask
+    public static void append(final File file, final Chunk chunk, int from, int to) throws Exception
+    {
+        final ByteBuffer buffer = ByteBuffer.allocate((to - from) * RECORD_SIZE);
+
+        for (int i = from; i < to; i++)
+            buffer.putInt(chunk.serials[i]).putDouble(chunk.times[i]).put(chunk.flags[i]);
+
+        try (final FileOutputStream output = new FileOutputStream(file, true))
+        {
+            output.write(buffer.array());
+        }
+    }
+
+    /**
+     * Appends the given number response to the end of the given segment file.
+     *
+     * @param file              target segment file
+     * @param data              the number response to append
+     *
+     * @throws Exception        if error occurs, for example no such file, permission denied
+     */
+    @SyncTask
+    public static void append(final File file, final Data.NumberResponse data) throws Exception
+    {
+        final double time = data.getTime();
+        append(file, data.getSerial(), time, getFlags(time));
+    }
+
+    /**
+     * Overwrites the record at the given position of the given segment file, only {@link #RECORD_SIZE}
+     * bytes are written.
+     *
+     * @param file              target segment file
+     * @param index             the position of the record, it must be less than the number of records
+     * @param serial            the serial of the record
+     * @param time              the new time of the record, {@link Data#DNF} if it is not finished
+     * @param flags             the new flags of the record
+     *
+     * @throws Exception        if the position is out of range or error occurs, for example permission denied
+     */
+    @SyncTask
+    public static void set(final File file, int index, int serial, double time, byte flags) throws Exception
+    {
+        if (index < 0 || index >= count(file))
+            throw new IOException(BasicUtils.combined("Record: ", index, " is not in segment file: ", file.getAbsolutePath()));
+
+        final ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        buffer.putInt(serial).putDouble(time).put(flags);
+
+        try (final RandomAccessFile access = new RandomAccessFile(file, "rw"))
+        {
+            access.seek((long)(index) * RECORD_SIZE);
+            access.write(buffer.array());
+        }
+    }
+
+    /**
+     * Reads all the complete records in the given segment file. A torn record at the end of the file
+     * (for example the application was killed while writing) is ignored.
+     *
+     * @param file              target segment file
+     * @return                  the decoded records
+     *
+     * @throws Exception        if error occurs, for example no such file, permission denied
+     */
+    @SyncTask
+    public static Chunk read(final File file) throws Exception
+    {
+        return read(file, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reads the complete records in range [from, to) of the given segment file, only the bytes
+     * of these records are read.
+     *
+     * @param file              target segment file
+     * @param from              the first position to read, inclusive
+     * @param to                the last position to read, exclusive, it is clamped to the number of records
+     * @return                  the decoded records
+     *
+     * @throws Exception        if error occurs, for example no such file, permission denied
+     */
+    @SyncTask
+    public static Chunk read(final File file, int from, int to) throws Exception
+    {
+        final int start = Math.max(from, 0);
+        final int size = Math.max(Math.min(to, count(file)) - start, 0);
+        final byte[] bytes = new byte[size * RECORD_SIZE];
+
+        try (final RandomAccessFile input = new RandomAccessFile(file, "r"))
+        {
+            input.seek((long)(start) * RECORD_SIZE);
+            int offset = 0, read;
+
+            while (offset < bytes.length && (read = input.read(bytes, offset, bytes.length - offset)) != -1)
+                offset += read;
+
+            if (offset != bytes.length)
+                throw new IOException(BasicUtils.combined("Segment file is truncated while reading: ", file.getAbsolutePath()));
+        }
+
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        final int[] serials = new int[size];
+        final double[] times = new double[size];
+        final byte[] flags = new byte[size];
+
+        for (int i = 0; i < size; i++)
+        {
+            serials[i] = buffer.getInt();
+            times[i] = buffer.getDouble();
+            flags[i] = buffer.get();
+        }
+
+        return new Chunk(serials, times, flags, size);
+    }
+
+    /**
+     * Returns the number of complete records in the given segment file.
+     *
+     * @param file              target segment file
+     * @return                  the number of complete records, 0 if the file does not exist
+     */
+    @SyncTask
+    public static int count(final File file)
+    {
+        return (int)(file.length() / RECORD_SIZE);
+    }
+
+    /**
+     * Truncates the given segment file to the given number of records, which drops a torn record
+     * or the records that are not counted in the manifest.
+     *
+     * @param file              target segment file
+     * @param size              the number of records to keep
+     *
+     * @throws Exception        if error occurs, for example no such file, permission denied
+     */
+    @SyncTask
+    public static void truncate(final File file, int size) throws Exception
+    {
+        final long length = (long)(size) * RECORD_SIZE;
+
+        if (file.length() <= length)
+            return;
+
+        try (final RandomAccessFile access = new RandomAccessFile(file, "rw"))
+        {
+            access.setLength(length);
+        }
+    }
+
+    private RecordLog()
+    {
+
+    }
+}
\ No newline at end of file
@@ -25,17 +25,49 @@
 
 package com.wangdi.onesec.data;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Deque;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.DoubleStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import java.util.zip.DataFormatException;
+import java.util.zip.GZIPOutputStream;
 
 import org.javatuples.Pair;
 import org.json.JSONArray;
@@ -43,10 +75,12 @@ import org.json.JSONObject;
 
 import androidx.annotation.NonNull;
 
+import com.wangdi.onesec.core.Logger;
 import com.wangdi.onesec.interfaces.AsyncTask;
 import com.wangdi.onesec.interfaces.SyncTask;
 import com.wangdi.onesec.utils.BasicUtils;
 import com.wangdi.onesec.utils.FileHelper;
+import com.wangdi.onesec.utils.Scheduler;
 
 /**
  * <p>
@@ -74,6 +108,10 @@ public class Recorder
     public static final String VERSION_KEY = "version";
     public static final String GROUP_SIZE_KEY = "group_size";
     public static final String DATA_SIZE_KEY = "data_size";
+    public static final String STORAGE_KEY = "storage";
+    public static final String CHECKPOINT_INTERVAL_KEY = "checkpoint_interval";
+    public static final String PACKING_KEY = "packing";
+    public static final String ALIGNED_KEY = "aligned";
 
     public static final String BEST_KEY = "best";
     public static final String AVERAGE_KEY = "average";
@@ -81,6 +119,8 @@ public class Recorder
     public static final String CURRENT_KEY = "current";
 
     public static final String RECORDS_KEY = "records";
+    // the wall-clock time of an exported record, it is absent if the record has no timestamp
+    public static final String TIMESTAMP_KEY = "timestamp";
 
     public static final String ALL_KEY = "all";
     public static final String MO3_KEY = "mo3";
@@ -89,37 +129,69 @@ public class Recorder
     public static final String AO100_KEY = "ao100";
     //only number of effective data, DNF is not included
     public static final String VALID_SIZE_KEY = "valid_size";
+    public static final String QUANTILES_KEY = "quantiles";
+    // the storage a number response recorder is migrating to, only present while the migration is not finished
+    public static final String MIGRATION_KEY = "migration";
 
-    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(4);
+    // pretty-printed JSON data files, every append rewrites the whole current file
+    public static final byte JSON_STORAGE = 0;
+    // append-only binary segment files, only available for number response
+    public static final byte BINARY_STORAGE = 1;
+    // memory-mapped column files, only available for number response
+    public static final byte COLUMNAR_STORAGE = 2;
 
-    private static final String VERSION = "1.0";
-    private static final String DATA_FILE_PREFIX = "data";
-    private static final String JSON_EXTENSION_NAME = ".json";
-    private static final String MANIFEST_FILE_NAME = "manifest.json";
-    private static final String DATA_FILE_REGEX = "^data\\d+\\.json$";
+    // number of attempts journaled between two manifest checkpoints
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 50;
+    // number of the last attempts which can be removed, their statistics before them are kept
+    public static final int UNDO_DEPTH = 100;
+    // full data files are kept in the storage format
+    public static final byte PACK_NONE = 0;
+    // full data files are rewritten in the compact format of ChunkCodec
+    public static final byte PACK_VARINT = 1;
+    // same as PACK_VARINT, and the records are compressed by DEFLATE
+    public static final byte PACK_DEFLATE = 2;
 
-    static
-    {
-        Runtime.getRuntime().addShutdownHook(new Thread(() ->
-        {
-            System.out.println("Shutting down recorder's executor...");
-            shutdown();
+    // bytes of decoded chunks kept in memory by a recorder, about 300 thousand records
+    public static final long DEFAULT_CACHE_BUDGET = 4L << 20;
 
-            try
-            {
-                if (!EXECUTOR.awaitTermination(5, TimeUnit.SECONDS))
-                    EXECUTOR.shutdownNow();
+    // decodes independent data files concurrently, one core is left for the ui thread
+    private static final ForkJoinPool READ_POOL = new ForkJoinPool(Math.max(Runtime.getRuntime().availableProcessors() - 1, 1));
+    // errors of the background tasks of all recorders, they are printed to the standard error if it is not set
+    private static volatile Logger LOGGER = null;
 
-            }
-            catch (InterruptedException e)
-            {
-                EXECUTOR.shutdownNow();
-            }
-        }));
-    }
+    // every version of the directory format in order, a directory with an older version is upgraded
+    // one version at a time after opening, see NumberResponse#upgradeSync()
+    private static final String[] VERSIONS = {"1.0", "2.0"};
+    private static final String VERSION = VERSIONS[VERSIONS.length - 1];
+    static final String DATA_FILE_PREFIX = "data";
+    private static final String JSON_EXTENSION_NAME = ".json";
+    private static final String BINARY_EXTENSION_NAME = ".bin";
+    private static final String COLUMNAR_EXTENSION_NAME = ".col";
+    private static final String PACKED_EXTENSION_NAME = ".pak";
+    static final String TEMPORARY_EXTENSION_NAME = ".tmp";
+    private static final String MANIFEST_FILE_NAME = "manifest.json";
+    private static final String JOURNAL_FILE_NAME = "journal.bin";
+    static final String SUMMARY_FILE_NAME = "summary.bin";
+    private static final String TAIL_FILE_NAME = "tail.bin";
+    private static final String UNDO_FILE_NAME = "undo.bin";
+    static final String WINDOW_FILE_NAME = "windows.bin";
+    private static final String TIMESTAMP_FILE_NAME = "timestamps.bin";
+    private static final String JSON_DATA_FILE_REGEX = "^data\\d+\\.(json|pak)$";
+    private static final String BINARY_DATA_FILE_REGEX = "^data\\d+\\.(bin|pak)$";
+    private static final String COLUMNAR_DATA_FILE_REGEX = "^data\\d+\\.(col|pak)$";
+    static final String TEMPORARY_FILE_REGEX = "^data\\d+\\.(json|bin|col|pak)\\.tmp$";
+    static final String ANY_DATA_FILE_REGEX = "^data\\d+\\.(json|bin|col|pak)$";
+    static final String RECHUNK_DIRECTORY_NAME = "rechunk";
+    private static final String RECHUNK_MARKER_NAME = "rechunk.commit";
+    private static final int EXPORT_BUFFER_SIZE = 1 << 16;
+    // the keys of the manifest file which describe the directory rather than the history, they are not exported
+    private static final String[] DIRECTORY_KEYS = {STORAGE_KEY, CHECKPOINT_INTERVAL_KEY, PACKING_KEY, ALIGNED_KEY, QUANTILES_KEY, MIGRATION_KEY};
+    private static final int IMPORT_BATCH_SIZE = 1 << 14;
+    private static final int MAX_COALESCED_RECORDS = 1 << 12;
+    private static final byte NO_MIGRATION = -1;
 
     /**
-     * Create a new recorder in ui thread (not recommended use directly).
+     * Create a new recorder which stores data in JSON files in ui thread (not recommended use directly).
      * 
      * @param rootDirectory     the target directory to store all the data, must be empty
      * @param groupSize         number of records per file
@@ -130,6 +202,24 @@ public class Recorder
      */
     @SyncTask
     public static Recorder createSync(final File rootDirectory, int groupSize, byte dataType) throws Exception
+    {
+        return createSync(rootDirectory, groupSize, dataType, JSON_STORAGE);
+    }
+
+    /**
+     * Create a new recorder in ui thread (not recommended use directly).
+     *
+     * @param rootDirectory     the target directory to store all the data, must be empty
+     * @param groupSize         number of records per file
+     * @param dataType          the type of data to record
+     * @param storage           the storage mode of data files, {@link #JSON_STORAGE}, {@link #BINARY_STORAGE} or {@link #COLUMNAR_STORAGE}
+     * @return                  the created recorder
+     *
+     * @throws IOException      if the directory is not empty
+     * @throws DataFormatException if the storage mode is not supported by the data type
+     */
+    @SyncTask
+    public static Recorder createSync(final File rootDirectory, int groupSize, byte dataType, byte storage) throws Exception
     {
         final File[] files = rootDirectory.listFiles();
 
@@ -137,8 +227,14 @@ public class Recorder
         {
             switch (dataType)
             {
-                case Data.NUMBER_RESPONSE_TYPE: return new NumberResponse(rootDirectory, groupSize);
-                default: return new Recorder(rootDirectory, groupSize, dataType);
+                case Data.NUMBER_RESPONSE_TYPE: return new NumberResponse(rootDirectory, groupSize, storage);
+                default:
+                {
+                    if (storage != JSON_STORAGE)
+                        throw new DataFormatException(BasicUtils.combined("Storage: ", storage, " is not supported by data type: ", dataType));
+
+                    return new Recorder(rootDirectory, groupSize, dataType, storage);
+                }
             }
         }
 
@@ -158,7 +254,24 @@ public class Recorder
     @AsyncTask
     public static Recorder create(final File rootDirectory, int groupSize, byte dataType) throws Exception
     {
-        return BasicUtils.handleFutureResult(EXECUTOR.submit(() -> createSync(rootDirectory, groupSize, dataType)));
+        return BasicUtils.handleFutureResult(Scheduler.submit(Scheduler.READ, () -> createSync(rootDirectory, groupSize, dataType)));
+    }
+
+    /**
+     * Create a new recorder with the given storage mode in specific thread (recommended).
+     *
+     * @param rootDirectory     the target directory to store all the data, must be empty
+     * @param groupSize         number of records per file
+     * @param dataType          the type of data to record
+     * @param storage           the storage mode of data files, {@link #JSON_STORAGE}, {@link #BINARY_STORAGE} or {@link #COLUMNAR_STORAGE}
+     * @return                  the created recorder
+     *
+     * @throws IOException      if the directory is not empty
+     */
+    @AsyncTask
+    public static Recorder create(final File rootDirectory, int groupSize, byte dataType, byte storage) throws Exception
+    {
+        return BasicUtils.handleFutureResult(Scheduler.submit(Scheduler.READ, () -> createSync(rootDirectory, groupSize, dataType, storage)));
     }
 
     /**
@@ -192,7 +305,7 @@ public class Recorder
     @AsyncTask
     public static Recorder load(final File rootDirectory, byte dataType) throws Exception
     {
-        return BasicUtils.handleFutureResult(EXECUTOR.submit(() -> loadSync(rootDirectory, dataType)));
+        return BasicUtils.handleFutureResult(Scheduler.submit(Scheduler.READ, () -> loadSync(rootDirectory, dataType)));
     }
 
     /**
@@ -209,6 +322,24 @@ public class Recorder
      */
     @SyncTask
     public static Recorder autoSync(final File rootDirectory, int groupSize, byte dataType) throws Exception
+    {
+        return autoSync(rootDirectory, groupSize, dataType, JSON_STORAGE);
+    }
+
+    /**
+     * Same as {@link #autoSync(File, int, byte)}, but a newly created recorder uses the given storage mode.
+     * A loaded recorder always keeps the storage mode written in its manifest, so old directories stay readable.
+     *
+     * @param rootDirectory     the target directory to store all the data
+     * @param groupSize         number of records per file
+     * @param dataType          the type of data to record
+     * @param storage           the storage mode of data files if a new recorder is created
+     * @return                  the loaded recorder
+     *
+     * @throws DataFormatException if the recorder is not in the correct format
+     */
+    @SyncTask
+    public static Recorder autoSync(final File rootDirectory, int groupSize, byte dataType, byte storage) throws Exception
     {
         final File[] files = FileHelper.listFiles(rootDirectory);
 
@@ -220,7 +351,7 @@ public class Recorder
             FileHelper.deleteDirectories(rootDirectory, false);
         }
 
-        return createSync(rootDirectory, groupSize, dataType);
+        return createSync(rootDirectory, groupSize, dataType, storage);
     }
 
     /**
@@ -238,11 +369,29 @@ public class Recorder
     @AsyncTask
     public static Recorder auto(final File rootDirectory, int groupSIze, byte dataType) throws Exception
     {
-        return BasicUtils.handleFutureResult(EXECUTOR.submit(() -> autoSync(rootDirectory, groupSIze, dataType)));
+        return BasicUtils.handleFutureResult(Scheduler.submit(Scheduler.READ, () -> autoSync(rootDirectory, groupSIze, dataType)));
+    }
+
+    /**
+     * Same as {@link #auto(File, int, byte)}, but a newly created recorder uses the given storage mode.
+     *
+     * @param rootDirectory     the target directory to store all the data
+     * @param groupSize         number of records per file
+     * @param dataType          the type of data to record
+     * @param storage           the storage mode of data files if a new recorder is created
+     * @return                  the loaded recorder
+     *
+     * @throws DataFormatException if the recorder is not in the correct format
+     */
+    @AsyncTask
+    public static Recorder auto(final File rootDirectory, int groupSize, byte dataType, byte storage) throws Exception
+    {
+        return BasicUtils.handleFutureResult(Scheduler.submit(Scheduler.READ, () -> autoSync(rootDirectory, groupSize, dataType, storage)));
     }
 
     /**
-     * Shuts down the executor service, and all the threads in it.
+     * Shuts down the pool decoding data files, the other work of recorders runs in {@link Scheduler}
+     * which is shut down by itself.
      * 
      * <p>
      * This method is intended to be called in the main thread, before the application is
@@ -252,15 +401,90 @@ public class Recorder
     @SyncTask
     public static void shutdown()
     {
-        EXECUTOR.shutdown();
+        READ_POOL.shutdown();
+    }
+
+    /**
+     * Returns the maximum number of data files decoded at the same time.
+     *
+     * @return                  the parallelism of reading
+     */
+    public static int getReadParallelism()
+    {
+        return READ_POOL.getParallelism();
+    }
+
+    /**
+     * Sets the logger which records the errors of the background tasks of all recorders, for example
+     * packing data files after a checkpoint.
+     *
+     * @param logger            the logger, null prints the errors to the standard error
+     */
+    public static void setLogger(final Logger logger)
+    {
+        LOGGER = logger;
+    }
+
+    /**
+     * Logs the given messages as a warning with the logger set by {@link #setLogger(Logger)}.
+     *
+     * @param messages          the messages to log
+     */
+    protected static void logWarning(Object... messages)
+    {
+        final Logger logger = LOGGER;
+
+        if (logger != null)
+            logger.warning(messages);
+        else
+            System.err.println(BasicUtils.combined(messages));
+    }
+
+    /**
+     * Logs the given exception as an error with the logger set by {@link #setLogger(Logger)}.
+     *
+     * @param e                 the exception to log
+     */
+    protected static void logError(final Exception e)
+    {
+        final Logger logger = LOGGER;
+
+        if (logger != null)
+            logger.error(BasicUtils.getStackTraceAsString(e));
+        else
+            System.err.println(BasicUtils.getStackTraceAsString(e));
+    }
+
+    /**
+     * Decodes a data file of a recorder.
+     *
+     * @param <T>               the type of the decoded content
+     */
+    protected interface DataFileDecoder<T>
+    {
+        T decode(final File dataFile) throws Exception;
     }
 
-    protected final int groupSize;
+    protected int groupSize;
     protected final byte dataType;
+    // only changed by the migration of a number response recorder, with the write lock of the layout
+    protected byte storage;
     protected final File rootDirectory;
     protected final File manifestFile;
     protected final JSONObject AllJson;
     protected final List<File> dataFiles;
+    protected final ChunkCache cache;
+    // indexes of the data files which are rewritten in the compact format
+    protected final Set<Integer> packedIndexes;
+    // the storage the data files are migrating to, NO_MIGRATION if no migration is running, and the indexes
+    // of the full data files which are already rewritten in that storage
+    protected volatile byte migration;
+    protected final Set<Integer> migratedIndexes;
+    // the readers which find data files by index hold the read lock, the data files are swapped with the write lock
+    protected final ReentrantReadWriteLock layoutLock;
+    // the writes waiting to be applied in order, only one task drains the queue at a time
+    private final ConcurrentLinkedQueue<PendingWrite> writeQueue;
+    private final AtomicBoolean draining;
 
     protected int size ;
     protected int validSize;
@@ -268,6 +492,8 @@ public class Recorder
     protected Data best;
     protected Data worst;
     protected File currentDataFile;
+    // the mapped current data file in columnar storage, null in other storages
+    protected ColumnStore currentColumns;
 
     protected JSONObject manifestJson;
     protected JSONObject currentDataFileJson;
@@ -277,6 +503,8 @@ public class Recorder
     @SyncTask
     private Recorder(final File rootDirectory, byte dataType) throws Exception
     {
+        recoverRechunk(rootDirectory);
+
         this.rootDirectory = rootDirectory;
         this.manifestFile = new File(rootDirectory, MANIFEST_FILE_NAME);
         this.manifestJson = new JSONObject(FileHelper.read(this.manifestFile));
@@ -290,47 +518,71 @@ public class Recorder
         this.size = this.manifestJson.getInt(DATA_SIZE_KEY);
         this.validSize = this.manifestJson.getInt(VALID_SIZE_KEY);
         this.groupSize = this.manifestJson.getInt(GROUP_SIZE_KEY);
+        // directories created before binary storage do not have the key
+        this.storage = this.manifestJson.has(STORAGE_KEY) ? (byte)(this.manifestJson.getInt(STORAGE_KEY)) : JSON_STORAGE;
+        this.migration = this.manifestJson.has(MIGRATION_KEY) ? (byte)(this.manifestJson.getInt(MIGRATION_KEY)) : NO_MIGRATION;
         this.best = this.AllJson.has(BEST_KEY) ? Data.load(this.AllJson.getJSONObject(BEST_KEY), this.dataType) : null;
         this.worst = this.AllJson.has(WORST_KEY) ? Data.load(this.AllJson.getJSONObject(WORST_KEY), this.dataType) : null;
         this.current = this.AllJson.has(CURRENT_KEY) ? Data.load(this.AllJson.getJSONObject(CURRENT_KEY), this.dataType) : null;
 
         final String version = this.manifestJson.getString(VERSION_KEY);
 
-        if (!version.equals(VERSION))
-            throw new DataFormatException(BasicUtils.combined("Data load error: expected type: ", this.dataType, " but given: ", dataType));
+        if (!isSupportedVersion(version))
+            throw new DataFormatException(BasicUtils.combined("Data load error: version: ", version, " is not supported, the latest version is: ", VERSION));
 
-        final int index = this.size / this.groupSize;
-        this.currentDataFile = this.getDataFile(index);
+        final File[] dataFile = FileHelper.listFiles(this.rootDirectory, this.getDataFileRegex());
+        this.dataFiles = new CopyOnWriteArrayList<>(this.resolvePackedFiles(dataFile));
+        this.packedIndexes = ConcurrentHashMap.newKeySet();
+        this.migratedIndexes = ConcurrentHashMap.newKeySet();
+        this.cache = new ChunkCache(DEFAULT_CACHE_BUDGET);
+        this.layoutLock = new ReentrantReadWriteLock();
+        this.writeQueue = new ConcurrentLinkedQueue<>();
+        this.draining = new AtomicBoolean(false);
 
-        final File[] dataFile = FileHelper.listFiles(this.rootDirectory, DATA_FILE_REGEX);
-        this.dataFiles = new ArrayList<>(Arrays.asList(dataFile));
+        for (final File file : this.dataFiles)
+        {
+            if (file.getName().endsWith(PACKED_EXTENSION_NAME))
+                this.packedIndexes.add(getDataFileIndex(file));
+            else if (this.migration != NO_MIGRATION && getFileStorage(file) == this.migration && this.migration != this.storage)
+                this.migratedIndexes.add(getDataFileIndex(file));
+        }
 
-        if (!this.currentDataFile.exists())
+        // the migration was stopped after the current data file is rewritten, only the manifest file is left
+        if (this.migratedIndexes.contains((this.size == 0) ? 0 : (this.size - 1) / this.groupSize))
         {
-            final Pair<File, JSONObject> newFile = this.createNewDataFile(index);
-            this.currentDataFile = newFile.getValue0();
-            this.currentDataFileJson = newFile.getValue1();
+            this.storage = this.migration;
+            this.migration = NO_MIGRATION;
+            this.migratedIndexes.clear();
+            this.manifestJson.put(STORAGE_KEY, this.storage).remove(MIGRATION_KEY);
+            this.updateManifestFile();
         }
-        else
-            this.currentDataFileJson = new JSONObject(FileHelper.read(this.currentDataFile));
 
-        this.records = this.currentDataFileJson.getJSONArray(RECORDS_KEY);
+        // the file which contains the last record, a new file is created by the next append if it is full
+        this.rollDataFile((this.size == 0) ? 0 : (this.size - 1) / this.groupSize);
     }
 
     // create new instance
     @SyncTask
-    private Recorder(final File rootDirectory, int groupSize, byte dataType) throws Exception
+    private Recorder(final File rootDirectory, int groupSize, byte dataType, byte storage) throws Exception
     {
         if (!rootDirectory.exists() && !FileHelper.createNewDirectories(rootDirectory))
             throw new IOException("Create directory false: " + rootDirectory.getAbsolutePath());
 
         this.dataType = dataType;
+        this.storage = storage;
         this.size = this.validSize = 0;
         this.groupSize = groupSize;
         this.best = this.worst = this.current = null;
         this.rootDirectory = rootDirectory;
         this.manifestFile = new File(rootDirectory, MANIFEST_FILE_NAME);
-        this.dataFiles = new ArrayList<>();
+        this.dataFiles = new CopyOnWriteArrayList<>();
+        this.packedIndexes = ConcurrentHashMap.newKeySet();
+        this.migration = NO_MIGRATION;
+        this.migratedIndexes = ConcurrentHashMap.newKeySet();
+        this.cache = new ChunkCache(DEFAULT_CACHE_BUDGET);
+        this.layoutLock = new ReentrantReadWriteLock();
+        this.writeQueue = new ConcurrentLinkedQueue<>();
+        this.draining = new AtomicBoolean(false);
 
         if (FileHelper.createNewFile(this.manifestFile) && !this.manifestFile.exists())
             throw new IOException("Create file false: " + this.manifestFile.getAbsolutePath());
@@ -339,14 +591,9 @@ public class Recorder
         this.AllJson = new JSONObject();
         this.manifestJson.put(VERSION_KEY, VERSION).put(DATA_TYPE_KEY, dataType).put(GROUP_SIZE_KEY, groupSize)
                          .put(DATA_SIZE_KEY, 0).put(GROUP_SIZE_KEY, groupSize).put(ALL_KEY, AllJson)
-                         .put(VALID_SIZE_KEY, 0);
-
-        final Pair<File, JSONObject> newData = this.createNewDataFile(0);
-
-        this.currentDataFile = newData.getValue0();
-        this.currentDataFileJson = newData.getValue1();
-        this.records = this.currentDataFileJson.getJSONArray(RECORDS_KEY);
+                         .put(VALID_SIZE_KEY, 0).put(STORAGE_KEY, storage).put(ALIGNED_KEY, true);
 
+        this.rollDataFile(0);
         this.updateManifestFile();
     }
 
@@ -386,34 +633,190 @@ public class Recorder
         this.AllJson.put(CURRENT_KEY, data);
 
         if (this.size % this.groupSize == 1 && this.size != 1)
-        {
-            final Pair<File, JSONObject> newData = this.createNewDataFile(this.size / groupSize);
-            this.dataFiles.add(newData.getValue0());
-            this.currentDataFile = newData.getValue0();
-            this.currentDataFileJson = newData.getValue1();
-            this.records = this.currentDataFileJson.getJSONArray(RECORDS_KEY);
-        }
-
-        this.records.put(data.toJson());
+            this.rollDataFile(this.size / groupSize);
 
-        this.updateDataFile();
+        this.appendRecord(data);
         this.updateManifestFile();
     }
 
     /**
-     * Adds a new data object to the record in specific thread (recommended).
+     * Adds a new data object to the record in specific thread, the caller waits until it is saved.
      * 
      * @param data              the data object to add
      * 
      * @throws Exception        if error occurs, for example no such file, permission denied
+     * @deprecated              the caller is blocked by all the writes queued before, use {@link #enqueueData(Data)}
      */
+    @Deprecated
     @AsyncTask
     public void addData(final Data data) throws Exception
     {
-        BasicUtils.handleFutureResult(EXECUTOR.submit(() -> {
+        BasicUtils.handleFutureResult(this.enqueueData(data));
+    }
+
+    /**
+     * Queues a new data object without blocking the caller, see {@link #enqueueWrite(Callable)}.
+     *
+     * @param data              the data object to add
+     * @return                  the future which is completed after the data object is saved
+     */
+    @AsyncTask
+    public CompletableFuture<Void> enqueueData(final Data data)
+    {
+        return this.enqueueWrite(() -> {
             this.addDataSync(data);
             return null;
-        }));
+        });
+    }
+
+    /**
+     * Queues the given write of this recorder without blocking the caller. The writes of a recorder are applied
+     * one by one in the order they are queued, so they never run in parallel on the fields of the recorder.
+     *
+     * @param task              the write to apply
+     * @return                  the future which is completed with the result of the write after it is applied
+     */
+    @AsyncTask
+    public <T> CompletableFuture<T> enqueueWrite(final Callable<T> task)
+    {
+        return this.enqueue(new PendingWrite(task, null, null));
+    }
+
+    /**
+     * Returns a future which is completed after all the writes queued before are applied, for example before
+     * the application goes to background.
+     *
+     * @return                  the future of the queued writes
+     */
+    @AsyncTask
+    public CompletableFuture<Void> flush()
+    {
+        return this.enqueueWrite(() -> null);
+    }
+
+    /**
+     * Returns the number of writes which are queued but not applied yet.
+     *
+     * @return                  the number of pending writes
+     */
+    public int getPendingWriteCount()
+    {
+        return this.writeQueue.size();
+    }
+
+    /**
+     * Adds the given write to the queue and starts draining the queue if no task is draining it.
+     *
+     * @param write             the write to queue
+     * @return                  the future of the write
+     */
+    @SuppressWarnings("unchecked")
+    protected <T> CompletableFuture<T> enqueue(final PendingWrite write)
+    {
+        this.writeQueue.add(write);
+
+        if (this.draining.compareAndSet(false, true))
+            Scheduler.execute(Scheduler.PERSIST, this::drainWrites);
+
+        return (CompletableFuture<T>)(write.future);
+    }
+
+    /**
+     * Applies the queued writes in order until the queue is empty. The successive appends of times are
+     * coalesced and applied by one {@link #appendTimesSync(double[], long[])}, so they are written once under load.
+     */
+    @SyncTask
+    private void drainWrites()
+    {
+        do
+        {
+            PendingWrite write;
+
+            while ((write = this.writeQueue.poll()) != null)
+            {
+                if (write.task != null)
+                {
+                    try {write.future.complete(write.task.call());}
+                    catch (Throwable e) {write.future.completeExceptionally(e);}
+                    continue;
+                }
+
+                final List<PendingWrite> batch = new ArrayList<>();
+                int count = write.times.length;
+                batch.add(write);
+
+                for (PendingWrite next; (next = this.writeQueue.peek()) != null && next.times != null
+                     && count + next.times.length <= MAX_COALESCED_RECORDS; count += next.times.length)
+                    batch.add(this.writeQueue.poll());
+
+                this.applyAppends(batch, count);
+            }
+
+            this.draining.set(false);
+        }
+        while (!this.writeQueue.isEmpty() && this.draining.compareAndSet(false, true));
+    }
+
+    /**
+     * Applies the given successive appends with one write, every future is completed with the serial
+     * of its first record.
+     *
+     * @param batch             the appends to apply in order
+     * @param count             the number of times in all the appends
+     */
+    @SyncTask
+    private void applyAppends(final List<PendingWrite> batch, int count)
+    {
+        final double[] times = new double[count];
+        final long[] timestamps = new long[count];
+        int offset = 0;
+
+        for (final PendingWrite write : batch)
+        {
+            System.arraycopy(write.times, 0, times, offset, write.times.length);
+
+            if (write.timestamps != null)
+                System.arraycopy(write.timestamps, 0, timestamps, offset, write.timestamps.length);
+
+            offset += write.times.length;
+        }
+
+        try
+        {
+            int serial = this.appendTimesSync(times, timestamps);
+
+            for (final PendingWrite write : batch)
+            {
+                write.future.complete(serial);
+                serial += write.times.length;
+            }
+        }
+        catch (Throwable e)
+        {
+            for (final PendingWrite write : batch)
+                write.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Appends the given times as new number responses in ui thread (not recommended use directly). The records are
+     * added one by one by {@link #addDataSync(Data)}, the base recorder does not keep their timestamps.
+     *
+     * @param times             the times to append in order
+     * @param timestamps        the timestamps of the records, {@link TimestampLog#NO_TIMESTAMP} for a record without one
+     * @return                  the serial of the first appended record
+     *
+     * @throws Exception        if the recorder does not record number responses, or error occurs while writing
+     */
+    @SyncTask
+    protected int appendTimesSync(final double[] times, final long[] timestamps) throws Exception
+    {
+        final int serial = this.size;
+
+        for (final double time : times)
+            this.addDataSync(new Data.NumberResponse(this.size, time));
+
+        return serial;
     }
 
     /**
@@ -439,7 +842,7 @@ public class Recorder
     @AsyncTask
     public boolean delete() throws Exception
     {
-        return BasicUtils.handleFutureResult(EXECUTOR.submit(this::deleteSync));
+        return BasicUtils.handleFutureResult(Scheduler.submit(Scheduler.PERSIST, this::deleteSync));
     }
 
     /**
@@ -450,7 +853,7 @@ public class Recorder
     public int getSize()
     {
         try {return this.manifestJson.has(DATA_SIZE_KEY) ? this.manifestJson.getInt(DATA_SIZE_KEY) : 0;}
-        catch (Exception e) {System.err.println(BasicUtils.getStackTraceAsString(e)); return 0;}
+        catch (Exception e) {logError(e); return 0;}
     }
 
     /**
@@ -465,89 +868,471 @@ public class Recorder
     {
         final List<Data> allData = new ArrayList<>(this.dataFiles.size() * this.groupSize);
 
-        for (final File dataFile : this.dataFiles)
-        {
-            final JSONObject part = new JSONObject(FileHelper.read(dataFile));
-            final JSONArray partSessions = part.getJSONArray(RECORDS_KEY);
-
-            for (int i = 0; i < partSessions.length(); i++)
-                allData.add(Data.load(partSessions.getJSONObject(i), this.dataType));
-        }
+        for (final List<Data> part : this.decodeDataFiles(this::readDataFile))
+            allData.addAll(part);
 
         return allData;
     }
 
     /**
-     * Returns all data objects in the record in specific thread (recommended).
-     * 
-     * @return                  all data objects in the record
-     * 
-     * @throws Exception        if error occurs, for example no such file, permission denied
-     */
-    @AsyncTask
-    public List<Data> getAllData() throws Exception
-    {
-        return BasicUtils.handleFutureResult(EXECUTOR.submit(this::getAllDataSync));
-    }
-
-    /**
-     * Returns the JSONObject representation of this Recorder object in ui thread (not recommended use directly).
-     * 
-     * @return                  the JSONObject representation of this Recorder object
-     * 
+     * Decodes all the data files with the given decoder concurrently, the results are in the same order
+     * as the data files, which is the serial order.
+     *
+     * @param decoder           the decoder of one data file
+     * @param <T>               the type of the decoded content
+     * @return                  the decoded content of every data file
+     *
      * @throws Exception        if error occurs, for example no such file, permission denied
      */
     @SyncTask
-    protected JSONObject toJsonSync() throws Exception
+    protected <T> List<T> decodeDataFiles(final DataFileDecoder<T> decoder) throws Exception
     {
-        final JSONObject json = new JSONObject(FileHelper.read(this.manifestFile));
-        final JSONArray sessions = new JSONArray();
+        // the tasks do not take the lock, a waiting writer would block them while this thread holds it
+        this.layoutLock.readLock().lock();
 
-        for (final File dataFile : this.dataFiles)
+        try
         {
-            final JSONObject part = new JSONObject(FileHelper.read(dataFile));
-            final JSONArray partSessions = part.getJSONArray(RECORDS_KEY);
+            final List<File> dataFiles = new ArrayList<>(this.dataFiles);
+            final List<T> results = new ArrayList<>(dataFiles.size());
 
-            for (int i = 0; i < partSessions.length(); i++)
-                sessions.put(partSessions.get(i));
-        }
+            if (dataFiles.size() <= 1 || READ_POOL.getParallelism() == 1)
+            {
+                for (final File dataFile : dataFiles)
+                    results.add(decoder.decode(dataFile));
 
-        json.put(VERSION_KEY, VERSION).put(BEST_KEY, this.best).put(GROUP_SIZE_KEY, this.groupSize).put(RECORDS_KEY, sessions);
-        return json;
+                return results;
+            }
+
+            final List<Callable<T>> tasks = new ArrayList<>(dataFiles.size());
+
+            for (final File dataFile : dataFiles)
+                tasks.add(() -> decoder.decode(dataFile));
+
+            for (final Future<T> future : READ_POOL.invokeAll(tasks))
+                results.add(BasicUtils.handleFutureResult(future));
+
+            return results;
+        }
+        finally
+        {
+            this.layoutLock.readLock().unlock();
+        }
     }
 
     /**
-     * Returns the JSONObject representation of this Recorder object in a specific thread (recommended).
+     * Returns all data objects in the record in specific thread (recommended).
      * 
-     * @return                  the JSONObject representation of this Recorder object
+     * @return                  all data objects in the record
      * 
      * @throws Exception        if error occurs, for example no such file, permission denied
      */
     @AsyncTask
-    public JSONObject toJson() throws Exception
+    public List<Data> getAllData() throws Exception
     {
-        return BasicUtils.handleFutureResult(EXECUTOR.submit(this::toJsonSync));
+        return BasicUtils.handleFutureResult(Scheduler.submit(Scheduler.READ, this::getAllDataSync));
     }
 
     /**
-     * Returns the string representation of this Recorder object.
+     * Returns an iterator over the data objects in the record from the given serial. Only one data file
+     * is decoded at a time, so the memory does not grow with the size of the record. The iterator reads
+     * files while it moves, it should be used in a worker thread.
      *
-     * @return                  the string representation of this Recorder object in JSON format
-     * 
-     * @throws RuntimeException if an exception occurs while converting to JSON
+     * @param fromSerial        the serial of the first data object
+     * @return                  the iterator in serial order
      */
-    @NonNull
-    @Override
-    public String toString()
+    @SyncTask
+    public HistoryIterator iterator(int fromSerial)
     {
-        try
-        {
-            return this.toJson().toString();
-        }
-        catch (Exception e)
-        {
-            throw new RuntimeException(e);
-        }
+        return new HistoryIterator(fromSerial, this.size, this.groupSize);
+    }
+
+    /**
+     * Returns a sequential stream over the data objects in the record from the given serial,
+     * see {@link #iterator(int)}.
+     *
+     * @param fromSerial        the serial of the first data object
+     * @return                  the stream in serial order
+     */
+    @SyncTask
+    public Stream<Data> stream(int fromSerial)
+    {
+        final HistoryIterator iterator = this.iterator(fromSerial);
+        return StreamSupport.stream(Spliterators.spliterator(iterator, iterator.remaining(),
+                                    Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Returns the data objects in serial range [from, to) for {@link HistoryIterator} in worker thread.
+     * The base recorder decodes the data file which starts with the given serial.
+     *
+     * @param from              the first serial of a data file, inclusive
+     * @param to                the last serial, exclusive
+     * @return                  the data objects in serial order
+     *
+     * @throws Exception        if error occurs, for example no such file, permission denied
+     */
+    @SyncTask
+    protected List<Data> readPartSync(int from, int to) throws Exception
+    {
+        this.layoutLock.readLock().lock();
+
+        try
+        {
+            return this.readDataFile(this.getDataFile(from / this.groupSize));
+        }
+        finally
+        {
+            this.layoutLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * An iterator over the data objects of a recorder, which decodes one data file at a time.
+     * The records added after the iterator is created are not included.
+     */
+    public final class HistoryIterator implements Iterator<Data>
+    {
+        private final int end;
+        private final int groupSize;
+        private int position;
+        // serial of the first data object in the decoded part
+        private int partStart;
+        private List<Data> part;
+
+        private HistoryIterator(int fromSerial, int end, int groupSize)
+        {
+            this.end = end;
+            this.groupSize = groupSize;
+            this.position = Math.min(Math.max(fromSerial, 0), this.end);
+            this.partStart = 0;
+            this.part = null;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return this.position < this.end;
+        }
+
+        /**
+         * Returns the next data object, the part which contains it is decoded if it is not decoded yet.
+         *
+         * @return              the next data object
+         *
+         * @throws UncheckedIOException if error occurs while reading the data files
+         */
+        @Override
+        public Data next()
+        {
+            if (!this.hasNext())
+                throw new NoSuchElementException();
+
+            if (this.part == null || this.position < this.partStart || this.position >= this.partStart + this.part.size())
+            {
+                final int from = this.position - this.position % this.groupSize;
+
+                try
+                {
+                    this.part = Recorder.this.readPartSync(from, Math.min(from + this.groupSize, this.end));
+                    this.partStart = from;
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+                catch (Exception e)
+                {
+                    throw new UncheckedIOException(new IOException(e));
+                }
+            }
+
+            return this.part.get(this.position++ - this.partStart);
+        }
+
+        /**
+         * Moves the iterator to the given serial, the data file is decoded again only if the serial is in another file.
+         *
+         * @param serial        the serial of the next data object
+         */
+        public void skipTo(int serial)
+        {
+            this.position = Math.min(Math.max(serial, 0), this.end);
+        }
+
+        /**
+         * Returns the number of data objects which are not visited yet.
+         *
+         * @return              the number of remaining data objects
+         */
+        public int remaining()
+        {
+            return this.end - this.position;
+        }
+    }
+
+    /**
+     * Returns the timestamps of the records in serial range [from, to) in ui thread (not recommended use directly).
+     * The base recorder does not keep timestamps.
+     *
+     * @param from              the first serial, inclusive
+     * @param to                the last serial, exclusive, it is clamped to the size
+     * @return                  the timestamps in milliseconds since epoch, null if the records have no timestamps
+     *
+     * @throws Exception        if error occurs, for example permission denied
+     */
+    @SyncTask
+    public long[] getTimestampsSync(int from, int to) throws Exception
+    {
+        return null;
+    }
+
+    /**
+     * Returns the exported JSON record of the given record with its timestamp, the given record is not changed.
+     *
+     * @param record            the JSON record of a data object
+     * @param timestamp         the timestamp of the record, {@link TimestampLog#NO_TIMESTAMP} if it has none
+     * @return                  the given record if it has no timestamp, otherwise a copy with the timestamp
+     */
+    private static JSONObject withTimestamp(final JSONObject record, long timestamp)
+    {
+        if (timestamp == TimestampLog.NO_TIMESTAMP)
+            return record;
+
+        return new JSONObject(record, JSONObject.getNames(record)).put(TIMESTAMP_KEY, timestamp);
+    }
+
+    /**
+     * Returns the JSONObject representation of this Recorder object in ui thread (not recommended use directly).
+     * 
+     * @return                  the JSONObject representation of this Recorder object
+     * 
+     * @throws Exception        if error occurs, for example no such file, permission denied
+     */
+    @SyncTask
+    protected JSONObject toJsonSync() throws Exception
+    {
+        final JSONObject json = this.getExportHead();
+        final int size = json.getInt(DATA_SIZE_KEY);
+        final JSONArray sessions = new JSONArray();
+
+        final List<JSONArray> parts = this.decodeDataFiles(dataFile -> {
+            final JSONArray partSessions = new JSONArray();
+
+            for (final Data data : this.readDataFile(dataFile))
+                partSessions.put(data.toJson());
+
+            return partSessions;
+        });
+
+        int serial = 0;
+
+        for (final JSONArray partSessions : parts)
+        {
+            final long[] timestamps = this.getTimestampsSync(serial, serial + partSessions.length());
+
+            for (int i = 0; i < partSessions.length() && serial < size; i++, serial++)
+                sessions.put((timestamps == null) ? partSessions.get(i) : withTimestamp(partSessions.getJSONObject(i), timestamps[i]));
+        }
+
+        json.put(RECORDS_KEY, sessions);
+        return json;
+    }
+
+    /**
+     * Returns the head of the exported document, it is a copy of the manifest in memory without the keys which
+     * describe the directory. The manifest file is written only at checkpoints, so it is not read here.
+     *
+     * @return                  the head of the document without the records, it counts the records appended before
+     *
+     * @throws Exception        if error occurs while copying the manifest
+     */
+    @SyncTask
+    protected JSONObject getExportHead() throws Exception
+    {
+        final JSONObject head = new JSONObject(this.manifestJson.toString());
+
+        for (final String key : DIRECTORY_KEYS)
+            head.remove(key);
+
+        head.remove(RECORDS_KEY);
+        head.put(VERSION_KEY, VERSION).put(BEST_KEY, this.best).put(GROUP_SIZE_KEY, this.groupSize);
+        return head;
+    }
+
+    /**
+     * Returns the JSONObject representation of this Recorder object in a specific thread (recommended).
+     * 
+     * @return                  the JSONObject representation of this Recorder object
+     * 
+     * @throws Exception        if error occurs, for example no such file, permission denied
+     */
+    @AsyncTask
+    public JSONObject toJson() throws Exception
+    {
+        return BasicUtils.handleFutureResult(Scheduler.submit(Scheduler.READ, this::toJsonSync));
+    }
+
+    /**
+     * Writes the same document as {@link #toJsonSync()} to the given writer in ui thread (not recommended use directly).
+     * The records are written one data file at a time, so the memory used does not depend on the size of the history.
+     * A record with a timestamp has it under {@link #TIMESTAMP_KEY}. The writer is flushed but not closed.
+     *
+     * @param writer            the writer of the document
+     *
+     * @throws Exception        if error occurs, for example no such file, permission denied
+     */
+    @SyncTask
+    public void exportSync(final Writer writer) throws Exception
+    {
+        final JSONObject head = this.getExportHead();
+        final int size = head.getInt(DATA_SIZE_KEY);
+
+        // the head without the closing brace, then the records array
+        final String headString = head.toString();
+        writer.write(headString, 0, headString.length() - 1);
+        writer.write(BasicUtils.combined(",", JSONObject.quote(RECORDS_KEY), ":["));
+
+        final HistoryIterator iterator = this.iterator(0);
+        final int block = this.groupSize;
+        long[] timestamps = null;
+
+        // the records appended after the head is taken are not exported, so the document is consistent
+        for (int serial = 0; serial < size && iterator.hasNext(); serial++)
+        {
+            if (serial != 0)
+                writer.write(',');
+
+            // the timestamps are read one data file at a time as well
+            if (serial % block == 0)
+                timestamps = this.getTimestampsSync(serial, serial + block);
+
+            final JSONObject record = iterator.next().toJson();
+            writer.write(((timestamps == null) ? record : withTimestamp(record, timestamps[serial % block])).toString());
+        }
+
+        writer.write("]}");
+        writer.flush();
+    }
+
+    /**
+     * Writes the same document as {@link #toJsonSync()} to the given stream in UTF-8 in ui thread (not recommended use directly).
+     * The stream is not closed, but a gzip stage is finished so the stream contains a complete gzip file.
+     *
+     * @param output            the stream of the document
+     * @param gzip              whether to compress the document with gzip, for example sharing or backing up
+     *
+     * @throws Exception        if error occurs, for example no such file, permission denied
+     */
+    @SyncTask
+    public void exportSync(final OutputStream output, boolean gzip) throws Exception
+    {
+        final GZIPOutputStream compressed = gzip ? new GZIPOutputStream(output, EXPORT_BUFFER_SIZE) : null;
+        final Writer writer = new BufferedWriter(new OutputStreamWriter((compressed == null) ? output : compressed, FileHelper.STANDARD_FORMAT), EXPORT_BUFFER_SIZE);
+
+        this.exportSync(writer);
+
+        if (compressed != null)
+            compressed.finish();
+
+        output.flush();
+    }
+
+    /**
+     * Writes the same document as {@link #toJsonSync()} to the given file in ui thread (not recommended use directly).
+     *
+     * @param file              the target file, it is overwritten if it exists
+     * @param gzip              whether to compress the document with gzip
+     *
+     * @throws Exception        if error occurs, for example no such file, permission denied
+     */
+    @SyncTask
+    public void exportSync(final File file, boolean gzip) throws Exception
+    {
+        try (final OutputStream output = new FileOutputStream(file))
+        {
+            this.exportSync(output, gzip);
+        }
+    }
+
+    /**
+     * Writes the same document as {@link #toJsonSync()} to the given stream in specific thread (recommended).
+     *
+     * @param output            the stream of the document, it is not closed
+     * @param gzip              whether to compress the document with gzip
+     *
+     * @throws Exception        if error occurs, for example no such file, permission denied
+     */
+    @AsyncTask
+    public void export(final OutputStream output, boolean gzip) throws Exception
+    {
+        BasicUtils.handleFutureResult(Scheduler.submit(Scheduler.BACKGROUND, () -> {
+            this.exportSync(output, gzip);
+            return null;
+        }));
+    }
+
+    /**
+     * Writes the same document as {@link #toJsonSync()} to the given file in specific thread (recommended).
+     *
+     * @param file              the target file, it is overwritten if it exists
+     * @param gzip              whether to compress the document with gzip
+     *
+     * @throws Exception        if error occurs, for example no such file, permission denied
+     */
+    @AsyncTask
+    public void export(final File file, boolean gzip) throws Exception
+    {
+        BasicUtils.handleFutureResult(Scheduler.submit(Scheduler.BACKGROUND, () -> {
+            this.exportSync(file, gzip);
+            return null;
+        }));
+    }
+
+    /**
+     * Returns the string representation of this Recorder object, the whole record is read in the calling
+     * thread, so it should not be called in ui thread.
+     *
+     * @return                  the string representation of this Recorder object in JSON format
+     * 
+     * @throws RuntimeException if an exception occurs while converting to JSON
+     */
+    @NonNull
+    @Override
+    @SyncTask
+    public String toString()
+    {
+        try
+        {
+            final StringWriter writer = new StringWriter();
+
+            // no JSONArray of all the records is built, and no task waits for another task of the same lane
+            this.exportSync(writer);
+            return writer.toString();
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Sets the byte budget of the decoded chunks kept in memory by this recorder.
+     *
+     * @param budget            the maximum estimated size of the cached chunks in bytes, 0 disables the cache
+     */
+    public void setCacheBudget(long budget)
+    {
+        this.cache.setBudget(budget);
+    }
+
+    /**
+     * Returns the cache of the decoded chunks, for example to check its hits and misses.
+     *
+     * @return                  the cache of this recorder
+     */
+    public ChunkCache getChunkCache()
+    {
+        return this.cache;
     }
 
     /**
@@ -581,239 +1366,3747 @@ public class Recorder
     @SyncTask
     protected File getDataFile(int index)
     {
-        return new File(this.rootDirectory, BasicUtils.combined(DATA_FILE_PREFIX, index, JSON_EXTENSION_NAME));
+        if (this.packedIndexes.contains(index))
+            return new File(this.rootDirectory, BasicUtils.combined(DATA_FILE_PREFIX, index, PACKED_EXTENSION_NAME));
+
+        if (this.migratedIndexes.contains(index))
+            return new File(this.rootDirectory, BasicUtils.combined(DATA_FILE_PREFIX, index, getDataFileExtension(this.migration)));
+
+        return new File(this.rootDirectory, BasicUtils.combined(DATA_FILE_PREFIX, index, this.getDataFileExtension()));
     }
 
     /**
-     * Creates a new data file for storing records and initializes it with an empty JSON array.
+     * Returns the storage of the given data file which is not packed by its extension name, the data files
+     * are in two storages while a migration is running.
      *
-     * @param index             the index to use for naming the data file
-     * @return                  a Pair containing the created File object and its initial JSONObject content
-     * @throws Exception        if the file cannot be created or an I/O error occurs
+     * @param dataFile          the data file, for example data3.bin
+     * @return                  {@link #JSON_STORAGE}, {@link #BINARY_STORAGE} or {@link #COLUMNAR_STORAGE}
      */
-    @SyncTask
-    protected Pair<File, JSONObject> createNewDataFile(int index) throws Exception
+    protected static byte getFileStorage(final File dataFile)
     {
-        final File dataFile = new File(this.rootDirectory, BasicUtils.combined(DATA_FILE_PREFIX, index, JSON_EXTENSION_NAME));
+        if (dataFile.getName().endsWith(BINARY_EXTENSION_NAME))
+            return BINARY_STORAGE;
 
-        if (FileHelper.createNewFile(dataFile) && !dataFile.exists())
-            throw new IOException("Create file false: " + this.manifestFile.getAbsolutePath());
+        return dataFile.getName().endsWith(COLUMNAR_EXTENSION_NAME) ? COLUMNAR_STORAGE : JSON_STORAGE;
+    }
 
-        this.dataFiles.add(dataFile);
+    /**
+     * Returns the extension name of the data files which are not packed, it depends on the storage mode.
+     *
+     * @return                  the extension name, including the dot
+     */
+    protected String getDataFileExtension()
+    {
+        return getDataFileExtension(this.storage);
+    }
 
-        final JSONObject content = new JSONObject().put(RECORDS_KEY, new JSONArray());
-        FileHelper.write(dataFile, content.toString(), false);
-        return new Pair<>(dataFile, content);
+    /**
+     * Returns the extension name of the data files which are not packed in the given storage mode.
+     *
+     * @param storage           {@link #JSON_STORAGE}, {@link #BINARY_STORAGE} or {@link #COLUMNAR_STORAGE}
+     * @return                  the extension name, including the dot
+     */
+    protected static String getDataFileExtension(byte storage)
+    {
+        switch (storage)
+        {
+            case BINARY_STORAGE: return BINARY_EXTENSION_NAME;
+            case COLUMNAR_STORAGE: return COLUMNAR_EXTENSION_NAME;
+            default: return JSON_EXTENSION_NAME;
+        }
     }
 
-    public static final class NumberResponse extends Recorder
+    /**
+     * Returns the regular expression which matches the names of the data files in the storage mode,
+     * the data files in any storage are matched while a migration is running.
+     *
+     * @return                  the regular expression of the data file names
+     */
+    protected String getDataFileRegex()
     {
-        public final Data.Statics<Object> all;
-        public final Data.Statics<Double> MO3;
-        public final Data.Statics<Double> AO5;
-        public final Data.Statics<Double> AO12;
-        public final Data.Statics<Double> AO100;
+        if (this.migration != NO_MIGRATION)
+            return ANY_DATA_FILE_REGEX;
 
-        private final StreamingAggregator.MO mo3;
-        private final StreamingAggregator.AO ao5;
-        private final StreamingAggregator.AO ao12;
-        private final StreamingAggregator.AO ao100;
+        switch (this.storage)
+        {
+            case BINARY_STORAGE: return BINARY_DATA_FILE_REGEX;
+            case COLUMNAR_STORAGE: return COLUMNAR_DATA_FILE_REGEX;
+            default: return JSON_DATA_FILE_REGEX;
+        }
+    }
+
+    /**
+     * Checks whether a directory with the given version can be loaded. Every version in {@link #VERSIONS} is
+     * loaded, a directory with an older version is readable at once and upgraded in background, a directory
+     * written by a newer version of the application is not loaded.
+     *
+     * @param version           the version in the manifest file
+     * @return                  true if the directory can be loaded
+     */
+    private static boolean isSupportedVersion(final String version)
+    {
+        return Arrays.asList(VERSIONS).contains(version);
+    }
+
+    /**
+     * Sorts the given data files by index. If a data file is both in the storage format and in the compact
+     * format, the packing was interrupted after the packed file is complete, so the file in the storage format
+     * is deleted. In the same way a data file in the storage of a running migration replaces the one in the
+     * old storage. The unfinished packed or migrated files are deleted too.
+     *
+     * @param dataFiles         the data files in the root directory
+     * @return                  the data files to use, sorted by index
+     *
+     * @throws Exception        if error occurs, for example permission denied
+     */
+    @SyncTask
+    private List<File> resolvePackedFiles(final File[] dataFiles) throws Exception
+    {
+        final List<File> files = new ArrayList<>(Arrays.asList(dataFiles));
+        files.sort(Comparator.comparingInt(Recorder::getDataFileIndex));
+
+        for (int i = files.size() - 1; i > 0; i--)
+        {
+            if (getDataFileIndex(files.get(i)) != getDataFileIndex(files.get(i - 1)))
+                continue;
+
+            final int unpacked = (this.getFilePriority(files.get(i)) > this.getFilePriority(files.get(i - 1))) ? i - 1 : i;
+            FileHelper.deleteFile(files.remove(unpacked));
+        }
+
+        for (final File temporary : FileHelper.listFiles(this.rootDirectory, TEMPORARY_FILE_REGEX))
+            FileHelper.deleteFile(temporary);
+
+        return files;
+    }
+
+    /**
+     * Returns which of the data files with the same index is kept, the one written later has a higher priority.
+     *
+     * @param dataFile          the data file
+     * @return                  2 for a packed file, 1 for a file in the storage of the running migration, otherwise 0
+     */
+    private int getFilePriority(final File dataFile)
+    {
+        if (dataFile.getName().endsWith(PACKED_EXTENSION_NAME))
+            return 2;
+
+        return (this.migration != NO_MIGRATION && getFileStorage(dataFile) == this.migration) ? 1 : 0;
+    }
+
+    /**
+     * Finishes or discards a rechunking which is interrupted, see {@link #swapDataFiles(File, List, int)}.
+     * If the commit marker exists, all the new files are complete, so the swap is finished. Otherwise the new
+     * files are kept if their progress is written, so aligning goes on from it, or discarded and the old files are kept.
+     *
+     * @param rootDirectory     the root directory of the recorder
+     *
+     * @throws Exception        if error occurs, for example permission denied
+     */
+    @SyncTask
+    private static void recoverRechunk(final File rootDirectory) throws Exception
+    {
+        if (new File(rootDirectory, RECHUNK_MARKER_NAME).exists())
+            commitRechunk(rootDirectory);
+        else if (!Rechunker.hasProgress(rootDirectory))
+            FileHelper.deleteDirectories(new File(rootDirectory, RECHUNK_DIRECTORY_NAME), true);
+
+        FileHelper.deleteFile(new File(rootDirectory, BasicUtils.combined(RECHUNK_MARKER_NAME, TEMPORARY_EXTENSION_NAME)));
+    }
+
+    /**
+     * Moves the new files listed in the commit marker from the rechunk directory to the root directory, then deletes
+     * the old data files which are not listed. It can be run again after it is interrupted.
+     *
+     * @param rootDirectory     the root directory of the recorder
+     *
+     * @throws Exception        if error occurs, for example permission denied
+     */
+    @SyncTask
+    private static void commitRechunk(final File rootDirectory) throws Exception
+    {
+        final File marker = new File(rootDirectory, RECHUNK_MARKER_NAME);
+        final File staging = new File(rootDirectory, RECHUNK_DIRECTORY_NAME);
+        final List<String> names = new ArrayList<>();
+
+        for (final String name : FileHelper.read(marker).split("\\R"))
+        {
+            if (!name.trim().isEmpty())
+                names.add(name.trim());
+        }
+
+        for (final String name : names)
+        {
+            final File staged = new File(staging, name);
+
+            if (staged.exists() && !staged.renameTo(new File(rootDirectory, name)))
+                throw new IOException(BasicUtils.combined("Rename file false: ", staged.getAbsolutePath()));
+        }
+
+        for (final File file : FileHelper.listFiles(rootDirectory, ANY_DATA_FILE_REGEX))
+        {
+            if (!names.contains(file.getName()))
+                FileHelper.deleteFile(file);
+        }
+
+        FileHelper.deleteDirectories(staging, true);
+        FileHelper.deleteFile(marker);
+    }
+
+    /**
+     * Swaps the data files of this recorder with the files in the rechunk directory, the caller must make sure
+     * that nothing is appended while swapping. The new manifest file is written to the rechunk directory and
+     * all the files are moved after the commit marker is written, so the swap is finished by
+     * {@link #recoverRechunk(File)} if the application is killed.
+     *
+     * @param staging           the rechunk directory which contains the new files
+     * @param files             the names of the new files
+     * @param groupSize         the number of records per new data file
+     *
+     * @throws Exception        if error occurs, for example permission denied
+     */
+    @SyncTask
+    protected void swapDataFiles(final File staging, final List<String> files, int groupSize) throws Exception
+    {
+        final JSONObject manifest = new JSONObject(this.manifestJson.toString()).put(GROUP_SIZE_KEY, groupSize).put(ALIGNED_KEY, true);
+        FileHelper.write(new File(staging, MANIFEST_FILE_NAME), manifest.toString(4), false);
+
+        final List<String> names = new ArrayList<>(files);
+        names.add(MANIFEST_FILE_NAME);
+
+        final File temporary = new File(this.rootDirectory, BasicUtils.combined(RECHUNK_MARKER_NAME, TEMPORARY_EXTENSION_NAME));
+        FileHelper.write(temporary, String.join("\n", names), false);
+
+        if (!temporary.renameTo(new File(this.rootDirectory, RECHUNK_MARKER_NAME)))
+            throw new IOException(BasicUtils.combined("Rename file false: ", temporary.getAbsolutePath()));
+
+        this.layoutLock.writeLock().lock();
+
+        try
+        {
+            commitRechunk(this.rootDirectory);
+
+            this.manifestJson.put(GROUP_SIZE_KEY, groupSize).put(ALIGNED_KEY, true);
+            this.groupSize = groupSize;
+            this.packedIndexes.clear();
+            this.migratedIndexes.clear();
+            this.cache.clear();
+            this.dataFiles.clear();
+            this.dataFiles.addAll(this.resolvePackedFiles(FileHelper.listFiles(this.rootDirectory, this.getDataFileRegex())));
+            this.rollDataFile((this.size == 0) ? 0 : (this.size - 1) / this.groupSize);
+        }
+        finally
+        {
+            this.layoutLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the index of the given data file, which is the number in its name.
+     *
+     * @param dataFile          the data file, for example data3.json
+     * @return                  the index of the data file, for example 3
+     */
+    protected static int getDataFileIndex(final File dataFile)
+    {
+        final String name = dataFile.getName();
+        return Integer.parseInt(name.substring(DATA_FILE_PREFIX.length(), name.indexOf('.')));
+    }
+
+    /**
+     * Writes the records of the given chunk to a new data file in the given storage format.
+     *
+     * @param dataFile      the data file to write, it must not exist
+     * @param chunk         the records of the data file
+     * @param capacity      the number of records per data file
+     * @param storage       the storage format of the data file
+     *
+     * @throws Exception    if error occurs, for example permission denied
+     */
+    @SyncTask
+    protected static void writeDataFile(final File dataFile, final Chunk chunk, int capacity, byte storage) throws Exception
+    {
+        if (storage == BINARY_STORAGE)
+        {
+            FileHelper.createNewFile(dataFile);
+            RecordLog.append(dataFile, chunk, 0, chunk.size);
+        }
+        else if (storage == COLUMNAR_STORAGE)
+        {
+            ColumnStore.create(dataFile, capacity);
+            final ColumnStore columns = ColumnStore.open(dataFile, true);
+            columns.append(chunk, 0, chunk.size);
+            columns.force();
+        }
+        else
+        {
+            final JSONArray records = new JSONArray();
+
+            for (int i = 0; i < chunk.size; i++)
+                records.put(chunk.getData(i).toJson());
+
+            FileHelper.write(dataFile, new JSONObject().put(RECORDS_KEY, records).toString(4), false);
+        }
+    }
+
+    /**
+     * Creates a new data file for storing records. A JSON data file is initialized with an empty JSON array,
+     * a binary segment file is just an empty file, a column file is allocated with the capacity of a group.
+     *
+     * @param index             the index to use for naming the data file
+     * @return                  a Pair containing the created File object and its initial JSONObject content,
+     *                          the content is null for a binary segment file or a column file
+     * @throws Exception        if the file cannot be created or an I/O error occurs
+     */
+    @SyncTask
+    protected Pair<File, JSONObject> createNewDataFile(int index) throws Exception
+    {
+        final File dataFile = this.getDataFile(index);
+
+        if (FileHelper.createNewFile(dataFile) && !dataFile.exists())
+            throw new IOException("Create file false: " + this.manifestFile.getAbsolutePath());
+
+        if (!this.dataFiles.contains(dataFile))
+            this.dataFiles.add(dataFile);
+
+        if (this.storage == BINARY_STORAGE)
+        {
+            RecordLog.truncate(dataFile, 0);
+            return new Pair<>(dataFile, null);
+        }
+
+        if (this.storage == COLUMNAR_STORAGE)
+        {
+            ColumnStore.create(dataFile, this.groupSize);
+            return new Pair<>(dataFile, null);
+        }
+
+        final JSONObject content = new JSONObject().put(RECORDS_KEY, new JSONArray());
+        FileHelper.write(dataFile, content.toString(), false);
+        return new Pair<>(dataFile, content);
+    }
+
+    /**
+     * Makes the data file with the given index the current data file, all the following records are
+     * appended to it. The file is created if it does not exist, otherwise its records are kept.
+     *
+     * @param index             the index of the data file
+     * @throws Exception        if the file cannot be created or an I/O error occurs
+     */
+    @SyncTask
+    protected void rollDataFile(int index) throws Exception
+    {
+        if (this.packedIndexes.contains(index))
+            throw new IOException(BasicUtils.combined("Data file: ", index, " is packed and cannot be appended"));
+
+        final File dataFile = this.getDataFile(index);
+
+        if (!dataFile.exists())
+        {
+            final Pair<File, JSONObject> newData = this.createNewDataFile(index);
+            this.currentDataFile = newData.getValue0();
+            this.currentDataFileJson = newData.getValue1();
+        }
+        else
+        {
+            if (!this.dataFiles.contains(dataFile))
+                this.dataFiles.add(dataFile);
+
+            // a torn record at the end of a segment would shift all the records appended after it
+            if (this.storage == BINARY_STORAGE)
+                RecordLog.truncate(dataFile, RecordLog.count(dataFile));
+
+            this.currentDataFile = dataFile;
+            this.currentDataFileJson = (this.storage == JSON_STORAGE) ? new JSONObject(FileHelper.read(dataFile)) : null;
+        }
+
+        this.records = (this.currentDataFileJson == null) ? null : this.currentDataFileJson.getJSONArray(RECORDS_KEY);
+        this.currentColumns = (this.storage == COLUMNAR_STORAGE) ? ColumnStore.open(this.currentDataFile, true) : null;
+        this.cache.invalidate(this.currentDataFile);
+    }
+
+    /**
+     * Appends the given data object to the current data file. In binary storage only one
+     * fixed-width record is written, in columnar storage the record is written to the mapped columns,
+     * in JSON storage the whole current data file is rewritten.
+     *
+     * @param data              the data object to append
+     * @throws Exception        if error occurs, for example no such file, permission denied
+     */
+    @SyncTask
+    protected void appendRecord(final Data data) throws Exception
+    {
+        if (this.storage == BINARY_STORAGE)
+            RecordLog.append(this.currentDataFile, (Data.NumberResponse)(data));
+        else if (this.storage == COLUMNAR_STORAGE)
+        {
+            final double time = ((Data.NumberResponse)(data)).getTime();
+            this.currentColumns.append(((Data.NumberResponse)(data)).getSerial(), time, RecordLog.getFlags(time));
+        }
+        else
+        {
+            this.records.put(data.toJson());
+            this.updateDataFile();
+        }
+
+        this.cache.invalidate(this.currentDataFile);
+    }
+
+    /**
+     * Reads all the data objects in the given data file, JSON data files, binary segment files
+     * and column files are supported.
+     *
+     * @param dataFile          the data file to read
+     * @return                  the data objects in the file
+     * @throws Exception        if error occurs, for example no such file, permission denied
+     */
+    @SyncTask
+    protected List<Data> readDataFile(final File dataFile) throws Exception
+    {
+        if (dataFile.getName().endsWith(BINARY_EXTENSION_NAME))
+            return RecordLog.read(dataFile).toDataList();
+
+        if (dataFile.getName().endsWith(COLUMNAR_EXTENSION_NAME))
+            return ColumnStore.read(dataFile).toDataList();
+
+        if (dataFile.getName().endsWith(PACKED_EXTENSION_NAME))
+            return ChunkCodec.read(dataFile).toDataList();
+
+        final JSONObject part = new JSONObject(FileHelper.read(dataFile));
+        final JSONArray partSessions = part.getJSONArray(RECORDS_KEY);
+        final List<Data> data = new ArrayList<>(partSessions.length());
+
+        for (int i = 0; i < partSessions.length(); i++)
+            data.add(Data.load(partSessions.getJSONObject(i), this.dataType));
+
+        return data;
+    }
+
+    /**
+     * A write waiting in the queue of a recorder, it is either a task or some times to append.
+     */
+    protected static final class PendingWrite
+    {
+        private final Callable<?> task;
+        private final double[] times;
+        // null if the records do not have timestamps
+        private final long[] timestamps;
+        private final CompletableFuture<Object> future;
+
+        protected PendingWrite(final Callable<?> task, final double[] times, final long[] timestamps)
+        {
+            this.task = task;
+            this.times = times;
+            this.timestamps = timestamps;
+            this.future = new CompletableFuture<>();
+        }
+    }
+
+    /**
+     * The result of a batch operation, which tells how many records are processed and how long it takes.
+     */
+    public static final class BatchReport
+    {
+        public final int count;
+        public final long elapsedNanos;
+
+        public BatchReport(int count, long elapsedNanos)
+        {
+            this.count = count;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Returns the number of records processed per second.
+         *
+         * @return              the throughput in records per second, 0 if nothing is processed
+         */
+        public double getThroughput()
+        {
+            return (this.elapsedNanos == 0) ? 0.0 : this.count * 1_000_000_000.0 / this.elapsedNanos;
+        }
+
+        @NonNull
+        @Override
+        public String toString()
+        {
+            return BasicUtils.combined(this.count, " records in ", this.elapsedNanos / 1_000_000.0, " ms (",
+                                       Math.round(this.getThroughput()), " records/s)");
+        }
+    }
+
+    public static final class NumberResponse extends Recorder
+    {
+        public final Data.Statics<Object> all;
+        public final Data.Statics<Double> MO3;
+        public final Data.Statics<Double> AO5;
+        public final Data.Statics<Double> AO12;
+        public final Data.Statics<Double> AO100;
+
+        private final StreamingAggregator.MO mo3;
+        private final StreamingAggregator.AO ao5;
+        private final StreamingAggregator.AO ao12;
+        private final StreamingAggregator.AO ao100;
 
         private final JSONObject MO3Json;
         private final JSONObject AO5Json;
         private final JSONObject AO12Json;
         private final JSONObject AO100Json;
+        // absolute times of the last 100 records, also stored in the tail file at every checkpoint
         private final LinkedList<Double> last100Data;
+        private final File tailFile;
+        // the overall statistics before each of the last attempts, also stored in the tail file at every checkpoint
+        private final Deque<UndoStep> undoSteps;
+        private final File undoFile;
+
+        // attempts added after the last checkpoint, the manifest does not contain them yet
+        private final File journalFile;
+        private int checkpointInterval;
+        private int checkpointSize;
+
+        // summaries of the full data files before the current one, also stored in the summary file
+        private final File summaryFile;
+        private final List<ChunkSummary> summaries;
+        // best and worst window results of the same data files, also stored in the window file
+        private final File windowFile;
+        private final List<WindowSummary> windowSummaries;
+
+        // wall-clock time of every record by serial
+        private final File timestampFile;
+        // the rollups, rank index, histogram and quantile sketch of the whole history
+        private final HistoryIndexes indexes;
+
+        // the summaries, rollups, rank index and histogram of the whole history are loaded in background after
+        // opening, appending does not update them before they are installed under the append lock
+        private final CompletableFuture<Void> indexLoad;
+        private final AtomicBoolean indexLoadStarted;
+        private volatile boolean indexed;
+
+        // whether the data file n contains the records from n * groupSize, the data files of older directories
+        // are read one by one in order until they are aligned in background after opening
+        private volatile boolean aligned;
+        // held while rechunking, the records copied without the append lock are copied again if editing or removing
+        // changes the generation before the swap
+        private final Object rechunkLock;
+        private int recordGeneration;
+
+        private final Object packLock;
+        private volatile byte packing;
+
+        // held by the methods which append records, so rechunking can stop appending while swapping
+        private final Object appendLock;
+
+        // create new instance
+        @SyncTask
+        private NumberResponse(final File directory, int groupSize, byte storage) throws Exception
+        {
+            super(directory, groupSize, Data.NUMBER_RESPONSE_TYPE, storage);
+
+            this.mo3 = new StreamingAggregator.MO(3);
+            this.ao5 = new StreamingAggregator.AO(5);
+            this.ao12 = new StreamingAggregator.AO(12);
+            this.ao100 = new StreamingAggregator.AO(100);
+
+            this.MO3Json = new JSONObject(); this.AO5Json = new JSONObject(); this.AO12Json = new JSONObject(); this.AO100Json = new JSONObject();
+            this.all = new Data.Statics<>();
+            this.MO3 = new Data.Statics<>(); this.AO5 = new Data.Statics<>(); this.AO12 = new Data.Statics<>(); this.AO100 = new Data.Statics<>();
+
+            this.validSize = 0;
+
+            this.journalFile = new File(directory, JOURNAL_FILE_NAME);
+            this.checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+            this.checkpointSize = 0;
+
+            this.summaryFile = new File(directory, SUMMARY_FILE_NAME);
+            this.summaries = new ArrayList<>();
+            this.windowFile = new File(directory, WINDOW_FILE_NAME);
+            this.windowSummaries = new ArrayList<>();
+
+            this.timestampFile = new File(directory, TIMESTAMP_FILE_NAME);
+            this.indexLoad = CompletableFuture.completedFuture(null);
+            this.indexLoadStarted = new AtomicBoolean(true);
+            this.indexed = true;
+            this.aligned = true;
+            this.rechunkLock = new Object();
+            this.recordGeneration = 0;
+
+            this.packLock = new Object();
+            this.packing = PACK_VARINT;
+            this.appendLock = new Object();
+            this.indexes = new HistoryIndexes(directory, this.timestampFile, new QuantileSketch(), new IndexSource(), this.appendLock);
+            this.manifestJson.put(PACKING_KEY, this.packing);
+
+            this.manifestJson.put(MO3_KEY, this.MO3Json).put(AO5_KEY, this.AO5Json).put(AO12_KEY, this.AO12Json)
+                             .put(AO100_KEY, this.AO100Json).put(VALID_SIZE_KEY, 0).put(CHECKPOINT_INTERVAL_KEY, this.checkpointInterval);
+
+            this.last100Data = new LinkedList<>();
+            this.tailFile = new File(directory, TAIL_FILE_NAME);
+            this.undoSteps = new ArrayDeque<>();
+            this.undoFile = new File(directory, UNDO_FILE_NAME);
+            this.enableUndo();
+            this.updateManifestFile();
+        }
+
+        // load from file
+        @SyncTask
+        private NumberResponse(final File directory) throws Exception
+        {
+            super(directory, Data.NUMBER_RESPONSE_TYPE);
+
+            // directories created before rechunking may have data files with different sizes, they are appended
+            // after the last data file until they are aligned in background
+            this.aligned = this.manifestJson.optBoolean(ALIGNED_KEY, false);
+            this.rechunkLock = new Object();
+            this.recordGeneration = 0;
+
+            if (!this.aligned && !this.dataFiles.isEmpty())
+                this.rollDataFile(getDataFileIndex(this.dataFiles.get(this.dataFiles.size() - 1)));
+
+            this.MO3Json = this.manifestJson.getJSONObject(MO3_KEY);
+            this.AO5Json = this.manifestJson.getJSONObject(AO5_KEY);
+            this.AO12Json = this.manifestJson.getJSONObject(AO12_KEY);
+            this.AO100Json = this.manifestJson.getJSONObject(AO100_KEY);
+
+            this.last100Data = new LinkedList<>();
+            this.tailFile = new File(directory, TAIL_FILE_NAME);
+
+            // the data files are read only if the tail snapshot is missing or older than the manifest
+            final ByteBuffer tail = this.readTailSnapshot();
+            final boolean snapshot = tail != null;
+
+            if (!snapshot)
+            {
+                final int startIndex = Math.max(this.size - 100, 0);
+                final Deque<Chunk> chunks = new ArrayDeque<>();
+
+                // the data files are read from the last one until the first record of the 100 records
+                for (int i = this.dataFiles.size() - 1; i >= 0; i--)
+                {
+                    final Chunk chunk = this.readChunk(this.dataFiles.get(i));
+                    chunks.addFirst(chunk);
+
+                    if (chunk.size > 0 && chunk.serials[0] <= startIndex)
+                        break;
+                }
+
+                int next = startIndex;
+
+                for (final Chunk chunk : chunks)
+                {
+                    for (int j = 0; j < chunk.size; j++)
+                    {
+                        // old directories may contain a record in two data files
+                        if (chunk.serials[j] == next && next < this.size)
+                        {
+                            this.last100Data.add(Math.abs(chunk.times[j]));
+                            next++;
+                        }
+                    }
+                }
+            }
+
+            final Deque<Double> mo3Deque = BasicUtils.last(this.last100Data, 3);
+            final Deque<Double> ao5Deque = BasicUtils.last(this.last100Data, 5);
+            final Deque<Double> ao12Deque = BasicUtils.last(this.last100Data, 12);
+            final Deque<Double> ao100Deque = new LinkedList<>(this.last100Data);
+
+            this.mo3 = new StreamingAggregator.MO(mo3Deque,
+                    this.MO3Json.has(WORST_KEY) ? this.MO3Json.getDouble(WORST_KEY) : null,
+                    this.MO3Json.has(BEST_KEY) ? this.MO3Json.getDouble(BEST_KEY) : null,
+                    this.MO3Json.has(AVERAGE_KEY) ? this.MO3Json.getDouble(AVERAGE_KEY) : null, 3,
+                    this.MO3Json.has(VALID_SIZE_KEY) ? this.MO3Json.getInt(VALID_SIZE_KEY) : 0);
+
+            this.ao5 = new StreamingAggregator.AO(ao5Deque,
+                    this.AO5Json.has(WORST_KEY) ? this.AO5Json.getDouble(WORST_KEY) : null,
+                    this.AO5Json.has(BEST_KEY) ? this.AO5Json.getDouble(BEST_KEY) : null,
+                    this.AO5Json.has(AVERAGE_KEY) ? this.AO5Json.getDouble(AVERAGE_KEY) : null, 5,
+                    this.AO5Json.has(VALID_SIZE_KEY) ? this.AO5Json.getInt(VALID_SIZE_KEY) : 0);
+
+            this.ao12 = new StreamingAggregator.AO(ao12Deque,
+                    this.AO12Json.has(WORST_KEY) ? this.AO12Json.getDouble(WORST_KEY) : null,
+                    this.AO12Json.has(BEST_KEY) ? this.AO12Json.getDouble(BEST_KEY) : null,
+                    this.AO12Json.has(AVERAGE_KEY) ? this.AO12Json.getDouble(AVERAGE_KEY) : null, 12,
+                    this.AO12Json.has(VALID_SIZE_KEY) ? this.AO12Json.getInt(VALID_SIZE_KEY) : 0);
+
+            this.ao100 = new StreamingAggregator.AO(ao100Deque,
+                    this.AO100Json.has(WORST_KEY) ? this.AO100Json.getDouble(WORST_KEY) : null,
+                    this.AO100Json.has(BEST_KEY) ? this.AO100Json.getDouble(BEST_KEY) : null,
+                    this.AO100Json.has(AVERAGE_KEY) ? this.AO100Json.getDouble(AVERAGE_KEY) : null, 100,
+                    this.AO100Json.has(VALID_SIZE_KEY) ? this.AO100Json.getInt(VALID_SIZE_KEY) : 0);
+
+            final Double average = this.AllJson.has(AVERAGE_KEY) ? this.AllJson.getDouble(AVERAGE_KEY) : null;
+            this.all = new Data.Statics<>(this.current, this.best, this.worst, average);
+
+            this.MO3 = new Data.Statics<>(
+                    this.MO3Json.has(CURRENT_KEY) ? this.MO3Json.getDouble(CURRENT_KEY) : null,
+                    this.MO3Json.has(BEST_KEY) ? this.MO3Json.getDouble(BEST_KEY) : null,
+                    this.MO3Json.has(WORST_KEY) ? this.MO3Json.getDouble(WORST_KEY) : null,
+                    this.MO3Json.has(AVERAGE_KEY) ? this.MO3Json.getDouble(AVERAGE_KEY) : null
+            );
+
+            this.AO5 = new Data.Statics<>(
+                    this.AO5Json.has(CURRENT_KEY) ? this.AO5Json.getDouble(CURRENT_KEY) : null,
+                    this.AO5Json.has(BEST_KEY) ? this.AO5Json.getDouble(BEST_KEY) : null,
+                    this.AO5Json.has(WORST_KEY) ? this.AO5Json.getDouble(WORST_KEY) : null,
+                    this.AO5Json.has(AVERAGE_KEY) ? this.AO5Json.getDouble(AVERAGE_KEY) : null
+            );
+
+            this.AO12 = new Data.Statics<>(
+                    this.AO12Json.has(CURRENT_KEY) ? this.AO12Json.getDouble(CURRENT_KEY) : null,
+                    this.AO12Json.has(BEST_KEY) ? this.AO12Json.getDouble(BEST_KEY) : null,
+                    this.AO12Json.has(WORST_KEY) ? this.AO12Json.getDouble(WORST_KEY) : null,
+                    this.AO12Json.has(AVERAGE_KEY) ? this.AO12Json.getDouble(AVERAGE_KEY) : null
+            );
+
+            this.AO100 = new Data.Statics<>(
+                    this.AO100Json.has(CURRENT_KEY) ? this.AO100Json.getDouble(CURRENT_KEY) : null,
+                    this.AO100Json.has(BEST_KEY) ? this.AO100Json.getDouble(BEST_KEY) : null,
+                    this.AO100Json.has(WORST_KEY) ? this.AO100Json.getDouble(WORST_KEY) : null,
+                    this.AO100Json.has(AVERAGE_KEY) ? this.AO100Json.getDouble(AVERAGE_KEY) : null
+            );
+
+            this.journalFile = new File(directory, JOURNAL_FILE_NAME);
+            this.checkpointInterval = this.manifestJson.has(CHECKPOINT_INTERVAL_KEY) ? this.manifestJson.getInt(CHECKPOINT_INTERVAL_KEY) : DEFAULT_CHECKPOINT_INTERVAL;
+            this.checkpointSize = this.size;
+
+            // the summaries are read by loading the indexes in background, the ranges are summarised from the
+            // data files before that
+            this.summaryFile = new File(directory, SUMMARY_FILE_NAME);
+            this.summaries = new ArrayList<>();
+            this.windowFile = new File(directory, WINDOW_FILE_NAME);
+            this.windowSummaries = new ArrayList<>();
+
+            // directories created before timestamps are recorded have no timestamp for their records
+            this.timestampFile = new File(directory, TIMESTAMP_FILE_NAME);
+
+            if (TimestampLog.count(this.timestampFile) < this.size)
+                TimestampLog.resize(this.timestampFile, this.size);
+
+            // directories created before packing keep their data files as they are
+            this.packLock = new Object();
+            this.packing = this.manifestJson.has(PACKING_KEY) ? (byte)(this.manifestJson.getInt(PACKING_KEY)) : PACK_NONE;
+            this.appendLock = new Object();
+
+            // directories checkpointed before the steps are kept in the tail file keep them in the undo file
+            this.undoSteps = new ArrayDeque<>();
+            this.undoFile = new File(directory, UNDO_FILE_NAME);
+            this.enableUndo();
+
+            if (snapshot && tail.hasRemaining())
+                this.readUndoSteps(tail, this.tailFile);
+            else
+                this.readUndoSnapshot();
+
+            this.indexLoad = new CompletableFuture<>();
+            this.indexLoadStarted = new AtomicBoolean(false);
+            this.indexed = false;
+
+            // directories created before the sketch is stored build it once from the data files in background
+            final JSONObject quantilesJson = this.manifestJson.optJSONObject(QUANTILES_KEY);
+            final QuantileSketch quantiles = (quantilesJson == null) ? new QuantileSketch() : QuantileSketch.fromJson(quantilesJson);
+            final boolean quantileSketch = quantiles.getCount() == this.validSize;
+            this.indexes = new HistoryIndexes(directory, this.timestampFile, quantiles, new IndexSource(), this.appendLock);
+
+            this.replayJournal();
+
+            // the records after the size are left by removing attempts if the application was killed while truncating,
+            // removing waits for aligning, so the data files which are not aligned do not contain them
+            if (this.aligned)
+                this.truncateRecords(this.size);
+
+            // the next load of a directory created before tail snapshots reads only the snapshot
+            if (!snapshot)
+                this.writeTailSnapshot();
+
+            Scheduler.execute(Scheduler.BACKGROUND, this::startIndexLoad);
+
+            if (!quantileSketch)
+            {
+                synchronized (this.appendLock)
+                {
+                    this.indexes.invalidateQuantiles();
+                }
+            }
+
+            // a migration stopped by closing the application goes on in background, the recorder is usable at once
+            if (this.migration != NO_MIGRATION)
+            {
+                final byte storage = this.migration;
+
+                Scheduler.execute(Scheduler.BACKGROUND, () -> {
+                    try {this.migrateStorageSync(storage);}
+                    catch (Exception e) {logError(e);}
+                });
+            }
+        }
+
+        /**
+         * Returns the summary of the records in serial range [from, to) in ui thread (not recommended use directly).
+         * The full data files in the range are summarised by their stored summaries without decoding any record,
+         * only the records in the partial data files at both ends are read.
+         *
+         * @param from          the first serial, inclusive
+         * @param to            the last serial, exclusive, it is clamped to the size
+         * @return              the summary of the range
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        public ChunkSummary getSummarySync(int from, int to) throws Exception
+        {
+            this.layoutLock.readLock().lock();
+
+            try
+            {
+                final int start = Math.max(from, 0), end = Math.min(to, this.size);
+                ChunkSummary summary = ChunkSummary.EMPTY;
+
+                for (int serial = start; serial < end; )
+                {
+                    final int index = serial / this.groupSize, offset = index * this.groupSize;
+                    final int last = Math.min(offset + this.groupSize, end);
+
+                    if (serial == offset && last == offset + this.groupSize && index < this.summaries.size())
+                        summary = summary.merge(this.summaries.get(index));
+                    else
+                        summary = summary.merge(ChunkSummary.of(this.getRangeSync(serial, last)));
+
+                    serial = last;
+                }
+
+                return summary;
+            }
+            finally
+            {
+                this.layoutLock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Returns the summary of the records in serial range [from, to) in specific thread (recommended).
+         * For example the all-time average is {@code getSummary(0, getSize()).getAverage()}.
+         *
+         * @param from          the first serial, inclusive
+         * @param to            the last serial, exclusive, it is clamped to the size
+         * @return              the summary of the range
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @AsyncTask
+        public ChunkSummary getSummary(int from, int to) throws Exception
+        {
+            return BasicUtils.handleFutureResult(Scheduler.submit(Scheduler.READ, () -> this.getSummarySync(from, to)));
+        }
+
+        /**
+         * Returns the summaries of the full data files, the summary at index i is the summary of data file i.
+         * It waits for the summaries loaded in background after opening, see {@link #awaitIndexes()}.
+         *
+         * @return              the summaries of the full data files, it cannot be modified
+         *
+         * @throws Exception    if loading the summaries fails, for example no such file, permission denied
+         */
+        public List<ChunkSummary> getChunkSummaries() throws Exception
+        {
+            this.awaitIndexesSync();
+            return Collections.unmodifiableList(this.summaries);
+        }
+
+        /**
+         * Returns the future which is completed after the summaries, rollups, rank index and histogram of the
+         * whole history are loaded in background after opening, they are not read while opening, so opening
+         * does not depend on the length of the history. The data files of older directories are aligned before.
+         *
+         * @return              the future of loading the indexes
+         */
+        @AsyncTask
+        public CompletableFuture<Void> awaitIndexes()
+        {
+            return this.indexLoad.thenRun(() -> {});
+        }
+
+        /**
+         * Waits for the indexes loaded in background after opening, it returns at once after they are loaded.
+         * If the background task has not started yet, the indexes are loaded in this thread, so a task of
+         * {@link Scheduler} never waits for a task queued behind it.
+         *
+         * @throws Exception    if loading the indexes fails, for example no such file, permission denied
+         */
+        @SyncTask
+        private void awaitIndexesSync() throws Exception
+        {
+            this.startIndexLoad();
+            BasicUtils.handleFutureResult(this.indexLoad);
+        }
+
+        /**
+         * Upgrades the directory and loads the indexes after opening, it is run once by the background task
+         * started after opening or by the first caller of {@link #awaitIndexesSync()}, whichever comes first.
+         */
+        @SyncTask
+        private void startIndexLoad()
+        {
+            if (!this.indexLoadStarted.compareAndSet(false, true))
+                return;
+
+            try
+            {
+                this.upgradeSync();
+                this.loadIndexesSync();
+                this.indexLoad.complete(null);
+            }
+            catch (Exception e)
+            {
+                logError(e);
+                this.indexLoad.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * Loads the summaries of the full data files, the rollups, the rank index and the histogram in background
+         * after opening. The summaries are checked with the data files and the missing ones are computed, a snapshot
+         * written with a smaller size is brought up to date from the records after it, only a missing or broken
+         * snapshot is built again from all the records. The records appended meanwhile are added under the append
+         * lock, then the indexes are installed and kept by appending.
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        private void loadIndexesSync() throws Exception
+        {
+            final int size, sealed;
+
+            synchronized (this.appendLock)
+            {
+                size = this.size;
+                sealed = getDataFileIndex(this.currentDataFile);
+            }
+
+            final List<ChunkSummary> summaries = ChunkSummary.readAll(this.summaryFile);
+            final List<WindowSummary> windowSummaries = WindowSummary.readAll(this.windowFile);
+            int valid = 0;
+
+            // the wrong summaries and the summaries after the current data file are dropped
+            while (valid < Math.min(sealed, summaries.size()) && summaries.get(valid).count == this.groupSize
+                   && summaries.get(valid).firstSerial == valid * this.groupSize)
+                valid++;
+
+            if (valid < summaries.size())
+            {
+                summaries.subList(valid, summaries.size()).clear();
+                ChunkSummary.truncate(this.summaryFile, valid);
+            }
+
+            // the window summaries are checked with the summaries of the same data files
+            if (valid < windowSummaries.size())
+            {
+                windowSummaries.subList(valid, windowSummaries.size()).clear();
+                WindowSummary.truncate(this.windowFile, valid);
+            }
+
+            this.summarizeDataFiles(summaries, windowSummaries, sealed);
+
+            final boolean rebuilt = this.indexes.loadSync(size);
+
+            synchronized (this.appendLock)
+            {
+                this.indexes.addRange(size, this.size);
+                this.summarizeDataFiles(summaries, windowSummaries, getDataFileIndex(this.currentDataFile));
+                this.layoutLock.writeLock().lock();
+
+                try
+                {
+                    this.summaries.addAll(summaries);
+                    this.windowSummaries.addAll(windowSummaries);
+                    this.indexed = true;
+                }
+                finally
+                {
+                    this.layoutLock.writeLock().unlock();
+                }
+
+                // the next load reads the snapshots which are built again instead of building them again
+                if (rebuilt && this.size != 0)
+                    this.indexes.writeSnapshots(this.size);
+            }
+        }
+
+        /**
+         * Computes the summaries and the window summaries of the full data files which are not in the given lists,
+         * they are appended to the lists and the summary files.
+         *
+         * @param summaries         the summaries of the first full data files
+         * @param windowSummaries   the window summaries of the first full data files
+         * @param sealed            the number of the full data files
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        private void summarizeDataFiles(final List<ChunkSummary> summaries, final List<WindowSummary> windowSummaries, int sealed) throws Exception
+        {
+            while (summaries.size() < sealed)
+            {
+                final int offset = summaries.size() * this.groupSize;
+                final ChunkSummary summary = ChunkSummary.of(this.getRangeSync(offset, offset + this.groupSize));
+                ChunkSummary.append(this.summaryFile, summary);
+                summaries.add(summary);
+            }
+
+            while (windowSummaries.size() < sealed)
+            {
+                final WindowSummary summary = this.summarizeWindows(windowSummaries.size());
+                WindowSummary.append(this.windowFile, summary);
+                windowSummaries.add(summary);
+            }
+        }
+
+        /**
+         * Makes the next data file the current data file after the current one is full, the summary and the
+         * window summary of the full data file are written to the sidecar files.
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        private void nextDataFile() throws Exception
+        {
+            // the data files which are not aligned are appended after the last one
+            final int index = this.aligned ? this.size / this.groupSize : getDataFileIndex(this.currentDataFile) + 1;
+
+            // the summary is already written if the journal replays records before the last checkpoint,
+            // and it is computed by loading the indexes if they are not loaded yet
+            if (this.indexed && this.summaries.size() == index - 1)
+                this.appendSummary(ChunkSummary.of(this.readChunk(this.currentDataFile)));
+
+            if (this.indexed && this.windowSummaries.size() == index - 1)
+                this.appendWindowSummary(this.summarizeWindows(index - 1));
+
+            this.rollDataFile(index);
+        }
+
+        /**
+         * Appends the given summary to the summaries in memory and the summary file.
+         *
+         * @param summary       the summary of the next full data file
+         *
+         * @throws Exception    if error occurs, for example permission denied
+         */
+        @SyncTask
+        private void appendSummary(final ChunkSummary summary) throws Exception
+        {
+            ChunkSummary.append(this.summaryFile, summary);
+            this.summaries.add(summary);
+        }
+
+        /**
+         * Appends the given window summary to the window summaries in memory and the window file.
+         *
+         * @param summary       the window summary of the next full data file
+         *
+         * @throws Exception    if error occurs, for example permission denied
+         */
+        @SyncTask
+        private void appendWindowSummary(final WindowSummary summary) throws Exception
+        {
+            WindowSummary.append(this.windowFile, summary);
+            this.windowSummaries.add(summary);
+        }
+
+        /**
+         * Computes the summary of the windows which end in the given data file, the records of the data file
+         * and at most 99 records before it are read.
+         *
+         * @param index         the index of the data file
+         * @return              the best and worst window results of the data file
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        private WindowSummary summarizeWindows(int index) throws Exception
+        {
+            final int offset = index * this.groupSize, from = Math.max(offset - WindowSummary.MAX_WINDOW_SIZE + 1, 0);
+            return WindowSummary.of(this.getRangeSync(from, offset + this.groupSize), offset - from);
+        }
+
+        /**
+         * Returns the record with the given serial in ui thread (not recommended use directly).
+         * In columnar storage only the record is read from the mapped column file, other storages
+         * decode the data file which contains the record.
+         *
+         * @param serial        the serial of the record, from 0 to size - 1
+         * @return              the record with the given serial
+         *
+         * @throws Exception    if the serial is out of range or error occurs while reading
+         */
+        @SyncTask
+        public Data getDataSync(int serial) throws Exception
+        {
+            if (serial < 0 || serial >= this.size)
+                throw new IndexOutOfBoundsException(BasicUtils.combined("Serial: ", serial, " size: ", this.size));
+
+            this.layoutLock.readLock().lock();
+
+            try
+            {
+                if (!this.aligned)
+                    return this.getRangeSync(serial, serial + 1).getData(0);
+
+                final File dataFile = this.getDataFile(serial / this.groupSize);
+                final int index = serial % this.groupSize;
+
+                if (this.storage == COLUMNAR_STORAGE && dataFile.equals(this.currentDataFile))
+                    return this.currentColumns.getData(index);
+
+                if (getFileStorage(dataFile) == COLUMNAR_STORAGE && !this.packedIndexes.contains(serial / this.groupSize))
+                    return ColumnStore.open(dataFile, false).getData(index);
+
+                return this.readChunk(dataFile).getData(index);
+            }
+            finally
+            {
+                this.layoutLock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Returns the records in serial range [from, to) in ui thread (not recommended use directly).
+         * Only the data files covering the range are read, binary segment files and column files
+         * only read the bytes of the records in the range.
+         *
+         * @param from          the first serial, inclusive
+         * @param to            the last serial, exclusive, it is clamped to the size
+         * @return              the records in primitive columns, empty if the range is empty
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        public Chunk getRangeSync(int from, int to) throws Exception
+        {
+            this.layoutLock.readLock().lock();
+
+            try
+            {
+                final int start = Math.max(from, 0), end = Math.max(Math.min(to, this.size), start);
+                final int[] serials = new int[end - start];
+                final double[] times = new double[end - start];
+                final byte[] flags = new byte[end - start];
+
+                if (!this.aligned)
+                    return this.scanRange(start, end);
+
+                for (int serial = start; serial < end; )
+                {
+                    final int index = serial / this.groupSize, offset = index * this.groupSize;
+                    final Chunk part = this.readChunk(this.getDataFile(index), serial - offset, Math.min(end - offset, this.groupSize));
+
+                    if (part.size != Math.min(end - offset, this.groupSize) - (serial - offset))
+                        throw new IOException(BasicUtils.combined("Data file is missing records: ", this.getDataFile(index).getAbsolutePath()));
+
+                    System.arraycopy(part.serials, 0, serials, serial - start, part.size);
+                    System.arraycopy(part.times, 0, times, serial - start, part.size);
+                    System.arraycopy(part.flags, 0, flags, serial - start, part.size);
+                    serial += part.size;
+                }
+
+                return new Chunk(serials, times, flags, end - start);
+            }
+            finally
+            {
+                this.layoutLock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Returns the records in serial range [from, to) by reading the data files in order, it is used before
+         * the data files are aligned. The caller must hold the read lock of the layout.
+         *
+         * @param start         the first serial, inclusive
+         * @param end           the last serial, exclusive, it must not be greater than the size
+         * @return              the records in primitive columns
+         *
+         * @throws Exception    if a record is missing or error occurs while reading
+         */
+        @SyncTask
+        private Chunk scanRange(int start, int end) throws Exception
+        {
+            final int[] serials = new int[end - start];
+            final double[] times = new double[end - start];
+            final byte[] flags = new byte[end - start];
+            int next = start;
+
+            for (final File dataFile : this.dataFiles)
+            {
+                if (next >= end)
+                    break;
+
+                final Chunk chunk = this.readChunk(dataFile);
+
+                for (int i = 0; i < chunk.size && next < end; i++)
+                {
+                    // old directories may contain a record in two data files
+                    if (chunk.serials[i] < next)
+                        continue;
+
+                    if (chunk.serials[i] != next)
+                        throw new IOException(BasicUtils.combined("Record: ", next, " is missing in data file: ", dataFile.getAbsolutePath()));
+
+                    serials[next - start] = chunk.serials[i];
+                    times[next - start] = chunk.times[i];
+                    flags[next - start] = chunk.flags[i];
+                    next++;
+                }
+            }
+
+            if (next < end)
+                throw new IOException(BasicUtils.combined("Records from: ", next, " are missing in: ", this.rootDirectory.getAbsolutePath()));
+
+            return new Chunk(serials, times, flags, end - start);
+        }
+
+        /**
+         * Returns the records in serial range [from, to) in specific thread (recommended).
+         * It is useful for paging, for example a page of the history screen or the chart.
+         *
+         * @param from          the first serial, inclusive
+         * @param to            the last serial, exclusive, it is clamped to the size
+         * @return              the records in primitive columns, empty if the range is empty
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @AsyncTask
+        public Chunk getRange(int from, int to) throws Exception
+        {
+            return BasicUtils.handleFutureResult(Scheduler.submit(Scheduler.READ, () -> this.getRangeSync(from, to)));
+        }
+
+        /**
+         * Returns a sequential stream over the times in serial range [from, to), see {@link #timeIterator(int)}.
+         *
+         * @param from          the first serial, inclusive
+         * @param to            the last serial, exclusive, it is clamped to the size
+         * @return              the stream in serial order
+         */
+        @SyncTask
+        public DoubleStream timeStream(int from, int to)
+        {
+            final int size;
+
+            synchronized (this.appendLock)
+            {
+                size = this.size;
+            }
+
+            return this.timeStream(from).limit(Math.max(Math.min(to, size) - Math.max(from, 0), 0));
+        }
+
+        /**
+         * Returns an iterator over the times in the record from the given serial, a DNF time is {@link Data#DNF}.
+         * The data files are decoded into primitive columns one at a time without creating any Data object.
+         * The iterator reads files while it moves, it should be used in a worker thread.
+         *
+         * @param fromSerial    the serial of the first time
+         * @return              the iterator in serial order
+         */
+        @SyncTask
+        public PrimitiveIterator.OfDouble timeIterator(int fromSerial)
+        {
+            final int end, groupSize;
+
+            // the size and the group size are only changed while the append lock is held
+            synchronized (this.appendLock)
+            {
+                end = this.size;
+                groupSize = this.groupSize;
+            }
+
+            return new PrimitiveIterator.OfDouble()
+            {
+                private int position = Math.min(Math.max(fromSerial, 0), end);
+                private int partStart = 0;
+                private Chunk part = null;
+
+                @Override
+                public boolean hasNext()
+                {
+                    return this.position < end;
+                }
+
+                @Override
+                public double nextDouble()
+                {
+                    if (!this.hasNext())
+                        throw new NoSuchElementException();
+
+                    if (this.part == null || this.position < this.partStart || this.position >= this.partStart + this.part.size)
+                    {
+                        final int from = this.position - this.position % groupSize;
+
+                        try
+                        {
+                            this.part = NumberResponse.this.getRangeSync(from, Math.min(from + groupSize, end));
+                            this.partStart = from;
+                        }
+                        catch (IOException e)
+                        {
+                            throw new UncheckedIOException(e);
+                        }
+                        catch (Exception e)
+                        {
+                            throw new UncheckedIOException(new IOException(e));
+                        }
+                    }
+
+                    return this.part.times[this.position++ - this.partStart];
+                }
+            };
+        }
+
+        /**
+         * Returns an iterator over the data objects in the record from the given serial, see {@link Recorder#iterator(int)}.
+         * The records appended after this method returns are not included.
+         *
+         * @param fromSerial    the serial of the first data object
+         * @return              the iterator in serial order
+         */
+        @SyncTask
+        @Override
+        public HistoryIterator iterator(int fromSerial)
+        {
+            // the size and the group size are only changed while the append lock is held
+            synchronized (this.appendLock)
+            {
+                return super.iterator(fromSerial);
+            }
+        }
+
+        /**
+         * Returns the records in serial range [from, to) for {@link HistoryIterator}, see {@link #getRangeSync(int, int)}.
+         * The range is resolved under the read lock of the layout, so it is right even if the data files are
+         * aligned or rechunked after the iterator is created.
+         *
+         * @param from          the first serial, inclusive
+         * @param to            the last serial, exclusive
+         * @return              the data objects in serial order
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        @Override
+        protected List<Data> readPartSync(int from, int to) throws Exception
+        {
+            return this.getRangeSync(from, to).toDataList();
+        }
+
+        /**
+         * Returns a sequential stream over the times in the record from the given serial, see {@link #timeIterator(int)}.
+         * For example the number of valid times is {@code timeStream(0).filter(t -> t != Data.DNF).count()}.
+         *
+         * @param fromSerial    the serial of the first time
+         * @return              the stream in serial order
+         */
+        @SyncTask
+        public DoubleStream timeStream(int fromSerial)
+        {
+            final int count = this.size - Math.min(Math.max(fromSerial, 0), this.size);
+            return StreamSupport.doubleStream(Spliterators.spliterator(this.timeIterator(fromSerial), count,
+                                              Spliterator.ORDERED | Spliterator.NONNULL), false);
+        }
+
+        /**
+         * Returns the record with the given serial in specific thread (recommended).
+         *
+         * @param serial        the serial of the record, from 0 to size - 1
+         * @return              the record with the given serial
+         *
+         * @throws Exception    if the serial is out of range or error occurs while reading
+         */
+        @AsyncTask
+        public Data getData(int serial) throws Exception
+        {
+            return BasicUtils.handleFutureResult(Scheduler.submit(Scheduler.READ, () -> this.getDataSync(serial)));
+        }
+
+        /**
+         * Writes the manifest file with all the statistics in memory, and clears the journal.
+         * After a checkpoint, loading the recorder does not need to replay any attempt.
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        protected void checkpointSync() throws Exception
+        {
+            this.updateManifestFile();
+            this.writeTailSnapshot();
+
+            // the steps are kept in the tail file, the undo file is left by older versions
+            if (this.undoFile.exists())
+                FileHelper.deleteFile(this.undoFile);
+
+            // the indexes which are still loading are brought up to date from their own snapshots
+            if (this.indexed)
+                this.indexes.writeSnapshots(this.size);
+
+            RecordLog.truncate(this.journalFile, 0);
+            this.checkpointSize = this.size;
+
+            if (this.packing != PACK_NONE && this.getPackableCount() > this.packedIndexes.size())
+            {
+                Scheduler.execute(Scheduler.BACKGROUND, () -> {
+                    try {this.packSealedDataFilesSync();}
+                    catch (Exception e) {logError(e);}
+                });
+            }
+        }
+
+        /**
+         * Writes the size, the last 100 times and the steps kept for removing the last attempts to the tail file,
+         * they agree with the manifest file written by the same checkpoint, so opening reads only this file besides
+         * the manifest file and the journal. The tail file is written to a temporary file and renamed.
+         *
+         * @throws Exception    if error occurs, for example permission denied
+         */
+        @SyncTask
+        private void writeTailSnapshot() throws Exception
+        {
+            final List<List<StreamingAggregator.Step<Double>>> windows = Arrays.asList(this.mo3.getSteps(), this.ao5.getSteps(),
+                                                                                       this.ao12.getSteps(), this.ao100.getSteps());
+            int length = Integer.BYTES * 3 + Double.BYTES * this.last100Data.size() + this.undoSteps.size() * UndoStep.SIZE;
+
+            for (final List<StreamingAggregator.Step<Double>> steps : windows)
+                length += Integer.BYTES + steps.size() * Double.BYTES * 5;
+
+            final ByteBuffer buffer = ByteBuffer.allocate(length);
+            buffer.putInt(this.size).putInt(this.last100Data.size());
+
+            for (final double time : this.last100Data)
+                buffer.putDouble(time);
+
+            buffer.putInt(this.undoSteps.size());
+
+            for (final UndoStep step : this.undoSteps)
+                step.write(buffer);
+
+            for (final List<StreamingAggregator.Step<Double>> steps : windows)
+            {
+                buffer.putInt(steps.size());
+
+                // null is stored as NaN, a time is never NaN
+                for (final StreamingAggregator.Step<Double> step : steps)
+                {
+                    buffer.putDouble(toDouble(step.evicted)).putDouble(toDouble(step.result)).putDouble(toDouble(step.min))
+                          .putDouble(toDouble(step.max)).putDouble(toDouble(step.average));
+                }
+            }
+
+            SnapshotFile.write(this.tailFile, buffer.array());
+        }
+
+        /**
+         * Reads the steps kept for removing the last attempts from the undo file written by older versions.
+         * Nothing is read if the file does not exist or it does not agree with the size in the manifest,
+         * then only the attempts added after loading can be removed.
+         *
+         * @throws Exception    if error occurs, for example permission denied
+         */
+        @SyncTask
+        private void readUndoSnapshot() throws Exception
+        {
+            if (!this.undoFile.exists() || this.undoFile.length() < Integer.BYTES * 2)
+                return;
+
+            final byte[] bytes = new byte[(int)(this.undoFile.length())];
+
+            try (final RandomAccessFile input = new RandomAccessFile(this.undoFile, "r"))
+            {
+                input.readFully(bytes);
+            }
+
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+            if (buffer.getInt() == this.size)
+                this.readUndoSteps(buffer, this.undoFile);
+        }
+
+        /**
+         * Reads the steps kept for removing the last attempts from the given buffer, nothing is read if the
+         * steps are truncated, then only the attempts added after loading can be removed.
+         *
+         * @param buffer        the content of the tail file after the times, or the undo file after the size
+         * @param file          the file which is read, for the warning
+         *
+         * @throws Exception    if error occurs, for example the steps are broken
+         */
+        private void readUndoSteps(final ByteBuffer buffer, final File file) throws Exception
+        {
+            try
+            {
+                final List<UndoStep> undoSteps = new ArrayList<>();
+                final List<List<StreamingAggregator.Step<Double>>> windows = new ArrayList<>();
+
+                for (int i = 0, count = buffer.getInt(); i < count; i++)
+                    undoSteps.add(UndoStep.read(buffer));
+
+                for (int i = 0; i < 4; i++)
+                {
+                    final List<StreamingAggregator.Step<Double>> steps = new ArrayList<>();
+
+                    for (int j = 0, count = buffer.getInt(); j < count; j++)
+                    {
+                        steps.add(new StreamingAggregator.Step<>(toDouble(buffer.getDouble()), toDouble(buffer.getDouble()),
+                                  toDouble(buffer.getDouble()), toDouble(buffer.getDouble()), toDouble(buffer.getDouble())));
+                    }
+
+                    windows.add(steps);
+                }
+
+                this.undoSteps.addAll(undoSteps);
+                this.mo3.setSteps(windows.get(0));
+                this.ao5.setSteps(windows.get(1));
+                this.ao12.setSteps(windows.get(2));
+                this.ao100.setSteps(windows.get(3));
+            }
+            catch (BufferUnderflowException e)
+            {
+                logWarning("Undo steps are truncated and ignored: ", file.getAbsolutePath());
+            }
+        }
+
+        /**
+         * Keeps the steps of the last {@link #UNDO_DEPTH} attempts in all the rolling windows.
+         */
+        private void enableUndo()
+        {
+            this.mo3.setUndoDepth(UNDO_DEPTH);
+            this.ao5.setUndoDepth(UNDO_DEPTH);
+            this.ao12.setUndoDepth(UNDO_DEPTH);
+            this.ao100.setUndoDepth(UNDO_DEPTH);
+        }
+
+        private static double toDouble(final Double value)
+        {
+            return (value == null) ? Double.NaN : value;
+        }
+
+        private static Double toDouble(double value)
+        {
+            return Double.isNaN(value) ? null : value;
+        }
+
+        /**
+         * Reads the last 100 times from the tail file, so loading does not decode any data file.
+         *
+         * @return              the content of the tail file after the times, it is empty if the tail file is
+         *                      written by older versions without the steps for removing the last attempts,
+         *                      null if it does not exist or it does not agree with the size in the manifest
+         *
+         * @throws Exception    if error occurs, for example permission denied
+         */
+        @SyncTask
+        private ByteBuffer readTailSnapshot() throws Exception
+        {
+            if (!this.tailFile.exists() || this.tailFile.length() < Integer.BYTES * 2)
+                return null;
+
+            final byte[] bytes = new byte[(int)(this.tailFile.length())];
+
+            try (final RandomAccessFile input = new RandomAccessFile(this.tailFile, "r"))
+            {
+                input.readFully(bytes);
+            }
+
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            final int size = buffer.getInt(), count = buffer.getInt();
+
+            if (size != this.size || count != Math.min(size, 100) || buffer.remaining() < count * Double.BYTES)
+                return null;
+
+            for (int i = 0; i < count; i++)
+                this.last100Data.add(buffer.getDouble());
+
+            return buffer;
+        }
+
+        /**
+         * Returns the daily or weekly rollups with key in range [fromKey, toKey), they are kept in memory,
+         * so no file is read. For example the rows of March 2025 are {@code getRollups(Rollups.DAY, 20250301, 20250401)}.
+         *
+         * @param period        {@link Rollups#DAY} or {@link Rollups#WEEK}
+         * @param fromKey       the first key, inclusive, see {@link Rollups#getDayKey(long)} and {@link Rollups#getWeekKey(long)}
+         * @param toKey         the last key, exclusive
+         * @return              the summaries of the records in every period in key order, a period without records is absent
+         *
+         * @throws Exception    if loading the indexes after opening fails, see {@link #awaitIndexes()}
+         */
+        public SortedMap<Integer, ChunkSummary> getRollups(byte period, int fromKey, int toKey) throws Exception
+        {
+            this.awaitIndexesSync();
+            return this.indexes.getRollups(period, fromKey, toKey);
+        }
+
+        /**
+         * Returns the rank of the given time among all the valid attempts in O(log n), the index is kept in memory,
+         * so no file is read. For example an attempt is shown as "37th of 52000" right after it is added.
+         * The times within the same bucket of {@link RankIndex} share a rank.
+         *
+         * @param time          the time to rank
+         * @return              1 for the best, null if the time is {@link Data#DNF}
+         *
+         * @throws Exception    if loading the indexes after opening fails, see {@link #awaitIndexes()}
+         */
+        public Integer getRank(double time) throws Exception
+        {
+            this.awaitIndexesSync();
+            return this.indexes.getRank(time);
+        }
+
+        /**
+         * Returns the percentage of the valid attempts which are not slower than the given time in O(log n),
+         * for example 0.07 means the time is in the top 0.07%.
+         *
+         * @param time          the time of an attempt
+         * @return              the percentage from 0 to 100, null if the time is {@link Data#DNF} or no attempt is valid
+         *
+         * @throws Exception    if loading the indexes after opening fails, see {@link #awaitIndexes()}
+         */
+        public Double getPercentile(double time) throws Exception
+        {
+            this.awaitIndexesSync();
+            return this.indexes.getPercentile(time);
+        }
+
+        /**
+         * Returns the number of valid attempts in the rank index, the denominator of {@link #getPercentile(double)}.
+         *
+         * @return              the number of valid attempts
+         *
+         * @throws Exception    if loading the indexes after opening fails, see {@link #awaitIndexes()}
+         */
+        public int getRankedSize() throws Exception
+        {
+            this.awaitIndexesSync();
+            return this.indexes.getRankedSize();
+        }
+
+        /**
+         * Returns the time at the given quantile of all the valid attempts, it is estimated by a sketch in bounded
+         * memory, so no file is read. For example the median is {@code getQuantile(0.5)}. While the sketch is built
+         * again after attempts are removed or changed, it still contains the old times, see {@link #awaitQuantiles()}.
+         *
+         * @param quantile      from 0 to 1
+         * @return              the estimated time, null if no attempt is valid
+         */
+        public Double getQuantile(double quantile)
+        {
+            return this.indexes.getQuantile(quantile);
+        }
+
+        /**
+         * Returns a copy of the quantile sketch of all the valid attempts, the sketches of several recorders
+         * are merged by {@link QuantileSketch#merge(QuantileSketch)}, for example
+         * {@code classic.getQuantiles().merge(challenge.getQuantiles()).merge(blind.getQuantiles()).getMedian()}.
+         *
+         * @return              the copy of the sketch
+         */
+        public QuantileSketch getQuantiles()
+        {
+            return this.indexes.getQuantiles();
+        }
+
+        /**
+         * Returns a copy of the quantile sketch after it agrees with the records, the sketch is built again in
+         * background after attempts are removed or changed, and the future is completed after that.
+         *
+         * @return              the future of the copy of the sketch
+         */
+        @AsyncTask
+        public CompletableFuture<QuantileSketch> awaitQuantiles()
+        {
+            return this.indexes.awaitQuantiles();
+        }
+
+        /**
+         * Returns a copy of the histogram of all the valid attempts, it is kept in memory, so no file is read.
+         * A percentile is read by {@link TimingHistogram#getValueAtPercentile(double)} in O(buckets).
+         *
+         * @return              the copy of the histogram
+         *
+         * @throws Exception    if loading the indexes after opening fails, see {@link #awaitIndexes()}
+         */
+        public TimingHistogram getHistogram() throws Exception
+        {
+            this.awaitIndexesSync();
+            return this.indexes.getHistogram();
+        }
+
+        /**
+         * Returns the histogram of the valid attempts in serial range [from, to) in ui thread (not recommended use
+         * directly), for example the chart of a session. The histograms of several ranges are merged by
+         * {@link TimingHistogram#merge(TimingHistogram)}.
+         *
+         * @param from          the first serial, inclusive
+         * @param to            the last serial, exclusive, it is clamped to the size
+         * @return              the histogram of the range in the same layout as {@link #getHistogram()}
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        public TimingHistogram getHistogramSync(int from, int to) throws Exception
+        {
+            this.awaitIndexesSync();
+            final TimingHistogram histogram = this.indexes.getHistogram();
+            histogram.clear();
+
+            for (int serial = Math.max(from, 0), end = Math.min(to, this.size); serial < end; serial += this.groupSize)
+            {
+                final Chunk records = this.getRangeSync(serial, Math.min(serial + this.groupSize, end));
+
+                for (int i = 0; i < records.size; i++)
+                {
+                    if (records.isValid(i))
+                        histogram.add(records.times[i]);
+                }
+            }
+
+            return histogram;
+        }
+
+        /**
+         * Returns the histogram of the valid attempts in serial range [from, to) in specific thread (recommended).
+         *
+         * @param from          the first serial, inclusive
+         * @param to            the last serial, exclusive, it is clamped to the size
+         * @return              the histogram of the range
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @AsyncTask
+        public TimingHistogram getHistogram(int from, int to) throws Exception
+        {
+            return BasicUtils.handleFutureResult(Scheduler.submit(Scheduler.READ, () -> this.getHistogramSync(from, to)));
+        }
+
+        /**
+         * Writes the manifest file with the quantile sketch of the valid attempts and the current, best and worst records.
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @Override
+        @SyncTask
+        protected void updateManifestFile() throws Exception
+        {
+            // the base constructor writes the manifest file before the indexes are created, a sketch which is being
+            // built again is not stored, so the next load builds it again if the application is killed meanwhile
+            final JSONObject quantilesJson = (this.indexes == null) ? null : this.indexes.getQuantilesJson();
+
+            if (quantilesJson != null)
+                this.manifestJson.put(QUANTILES_KEY, quantilesJson);
+            else
+                this.manifestJson.remove(QUANTILES_KEY);
+
+            this.updateRecordsJson();
+            super.updateManifestFile();
+        }
+
+        /**
+         * Returns the head of the exported document, it is taken under the append lock, so the sizes and statistics
+         * match the records appended before, even if they are not checkpointed yet.
+         *
+         * @return              the head of the document without the records
+         *
+         * @throws Exception    if error occurs while copying the manifest
+         */
+        @Override
+        @SyncTask
+        protected JSONObject getExportHead() throws Exception
+        {
+            synchronized (this.appendLock)
+            {
+                this.updateRecordsJson();
+                return super.getExportHead();
+            }
+        }
+
+        /**
+         * Puts the current, best and worst records to the statistics of all the attempts in the manifest, the records
+         * keep no JSON object while appending, it is built only when the manifest is written or exported.
+         */
+        private void updateRecordsJson()
+        {
+            this.AllJson.put(CURRENT_KEY, (this.current == null) ? null : this.current.toJson())
+                        .put(BEST_KEY, (this.best == null) ? null : this.best.toJson())
+                        .put(WORST_KEY, (this.worst == null) ? null : this.worst.toJson());
+        }
+
+        /**
+         * Returns the timestamps of the records in serial range [from, to) in ui thread (not recommended use directly).
+         *
+         * @param from          the first serial, inclusive
+         * @param to            the last serial, exclusive, it is clamped to the size
+         * @return              the timestamps in milliseconds since epoch, {@link TimestampLog#NO_TIMESTAMP} for a record without one
+         *
+         * @throws Exception    if error occurs, for example permission denied
+         */
+        @Override
+        @SyncTask
+        public long[] getTimestampsSync(int from, int to) throws Exception
+        {
+            return TimestampLog.read(this.timestampFile, from, Math.max(Math.min(to, this.size), from));
+        }
+
+        /**
+         * Returns the timestamps of the records in serial range [from, to) in specific thread (recommended).
+         *
+         * @param from          the first serial, inclusive
+         * @param to            the last serial, exclusive, it is clamped to the size
+         * @return              the timestamps in milliseconds since epoch, {@link TimestampLog#NO_TIMESTAMP} for a record without one
+         *
+         * @throws Exception    if error occurs, for example permission denied
+         */
+        @AsyncTask
+        public long[] getTimestamps(int from, int to) throws Exception
+        {
+            return BasicUtils.handleFutureResult(Scheduler.submit(Scheduler.READ, () -> this.getTimestampsSync(from, to)));
+        }
+
+        /**
+         * Returns the number of data files which can be packed. A data file is packed only if it is full and
+         * the next checkpoint starts after it, so loading and replaying the journal never append to it.
+         * Nothing is packed before the data files are aligned.
+         *
+         * @return              the data files with index less than the returned value can be packed
+         */
+        private int getPackableCount()
+        {
+            if (!this.aligned)
+                return 0;
+
+            return Math.min(getDataFileIndex(this.currentDataFile), Math.max(this.checkpointSize - 1, 0) / this.groupSize);
+        }
+
+        /**
+         * Rewrites all the packable full data files in the compact format of {@link ChunkCodec} in ui thread
+         * (not recommended use directly). The packed file is written to a temporary file and renamed, then
+         * the data file in the storage format is deleted, reading the recorder gives the same records all the time.
+         *
+         * @return              the number of data files packed
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        protected int packSealedDataFilesSync() throws Exception
+        {
+            synchronized (this.packLock)
+            {
+                final byte packing = this.packing;
+                final int end = this.getPackableCount();
+                int count = 0;
+
+                for (int i = 0; packing != PACK_NONE && i < end; i++)
+                {
+                    if (this.packedIndexes.contains(i))
+                        continue;
+
+                    this.packDataFile(i, packing == PACK_DEFLATE);
+                    count++;
+                }
+
+                return count;
+            }
+        }
+
+        /**
+         * Rewrites the full data file with the given index in the compact format of {@link ChunkCodec}, the caller
+         * must hold the pack lock. The packed file is written to a temporary file and renamed, then the data file
+         * in the storage format is deleted.
+         *
+         * @param index         the index of the data file, it must not be packed
+         * @param deflate       whether the records are compressed by DEFLATE
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        private void packDataFile(int index, boolean deflate) throws Exception
+        {
+            final File source = this.getDataFile(index);
+            final File target = new File(this.rootDirectory, BasicUtils.combined(DATA_FILE_PREFIX, index, PACKED_EXTENSION_NAME));
+            final File temporary = new File(this.rootDirectory, BasicUtils.combined(target.getName(), TEMPORARY_EXTENSION_NAME));
+
+            ChunkCodec.write(temporary, this.readChunk(source), deflate);
+
+            if (!temporary.renameTo(target))
+                throw new IOException(BasicUtils.combined("Rename file false: ", temporary.getAbsolutePath()));
+
+            this.dataFiles.set(this.dataFiles.indexOf(source), target);
+            this.packedIndexes.add(index);
+            this.migratedIndexes.remove(index);
+            this.cache.invalidate(source);
+            FileHelper.deleteFile(source);
+        }
+
+        /**
+         * Rewrites all the packable full data files in the compact format in specific thread (recommended).
+         * It is also started in background after every checkpoint if packing is enabled.
+         *
+         * @return              the number of data files packed
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @AsyncTask
+        public int packSealedDataFiles() throws Exception
+        {
+            return BasicUtils.handleFutureResult(Scheduler.submit(Scheduler.BACKGROUND, this::packSealedDataFilesSync));
+        }
+
+        /**
+         * Migrates the data files to the given storage in ui thread (not recommended use directly). The full data files
+         * which are not packed are rewritten in the new storage one at a time, and the pack lock is released after every
+         * file, so the recorder is read and appended during the migration. At last the current data file is rewritten in
+         * the new storage while appending is stopped. The target storage is stored in the manifest file until the
+         * migration is finished and the rewritten data files are found by their extension names, so a migration stopped
+         * by closing the application goes on from the next data file after the recorder is loaded again.
+         *
+         * @param storage       {@link #JSON_STORAGE}, {@link #BINARY_STORAGE} or {@link #COLUMNAR_STORAGE}
+         *
+         * @throws IllegalArgumentException if the storage is unknown
+         * @throws IOException  if a migration to another storage is not finished
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        protected void migrateStorageSync(byte storage) throws Exception
+        {
+            if (storage != JSON_STORAGE && storage != BINARY_STORAGE && storage != COLUMNAR_STORAGE)
+                throw new IllegalArgumentException(BasicUtils.combined("Unknown storage: ", storage));
+
+            // the data files are migrated by index after they are aligned
+            this.awaitIndexesSync();
+
+            synchronized (this.appendLock)
+            {
+                if (this.migration != NO_MIGRATION && this.migration != storage)
+                    throw new IOException(BasicUtils.combined("Migration to storage: ", this.migration, " is not finished"));
+
+                if (this.migration == NO_MIGRATION && this.storage == storage)
+                    return;
+
+                this.migration = storage;
+                this.manifestJson.put(MIGRATION_KEY, storage);
+                this.updateManifestFile();
+            }
+
+            for (int i = 0; ; i++)
+            {
+                synchronized (this.packLock)
+                {
+                    if (this.migration == NO_MIGRATION || i >= this.getPackableCount())
+                        break;
+
+                    this.migrateDataFile(i);
+                }
+            }
+
+            synchronized (this.packLock)
+            {
+                synchronized (this.appendLock)
+                {
+                    // finished by another call
+                    if (this.migration == NO_MIGRATION)
+                        return;
+
+                    // all the data files before the current one are full after the checkpoint
+                    this.checkpointSync();
+
+                    for (int i = 0; i < this.getPackableCount(); i++)
+                        this.migrateDataFile(i);
+
+                    final File source = this.currentDataFile;
+                    this.migrateCurrentDataFile();
+
+                    // the manifest file points to the new storage before the migration is shown as finished
+                    this.manifestJson.put(STORAGE_KEY, storage).remove(MIGRATION_KEY);
+                    this.updateManifestFile();
+                    this.migration = NO_MIGRATION;
+                    FileHelper.deleteFile(source);
+                }
+            }
+        }
+
+        /**
+         * Migrates the data files to the given storage in specific thread (recommended). The recorder can be read
+         * and appended during the migration, {@link #getMigrationProgress()} tells how much is done.
+         *
+         * @param storage       {@link #JSON_STORAGE}, {@link #BINARY_STORAGE} or {@link #COLUMNAR_STORAGE}
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @AsyncTask
+        public void migrateStorage(byte storage) throws Exception
+        {
+            BasicUtils.handleFutureResult(Scheduler.submit(Scheduler.BACKGROUND, () -> {
+                this.migrateStorageSync(storage);
+                return null;
+            }));
+        }
+
+        /**
+         * Returns how much of the running storage migration is done, the packed data files are read in every storage,
+         * so they are counted as migrated.
+         *
+         * @return              the ratio of the data files which are migrated from 0 to 1, null if no migration is running
+         */
+        public Double getMigrationProgress()
+        {
+            if (this.migration == NO_MIGRATION)
+                return null;
+
+            return (double)(this.packedIndexes.size() + this.migratedIndexes.size()) / (getDataFileIndex(this.currentDataFile) + 1);
+        }
+
+        /**
+         * Rewrites the full data file with the given index in the storage of the running migration, the caller must
+         * hold the pack lock. The data file in the old storage is deleted after it is replaced. A packed or already
+         * migrated data file is not changed.
+         *
+         * @param index         the index of the full data file
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        private void migrateDataFile(int index) throws Exception
+        {
+            if (this.packedIndexes.contains(index) || this.migratedIndexes.contains(index))
+                return;
+
+            final File source = this.getDataFile(index);
+            new StorageMigration(this.rootDirectory, new MigrationLayout(), this.migration, this.groupSize).migrate(source, false);
+            FileHelper.deleteFile(source);
+        }
+
+        /**
+         * Rewrites the current data file in the storage of the running migration and makes it the current data file,
+         * appending must be stopped and all the full data files must be migrated by the caller. The file in the old
+         * storage is kept, it is deleted by the caller after the manifest file points to the new storage.
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        private void migrateCurrentDataFile() throws Exception
+        {
+            new StorageMigration(this.rootDirectory, new MigrationLayout(), this.migration, this.groupSize).migrate(this.currentDataFile, true);
+        }
+
+        /**
+         * Upgrades the directory from the version in the manifest file to {@link #VERSION} one step at a time in
+         * background after opening. The version in the manifest file is changed after each step is finished, so
+         * an upgrade stopped by closing the application goes on from the unfinished step.
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        private void upgradeSync() throws Exception
+        {
+            for (final VersionStep step : this.getVersionSteps())
+            {
+                if (!step.from.equals(this.manifestJson.getString(VERSION_KEY)))
+                    continue;
+
+                step.upgrade.call();
+
+                synchronized (this.appendLock)
+                {
+                    this.manifestJson.put(VERSION_KEY, step.to);
+                    this.updateManifestFile();
+                }
+            }
+        }
+
+        /**
+         * Returns the steps which upgrade a directory from each older version to the next one, in order of
+         * the versions in {@link #VERSIONS}.
+         *
+         * @return              the steps of all the versions
+         */
+        private List<VersionStep> getVersionSteps()
+        {
+            return Collections.singletonList(
+                // 2.0: the data file n contains the records from n * groupSize, which range reads and summaries depend on
+                new VersionStep("1.0", "2.0", () -> {
+                    if (!this.aligned)
+                        this.alignDataFilesSync();
+
+                    return null;
+                })
+            );
+        }
+
+        /**
+         * VersionStep rewrites the data files of a directory from one version to the next one. A step rewrites
+         * one data file at a time and keeps its progress in the directory, so it can go on after it is stopped.
+         */
+        private static final class VersionStep
+        {
+            private final String from;
+            private final String to;
+            private final Callable<Void> upgrade;
+
+            private VersionStep(final String from, final String to, final Callable<Void> upgrade)
+            {
+                this.from = from;
+                this.to = to;
+                this.upgrade = upgrade;
+            }
+        }
+
+        /**
+         * Rewrites all the data files so that every data file except the last one contains exactly the given number
+         * of records in ui thread (not recommended use directly). The records in the full data files are copied
+         * to the rechunk directory while the recorder is still read and appended, only the records after them are
+         * copied while appending is stopped, then the new data files are swapped in with the write lock of the layout.
+         *
+         * @param groupSize     the number of records per data file, at least 1
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        protected void rechunkSync(int groupSize) throws Exception
+        {
+            if (groupSize < 1)
+                throw new IllegalArgumentException(BasicUtils.combined("Group size must be positive, but given: ", groupSize));
+
+            // the summaries are replaced by rechunking, so they must be loaded
+            this.awaitIndexesSync();
+            this.rechunkDataFiles(groupSize, false);
+        }
+
+        /**
+         * Rewrites all the data files with the given number of records per data file in specific thread (recommended).
+         * The recorder can be read and appended during rechunking, for example rechunking a long history in background.
+         *
+         * @param groupSize     the number of records per data file, at least 1
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @AsyncTask
+        public void rechunk(int groupSize) throws Exception
+        {
+            BasicUtils.handleFutureResult(Scheduler.submit(Scheduler.BACKGROUND, () -> {
+                this.rechunkSync(groupSize);
+                return null;
+            }));
+        }
+
+        /**
+         * Copies all the records to new data files with the given group size and swaps them in. The records are
+         * copied without any lock except the last ones, which are copied with the pack lock and the append lock
+         * held just before the swap. The copy starts again if the records are changed or the storage is migrated
+         * meanwhile.
+         *
+         * @param groupSize     the number of records per data file, at least 1
+         * @param resumable     whether the progress is kept in the rechunk directory, so a copy stopped by closing
+         *                      the application goes on from the last full data file after opening
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        private void rechunkDataFiles(int groupSize, boolean resumable) throws Exception
+        {
+            synchronized (this.rechunkLock)
+            {
+                while (true)
+                {
+                    final Rechunker rechunker = new Rechunker(this.rootDirectory, new RechunkSource(), this.storage, groupSize, resumable);
+                    final int generation, sealed;
+
+                    synchronized (this.appendLock)
+                    {
+                        generation = this.recordGeneration;
+                        sealed = this.getCurrentOffset();
+                    }
+
+                    // the full data files are not changed by appending
+                    rechunker.copy(sealed);
+
+                    synchronized (this.packLock)
+                    {
+                        synchronized (this.appendLock)
+                        {
+                            if (generation != this.recordGeneration || rechunker.getStorage() != this.storage)
+                                continue;
+
+                            this.checkpointSync();
+                            rechunker.copy(this.size);
+                            this.layoutLock.writeLock().lock();
+
+                            try
+                            {
+                                final List<ChunkSummary> summaries = rechunker.finish(this.size);
+                                this.swapDataFiles(rechunker.getStaging(), rechunker.getNames(), rechunker.getGroupSize());
+                                this.aligned = true;
+
+                                // the summaries of the data files which are not aligned are loaded after aligning
+                                if (this.indexed)
+                                {
+                                    this.summaries.clear();
+                                    this.summaries.addAll(summaries);
+                                    this.windowSummaries.clear();
+                                    this.windowSummaries.addAll(rechunker.getWindowSummaries(summaries.size()));
+                                }
+                            }
+                            finally
+                            {
+                                this.layoutLock.writeLock().unlock();
+                            }
+
+                            this.checkpointSync();
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Checks whether the data file n contains the records from n * groupSize, which the range reads and the
+         * summaries depend on. A directory which is not aligned is rechunked with the same group size, then the
+         * manifest is marked as aligned so the check is done only once. It runs in background after opening,
+         * the data files are read one by one in order until then, and an aligning stopped by closing the
+         * application goes on from its progress.
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        private void alignDataFilesSync() throws Exception
+        {
+            if (!Rechunker.hasProgress(this.rootDirectory) && this.checkAlignment())
+            {
+                synchronized (this.appendLock)
+                {
+                    this.layoutLock.writeLock().lock();
+
+                    try
+                    {
+                        this.manifestJson.put(ALIGNED_KEY, true);
+                        this.aligned = true;
+                    }
+                    finally
+                    {
+                        this.layoutLock.writeLock().unlock();
+                    }
+
+                    this.updateManifestFile();
+                }
+
+                return;
+            }
+
+            this.rechunkDataFiles(this.groupSize, true);
+        }
+
+        /**
+         * Returns whether every data file n contains exactly the records from n * groupSize, the last one may
+         * contain less. The full data files are read without any lock, the data files from the current one are
+         * read with the append lock held.
+         *
+         * @return              whether the data files are aligned
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        private boolean checkAlignment() throws Exception
+        {
+            int checked = 0;
+
+            for (final File dataFile : this.dataFiles)
+            {
+                if (dataFile.equals(this.currentDataFile))
+                    break;
+
+                if (!this.isAligned(dataFile, checked, false))
+                    return false;
+
+                checked++;
+            }
+
+            synchronized (this.appendLock)
+            {
+                for (int i = checked; i < this.dataFiles.size(); i++)
+                {
+                    if (!this.isAligned(this.dataFiles.get(i), i, i == this.dataFiles.size() - 1))
+                        return false;
+                }
+
+                return this.dataFiles.isEmpty() || this.dataFiles.get(this.dataFiles.size() - 1).equals(this.currentDataFile);
+            }
+        }
+
+        /**
+         * Returns whether the given data file is the data file with the given position in an aligned directory.
+         *
+         * @param dataFile      the data file to check
+         * @param position      the position of the data file in the sorted data files
+         * @param last          whether the data file is the last one, which may not be full
+         * @return              whether the data file is aligned
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        private boolean isAligned(final File dataFile, int position, boolean last) throws Exception
+        {
+            final Chunk chunk = this.readChunk(dataFile);
+
+            return getDataFileIndex(dataFile) == position && (chunk.size == 0 || chunk.serials[0] == position * this.groupSize)
+                   && (last ? chunk.size <= this.groupSize : chunk.size == this.groupSize);
+        }
+
+        /**
+         * Returns the serial of the first record in the current data file, it is the size if the current data file
+         * is empty. The caller must hold the append lock.
+         *
+         * @return              the serial of the first record in the current data file
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        private int getCurrentOffset() throws Exception
+        {
+            if (this.aligned)
+                return getDataFileIndex(this.currentDataFile) * this.groupSize;
+
+            final Chunk chunk = this.readChunk(this.currentDataFile);
+            return (chunk.size == 0) ? this.size : Math.min(chunk.serials[0], this.size);
+        }
+
+        /**
+         * Sets how the full data files are packed in specific thread, the data files which are already packed are
+         * not changed. It is applied in order with the queued writes and stored by the next checkpoint.
+         *
+         * @param packing       {@link #PACK_NONE}, {@link #PACK_VARINT} or {@link #PACK_DEFLATE}
+         *
+         * @throws IllegalArgumentException if the packing is unknown
+         * @throws Exception    if error occurs while applying it
+         */
+        @AsyncTask
+        public void setPacking(byte packing) throws Exception
+        {
+            if (packing != PACK_NONE && packing != PACK_VARINT && packing != PACK_DEFLATE)
+                throw new IllegalArgumentException(BasicUtils.combined("Unknown packing: ", packing));
+
+            BasicUtils.handleFutureResult(this.enqueueWrite(() -> {
+                synchronized (this.appendLock)
+                {
+                    this.packing = packing;
+                    this.manifestJson.put(PACKING_KEY, packing);
+                }
+
+                return null;
+            }));
+        }
+
+        /**
+         * Writes the manifest file with all the statistics in memory in specific thread (recommended).
+         * It is useful before the application goes to background.
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @AsyncTask
+        public void checkpoint() throws Exception
+        {
+            BasicUtils.handleFutureResult(this.enqueueWrite(() -> {
+                synchronized (this.appendLock) {this.checkpointSync();}
+                return null;
+            }));
+        }
+
+        /**
+         * Sets how many attempts can be journaled before the manifest file is written again in specific thread.
+         * A bigger interval writes less, but more attempts need to be replayed while loading. It is applied in order
+         * with the queued writes and stored by the next checkpoint.
+         *
+         * @param interval      the number of attempts between two checkpoints, at least 1
+         *
+         * @throws Exception    if error occurs while applying it
+         */
+        @AsyncTask
+        public void setCheckpointInterval(int interval) throws Exception
+        {
+            BasicUtils.handleFutureResult(this.enqueueWrite(() -> {
+                synchronized (this.appendLock)
+                {
+                    this.checkpointInterval = Math.max(interval, 1);
+                    this.manifestJson.put(CHECKPOINT_INTERVAL_KEY, this.checkpointInterval);
+                }
+
+                return null;
+            }));
+        }
+
+        /**
+         * Adds a new data in specific thread, which is "Do not finished", the caller waits until it is saved.
+         *
+         * @throws Exception    if an error occurs while adding the data
+         * @deprecated          the caller is blocked by all the writes queued before, use {@code enqueueData(Data.DNF)}
+         */
+        @Deprecated
+        @AsyncTask
+        public void addDNF() throws Exception
+        {
+            BasicUtils.handleFutureResult(this.enqueueData(Data.DNF));
+        }
+
+        /**
+         * Adds a new data object with the given time to the record in specific thread, the caller waits until it is saved.
+         * 
+         * @param time          the time to include in the data object
+         * 
+         * @throws Exception    if an error occurs while adding the data
+         * @deprecated          the caller is blocked by all the writes queued before, use {@link #enqueueData(double)}
+         */
+        @Deprecated
+        @AsyncTask
+        public void addData(double time) throws Exception
+        {
+            BasicUtils.handleFutureResult(this.enqueueData(time));
+        }
+
+        /**
+         * Adds a new data object with the given time and wall-clock time to the record in specific thread,
+         * for example an attempt restored from another device, the caller waits until it is saved.
+         *
+         * @param time          the time to include in the data object
+         * @param timestamp     when the attempt is done in milliseconds since epoch
+         *
+         * @throws Exception    if an error occurs while adding the data
+         * @deprecated          the caller is blocked by all the writes queued before, use {@link #enqueueData(double, long)}
+         */
+        @Deprecated
+        @AsyncTask
+        public void addData(double time, long timestamp) throws Exception
+        {
+            BasicUtils.handleFutureResult(this.enqueueData(time, timestamp));
+        }
+
+        /**
+         * Queues a new record with the given time without blocking the caller. The serial is given when the
+         * record is applied, and the successive queued records are written together under load. The record
+         * is stamped with the current wall-clock time.
+         *
+         * @param time          the time of the record, {@link Data#DNF} for an attempt not finished
+         * @return              the future which is completed with the serial of the record after it is saved
+         */
+        @AsyncTask
+        public CompletableFuture<Integer> enqueueData(double time)
+        {
+            return this.enqueueData(time, System.currentTimeMillis());
+        }
+
+        /**
+         * Queues a new record with the given time and wall-clock time without blocking the caller,
+         * see {@link #enqueueData(double)}.
+         *
+         * @param time          the time of the record, {@link Data#DNF} for an attempt not finished
+         * @param timestamp     when the attempt is done in milliseconds since epoch
+         * @return              the future which is completed with the serial of the record after it is saved
+         */
+        @AsyncTask
+        public CompletableFuture<Integer> enqueueData(double time, long timestamp)
+        {
+            return this.enqueue(new PendingWrite(null, new double[] {time}, new long[] {timestamp}));
+        }
+
+        /**
+         * Queues new records with the given times without blocking the caller, see {@link #enqueueData(double)}.
+         *
+         * @param times         the times of the records in order
+         * @return              the future which is completed with the serial of the first record after they are saved
+         */
+        @AsyncTask
+        public CompletableFuture<Integer> enqueueAll(final double[] times)
+        {
+            return this.enqueue(new PendingWrite(null, times.clone(), null));
+        }
+
+        /**
+         * Appends the given times with the journal for a single time, or as a batch for more times.
+         *
+         * @param times         the times to append in order
+         * @param timestamps    the timestamps of the records, {@link TimestampLog#NO_TIMESTAMP} for a record without one
+         * @return              the serial of the first appended record
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @Override
+        @SyncTask
+        protected int appendTimesSync(final double[] times, final long[] timestamps) throws Exception
+        {
+            synchronized (this.appendLock)
+            {
+                final int serial = this.size;
+
+                if (times.length == 1)
+                    this.addDataSync(new Data.NumberResponse(serial, times[0]), timestamps[0]);
+                else if (times.length > 1)
+                    this.addAllSync(times, timestamps);
+
+                return serial;
+            }
+        }
+
+        /**
+         * Adds all the given times to the record in ui thread (not recommended use directly).
+         * The times go through all the statistics in one pass, every data file is written once
+         * and the manifest is written once at the end.
+         *
+         * @param times         the times to add in order, {@link Data#DNF} for an attempt not finished
+         * @return              how many times are added and how long it takes
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        protected BatchReport addAllSync(final double[] times) throws Exception
+        {
+            return this.addAllSync(times, null);
+        }
+
+        /**
+         * Adds all the given times with their wall-clock times to the record in ui thread (not recommended use directly),
+         * see {@link #addAllSync(double[])}.
+         *
+         * @param times         the times to add in order, {@link Data#DNF} for an attempt not finished
+         * @param timestamps    the timestamps of the records, null or {@link TimestampLog#NO_TIMESTAMP} for a record without one
+         * @return              how many times are added and how long it takes
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        protected BatchReport addAllSync(final double[] times, final long[] timestamps) throws Exception
+        {
+            synchronized (this.appendLock)
+            {
+                final long start = System.nanoTime();
+                final int[] serials = new int[times.length];
+                final byte[] flags = new byte[times.length];
+
+                for (int i = 0; i < times.length; i++)
+                {
+                    serials[i] = this.size + i;
+                    flags[i] = RecordLog.getFlags(times[i]);
+                }
+
+                final Chunk batch = new Chunk(serials, times, flags, times.length);
+                RecordLog.append(this.journalFile, batch, 0, batch.size);
+                TimestampLog.append(this.timestampFile, timestamps, 0, batch.size);
+
+                for (int from = 0; from < batch.size; )
+                {
+                    if (this.size % this.groupSize == 0 && this.size != 0)
+                        this.nextDataFile();
+
+                    // the records until the current data file is full
+                    final int to = Math.min(batch.size, from + this.groupSize - this.size % this.groupSize);
+                    this.appendRecords(batch, from, to);
+
+                    for (int i = from; i < to; i++)
+                        this.updateStatics(batch.getData(i), batch.times[i], (timestamps == null) ? TimestampLog.NO_TIMESTAMP : timestamps[i]);
+
+                    from = to;
+                }
+
+                this.checkpointSync();
+                return new BatchReport(batch.size, System.nanoTime() - start);
+            }
+        }
+
+        /**
+         * Adds all the given times to the record in specific thread, the caller waits until they are saved.
+         * It is much faster than adding every time alone, for example importing or restoring a long history.
+         *
+         * @param times         the times to add in order, {@link Data#DNF} for an attempt not finished
+         * @return              how many times are added and how long it takes
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         * @deprecated          the caller is blocked by all the writes queued before, use {@link #enqueueAll(double[])}
+         */
+        @Deprecated
+        @AsyncTask
+        public BatchReport addAll(final double[] times) throws Exception
+        {
+            return BasicUtils.handleFutureResult(this.enqueueWrite(() -> this.addAllSync(times)));
+        }
+
+        /**
+         * Appends all the records of an exported history to the record in ui thread (not recommended use directly).
+         * The stream is read in batches by {@link HistoryReader}, every batch goes through all the statistics in one
+         * pass and is written to the data files directly, so the memory used does not depend on the size of the history.
+         * The records get the serials after the current size, the timestamps in a JSON history are kept.
+         *
+         * @param input         the stream of the exported history, it can be compressed by gzip, it is closed at the end
+         * @param format        {@link HistoryReader#JSON_FORMAT}, {@link HistoryReader#CSV_FORMAT} or {@link HistoryReader#BINARY_FORMAT}
+         * @return              how many records are imported and how long it takes
+         *
+         * @throws Exception    if the stream is not in the format or error occurs while writing, the records
+         *                      of the batches before the error are kept
+         */
+        @SyncTask
+        public BatchReport importHistorySync(final InputStream input, byte format) throws Exception
+        {
+            final long start = System.nanoTime();
+            final double[] buffer = new double[IMPORT_BATCH_SIZE];
+            final long[] timestamps = new long[IMPORT_BATCH_SIZE];
+            int count = 0;
+
+            try (final HistoryReader reader = new HistoryReader(input, format))
+            {
+                for (int read; (read = reader.read(buffer, timestamps)) > 0; count += read)
+                    this.addAllSync(Arrays.copyOf(buffer, read), Arrays.copyOf(timestamps, read));
+            }
+
+            return new BatchReport(count, System.nanoTime() - start);
+        }
+
+        /**
+         * Appends all the records of an exported history file in specific thread (recommended).
+         *
+         * @param file          the exported history file, it can be compressed by gzip
+         * @param format        {@link HistoryReader#JSON_FORMAT}, {@link HistoryReader#CSV_FORMAT} or {@link HistoryReader#BINARY_FORMAT}
+         * @return              how many records are imported and how long it takes
+         *
+         * @throws Exception    if the file is not in the format or error occurs, for example no such file
+         */
+        @AsyncTask
+        public BatchReport importHistory(final File file, byte format) throws Exception
+        {
+            return BasicUtils.handleFutureResult(this.enqueueWrite(() -> this.importHistorySync(new FileInputStream(file), format)));
+        }
+
+        /**
+         * Appends all the records of an exported history stream in specific thread (recommended).
+         *
+         * @param input         the stream of the exported history, it is closed at the end
+         * @param format        {@link HistoryReader#JSON_FORMAT}, {@link HistoryReader#CSV_FORMAT} or {@link HistoryReader#BINARY_FORMAT}
+         * @return              how many records are imported and how long it takes
+         *
+         * @throws Exception    if the stream is not in the format or error occurs while writing
+         */
+        @AsyncTask
+        public BatchReport importHistory(final InputStream input, byte format) throws Exception
+        {
+            return BasicUtils.handleFutureResult(this.enqueueWrite(() -> this.importHistorySync(input, format)));
+        }
+
+        /**
+         * Removes the last attempts in ui thread (not recommended use directly). The statistics are rolled back
+         * by the steps kept by every append, so it costs O(count log 100) no matter how long the history is,
+         * the quantile sketch is built again from the data files in background. The data files are truncated after
+         * the manifest is checkpointed with the new size.
+         *
+         * @param count         the number of the last attempts to remove, at most {@link #getUndoableCount()}
+         * @return              the size after removing
+         *
+         * @throws IllegalArgumentException if the count is negative or more than the attempts which can be removed
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        protected int removeLastSync(int count) throws Exception
+        {
+            // the indexes are changed by removing, so they must be loaded
+            this.awaitIndexesSync();
+
+            synchronized (this.packLock)
+            {
+                synchronized (this.appendLock)
+                {
+                    final int undoable = this.getUndoableCount();
+
+                    if (count < 0 || count > undoable)
+                        throw new IllegalArgumentException(BasicUtils.combined("Cannot remove ", count, " attempts, only ", undoable, " can be removed"));
+
+                    final int size = this.size - count, last = (size == 0) ? 0 : (size - 1) / this.groupSize;
+
+                    // the current data file after removing must be appendable before the manifest points into it
+                    if (this.packedIndexes.contains(last) || this.migratedIndexes.contains(last))
+                        this.unpackDataFile(last);
+
+                    final long[] timestamps = TimestampLog.read(this.timestampFile, size, this.size);
+                    final Chunk removed = this.getRangeSync(size, this.size);
+
+                    for (int i = 0; i < count; i++)
+                        this.revertStatics();
+
+                    this.indexes.remove(removed, timestamps);
+                    this.recordGeneration++;
+
+                    this.last100Data.clear();
+                    this.last100Data.addAll(this.ao100.getWindow());
+
+                    this.checkpointSync();
+                    this.truncateRecords(size);
+                    return size;
+                }
+            }
+        }
+
+        /**
+         * Removes the last attempts in specific thread, for example undoing a mistaken attempt, the caller waits
+         * until they are removed.
+         *
+         * @param count         the number of the last attempts to remove, at most {@link #getUndoableCount()}
+         * @return              the size after removing
+         *
+         * @throws Exception    if the count is more than the attempts which can be removed, or error occurs while writing
+         * @see #removeLastSync(int)
+         * @deprecated          the caller is blocked by all the writes queued before, use {@link #enqueueRemoveLast(int)}
+         */
+        @Deprecated
+        @AsyncTask
+        public int removeLast(int count) throws Exception
+        {
+            return BasicUtils.handleFutureResult(this.enqueueRemoveLast(count));
+        }
+
+        /**
+         * Queues removing the last attempts without blocking the caller, see {@link #removeLastSync(int)}.
+         *
+         * @param count         the number of the last attempts to remove, at most {@link #getUndoableCount()}
+         * @return              the future which is completed with the size after removing
+         */
+        @AsyncTask
+        public CompletableFuture<Integer> enqueueRemoveLast(int count)
+        {
+            return this.enqueueWrite(() -> this.removeLastSync(count));
+        }
+
+        /**
+         * Returns how many of the last attempts can be removed, at most {@link #UNDO_DEPTH}. A directory created
+         * before removing is supported can remove only the attempts added after it is loaded.
+         *
+         * @return              the number of attempts which can be removed
+         */
+        public int getUndoableCount()
+        {
+            final int windows = Math.min(Math.min(this.mo3.getUndoableCount(), this.ao5.getUndoableCount()),
+                                         Math.min(this.ao12.getUndoableCount(), this.ao100.getUndoableCount()));
+            return Math.min(Math.min(this.undoSteps.size(), windows), this.size);
+        }
+
+        /**
+         * Changes the time of a past attempt in ui thread (not recommended use directly), for example the attempt
+         * is marked as DNF or gets a penalty. Only the record is patched in its data file, and only the windows
+         * which contain it are computed again from at most 99 records on each side of it. The best and worst of
+         * every window family and of all the attempts are found again from the summaries of the full data files,
+         * so the history is never replayed, the quantile sketch is built again from the data files in background.
+         * The kept steps of the last attempts after the edit are computed again, so they can still be removed.
+         *
+         * @param serial        the serial of the attempt, from 0 to size - 1
+         * @param time          the new time of the attempt, {@link Data#DNF} for an attempt not finished
+         *
+         * @throws IndexOutOfBoundsException if the serial is out of range
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        protected void editSync(int serial, double time) throws Exception
+        {
+            // the indexes are changed by editing, so they must be loaded
+            this.awaitIndexesSync();
+
+            synchronized (this.packLock)
+            {
+                synchronized (this.appendLock)
+                {
+                    if (serial < 0 || serial >= this.size)
+                        throw new IndexOutOfBoundsException(BasicUtils.combined("Serial: ", serial, " size: ", this.size));
+
+                    final int from = Math.max(serial - WindowSummary.MAX_WINDOW_SIZE + 1, 0), position = serial - from;
+                    final Chunk records = this.getRangeSync(from, serial + WindowSummary.MAX_WINDOW_SIZE);
+                    final double oldTime = records.isValid(position) ? records.times[position] : Data.DNF;
+
+                    if (oldTime == time)
+                        return;
+
+                    final double[] oldTimes = new double[records.size];
+
+                    for (int i = 0; i < records.size; i++)
+                        oldTimes[i] = records.isValid(i) ? Math.abs(records.times[i]) : Data.DNF;
+
+                    final double[] newTimes = oldTimes.clone();
+                    newTimes[position] = Math.abs(time);
+
+                    // the journal must not replay the old time after the record is patched
+                    if (serial >= this.checkpointSize)
+                        this.patchJournal(serial, time);
+
+                    this.patchRecord(serial, time);
+                    final WindowSummary peaks = this.resummarizeWindows(serial);
+
+                    this.editWindow(this.mo3, WindowSummary.MO3, this.MO3, this.MO3Json, peaks, oldTimes, newTimes, from, serial);
+                    this.editWindow(this.ao5, WindowSummary.AO5, this.AO5, this.AO5Json, peaks, oldTimes, newTimes, from, serial);
+                    this.editWindow(this.ao12, WindowSummary.AO12, this.AO12, this.AO12Json, peaks, oldTimes, newTimes, from, serial);
+                    this.editWindow(this.ao100, WindowSummary.AO100, this.AO100, this.AO100Json, peaks, oldTimes, newTimes, from, serial);
+                    this.editAll(serial, oldTime, time);
+                    this.indexes.edit(oldTime, time, TimestampLog.read(this.timestampFile, serial, serial + 1)[0]);
+                    this.recordGeneration++;
+
+                    final int tail = this.size - this.last100Data.size();
+
+                    if (serial >= tail)
+                        this.last100Data.set(serial - tail, Math.abs(time));
+
+                    this.patchUndoSteps(serial);
+                    this.checkpointSync();
+                }
+            }
+        }
+
+        /**
+         * Changes the time of a past attempt in specific thread, see {@link #editSync(int, double)}, the caller
+         * waits until it is saved.
+         *
+         * @param serial        the serial of the attempt, from 0 to size - 1
+         * @param time          the new time of the attempt, {@link Data#DNF} for an attempt not finished
+         *
+         * @throws Exception    if the serial is out of range or error occurs while writing
+         * @deprecated          the caller is blocked by all the writes queued before, use {@link #enqueueEdit(int, double)}
+         */
+        @Deprecated
+        @AsyncTask
+        public void edit(int serial, double time) throws Exception
+        {
+            BasicUtils.handleFutureResult(this.enqueueEdit(serial, time));
+        }
+
+        /**
+         * Queues changing the time of a past attempt without blocking the caller, see {@link #editSync(int, double)}.
+         *
+         * @param serial        the serial of the attempt, from 0 to size - 1
+         * @param time          the new time of the attempt, {@link Data#DNF} for an attempt not finished
+         * @return              the future which is completed after the change is saved
+         */
+        @AsyncTask
+        public CompletableFuture<Void> enqueueEdit(int serial, double time)
+        {
+            return this.enqueueWrite(() -> {
+                this.editSync(serial, time);
+                return null;
+            });
+        }
+
+        /**
+         * Marks a past attempt as not finished in specific thread, the caller waits until it is saved.
+         *
+         * @param serial        the serial of the attempt, from 0 to size - 1
+         *
+         * @throws Exception    if the serial is out of range or error occurs while writing
+         * @deprecated          the caller is blocked by all the writes queued before, use {@code enqueueEdit(serial, Data.DNF)}
+         */
+        @Deprecated
+        @AsyncTask
+        public void editDNF(int serial) throws Exception
+        {
+            BasicUtils.handleFutureResult(this.enqueueEdit(serial, Data.DNF));
+        }
+
+        /**
+         * Adds a new data object with the given time to the record in ui thread (not recommended use directly).
+         * 
+         * @param data          the data object to include in the record
+         * 
+         * @throws Exception    if an error occurs while adding the data
+         */
+        @Override
+        @SyncTask
+        protected void addDataSync(final Data data) throws Exception
+        {
+            this.addDataSync(data, System.currentTimeMillis());
+        }
+
+        /**
+         * Adds a new data object with the given wall-clock time to the record in ui thread (not recommended use directly).
+         *
+         * @param data          the data object to include in the record
+         * @param timestamp     when the attempt is done in milliseconds since epoch, {@link TimestampLog#NO_TIMESTAMP} if it is unknown
+         *
+         * @throws Exception    if an error occurs while adding the data
+         */
+        @SyncTask
+        protected void addDataSync(final Data data, long timestamp) throws Exception
+        {
+            if (data.getDataType() != this.dataType)
+                throw new IOException(BasicUtils.combined("Try to add in compatible data type, expected: ",
+                        this.dataType, " but given: ", data.getDataType()));
+
+            synchronized (this.appendLock)
+            {
+                // write ahead, an attempt in the journal is never lost even if the statistics are not saved
+                RecordLog.append(this.journalFile, (Data.NumberResponse)(data));
+                this.applyData(data, false, timestamp);
+
+                if (this.size - this.checkpointSize >= this.checkpointInterval)
+                    this.checkpointSync();
+            }
+        }
+
+        /**
+         * Applies the given data object to the current data file and all the statistics in memory.
+         *
+         * @param data          the data object to apply, its serial must be the current size
+         * @param replay        whether the data object is replayed from the journal, it is only
+         *                      appended to the data file if the data file does not contain it
+         * @param timestamp     the timestamp of the data object, a replayed data object keeps its saved timestamp
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        private void applyData(final Data data, boolean replay, long timestamp) throws Exception
+        {
+            // same rollover as the base class, the record with serial n is in data file n / groupSize after aligning
+            if (this.size % this.groupSize == 0 && this.size != 0)
+                this.nextDataFile();
+
+            if (!replay || !this.containsRecord(this.size))
+                this.appendRecord(data);
+
+            long stamp = timestamp;
+
+            if (!replay)
+                TimestampLog.append(this.timestampFile, timestamp);
+            else if (TimestampLog.count(this.timestampFile) > this.size)
+                stamp = TimestampLog.read(this.timestampFile, this.size, this.size + 1)[0];
+            else
+                TimestampLog.append(this.timestampFile, TimestampLog.NO_TIMESTAMP);
+
+            this.updateStatics(data, ((Data.NumberResponse)(data)).getTime(), stamp);
+        }
+
+        /**
+         * Updates all the statistics in memory with the given data object, the data files are not touched.
+         *
+         * @param data          the data object to include in the statistics
+         * @param time          the time of the data object
+         * @param timestamp     the timestamp of the data object, {@link TimestampLog#NO_TIMESTAMP} if it is not in any rollup
+         *
+         * @throws Exception    if an error occurs during the update process
+         */
+        @SyncTask
+        private void updateStatics(final Data data, double time, long timestamp) throws Exception
+        {
+            this.last100Data.add(Math.abs(time));
+
+            if (this.undoSteps.size() == UNDO_DEPTH)
+                this.undoSteps.removeFirst();
+
+            this.undoSteps.add(new UndoStep(this.current, this.best, this.worst, (Double)(this.all.average), this.validSize));
+            this.indexes.addQuantile(time);
+
+            // the records appended while the indexes are loading are added by loading them
+            if (this.indexed)
+                this.indexes.add(this.size, time, timestamp);
+
+            this.updateAll(data, time);
+            this.updateMO3(time);
+            this.updateAO5(time);
+            this.updateAO12(time);
+            this.updateAO100(time);
+
+            if (this.last100Data.size() > 100)
+                this.last100Data.pop();
+        }
+
+        /**
+         * Reverts the overall statistics and all the rolling windows to the values before the last attempt,
+         * the data files are not touched.
+         *
+         * @throws Exception    if an error occurs during the update process
+         */
+        @SyncTask
+        private void revertStatics() throws Exception
+        {
+            final UndoStep step = this.undoSteps.removeLast();
+
+            this.size--;
+            this.validSize = step.validSize;
+            this.current = step.current;
+            this.best = step.best;
+            this.worst = step.worst;
+            this.all.update(step.current, step.best, step.worst, step.average);
+
+            this.manifestJson.put(DATA_SIZE_KEY, this.size).put(VALID_SIZE_KEY, this.validSize);
+            this.AllJson.put(AVERAGE_KEY, step.average);
+
+            this.revertWindow(this.mo3, this.MO3, this.MO3Json);
+            this.revertWindow(this.ao5, this.AO5, this.AO5Json);
+            this.revertWindow(this.ao12, this.AO12, this.AO12Json);
+            this.revertWindow(this.ao100, this.AO100, this.AO100Json);
+        }
+
+        /**
+         * Reverts the last add of the given rolling window, and updates its statistics and JSON representation.
+         *
+         * @param window        the rolling window
+         * @param statics       the statistics of the window
+         * @param json          the JSON representation of the statistics
+         *
+         * @throws Exception    if an error occurs during the update process
+         */
+        @SyncTask
+        private void revertWindow(final StreamingAggregator<Double> window, final Data.Statics<Double> statics, final JSONObject json) throws Exception
+        {
+            this.publishWindow(window, window.remove(), statics, json);
+        }
+
+        /**
+         * Copies the peaks and the average of the given rolling window to its statistics and JSON representation.
+         *
+         * @param window        the rolling window
+         * @param current       the result of the current window
+         * @param statics       the statistics of the window
+         * @param json          the JSON representation of the statistics
+         *
+         * @throws Exception    if an error occurs during the update process
+         */
+        @SyncTask
+        private void publishWindow(final StreamingAggregator<Double> window, final Double current, final Data.Statics<Double> statics, final JSONObject json) throws Exception
+        {
+            final Double average = window.getAverage(), best = window.getMin(), worst = window.getMax();
+            statics.update(current, best, worst, average);
+
+            json.put(AVERAGE_KEY, Data.format(average)).put(CURRENT_KEY, Data.format(current))
+                .put(BEST_KEY, Data.format(best)).put(WORST_KEY, Data.format(worst)).put(VALID_SIZE_KEY, window.getValidSize());
+        }
+
+        /**
+         * Updates the given rolling window after the time of a past attempt is changed. Only the results of the
+         * windows which contain the attempt are computed again, before and after the change, so the average is
+         * corrected by their differences. The peaks are taken from the given window summary.
+         *
+         * @param window        the rolling window
+         * @param family        the family of the window, for example {@link WindowSummary#AO5}
+         * @param statics       the statistics of the window
+         * @param json          the JSON representation of the statistics
+         * @param peaks         the summary of all the windows after the change
+         * @param oldTimes      the absolute times around the attempt before the change
+         * @param newTimes      the absolute times around the attempt after the change
+         * @param from          the serial of the first time
+         * @param serial        the serial of the changed attempt
+         *
+         * @throws Exception    if an error occurs during the update process
+         */
+        @SyncTask
+        private void editWindow(final StreamingAggregator<Double> window, int family, final Data.Statics<Double> statics, final JSONObject json,
+                                final WindowSummary peaks, final double[] oldTimes, final double[] newTimes, int from, int serial) throws Exception
+        {
+            final List<Double> before = getWindowResults(family, oldTimes, serial - from);
+            final List<Double> after = getWindowResults(family, newTimes, serial - from);
+
+            Double average = window.getAverage();
+            int validSize = window.getValidSize();
+            double sum = (average == null) ? 0.0 : average * validSize;
+
+            for (int i = 0; i < before.size(); i++)
+            {
+                if (before.get(i) != null && before.get(i) != Data.DNF)
+                {
+                    sum -= before.get(i);
+                    validSize--;
+                }
+
+                if (after.get(i) != null && after.get(i) != Data.DNF)
+                {
+                    sum += after.get(i);
+                    validSize++;
+                }
+            }
+
+            average = (validSize == 0) ? null : sum / validSize;
+            window.setAverage(average, validSize);
+            window.setPeaks(peaks.getBest(family), peaks.getWorst(family));
+
+            // the current window contains the attempt
+            final int first = this.size - window.getWindow().size();
+            final Double current = (serial >= first) ? window.replace(serial - first, newTimes[serial - from]) : statics.current;
+            this.publishWindow(window, current, statics, json);
+        }
+
+        /**
+         * Computes again the kept steps of the last attempts from the given serial, after the time of the attempt is
+         * changed, so they can still be removed by {@link #revertStatics()}. The statistics before the first changed
+         * step are found from the summaries and at most 100 records before it, then the steps are walked forward,
+         * so it costs O(groupSize + 100) no matter how long the history is. The steps before the attempt are kept.
+         *
+         * @param serial        the serial of the changed attempt, its record and the window summaries are already patched
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        private void patchUndoSteps(int serial) throws Exception
+        {
+            final int count = this.getUndoableCount(), first = this.size - count;
+            final int start = Math.max(first, serial), from = Math.max(start - WindowSummary.MAX_WINDOW_SIZE, 0);
+
+            if (start >= this.size)
+                return;
+
+            final Chunk records = this.getRangeSync(from, this.size);
+            final double[] times = new double[records.size];
+
+            for (int i = 0; i < records.size; i++)
+                times[i] = records.isValid(i) ? Math.abs(records.times[i]) : Data.DNF;
+
+            final List<UndoStep> steps = new ArrayList<>(this.undoSteps);
+            steps.subList(0, steps.size() - count).clear();
+
+            final ChunkSummary before = this.getSummarySync(0, start);
+            Data best = this.findRecord(true, start), worst = this.findRecord(false, start);
+            double sum = before.sum;
+            int validSize = before.validCount;
+
+            for (int added = start; added < this.size; added++)
+            {
+                final int i = added - from;
+                final Data current = (added == 0) ? null : records.getData(i - 1);
+                steps.set(added - first, new UndoStep(current, best, worst, (validSize == 0) ? null : sum / validSize, validSize));
+
+                final Data data = records.getData(i);
+
+                if (!data.isValid())
+                    continue;
+
+                if (best == null || data.compare(best) == Data.BETTER)
+                    best = data;
+
+                if (worst == null || data.compare(worst) == Data.WORSE)
+                    worst = data;
+
+                sum += times[i];
+                validSize++;
+            }
+
+            this.undoSteps.clear();
+            this.undoSteps.addAll(steps);
+
+            final WindowSummary peaks = this.summarizeWindowsBefore(start);
+            this.patchWindowSteps(this.mo3, WindowSummary.MO3, peaks, times, from, start, first);
+            this.patchWindowSteps(this.ao5, WindowSummary.AO5, peaks, times, from, start, first);
+            this.patchWindowSteps(this.ao12, WindowSummary.AO12, peaks, times, from, start, first);
+            this.patchWindowSteps(this.ao100, WindowSummary.AO100, peaks, times, from, start, first);
+        }
+
+        /**
+         * Computes again the kept steps of the given rolling window from the given serial, see {@link #patchUndoSteps(int)}.
+         * The peaks are walked forward from the windows before the serial, the averages are walked backward from the
+         * average of all the windows, which is already corrected by {@link #editWindow}.
+         *
+         * @param window        the rolling window
+         * @param family        the family of the window, for example {@link WindowSummary#AO5}
+         * @param peaks         the summary of the windows which end before the serial
+         * @param times         continuous absolute times until the last attempt
+         * @param from          the serial of the first time, at most 100 before the serial
+         * @param start         the serial of the first step to compute again
+         * @param first         the serial of the first kept step
+         */
+        private void patchWindowSteps(final StreamingAggregator<Double> window, int family, final WindowSummary peaks,
+                                      final double[] times, int from, int start, int first)
+        {
+            final int width = WindowSummary.getWindowSize(family);
+            final List<StreamingAggregator.Step<Double>> steps = window.getSteps();
+            steps.subList(0, steps.size() - (this.size - first)).clear();
+
+            final StreamingAggregator<Double> replay = WindowSummary.newWindow(family);
+            final Double[] results = new Double[this.size - start];
+
+            for (int i = 0; i < times.length; i++)
+            {
+                final Double result = replay.add(times[i]);
+
+                if (i >= start - from)
+                    results[i - start + from] = result;
+            }
+
+            final Double[] averages = new Double[results.length];
+            final Double average = window.getAverage();
+            int validSize = window.getValidSize();
+            double sum = (average == null) ? 0.0 : average * validSize;
+
+            for (int i = results.length - 1; i >= 0; i--)
+            {
+                if (results[i] != null && results[i] != Data.DNF)
+                {
+                    sum -= results[i];
+                    validSize--;
+                }
+
+                averages[i] = (validSize == 0) ? null : sum / validSize;
+            }
+
+            Double min = peaks.getBest(family), max = peaks.getWorst(family);
+
+            for (int i = 0; i < results.length; i++)
+            {
+                final int serial = start + i;
+                final Double evicted = (serial >= width) ? times[serial - width - from] : null;
+                steps.set(serial - first, new StreamingAggregator.Step<>(evicted, results[i], min, max, averages[i]));
+
+                if (results[i] == null || results[i] == Data.DNF)
+                    continue;
+
+                min = (min == null) ? results[i] : Math.min(min, results[i]);
+                max = (max == null) ? results[i] : Math.max(max, results[i]);
+            }
+
+            window.setSteps(steps);
+        }
+
+        /**
+         * Computes the summary of the windows which end before the given serial, the window summaries of the full
+         * data files are merged with the windows of the records after them.
+         *
+         * @param end           the serial after the last window end
+         * @return              the best and worst window results before the serial
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        private WindowSummary summarizeWindowsBefore(int end) throws Exception
+        {
+            final int sealed = Math.min(end / this.groupSize, this.windowSummaries.size()), offset = sealed * this.groupSize;
+            final int from = Math.max(offset - WindowSummary.MAX_WINDOW_SIZE + 1, 0);
+            WindowSummary peaks = WindowSummary.of(this.getRangeSync(from, end), offset - from);
+
+            for (int i = 0; i < sealed; i++)
+                peaks = peaks.merge(this.windowSummaries.get(i));
+
+            return peaks;
+        }
+
+        /**
+         * Overwrites the time of the record with the given serial in the journal, so replaying the journal after the
+         * application is killed applies the new time. The record must be appended after the last checkpoint.
+         *
+         * @param serial        the serial of the record
+         * @param time          the new time of the record, {@link Data#DNF} for an attempt not finished
+         *
+         * @throws Exception    if error occurs, for example permission denied
+         */
+        @SyncTask
+        private void patchJournal(int serial, double time) throws Exception
+        {
+            final Chunk journal = RecordLog.read(this.journalFile);
+
+            for (int i = 0; i < journal.size; i++)
+            {
+                if (journal.serials[i] == serial)
+                    RecordLog.set(this.journalFile, i, serial, time, RecordLog.getFlags(time));
+            }
+        }
+
+        /**
+         * Computes the results of the windows of the given family which contain the record at the given position.
+         *
+         * @param family        the family of the windows, for example {@link WindowSummary#AO5}
+         * @param times         continuous absolute times, the first one is the first record or at least 99 records
+         *                      before the position
+         * @param position      the position of the record
+         * @return              the results of the windows which end at the position and the records after it,
+         *                      null for a window which is not full
+         */
+        private static List<Double> getWindowResults(int family, final double[] times, int position)
+        {
+            final StreamingAggregator<Double> window = WindowSummary.newWindow(family);
+            final int width = WindowSummary.getWindowSize(family);
+            final int end = Math.min(position + width, times.length);
+            final List<Double> results = new ArrayList<>(width);
+
+            for (int i = Math.max(position - width + 1, 0); i < end; i++)
+            {
+                final Double result = window.add(times[i]);
+
+                if (i >= position)
+                    results.add(result);
+            }
+
+            return results;
+        }
+
+        /**
+         * Updates the overall statistics after the time of a past attempt is changed. The average is corrected by
+         * the difference, the best or worst attempt is found again from the summaries only if it is the changed one.
+         *
+         * @param serial        the serial of the changed attempt
+         * @param oldTime       the time before the change
+         * @param time          the time after the change
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        private void editAll(int serial, double oldTime, double time) throws Exception
+        {
+            final Data data = new Data.NumberResponse(serial, time);
+            double sum = (this.all.average == null) ? 0.0 : (double)(this.all.average) * this.validSize;
+
+            if (oldTime != Data.DNF)
+            {
+                sum -= Math.abs(oldTime);
+                this.validSize--;
+            }
+
+            if (data.isValid())
+            {
+                sum += Math.abs(time);
+                this.validSize++;
+            }
+
+            if (serial == this.size - 1)
+                this.current = data;
+
+            if (this.best != null && ((Data.NumberResponse)(this.best)).getSerial() == serial)
+                this.best = this.findRecord(true, this.size);
+            else if (data.isValid() && (this.best == null || data.compare(this.best) == Data.BETTER))
+                this.best = data;
+
+            if (this.worst != null && ((Data.NumberResponse)(this.worst)).getSerial() == serial)
+                this.worst = this.findRecord(false, this.size);
+            else if (data.isValid() && (this.worst == null || data.compare(this.worst) == Data.WORSE))
+                this.worst = data;
+
+            final Double average = (this.validSize == 0) ? null : sum / this.validSize;
+            this.all.update(this.current, this.best, this.worst, average);
+
+            this.manifestJson.put(VALID_SIZE_KEY, this.validSize);
+            this.AllJson.put(AVERAGE_KEY, average);
+        }
+
+        /**
+         * Finds the best or worst attempt before the given serial. The data file which contains it is found by
+         * the summaries, then only that data file is read. Among equal times the last one is the best and the
+         * first one is the worst, the same as {@link Data#compare(Data)} keeps while appending.
+         *
+         * @param best          whether to find the best attempt, otherwise the worst one
+         * @param end           the serial after the last attempt to search, the size for all the attempts
+         * @return              the best or worst attempt, null if there is no valid attempt
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        private Data findRecord(boolean best, int end) throws Exception
+        {
+            final int sealed = Math.min(end / this.groupSize, this.summaries.size());
+            final Chunk tail = this.getRangeSync(sealed * this.groupSize, end);
+            final List<ChunkSummary> summaries = new ArrayList<>(this.summaries.subList(0, sealed));
+            summaries.add(ChunkSummary.of(tail));
+
+            int index = -1;
+
+            for (int i = 0; i < summaries.size(); i++)
+            {
+                final ChunkSummary summary = summaries.get(i);
+
+                if (summary.validCount == 0)
+                    continue;
+
+                if (index < 0 || (best ? summary.min <= summaries.get(index).min : summary.max > summaries.get(index).max))
+                    index = i;
+            }
+
+            if (index < 0)
+                return null;
+
+            final Chunk chunk = (index == sealed) ? tail : this.readChunk(this.getDataFile(index));
+            final double target = best ? summaries.get(index).min : summaries.get(index).max;
+
+            for (int i = 0; i < chunk.size; i++)
+            {
+                final int j = best ? chunk.size - 1 - i : i;
+
+                if (chunk.isValid(j) && Math.abs(chunk.times[j]) == target)
+                    return chunk.getData(j);
+            }
+
+            throw new IOException(BasicUtils.combined("Summary does not agree with data file: ", this.getDataFile(index).getAbsolutePath()));
+        }
+
+        /**
+         * Overwrites the time of the record with the given serial in its data file. A binary segment or column
+         * file is patched in place, a JSON or packed data file is written again. The summary of a full data file
+         * is computed again.
+         *
+         * @param serial        the serial of the record
+         * @param time          the new time of the record, {@link Data#DNF} for an attempt not finished
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        private void patchRecord(int serial, double time) throws Exception
+        {
+            final int index = serial / this.groupSize, position = serial % this.groupSize;
+            final File dataFile = this.getDataFile(index);
+            final Data data = new Data.NumberResponse(serial, time);
+            final byte flags = RecordLog.getFlags(time);
+
+            this.layoutLock.writeLock().lock();
+
+            try
+            {
+                if (this.packedIndexes.contains(index))
+                {
+                    // the cached chunk is shared, so the columns are copied
+                    final Chunk chunk = this.readChunk(dataFile);
+                    final double[] times = chunk.times.clone();
+                    final byte[] flagColumn = chunk.flags.clone();
+                    final File temporary = new File(this.rootDirectory, BasicUtils.combined(dataFile.getName(), TEMPORARY_EXTENSION_NAME));
+
+                    times[position] = time;
+                    flagColumn[position] = flags;
+                    ChunkCodec.write(temporary, new Chunk(chunk.serials, times, flagColumn, chunk.size), this.packing == PACK_DEFLATE);
+
+                    if (!temporary.renameTo(dataFile))
+                        throw new IOException(BasicUtils.combined("Rename file false: ", temporary.getAbsolutePath()));
+                }
+                else if (getFileStorage(dataFile) == BINARY_STORAGE)
+                    RecordLog.set(dataFile, position, serial, time, flags);
+                else if (getFileStorage(dataFile) == COLUMNAR_STORAGE && dataFile.equals(this.currentDataFile))
+                    this.currentColumns.set(position, time, flags);
+                else if (getFileStorage(dataFile) == COLUMNAR_STORAGE)
+                {
+                    final ColumnStore columns = ColumnStore.open(dataFile, true);
+                    columns.set(position, time, flags);
+                    columns.force();
+                }
+                else if (dataFile.equals(this.currentDataFile))
+                {
+                    this.records.put(position, data.toJson());
+                    this.updateDataFile();
+                }
+                else
+                {
+                    final JSONObject json = new JSONObject(FileHelper.read(dataFile));
+                    json.getJSONArray(RECORDS_KEY).put(position, data.toJson());
+                    FileHelper.write(dataFile, json.toString(4), false);
+                }
+
+                this.cache.invalidate(dataFile);
+
+                if (index < this.summaries.size())
+                {
+                    final ChunkSummary summary = ChunkSummary.of(this.readChunk(dataFile));
+                    ChunkSummary.set(this.summaryFile, index, summary);
+                    this.summaries.set(index, summary);
+                }
+            }
+            finally
+            {
+                this.layoutLock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Computes again the window summaries of the full data files which contain a window with the given serial,
+         * then merges all the window summaries and the summary of the windows in the current data file.
+         *
+         * @param serial        the serial of the changed record
+         * @return              the summary of all the windows
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        private WindowSummary resummarizeWindows(int serial) throws Exception
+        {
+            final int last = Math.min(serial + WindowSummary.MAX_WINDOW_SIZE - 1, this.size - 1) / this.groupSize;
+
+            for (int i = serial / this.groupSize; i <= last && i < this.windowSummaries.size(); i++)
+            {
+                final WindowSummary summary = this.summarizeWindows(i);
+                WindowSummary.set(this.windowFile, i, summary);
+                this.windowSummaries.set(i, summary);
+            }
+
+            WindowSummary peaks = this.summarizeWindows(this.windowSummaries.size());
+
+            for (final WindowSummary summary : this.windowSummaries)
+                peaks = peaks.merge(summary);
+
+            return peaks;
+        }
+
+        /**
+         * Rewrites the given packed or migrated data file in the storage format, so records can be appended to it
+         * again. The packed or migrated file is deleted after the new file is complete.
+         *
+         * @param index         the index of the packed or migrated data file
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        private void unpackDataFile(int index) throws Exception
+        {
+            final File packed = this.getDataFile(index);
+            final File dataFile = new File(this.rootDirectory, BasicUtils.combined(DATA_FILE_PREFIX, index, this.getDataFileExtension()));
+            final Chunk chunk = this.readChunk(packed);
+
+            FileHelper.deleteFile(dataFile);
+            writeDataFile(dataFile, chunk, this.groupSize, this.storage);
+            this.layoutLock.writeLock().lock();
+
+            try
+            {
+                this.packedIndexes.remove(index);
+                this.migratedIndexes.remove(index);
+                this.dataFiles.set(this.dataFiles.indexOf(packed), dataFile);
+                this.cache.invalidate(packed);
+                FileHelper.deleteFile(packed);
+            }
+            finally
+            {
+                this.layoutLock.writeLock().unlock();
+            }
+        }
 
-        // create new instance
+        /**
+         * Drops the records with serial from the given size: the data files after the one which should contain
+         * the last record are deleted, and that data file is truncated and becomes the current data file.
+         * Nothing is changed if the data files do not contain such records.
+         *
+         * @param size          the number of records to keep
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
         @SyncTask
-        private NumberResponse(final File directory, int groupSize) throws Exception
+        private void truncateRecords(int size) throws Exception
         {
-            super(directory, groupSize, Data.NUMBER_RESPONSE_TYPE);
+            final int last = (size == 0) ? 0 : (size - 1) / this.groupSize, count = size - last * this.groupSize;
+            this.layoutLock.writeLock().lock();
 
-            this.mo3 = new StreamingAggregator.MO(3);
-            this.ao5 = new StreamingAggregator.AO(5);
-            this.ao12 = new StreamingAggregator.AO(12);
-            this.ao100 = new StreamingAggregator.AO(100);
+            try
+            {
+                for (final File dataFile : this.dataFiles)
+                {
+                    final int index = getDataFileIndex(dataFile);
 
-            this.MO3Json = new JSONObject(); this.AO5Json = new JSONObject(); this.AO12Json = new JSONObject(); this.AO100Json = new JSONObject();
-            this.all = new Data.Statics<>();
-            this.MO3 = new Data.Statics<>(); this.AO5 = new Data.Statics<>(); this.AO12 = new Data.Statics<>(); this.AO100 = new Data.Statics<>();
+                    if (index <= last)
+                        continue;
 
-            this.validSize = 0;
+                    this.dataFiles.remove(dataFile);
+                    this.packedIndexes.remove(index);
+                    this.cache.invalidate(dataFile);
+                    FileHelper.deleteFile(dataFile);
+                }
 
-            this.manifestJson.put(MO3_KEY, this.MO3Json).put(AO5_KEY, this.AO5Json).put(AO12_KEY, this.AO12Json)
-                             .put(AO100_KEY, this.AO100Json).put(VALID_SIZE_KEY, 0);
+                if (getDataFileIndex(this.currentDataFile) != last)
+                    this.rollDataFile(last);
 
-            this.last100Data = new LinkedList<>();
-            this.updateManifestFile();
-        }
+                if (this.storage == BINARY_STORAGE)
+                    RecordLog.truncate(this.currentDataFile, count);
+                else if (this.storage == COLUMNAR_STORAGE)
+                    this.currentColumns.truncate(count);
+                else if (this.records.length() > count)
+                {
+                    while (this.records.length() > count)
+                        this.records.remove(this.records.length() - 1);
 
-        // load from file
-        @SyncTask
-        private NumberResponse(final File directory) throws Exception
-        {
-            super(directory, Data.NUMBER_RESPONSE_TYPE);
+                    this.updateDataFile();
+                }
 
-            this.MO3Json = this.manifestJson.getJSONObject(MO3_KEY);
-            this.AO5Json = this.manifestJson.getJSONObject(AO5_KEY);
-            this.AO12Json = this.manifestJson.getJSONObject(AO12_KEY);
-            this.AO100Json = this.manifestJson.getJSONObject(AO100_KEY);
+                this.cache.invalidate(this.currentDataFile);
 
-            this.last100Data = new LinkedList<>();
+                if (this.summaries.size() > last)
+                {
+                    this.summaries.subList(last, this.summaries.size()).clear();
+                    ChunkSummary.truncate(this.summaryFile, last);
+                }
 
-            final int endIndex = this.size - 1, startIndex = Math.max((endIndex - 99), 0);
-            final int fileEndIndex = endIndex / this.groupSize, fileStartIndex = startIndex / this.groupSize;
+                if (this.windowSummaries.size() > last)
+                {
+                    this.windowSummaries.subList(last, this.windowSummaries.size()).clear();
+                    WindowSummary.truncate(this.windowFile, last);
+                }
 
-            for (int i = fileStartIndex; i <= fileEndIndex; i++)
+                TimestampLog.resize(this.timestampFile, size);
+            }
+            finally
             {
-                final JSONObject json = new JSONObject(FileHelper.read(this.getDataFile(i)));
-                final JSONArray sessions = json.getJSONArray(RECORDS_KEY);
+                this.layoutLock.writeLock().unlock();
+            }
+        }
 
-                for (int j = 0; j < sessions.length(); j++)
-                {
-                    final Data data = Data.load(sessions.getJSONObject(j), Data.NUMBER_RESPONSE_TYPE);
-                    final int index = ((Data.NumberResponse)(data)).getSerial();
+        /**
+         * Appends the records of the given chunk in range [from, to) to the current data file
+         * with one write.
+         *
+         * @param chunk         the records to append
+         * @param from          the first position to append, inclusive
+         * @param to            the last position to append, exclusive
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        private void appendRecords(final Chunk chunk, int from, int to) throws Exception
+        {
+            if (this.storage == BINARY_STORAGE)
+                RecordLog.append(this.currentDataFile, chunk, from, to);
+            else if (this.storage == COLUMNAR_STORAGE)
+                this.currentColumns.append(chunk, from, to);
+            else
+            {
+                for (int i = from; i < to; i++)
+                    this.records.put(chunk.getData(i).toJson());
 
-                    if (index >= startIndex && index <= endIndex)
-                    {
-                        final double time = ((Data.NumberResponse) (data)).getTime();
-                        this.last100Data.add(time);
-                    }
-                }
+                this.updateDataFile();
             }
 
-            final Deque<Double> mo3Deque = BasicUtils.last(this.last100Data, 3);
-            final Deque<Double> ao5Deque = BasicUtils.last(this.last100Data, 5);
-            final Deque<Double> ao12Deque = BasicUtils.last(this.last100Data, 12);
-            final Deque<Double> ao100Deque = new LinkedList<>(this.last100Data);
+            this.cache.invalidate(this.currentDataFile);
+        }
 
-            this.mo3 = new StreamingAggregator.MO(mo3Deque,
-                    this.MO3Json.has(WORST_KEY) ? this.MO3Json.getDouble(WORST_KEY) : null,
-                    this.MO3Json.has(BEST_KEY) ? this.MO3Json.getDouble(BEST_KEY) : null,
-                    this.MO3Json.has(AVERAGE_KEY) ? this.MO3Json.getDouble(AVERAGE_KEY) : null, 3,
-                    this.MO3Json.has(VALID_SIZE_KEY) ? this.MO3Json.getInt(VALID_SIZE_KEY) : 0);
+        /**
+         * Replays the attempts in the journal which are not in the last checkpoint, then folds them into
+         * a new checkpoint. The attempts which are missed in the data files are written again.
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        private void replayJournal() throws Exception
+        {
+            final Chunk journal = this.journalFile.exists() ? RecordLog.read(this.journalFile) : null;
+            final int checkpointSize = this.size;
 
-            this.ao5 = new StreamingAggregator.AO(ao5Deque,
-                    this.AO5Json.has(WORST_KEY) ? this.AO5Json.getDouble(WORST_KEY) : null,
-                    this.AO5Json.has(BEST_KEY) ? this.AO5Json.getDouble(BEST_KEY) : null,
-                    this.AO5Json.has(AVERAGE_KEY) ? this.AO5Json.getDouble(AVERAGE_KEY) : null, 5,
-                    this.AO5Json.has(VALID_SIZE_KEY) ? this.AO5Json.getInt(VALID_SIZE_KEY) : 0);
+            for (int i = 0; journal != null && i < journal.size; i++)
+            {
+                // already in the manifest, the journal was not cleared after the last checkpoint
+                if (journal.serials[i] < this.size)
+                    continue;
 
-            this.ao12 = new StreamingAggregator.AO(ao12Deque,
-                    this.AO12Json.has(WORST_KEY) ? this.AO12Json.getDouble(WORST_KEY) : null,
-                    this.AO12Json.has(BEST_KEY) ? this.AO12Json.getDouble(BEST_KEY) : null,
-                    this.AO12Json.has(AVERAGE_KEY) ? this.AO12Json.getDouble(AVERAGE_KEY) : null, 12,
-                    this.AO12Json.has(VALID_SIZE_KEY) ? this.AO12Json.getInt(VALID_SIZE_KEY) : 0);
+                // a hole in the journal, the following attempts cannot be applied
+                if (journal.serials[i] > this.size)
+                    break;
 
-            this.ao100 = new StreamingAggregator.AO(ao100Deque,
-                    this.AO100Json.has(WORST_KEY) ? this.AO100Json.getDouble(WORST_KEY) : null,
-                    this.AO100Json.has(BEST_KEY) ? this.AO100Json.getDouble(BEST_KEY) : null,
-                    this.AO100Json.has(AVERAGE_KEY) ? this.AO100Json.getDouble(AVERAGE_KEY) : null, 100,
-                    this.AO100Json.has(VALID_SIZE_KEY) ? this.AO100Json.getInt(VALID_SIZE_KEY) : 0);
+                this.applyData(journal.getData(i), true, TimestampLog.NO_TIMESTAMP);
+            }
 
-            final Double average = this.AllJson.has(AVERAGE_KEY) ? this.AllJson.getDouble(AVERAGE_KEY) : null;
-            this.all = new Data.Statics<>(this.current, this.best, this.worst, average);
+            // drop the records which are in the current segment but not in the journal
+            if (this.storage == BINARY_STORAGE)
+                RecordLog.truncate(this.currentDataFile, this.size - this.getCurrentOffset());
+            else if (this.storage == COLUMNAR_STORAGE)
+                this.currentColumns.truncate(this.size - this.getCurrentOffset());
 
-            this.MO3 = new Data.Statics<>(
-                    this.MO3Json.has(CURRENT_KEY) ? this.MO3Json.getDouble(CURRENT_KEY) : null,
-                    this.MO3Json.has(BEST_KEY) ? this.MO3Json.getDouble(BEST_KEY) : null,
-                    this.MO3Json.has(WORST_KEY) ? this.MO3Json.getDouble(WORST_KEY) : null,
-                    this.MO3Json.has(AVERAGE_KEY) ? this.MO3Json.getDouble(AVERAGE_KEY) : null
-            );
+            TimestampLog.resize(this.timestampFile, this.size);
+            this.cache.invalidate(this.currentDataFile);
 
-            this.AO5 = new Data.Statics<>(
-                    this.AO5Json.has(CURRENT_KEY) ? this.AO5Json.getDouble(CURRENT_KEY) : null,
-                    this.AO5Json.has(BEST_KEY) ? this.AO5Json.getDouble(BEST_KEY) : null,
-                    this.AO5Json.has(WORST_KEY) ? this.AO5Json.getDouble(WORST_KEY) : null,
-                    this.AO5Json.has(AVERAGE_KEY) ? this.AO5Json.getDouble(AVERAGE_KEY) : null
-            );
+            if (this.size != checkpointSize)
+                this.checkpointSync();
+        }
 
-            this.AO12 = new Data.Statics<>(
-                    this.AO12Json.has(CURRENT_KEY) ? this.AO12Json.getDouble(CURRENT_KEY) : null,
-                    this.AO12Json.has(BEST_KEY) ? this.AO12Json.getDouble(BEST_KEY) : null,
-                    this.AO12Json.has(WORST_KEY) ? this.AO12Json.getDouble(WORST_KEY) : null,
-                    this.AO12Json.has(AVERAGE_KEY) ? this.AO12Json.getDouble(AVERAGE_KEY) : null
-            );
+        /**
+         * Returns whether the current data file already contains the record with the given serial.
+         *
+         * @param serial        the serial of the record
+         * @return              whether the record is in the current data file
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        @SyncTask
+        private boolean containsRecord(int serial) throws Exception
+        {
+            if (this.storage == BINARY_STORAGE)
+                return RecordLog.count(this.currentDataFile) > serial - this.getCurrentOffset();
 
-            this.AO100 = new Data.Statics<>(
-                    this.AO100Json.has(CURRENT_KEY) ? this.AO100Json.getDouble(CURRENT_KEY) : null,
-                    this.AO100Json.has(BEST_KEY) ? this.AO100Json.getDouble(BEST_KEY) : null,
-                    this.AO100Json.has(WORST_KEY) ? this.AO100Json.getDouble(WORST_KEY) : null,
-                    this.AO100Json.has(AVERAGE_KEY) ? this.AO100Json.getDouble(AVERAGE_KEY) : null
-            );
+            if (this.storage == COLUMNAR_STORAGE)
+                return this.currentColumns.size() > serial - this.getCurrentOffset();
+
+            final int length = this.records.length();
+            return length > 0 && this.records.getJSONObject(length - 1).getInt(Data.NUMBER_RESPONSE_SERIAL) >= serial;
         }
+
         /**
-         * Adds a new data in specific thread (recommended), which is "Do not finished"
+         * Reads the records of the given data file into primitive columns, JSON data files,
+         * binary segment files and column files are supported.
          *
-         * @throws Exception    if an error occurs while adding the data
+         * @param dataFile      the data file to read
+         * @return              the decoded chunk
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
          */
-        @AsyncTask
-        public void addDNF() throws Exception
+        @SyncTask
+        private Chunk readChunk(final File dataFile) throws Exception
         {
-            this.addData(new Data.NumberResponse(this.size));
+            return this.readChunk(dataFile, 0, Integer.MAX_VALUE);
         }
 
         /**
-         * Adds a new data object with the given time to the record in specific thread (recommended).
-         * 
-         * @param time          the time to include in the data object
-         * 
-         * @throws Exception    if an error occurs while adding the data
+         * Reads the records in range [from, to) of the given data file into primitive columns.
+         * The whole data file is decoded and cached if it is not in the cache yet, so the following
+         * reads of the file are served from memory until it is changed.
+         *
+         * @param dataFile      the data file to read
+         * @param from          the first position in the file, inclusive
+         * @param to            the last position in the file, exclusive
+         * @return              the decoded chunk, it must not be modified
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
          */
-        @AsyncTask
-        public void addData(double time) throws Exception
+        @SyncTask
+        private Chunk readChunk(final File dataFile, int from, int to) throws Exception
         {
-            if (time == Data.DNF) this.addDNF();
-            else this.addData(new Data.NumberResponse(this.size, time));
+            final Chunk cached = this.cache.get(dataFile);
+
+            if (cached != null)
+                return cached.slice(from, to);
+
+            // only the records in the range are read if there is no cache
+            if (this.cache.getBudget() == 0)
+                return this.decodeChunk(dataFile, from, to);
+
+            final Chunk chunk = this.decodeChunk(dataFile, 0, Integer.MAX_VALUE);
+            this.cache.put(dataFile, chunk);
+            return chunk.slice(from, to);
         }
 
         /**
-         * Adds a new data object with the given time to the record in ui thread (not recommended use directly).
-         * 
-         * @param data          the data object to include in the record
-         * 
-         * @throws Exception    if an error occurs while adding the data
+         * Reads the records of the given data file into primitive columns, see {@link #readChunk(File)}.
+         *
+         * @param dataFile      the data file to read
+         * @return              the data objects in the file
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
          */
+        @SyncTask
         @Override
+        protected List<Data> readDataFile(final File dataFile) throws Exception
+        {
+            return this.readChunk(dataFile).toDataList();
+        }
+
+        /**
+         * Decodes the records in range [from, to) of the given data file from the storage without the cache.
+         * A JSON data file is always parsed as a whole.
+         *
+         * @param dataFile      the data file to read
+         * @param from          the first position in the file, inclusive
+         * @param to            the last position in the file, exclusive
+         * @return              the decoded chunk
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
         @SyncTask
-        protected void addDataSync(final Data data) throws Exception
+        private Chunk decodeChunk(final File dataFile, int from, int to) throws Exception
         {
-            if (data.getDataType() != this.dataType)
-                throw new IOException(BasicUtils.combined("Try to add in compatible data type, expected: ",
-                        this.dataType, " but given: ", data.getDataType()));
+            final File packed = new File(this.rootDirectory, BasicUtils.combined(DATA_FILE_PREFIX, getDataFileIndex(dataFile), PACKED_EXTENSION_NAME));
 
-            final double time = ((Data.NumberResponse)(data)).getTime();
-            this.last100Data.add(time);
-            this.records.put(data.toJson());
+            // the data file is packed after the caller gets it, maybe by another recorder of the same directory
+            if (!dataFile.exists() && packed.exists())
+                return this.decodeChunk(packed, from, to);
 
-            this.updateAll(data, time);
-            this.updateMO3(time);
-            this.updateAO5(time);
-            this.updateAO12(time);
-            this.updateAO100(time);
+            if (dataFile.getName().endsWith(PACKED_EXTENSION_NAME))
+                return ChunkCodec.read(dataFile).slice(from, to);
 
-            if (this.size % (this.groupSize + 1) == 0)
-            {
-                final Pair<File, JSONObject> newData = this.createNewDataFile(this.size / groupSize);
-                this.dataFiles.add(newData.getValue0());
-                this.currentDataFile = newData.getValue0();
-                this.currentDataFileJson = newData.getValue1();
-                this.records = this.currentDataFileJson.getJSONArray(RECORDS_KEY);
-            }
+            // the full data files may be in the storage of a running migration
+            if (getFileStorage(dataFile) == BINARY_STORAGE)
+                return RecordLog.read(dataFile, from, to);
 
-            if (this.last100Data.size() > 100)
-                this.last100Data.pop();
+            if (getFileStorage(dataFile) == COLUMNAR_STORAGE)
+                return dataFile.equals(this.currentDataFile) ? this.currentColumns.toChunk(from, to) : ColumnStore.open(dataFile, false).toChunk(from, to);
 
-            this.updateDataFile();
-            this.updateManifestFile();
+            return Chunk.fromJson(new JSONObject(FileHelper.read(dataFile)).getJSONArray(RECORDS_KEY)).slice(from, to);
         }
 
         /**
          * Updates the overall statistics and JSON representations with the given data object and time.
          * This method updates the size, current, best, worst, and average values of the recorder
          * based on the provided data and time. It also updates the corresponding fields in the
-         * manifest and JSON representations.
+         * manifest, the JSON objects of the current, best and worst records are put by {@link #updateManifestFile()}.
          *
          * @param data          the data object to be processed and included in the statistics
          * @param time          the time value associated with the data object
@@ -828,7 +5121,6 @@ public class Recorder
 
             this.current = data;
             this.all.current = data;
-            this.AllJson.put(CURRENT_KEY, data.toJson());
 
             if (data.isValid())
             {
@@ -836,14 +5128,12 @@ public class Recorder
                 {
                     this.best = data;
                     this.all.best = data;
-                    this.AllJson.put(BEST_KEY, data.toJson());
                 }
 
                 if (this.worst == null || data.compare(this.worst) == Data.WORSE)
                 {
                     this.worst = data;
                     this.all.worst = data;
-                    this.AllJson.put(WORST_KEY, data.toJson());
                 }
 
                 final double oldAverage = (this.all.average == null) ? 0.0 : (double)(this.all.average);
@@ -941,5 +5231,180 @@ public class Recorder
             this.AO100Json.put(AVERAGE_KEY, Data.format(average)).put(CURRENT_KEY, Data.format(current))
                           .put(BEST_KEY, Data.format(best)).put(WORST_KEY, Data.format(worst)).put(VALID_SIZE_KEY, validSize);
         }
+
+        /**
+         * IndexSource reads the records of this recorder for its {@link HistoryIndexes}.
+         */
+        private final class IndexSource implements HistoryIndexes.Source
+        {
+            @Override
+            public int getSize()
+            {
+                return NumberResponse.this.size;
+            }
+
+            @Override
+            public int getGroupSize()
+            {
+                return NumberResponse.this.groupSize;
+            }
+
+            @Override
+            public Chunk getRangeSync(int from, int to) throws Exception
+            {
+                return NumberResponse.this.getRangeSync(from, to);
+            }
+
+            @Override
+            public PrimitiveIterator.OfDouble timeIterator(int fromSerial)
+            {
+                return NumberResponse.this.timeIterator(fromSerial);
+            }
+
+            @Override
+            public void awaitAlignedSync() throws Exception
+            {
+                // the data files of older directories are aligned before the indexes are loaded
+                NumberResponse.this.awaitIndexesSync();
+            }
+        }
+
+        /**
+         * MigrationLayout replaces the data files of this recorder for a {@link StorageMigration}.
+         */
+        private final class MigrationLayout implements StorageMigration.Layout
+        {
+            @Override
+            public Chunk readChunk(final File dataFile) throws Exception
+            {
+                return NumberResponse.this.readChunk(dataFile);
+            }
+
+            @Override
+            public void replace(final File source, final File target, boolean current) throws Exception
+            {
+                final int index = getDataFileIndex(source);
+                NumberResponse.this.layoutLock.writeLock().lock();
+
+                try
+                {
+                    if (current)
+                    {
+                        NumberResponse.this.storage = NumberResponse.this.migration;
+                        NumberResponse.this.migratedIndexes.clear();
+                    }
+                    else
+                    {
+                        NumberResponse.this.migratedIndexes.add(index);
+                    }
+
+                    NumberResponse.this.dataFiles.set(NumberResponse.this.dataFiles.indexOf(source), target);
+                    NumberResponse.this.cache.invalidate(source);
+
+                    if (current)
+                        NumberResponse.this.rollDataFile(index);
+                }
+                finally
+                {
+                    NumberResponse.this.layoutLock.writeLock().unlock();
+                }
+            }
+        }
+
+        /**
+         * RechunkSource reads the records of this recorder for a {@link Rechunker}.
+         */
+        private final class RechunkSource implements Rechunker.Source
+        {
+            @Override
+            public boolean isAligned()
+            {
+                return NumberResponse.this.aligned;
+            }
+
+            @Override
+            public int getGroupSize()
+            {
+                return NumberResponse.this.groupSize;
+            }
+
+            @Override
+            public Chunk readRangeSync(int from, int to) throws Exception
+            {
+                // the pack lock keeps the data files from being renamed while reading
+                synchronized (NumberResponse.this.packLock)
+                {
+                    return NumberResponse.this.getRangeSync(from, to);
+                }
+            }
+
+            @Override
+            public List<File> getDataFiles()
+            {
+                return NumberResponse.this.dataFiles;
+            }
+
+            @Override
+            public Chunk readChunk(final File dataFile) throws Exception
+            {
+                return NumberResponse.this.readChunk(dataFile);
+            }
+        }
+
+        /**
+         * The overall statistics of a number response recorder before one attempt is added.
+         */
+        private static final class UndoStep
+        {
+            // three records (serial and time), the average and the valid size
+            private static final int SIZE = (Integer.BYTES + Double.BYTES) * 3 + Double.BYTES + Integer.BYTES;
+
+            private final Data current;
+            private final Data best;
+            private final Data worst;
+            private final Double average;
+            private final int validSize;
+
+            private UndoStep(final Data current, final Data best, final Data worst, final Double average, int validSize)
+            {
+                this.current = current;
+                this.best = best;
+                this.worst = worst;
+                this.average = average;
+                this.validSize = validSize;
+            }
+
+            private static UndoStep read(final ByteBuffer buffer) throws Exception
+            {
+                return new UndoStep(readData(buffer), readData(buffer), readData(buffer), toDouble(buffer.getDouble()), buffer.getInt());
+            }
+
+            private static Data readData(final ByteBuffer buffer) throws Exception
+            {
+                final int serial = buffer.getInt();
+                final double time = buffer.getDouble();
+
+                if (serial < 0)
+                    return null;
+
+                return new Data.NumberResponse(serial, time);
+            }
+
+            private static void writeData(final ByteBuffer buffer, final Data data) throws Exception
+            {
+                if (data == null)
+                    buffer.putInt(-1).putDouble(Double.NaN);
+                else
+                    buffer.putInt(((Data.NumberResponse)(data)).getSerial()).putDouble(((Data.NumberResponse)(data)).getTime());
+            }
+
+            private void write(final ByteBuffer buffer) throws Exception
+            {
+                writeData(buffer, this.current);
+                writeData(buffer, this.best);
+                writeData(buffer, this.worst);
+                buffer.putDouble(toDouble(this.average)).putInt(this.validSize);
+            }
+        }
     }
 }
\ No newline at end of file
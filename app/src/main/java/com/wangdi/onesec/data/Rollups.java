@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ */
+
+package com.wangdi.onesec.data;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * <p>
+ * Rollups holds the summaries of the records of a number response recorder per calendar day and per ISO week,
+ * so a calendar dashboard reads a few hundred rows instead of the history. Every row is a {@link ChunkSummary},
+ * which gives the count, mean, best, worst and DNF rate of the period, and the first and last serial in it.
+ * </p>
+ *
+ * <p>
+ * A day is keyed as yyyyMMdd, for example 20250301, and a week as the week-based year * 100 + the ISO week,
+ * for example 202509, both in the default time zone of the device. The records without a timestamp are not in
+ * any row. The rows are updated on every append, it is O(log rows).
+ * </p>
+ *
+ * @see TimestampLog
+ * @author Di Wang
+ * @version 1.0
+ */
+
+public final class Rollups
+{
+    public static final byte DAY = 0;
+    public static final byte WEEK = 1;
+
+    private final TreeMap<Integer, ChunkSummary> days;
+    private final TreeMap<Integer, ChunkSummary> weeks;
+    // reused by every append, the rows are only changed by the writer of the recorder
+    private final Calendar calendar;
+
+    public Rollups()
+    {
+        this.days = new TreeMap<>();
+        this.weeks = new TreeMap<>();
+        this.calendar = newCalendar();
+    }
+
+    /**
+     * Returns the key of the day of the given timestamp, for example 20250301.
+     *
+     * @param timestamp         milliseconds since epoch
+     * @return                  the key of the day
+     */
+    public static int getDayKey(long timestamp)
+    {
+        return getKey(newCalendar(), DAY, timestamp);
+    }
+
+    /**
+     * Returns the key of the ISO week of the given timestamp, for example 202509.
+     *
+     * @param timestamp         milliseconds since epoch
+     * @return                  the key of the week
+     */
+    public static int getWeekKey(long timestamp)
+    {
+        return getKey(newCalendar(), WEEK, timestamp);
+    }
+
+    /**
+     * Returns the key of the given period which contains the given timestamp.
+     *
+     * @param period            {@link #DAY} or {@link #WEEK}
+     * @param timestamp         milliseconds since epoch
+     * @return                  the key of the period
+     */
+    public synchronized int getKey(byte period, long timestamp)
+    {
+        return getKey(this.calendar, period, timestamp);
+    }
+
+    /**
+     * Adds the given record to the rows of its day and week.
+     *
+     * @param serial            the serial of the record, it must be after the records already added
+     * @param time              the time of the record, {@link Data#DNF} for an attempt not finished
+     * @param timestamp         the timestamp of the record, the record is ignored if it is {@link TimestampLog#NO_TIMESTAMP}
+     */
+    public synchronized void add(int serial, double time, long timestamp)
+    {
+        if (timestamp == TimestampLog.NO_TIMESTAMP)
+            return;
+
+        final ChunkSummary record = ChunkSummary.of(serial, time);
+        this.days.merge(getKey(this.calendar, DAY, timestamp), record, ChunkSummary::merge);
+        this.weeks.merge(getKey(this.calendar, WEEK, timestamp), record, ChunkSummary::merge);
+    }
+
+    /**
+     * Returns the row of the given period.
+     *
+     * @param period            {@link #DAY} or {@link #WEEK}
+     * @param key               the key of the period, see {@link #getDayKey(long)} and {@link #getWeekKey(long)}
+     * @return                  the summary of the records in the period, null if there is none
+     */
+    public synchronized ChunkSummary get(byte period, int key)
+    {
+        return this.getRows(period).get(key);
+    }
+
+    /**
+     * Replaces the row of the given period, for example after the records in it are changed.
+     *
+     * @param period            {@link #DAY} or {@link #WEEK}
+     * @param key               the key of the period
+     * @param summary           the new summary of the records in the period, the row is removed if it is empty
+     */
+    public synchronized void put(byte period, int key, final ChunkSummary summary)
+    {
+        if (summary.count == 0)
+            this.getRows(period).remove(key);
+        else
+            this.getRows(period).put(key, summary);
+    }
+
+    /**
+     * Returns a copy of the rows of the given period with key in range [fromKey, toKey).
+     *
+     * @param period            {@link #DAY} or {@link #WEEK}
+     * @param fromKey           the first key, inclusive
+     * @param toKey             the last key, exclusive
+     * @return                  the rows in key order
+     */
+    public synchronized SortedMap<Integer, ChunkSummary> getRange(byte period, int fromKey, int toKey)
+    {
+        return new TreeMap<>(this.getRows(period).subMap(fromKey, toKey));
+    }
+
+    /**
+     * Removes all the rows.
+     */
+    public synchronized void clear()
+    {
+        this.days.clear();
+        this.weeks.clear();
+    }
+
+    /**
+     * Encodes all the rows, see {@link #read(ByteBuffer)}.
+     *
+     * @return                  the encoded rows
+     */
+    public synchronized byte[] toBytes()
+    {
+        final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES * 2 + (this.days.size() + this.weeks.size()) * (Integer.BYTES + ChunkSummary.ENTRY_SIZE));
+
+        for (final TreeMap<Integer, ChunkSummary> rows : Arrays.asList(this.days, this.weeks))
+        {
+            buffer.putInt(rows.size());
+
+            for (final Map.Entry<Integer, ChunkSummary> row : rows.entrySet())
+                buffer.putInt(row.getKey()).put(row.getValue().toBytes());
+        }
+
+        return buffer.array();
+    }
+
+    /**
+     * Replaces all the rows with the rows encoded by {@link #toBytes()}.
+     *
+     * @param buffer            the encoded rows
+     *
+     * @throws java.nio.BufferUnderflowException if the rows are incomplete
+     */
+    public synchronized void read(final ByteBuffer buffer)
+    {
+        this.clear();
+
+        for (final TreeMap<Integer, ChunkSummary> rows : Arrays.asList(this.days, this.weeks))
+        {
+            final int count = buffer.getInt();
+
+            for (int i = 0; i < count; i++)
+                rows.put(buffer.getInt(), ChunkSummary.read(buffer));
+        }
+    }
+
+    private TreeMap<Integer, ChunkSummary> getRows(byte period)
+    {
+        return (period == DAY) ? this.days : this.weeks;
+    }
+
+    private static Calendar newCalendar()
+    {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setFirstDayOfWeek(Calendar.MONDAY);
+        calendar.setMinimalDaysInFirstWeek(4);
+        return calendar;
+    }
+
+    private static int getKey(final Calendar calendar, byte period, long timestamp)
+    {
+        calendar.setTimeInMillis(timestamp);
+
+        if (period == DAY)
+            return calendar.get(Calendar.YEAR) * 10000 + (calendar.get(Calendar.MONTH) + 1) * 100 + calendar.get(Calendar.DAY_OF_MONTH);
+
+        return calendar.getWeekYear() * 100 + calendar.get(Calendar.WEEK_OF_YEAR);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ */
+
+package com.wangdi.onesec.data;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import com.wangdi.onesec.interfaces.SyncTask;
+import com.wangdi.onesec.utils.BasicUtils;
+
+/**
+ * <p>
+ * SnapshotFile writes and reads the snapshot files of a number response recorder, for example the tail file and
+ * the files of {@link HistoryIndexes}. A snapshot file starts with the size of the recorder when it is written,
+ * so a snapshot older than the records is brought up to date from the records after it.
+ * </p>
+ *
+ * <p>
+ * A snapshot file is written to a temporary file next to it and renamed, so it is either the old one
+ * or the complete new one.
+ * </p>
+ *
+ * @see Recorder.NumberResponse
+ * @author Di Wang
+ * @version 1.0
+ */
+
+final class SnapshotFile
+{
+    private SnapshotFile()
+    {
+    }
+
+    /**
+     * Writes the given bytes to a temporary file and renames it to the given snapshot file.
+     *
+     * @param file          the snapshot file
+     * @param bytes         the content of the snapshot
+     *
+     * @throws Exception    if error occurs, for example permission denied
+     */
+    @SyncTask
+    static void write(final File file, final byte[] bytes) throws Exception
+    {
+        final File temporary = new File(file.getParentFile(), BasicUtils.combined(file.getName(), Recorder.TEMPORARY_EXTENSION_NAME));
+
+        try (final FileOutputStream output = new FileOutputStream(temporary))
+        {
+            output.write(bytes);
+        }
+
+        if (!temporary.renameTo(file))
+            throw new IOException(BasicUtils.combined("Rename file false: ", temporary.getAbsolutePath()));
+    }
+
+    /**
+     * Reads the given snapshot file. A snapshot written with a smaller size is still used, the records appended
+     * after it are added by the caller.
+     *
+     * @param file          the snapshot file
+     * @param size          the number of records
+     * @return              the content from the size, null if the file does not exist or it is written
+     *                      with a greater size
+     *
+     * @throws Exception    if error occurs, for example permission denied
+     */
+    @SyncTask
+    static ByteBuffer read(final File file, int size) throws Exception
+    {
+        if (!file.exists() || file.length() < Integer.BYTES)
+            return null;
+
+        final byte[] bytes = new byte[(int)(file.length())];
+
+        try (final RandomAccessFile input = new RandomAccessFile(file, "r"))
+        {
+            input.readFully(bytes);
+        }
+
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        final int count = buffer.getInt();
+        return (count >= 0 && count <= size) ? (ByteBuffer)(buffer.rewind()) : null;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ */
+
+package com.wangdi.onesec.data;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.wangdi.onesec.interfaces.SyncTask;
+import com.wangdi.onesec.utils.BasicUtils;
+import com.wangdi.onesec.utils.FileHelper;
+
+/**
+ * <p>
+ * StorageMigration rewrites the data files of a number response recorder in another storage one at a time.
+ * A data file is written to a temporary file in the new storage and renamed, then the recorder replaces the
+ * old data file through {@link Layout}, so the recorder is read and appended during the migration.
+ * </p>
+ *
+ * <p>
+ * The rewritten data files are found by their extension names after opening, so a migration stopped by
+ * closing the application goes on from the next data file. The caller decides the order of the data files
+ * and holds the locks of the recorder.
+ * </p>
+ *
+ * @see Recorder.NumberResponse#migrateStorage(byte)
+ * @author Di Wang
+ * @version 1.0
+ */
+
+final class StorageMigration
+{
+    /**
+     * Layout reads and replaces the data files of the recorder which is migrated.
+     */
+    interface Layout
+    {
+        /**
+         * Returns all the records of the given data file in any storage.
+         *
+         * @param dataFile      the data file to read
+         * @return              the records of the data file
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        Chunk readChunk(final File dataFile) throws Exception;
+
+        /**
+         * Replaces the given data file by the rewritten one in the data files of the recorder.
+         *
+         * @param source        the data file in the old storage
+         * @param target        the same data file in the new storage
+         * @param current       whether it is the current data file, then the new storage becomes the storage
+         *                      of the recorder
+         *
+         * @throws Exception    if error occurs, for example no such file, permission denied
+         */
+        void replace(final File source, final File target, boolean current) throws Exception;
+    }
+
+    private final File rootDirectory;
+    private final Layout layout;
+    // the storage which the data files are migrating to
+    private final byte storage;
+    private final int groupSize;
+
+    /**
+     * Creates a migration of the data files in the given directory to the given storage.
+     *
+     * @param rootDirectory the root directory of the recorder
+     * @param layout        the data files of the recorder
+     * @param storage       the storage to migrate to
+     * @param groupSize     the number of records per data file
+     */
+    StorageMigration(final File rootDirectory, final Layout layout, byte storage, int groupSize)
+    {
+        this.rootDirectory = rootDirectory;
+        this.layout = layout;
+        this.storage = storage;
+        this.groupSize = groupSize;
+    }
+
+    /**
+     * Rewrites the given data file in the storage of the migration and replaces it, the data file in the old
+     * storage is kept and deleted by the caller.
+     *
+     * @param source        the data file in the old storage
+     * @param current       whether it is the current data file, appending must be stopped by the caller
+     *
+     * @throws Exception    if error occurs, for example no such file, permission denied
+     */
+    @SyncTask
+    void migrate(final File source, boolean current) throws Exception
+    {
+        final int index = Recorder.getDataFileIndex(source);
+        final File target = new File(this.rootDirectory, BasicUtils.combined(Recorder.DATA_FILE_PREFIX, index, Recorder.getDataFileExtension(this.storage)));
+        final File temporary = new File(this.rootDirectory, BasicUtils.combined(target.getName(), Recorder.TEMPORARY_EXTENSION_NAME));
+
+        FileHelper.deleteFile(temporary);
+        Recorder.writeDataFile(temporary, this.layout.readChunk(source), this.groupSize, this.storage);
+
+        if (!temporary.renameTo(target))
+            throw new IOException(BasicUtils.combined("Rename file false: ", temporary.getAbsolutePath()));
+
+        this.layout.replace(source, target, current);
+    }
+}
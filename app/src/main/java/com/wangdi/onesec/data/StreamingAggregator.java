@@ -25,9 +25,12 @@
 
 package com.wangdi.onesec.data;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Deque;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.TreeMap;
 
 /**
@@ -42,6 +45,11 @@ import java.util.TreeMap;
  * While record the data, also record it average, maximum and minimum in all MO or AO
  * </p>
  *
+ * <p>
+ * The last adds can be reverted by {@link #remove()} if an undo depth is set, every add keeps the value
+ * it pushes out of the window and the peaks before it, so removing does not need the earlier data.
+ * </p>
+ *
  * @see StreamingAggregator.AO
  * @see StreamingAggregator.MO
  * @author Di Wang
@@ -54,7 +62,11 @@ public abstract class StreamingAggregator<T extends Comparable<T>>
     protected final Comparator<T> comparator;
     protected final Deque<T> stream;
 
+    // the adds which can be reverted, the last one at the end
+    protected final Deque<Step<T>> steps;
+
     protected int index;
+    protected int undoDepth;
     protected T min;
     protected T max;
 
@@ -63,8 +75,10 @@ public abstract class StreamingAggregator<T extends Comparable<T>>
         this.size = size;
         this.comparator = comparator;
         this.stream = new LinkedList<>();
+        this.steps = new ArrayDeque<>();
 
         this.index = 0;
+        this.undoDepth = 0;
         this.max = this.min = null;
     }
 
@@ -73,8 +87,10 @@ public abstract class StreamingAggregator<T extends Comparable<T>>
         this.size = size;
         this.comparator = comparator;
         this.stream = deque;
+        this.steps = new ArrayDeque<>();
 
         this.index = deque.size();
+        this.undoDepth = 0;
         this.max = max;
         this.min = min;
     }
@@ -98,6 +114,164 @@ public abstract class StreamingAggregator<T extends Comparable<T>>
         return null;
     }
 
+    /**
+     * Reverts the last add. This method only removes the last value from the stream, subclasses
+     * also restore the value pushed out by the add and all the statistics before it.
+     *
+     * @return                  The result of removing, which may vary depending on the implementation
+     *                          in the subclass, the removed value in this class.
+     *
+     * @throws IllegalStateException if there is no add to revert
+     */
+    public T remove()
+    {
+        if (this.stream.isEmpty())
+            throw new IllegalStateException("No value to remove");
+
+        this.index--;
+        return this.stream.removeLast();
+    }
+
+    /**
+     * Replaces the value at the given position of the current window, for example a past value is corrected.
+     * This method only replaces the value in the stream, subclasses also update their running sums.
+     * The peaks and the average are not changed, they depend on the windows before, see {@link #setPeaks(Comparable, Comparable)}.
+     *
+     * @param position          the position in the window, 0 for the oldest value
+     * @param value             the new value
+     * @return                  The result of replacing, which may vary depending on the implementation
+     *                          in the subclass, the replaced value in this class.
+     *
+     * @throws IndexOutOfBoundsException if the position is not in the window
+     */
+    public T replace(int position, T value)
+    {
+        final List<T> values = new ArrayList<>(this.stream);
+        final T replaced = values.set(position, value);
+
+        this.stream.clear();
+        this.stream.addAll(values);
+        return replaced;
+    }
+
+    /**
+     * Sets the best and worst result of all the windows, for example after the results of past windows are
+     * computed again.
+     *
+     * @param min               the minimum result, null if no window is valid
+     * @param max               the maximum result, null if no window is valid
+     */
+    public void setPeaks(T min, T max)
+    {
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * Sets how many of the last adds can be reverted by {@link #remove()}, the older adds are forgotten.
+     * The depth is 0 by default, so nothing is kept.
+     *
+     * @param depth             the maximum number of adds to keep
+     */
+    public void setUndoDepth(int depth)
+    {
+        this.undoDepth = Math.max(depth, 0);
+
+        while (this.steps.size() > this.undoDepth)
+            this.steps.removeFirst();
+    }
+
+    /**
+     * Returns how many of the last adds can be reverted.
+     *
+     * @return                  the number of adds which can be removed
+     */
+    public int getUndoableCount()
+    {
+        return this.steps.size();
+    }
+
+    /**
+     * Returns the adds which can be reverted, for example to store them with the statistics.
+     *
+     * @return                  a copy of the steps, the oldest first
+     */
+    public List<Step<T>> getSteps()
+    {
+        return new ArrayList<>(this.steps);
+    }
+
+    /**
+     * Replaces the adds which can be reverted, the steps must be the last adds of the stream,
+     * for example they are read with the statistics which are stored at the same time.
+     *
+     * @param steps             the steps, the oldest first
+     */
+    public void setSteps(final List<Step<T>> steps)
+    {
+        this.steps.clear();
+        this.steps.addAll(steps);
+        this.setUndoDepth(this.undoDepth);
+    }
+
+    /**
+     * Returns the values in the current window, the oldest first.
+     *
+     * @return                  a copy of the values in the window
+     */
+    public List<T> getWindow()
+    {
+        return new ArrayList<>(this.stream);
+    }
+
+    /**
+     * Keeps the given step if an undo depth is set.
+     *
+     * @param step              the step of the last add
+     */
+    protected void pushStep(final Step<T> step)
+    {
+        if (this.undoDepth == 0)
+            return;
+
+        if (this.steps.size() == this.undoDepth)
+            this.steps.removeFirst();
+
+        this.steps.add(step);
+    }
+
+    /**
+     * Removes the step of the last add and restores the value it pushed out of the window,
+     * the peaks before it are restored too.
+     *
+     * @return                  the step of the last add
+     *
+     * @throws IllegalStateException if the last add is not kept
+     */
+    protected Step<T> popStep()
+    {
+        if (this.steps.isEmpty())
+            throw new IllegalStateException("No add can be reverted");
+
+        return this.steps.removeLast();
+    }
+
+    /**
+     * Restores the peaks before the given step, and the value it pushed out of the window.
+     *
+     * @param step              the step of the reverted add
+     */
+    protected void restore(final Step<T> step)
+    {
+        if (step.evicted != null)
+            this.stream.addFirst(step.evicted);
+
+        // the window is full again if the add pushed out a value
+        this.index = Math.max(this.index, this.stream.size());
+        this.min = step.min;
+        this.max = step.max;
+    }
+
     /**
      * Returns the minimum value in the current stream of data.
      *
@@ -129,6 +303,44 @@ public abstract class StreamingAggregator<T extends Comparable<T>>
 
     public abstract int getValidSize();
 
+    /**
+     * Returns the average of the results of all the full windows.
+     *
+     * @return                  the average value, or null if no window is full yet
+     */
+    public abstract T getAverage();
+
+    /**
+     * Sets the average of the results of all the full windows and the number of valid results in it.
+     *
+     * @param average           the average value, or null if no window is valid
+     * @param validSize         the number of valid results
+     */
+    public abstract void setAverage(T average, int validSize);
+
+    /**
+     * One add of a stream: the value it pushed out of the window, its result and the statistics before it.
+     *
+     * @param <T>               the type of the values
+     */
+    public static final class Step<T>
+    {
+        public final T evicted;
+        public final T result;
+        public final T min;
+        public final T max;
+        public final T average;
+
+        public Step(T evicted, T result, T min, T max, T average)
+        {
+            this.evicted = evicted;
+            this.result = result;
+            this.min = min;
+            this.max = max;
+            this.average = average;
+        }
+    }
+
     public static final class MO extends StreamingAggregator<Double>
     {
         private int validSize;
@@ -144,11 +356,9 @@ public abstract class StreamingAggregator<T extends Comparable<T>>
             this.partSum1 = 0.0;
             this.partSum2 = 0;
 
+            // the peaks are the best and worst mean of all windows, not values in the stream
             for (final Double value : this.stream)
-            {
                 this.updateSum(value, true);
-                this.updatePeak(value);
-            }
 
             this.average = average;
         }
@@ -177,6 +387,8 @@ public abstract class StreamingAggregator<T extends Comparable<T>>
         @Override
         public Double add(Double value)
         {
+            final Double min = this.min, max = this.max, average = this.average;
+
             if (this.index < this.size)
             {
                 super.add(value);
@@ -184,18 +396,62 @@ public abstract class StreamingAggregator<T extends Comparable<T>>
                 final Double returnValue = (this.index != this.size) ? null : this.parseSum() / this.size;
                 this.updatePeak(returnValue);
                 this.updateAverage(returnValue);
+                this.pushStep(new Step<>(null, returnValue, min, max, average));
                 return returnValue;
             }
 
-            this.updateSum(this.stream.pop(), false);
+            final Double removeValue = this.stream.pop();
+            this.updateSum(removeValue, false);
             super.add(value);
             this.updateSum(value, true);
             final Double returnValue = this.parseSum() / this.size;
             this.updatePeak(returnValue);
             this.updateAverage(returnValue);
+            this.pushStep(new Step<>(removeValue, returnValue, min, max, average));
             return returnValue;
         }
 
+        /**
+         * Reverts the last add, the value it pushed out of the window is added back, the peaks
+         * and the average are restored to the values before it. It costs O(1).
+         *
+         * @return                  the mean of the window after removing, or null if the window is not full
+         *
+         * @throws IllegalStateException if the last add is not kept, see {@link #setUndoDepth(int)}
+         */
+        @Override
+        public Double remove()
+        {
+            final Step<Double> step = this.popStep();
+            this.updateSum(super.remove(), false);
+            this.restore(step);
+
+            if (step.evicted != null)
+                this.updateSum(step.evicted, true);
+
+            if (step.result != null && step.result != Data.DNF)
+                this.validSize--;
+
+            this.average = step.average;
+            return (this.stream.size() < this.size) ? null : this.parseSum() / this.size;
+        }
+
+        /**
+         * Replaces the value at the given position of the current window and updates the running sum.
+         * It costs O(size).
+         *
+         * @param position          the position in the window, 0 for the oldest value
+         * @param value             the new value
+         * @return                  the mean of the window after replacing, or null if the window is not full
+         */
+        @Override
+        public Double replace(int position, Double value)
+        {
+            this.updateSum(super.replace(position, value), false);
+            this.updateSum(value, true);
+            return (this.stream.size() < this.size) ? null : this.parseSum() / this.size;
+        }
+
         /**
          * Returns the valid size of the current stream of data.
          * This size excludes any entries that are marked as DNF (Did Not Finish).
@@ -218,6 +474,13 @@ public abstract class StreamingAggregator<T extends Comparable<T>>
             return this.average;
         }
 
+        @Override
+        public void setAverage(Double average, int validSize)
+        {
+            this.average = average;
+            this.validSize = validSize;
+        }
+
         /**
          * Updates the peak values in the current stream of data.
          * This method checks the given value and updates the maximum and minimum
@@ -315,11 +578,11 @@ public abstract class StreamingAggregator<T extends Comparable<T>>
             this.partSum2 = 0;
             this.map = new TreeMap<>();
 
+            // the peaks are the best and worst average of all windows, not values in the stream
             for (final Double value : this.stream)
             {
                 this.updateSum(value, true);
                 this.updateMap(value, true);
-                this.updatePeak(value);
             }
 
             this.average = average;
@@ -351,6 +614,8 @@ public abstract class StreamingAggregator<T extends Comparable<T>>
         @Override
         public Double add(Double value)
         {
+            final Double min = this.min, max = this.max, average = this.average;
+
             if (this.index < this.size)
             {
                 super.add(value);
@@ -359,6 +624,7 @@ public abstract class StreamingAggregator<T extends Comparable<T>>
                 final Double returnValue = (this.index != this.size) ? null : this.parseSum() / this.realSize;
                 this.updatePeak(returnValue);
                 this.updateAverage(returnValue);
+                this.pushStep(new Step<>(null, returnValue, min, max, average));
                 return returnValue;
             }
 
@@ -371,9 +637,59 @@ public abstract class StreamingAggregator<T extends Comparable<T>>
             final Double returnValue = this.parseSum() / this.realSize;
             this.updatePeak(returnValue);
             this.updateAverage(returnValue);
+            this.pushStep(new Step<>(removeValue, returnValue, min, max, average));
             return returnValue;
         }
 
+        /**
+         * Reverts the last add, the value it pushed out of the window is added back, the peaks
+         * and the average are restored to the values before it. It costs O(log size).
+         *
+         * @return                  the average of the window after removing, or null if the window is not full
+         *
+         * @throws IllegalStateException if the last add is not kept, see {@link #setUndoDepth(int)}
+         */
+        @Override
+        public Double remove()
+        {
+            final Step<Double> step = this.popStep();
+            final Double removeValue = super.remove();
+            this.updateSum(removeValue, false);
+            this.updateMap(removeValue, false);
+            this.restore(step);
+
+            if (step.evicted != null)
+            {
+                this.updateSum(step.evicted, true);
+                this.updateMap(step.evicted, true);
+            }
+
+            if (step.result != null && step.result != Data.DNF)
+                this.validSize--;
+
+            this.average = step.average;
+            return (this.stream.size() < this.size) ? null : this.parseSum() / this.realSize;
+        }
+
+        /**
+         * Replaces the value at the given position of the current window and updates the running sum
+         * and the sorted values. It costs O(size).
+         *
+         * @param position          the position in the window, 0 for the oldest value
+         * @param value             the new value
+         * @return                  the average of the window after replacing, or null if the window is not full
+         */
+        @Override
+        public Double replace(int position, Double value)
+        {
+            final Double replaced = super.replace(position, value);
+            this.updateSum(replaced, false);
+            this.updateMap(replaced, false);
+            this.updateSum(value, true);
+            this.updateMap(value, true);
+            return (this.stream.size() < this.size) ? null : this.parseSum() / this.realSize;
+        }
+
         /**
          * Returns the valid size of the current stream of data.
          * This size excludes any entries that are marked as DNF (Did Not Finish).
@@ -396,6 +712,13 @@ public abstract class StreamingAggregator<T extends Comparable<T>>
             return this.average;
         }
 
+        @Override
+        public void setAverage(Double average, int validSize)
+        {
+            this.average = average;
+            this.validSize = validSize;
+        }
+
         /**
          * Updates the map of values in the stream to their respective counts.
          * If the given value is being added, the count of that value in the map is incremented.
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ */
+
+package com.wangdi.onesec.data;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import com.wangdi.onesec.interfaces.SyncTask;
+
+/**
+ * <p>
+ * TimestampLog provided methods to read and write the timestamp file of a number response recorder.
+ * The file is a column of wall-clock timestamps (long, milliseconds since epoch) indexed by serial,
+ * so the timestamp of a record is at a fixed offset no matter how the data files are chunked.
+ * </p>
+ *
+ * <p>
+ * A record without a timestamp, for example it is imported or added before timestamps are recorded,
+ * has {@link #NO_TIMESTAMP}.
+ * </p>
+ *
+ * @see RecordLog
+ * @author Di Wang
+ * @version 1.0
+ */
+
+public final class TimestampLog
+{
+    public static final int ENTRY_SIZE = Long.BYTES;
+
+    public static final long NO_TIMESTAMP = 0L;
+
+    /**
+     * Appends the given timestamps in range [from, to) to the end of the given timestamp file with one write.
+     *
+     * @param file              target timestamp file
+     * @param timestamps        the timestamps to append, null if none of the records has a timestamp
+     * @param from              the first position to append, inclusive
+     * @param to                the last position to append, exclusive
+     *
+     * @throws Exception        if error occurs, for example permission denied
+     */
+    @SyncTask
+    public static void append(final File file, final long[] timestamps, int from, int to) throws Exception
+    {
+        final ByteBuffer buffer = ByteBuffer.allocate((to - from) * ENTRY_SIZE);
+
+        for (int i = from; i < to; i++)
+            buffer.putLong((timestamps == null) ? NO_TIMESTAMP : timestamps[i]);
+
+        try (final FileOutputStream output = new FileOutputStream(file, true))
+        {
+            output.write(buffer.array());
+        }
+    }
+
+    /**
+     * Appends one timestamp to the end of the given timestamp file.
+     *
+     * @param file              target timestamp file
+     * @param timestamp         the timestamp of the next record
+     *
+     * @throws Exception        if error occurs, for example permission denied
+     */
+    @SyncTask
+    public static void append(final File file, long timestamp) throws Exception
+    {
+        append(file, new long[] {timestamp}, 0, 1);
+    }
+
+    /**
+     * Reads the timestamps of the records in range [from, to), the records after the end of the file
+     * have {@link #NO_TIMESTAMP}.
+     *
+     * @param file              target timestamp file
+     * @param from              the first serial, inclusive
+     * @param to                the last serial, exclusive
+     * @return                  the timestamps in serial order
+     *
+     * @throws Exception        if error occurs, for example permission denied
+     */
+    @SyncTask
+    public static long[] read(final File file, int from, int to) throws Exception
+    {
+        final int start = Math.max(from, 0);
+        final long[] timestamps = new long[Math.max(to - start, 0)];
+        final int size = Math.max(Math.min(to, count(file)) - start, 0);
+
+        if (size == 0)
+            return timestamps;
+
+        final byte[] bytes = new byte[size * ENTRY_SIZE];
+
+        try (final RandomAccessFile input = new RandomAccessFile(file, "r"))
+        {
+            input.seek((long)(start) * ENTRY_SIZE);
+            input.readFully(bytes);
+        }
+
+        ByteBuffer.wrap(bytes).asLongBuffer().get(timestamps, 0, size);
+        return timestamps;
+    }
+
+    /**
+     * Returns the number of complete timestamps in the given timestamp file.
+     *
+     * @param file              target timestamp file
+     * @return                  the number of timestamps, 0 if the file does not exist
+     */
+    @SyncTask
+    public static int count(final File file)
+    {
+        return (int)(file.length() / ENTRY_SIZE);
+    }
+
+    /**
+     * Makes the given timestamp file contain exactly the given number of timestamps, the timestamps after it
+     * are dropped and the missing ones are filled by {@link #NO_TIMESTAMP}.
+     *
+     * @param file              target timestamp file
+     * @param size              the number of records
+     *
+     * @throws Exception        if error occurs, for example permission denied
+     */
+    @SyncTask
+    public static void resize(final File file, int size) throws Exception
+    {
+        final long length = (long)(size) * ENTRY_SIZE;
+
+        if (file.length() == length)
+            return;
+
+        try (final RandomAccessFile access = new RandomAccessFile(file, "rw"))
+        {
+            // a torn timestamp at the end is dropped before filling
+            final long kept = Math.min(file.length() / ENTRY_SIZE * ENTRY_SIZE, length);
+            final byte[] empty = new byte[(int)(Math.min(length - kept, 1 << 16))];
+
+            access.setLength(kept);
+            access.seek(kept);
+
+            for (long position = kept; position < length; position += empty.length)
+                access.write(empty, 0, (int)(Math.min(length - position, empty.length)));
+        }
+    }
+
+    public TimestampLog()
+    {
+
+    }
+}
\ No newline at end of file
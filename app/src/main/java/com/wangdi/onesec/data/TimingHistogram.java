@@ -0,0 +1,409 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ */
+
+package com.wangdi.onesec.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import androidx.annotation.NonNull;
+
+import com.wangdi.onesec.utils.BasicUtils;
+
+/**
+ * <p>
+ * TimingHistogram is a log-linear histogram of the valid absolute times in fixed buckets, in the same layout as
+ * an HDR histogram. A time is counted in units of the resolution, the times under 2^b units have a bucket per unit,
+ * and every following power of two is split into 2^(b - 1) buckets, where 2^b is the smallest power of two not less
+ * than 2 * 10^digits. So a time is kept with the given number of significant digits at least, for example with
+ * the default 0.1 ms resolution and 3 digits, the times under 0.2048 s are exact to 0.1 ms, and a 5 s time is
+ * within 5 ms. The times after the highest time are counted in the last bucket.
+ * </p>
+ *
+ * <p>
+ * Adding and removing a time only increase or decrease a counter without any allocation, a percentile or
+ * a distribution chart is read in O(buckets) without sorting the times. Histograms with the same layout
+ * can be merged, and they are stored as the buckets which are not empty.
+ * </p>
+ *
+ * @see QuantileSketch
+ * @author Di Wang
+ * @version 1.0
+ */
+
+public final class TimingHistogram
+{
+    public static final double DEFAULT_RESOLUTION = 0.0001;
+    public static final double DEFAULT_HIGHEST = 5.0;
+    public static final int DEFAULT_DIGITS = 3;
+
+    private final double resolution;
+    private final double highest;
+    private final int digits;
+    // 2^b buckets of one unit, then 2^(b - 1) buckets for every power of two
+    private final int subBucketBits;
+    private final int subBucketCount;
+    private final long[] counts;
+    private long total;
+
+    public TimingHistogram()
+    {
+        this(DEFAULT_RESOLUTION, DEFAULT_HIGHEST, DEFAULT_DIGITS);
+    }
+
+    /**
+     * Creates an empty histogram with the given layout.
+     *
+     * @param resolution        the smallest time which can be told apart in seconds, for example 0.0001 for 0.1 ms
+     * @param highest           the highest time in seconds which is not clamped to the last bucket
+     * @param digits            the significant decimal digits kept for every time, from 1 to 5
+     *
+     * @throws IllegalArgumentException if the resolution is not positive, the highest time is less than the
+     *                          resolution or the digits are out of range
+     */
+    public TimingHistogram(double resolution, double highest, int digits)
+    {
+        if (!(resolution > 0.0) || !(highest >= resolution) || digits < 1 || digits > 5)
+            throw new IllegalArgumentException(BasicUtils.combined("Illegal histogram layout, resolution: ", resolution,
+                                                                   " highest: ", highest, " digits: ", digits));
+
+        this.resolution = resolution;
+        this.highest = highest;
+        this.digits = digits;
+
+        final long largest = 2L * (long)(Math.pow(10, digits));
+        this.subBucketBits = 64 - Long.numberOfLeadingZeros(largest - 1);
+        this.subBucketCount = 1 << this.subBucketBits;
+        this.counts = new long[this.getIndex(highest) + 1];
+        this.total = 0;
+    }
+
+    /**
+     * Adds the given time to the histogram without any allocation.
+     *
+     * @param time              the time of the attempt, the sign is ignored, {@link Data#DNF} is ignored
+     */
+    public synchronized void add(double time)
+    {
+        if (time == Data.DNF)
+            return;
+
+        this.counts[this.getIndex(time)]++;
+        this.total++;
+    }
+
+    /**
+     * Removes the given time from the histogram, for example the attempt is removed or edited.
+     *
+     * @param time              the time of the attempt which was added, {@link Data#DNF} is ignored
+     */
+    public synchronized void remove(double time)
+    {
+        final int index = this.getIndex(time);
+
+        if (time == Data.DNF || this.counts[index] == 0)
+            return;
+
+        this.counts[index]--;
+        this.total--;
+    }
+
+    /**
+     * Adds all the counts of the given histogram to this histogram, the given histogram is not changed.
+     *
+     * @param other             the histogram to merge, for example the histogram of another range or recorder
+     * @return                  this histogram
+     *
+     * @throws IllegalArgumentException if the layouts of the histograms are not the same
+     */
+    public TimingHistogram merge(final TimingHistogram other)
+    {
+        if (!this.hasSameLayout(other))
+            throw new IllegalArgumentException(BasicUtils.combined("Cannot merge histograms of different layouts: ", this, " and ", other));
+
+        final long[] counts;
+        final long total;
+
+        synchronized (other)
+        {
+            counts = other.counts.clone();
+            total = other.total;
+        }
+
+        synchronized (this)
+        {
+            for (int i = 0; i < counts.length; i++)
+                this.counts[i] += counts[i];
+
+            this.total += total;
+            return this;
+        }
+    }
+
+    /**
+     * Returns whether the given histogram has the same buckets as this histogram.
+     *
+     * @param other             the histogram to compare
+     * @return                  whether the resolution, highest time and digits are the same
+     */
+    public boolean hasSameLayout(final TimingHistogram other)
+    {
+        return this.resolution == other.resolution && this.highest == other.highest && this.digits == other.digits;
+    }
+
+    /**
+     * Returns the number of times in the histogram.
+     *
+     * @return                  the number of times
+     */
+    public synchronized long getCount()
+    {
+        return this.total;
+    }
+
+    public int getBucketCount()
+    {
+        return this.counts.length;
+    }
+
+    /**
+     * Returns the number of times in the given bucket.
+     *
+     * @param index             the index of the bucket, from 0 to {@link #getBucketCount()} - 1
+     * @return                  the number of times in the bucket
+     */
+    public synchronized long getCount(int index)
+    {
+        return this.counts[index];
+    }
+
+    /**
+     * Returns the lowest time of the given bucket.
+     *
+     * @param index             the index of the bucket
+     * @return                  the lowest time in seconds
+     */
+    public double getLowerBound(int index)
+    {
+        return this.getLowerUnits(index) * this.resolution;
+    }
+
+    /**
+     * Returns the time after the given bucket, the last bucket also contains all the slower times.
+     *
+     * @param index             the index of the bucket
+     * @return                  the lowest time of the next bucket in seconds
+     */
+    public double getUpperBound(int index)
+    {
+        return (this.getLowerUnits(index) + this.getWidth(index)) * this.resolution;
+    }
+
+    /**
+     * Returns the bucket which contains the given time.
+     *
+     * @param time              the time, the sign is ignored
+     * @return                  the index of the bucket
+     */
+    public int getIndex(double time)
+    {
+        // a time with the digits of the resolution, for example 0.0123, is not divided exactly
+        final long units = (long)(Math.min(Math.abs(time), this.highest) / this.resolution + 1e-6);
+
+        if (units < this.subBucketCount)
+            return (int)(units);
+
+        // the times in [2^(b - 1) * 2^shift, 2^b * 2^shift) share buckets of width 2^shift
+        final int shift = 63 - Long.numberOfLeadingZeros(units) - (this.subBucketBits - 1);
+        final int half = this.subBucketCount >> 1;
+        return this.subBucketCount + (shift - 1) * half + (int)((units >> shift) - half);
+    }
+
+    /**
+     * Returns the time at the given percentile in O(buckets), it is the middle of the bucket which contains it.
+     *
+     * @param percentile        from 0 to 100, for example 50 for the median
+     * @return                  the time in seconds, null if the histogram is empty
+     */
+    public synchronized Double getValueAtPercentile(double percentile)
+    {
+        if (this.total == 0)
+            return null;
+
+        final long target = Math.max((long)(Math.ceil(Math.min(Math.max(percentile, 0.0), 100.0) / 100.0 * this.total)), 1);
+        long cumulative = 0;
+
+        for (int i = 0; i < this.counts.length; i++)
+        {
+            cumulative += this.counts[i];
+
+            if (cumulative >= target)
+                return this.getMiddle(i);
+        }
+
+        return this.getMiddle(this.counts.length - 1);
+    }
+
+    /**
+     * Returns the number of times in range [from, to) in O(buckets), the range is rounded to the buckets.
+     *
+     * @param from              the lowest time, inclusive
+     * @param to                the highest time, exclusive
+     * @return                  the number of times in the buckets from the bucket of from to the bucket before to
+     */
+    public synchronized long getCountBetween(double from, double to)
+    {
+        long count = 0;
+
+        for (int i = this.getIndex(from), end = this.getIndex(to); i < end; i++)
+            count += this.counts[i];
+
+        return count;
+    }
+
+    /**
+     * Removes all the times.
+     */
+    public synchronized void clear()
+    {
+        Arrays.fill(this.counts, 0);
+        this.total = 0;
+    }
+
+    /**
+     * Returns a copy of this histogram.
+     *
+     * @return                  the copy
+     */
+    public synchronized TimingHistogram copy()
+    {
+        final TimingHistogram copy = new TimingHistogram(this.resolution, this.highest, this.digits);
+        System.arraycopy(this.counts, 0, copy.counts, 0, this.counts.length);
+        copy.total = this.total;
+        return copy;
+    }
+
+    /**
+     * Encodes the layout and the buckets which are not empty, every bucket is the gap to the previous bucket
+     * and the count, both as varints.
+     *
+     * @return                  the encoded histogram
+     */
+    public synchronized byte[] toBytes()
+    {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        output.write(ByteBuffer.allocate(Double.BYTES * 2 + Integer.BYTES).putDouble(this.resolution).putDouble(this.highest)
+                               .putInt(this.digits).array(), 0, Double.BYTES * 2 + Integer.BYTES);
+
+        try
+        {
+            int previous = -1, used = 0;
+
+            for (final long count : this.counts)
+                used += (count == 0) ? 0 : 1;
+
+            ChunkCodec.writeVarint(output, used);
+
+            for (int i = 0; i < this.counts.length; i++)
+            {
+                if (this.counts[i] == 0)
+                    continue;
+
+                ChunkCodec.writeVarint(output, i - previous);
+                ChunkCodec.writeVarint(output, this.counts[i]);
+                previous = i;
+            }
+        }
+        catch (IOException e)
+        {
+            // never thrown by a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Decodes a histogram encoded by {@link #toBytes()}.
+     *
+     * @param buffer            the encoded histogram
+     * @return                  the histogram
+     *
+     * @throws IOException      if the histogram is incomplete or a bucket is out of range
+     */
+    public static TimingHistogram read(final ByteBuffer buffer) throws IOException
+    {
+        if (buffer.remaining() < Double.BYTES * 2 + Integer.BYTES)
+            throw new IOException("Histogram is truncated");
+
+        final TimingHistogram histogram = new TimingHistogram(buffer.getDouble(), buffer.getDouble(), buffer.getInt());
+        final InputStream input = new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        final long used = ChunkCodec.readVarint(input);
+
+        for (long i = 0, index = -1; i < used; i++)
+        {
+            index += ChunkCodec.readVarint(input);
+
+            if (index >= histogram.counts.length)
+                throw new IOException(BasicUtils.combined("Histogram bucket: ", index, " is out of range: ", histogram.counts.length));
+
+            histogram.counts[(int)(index)] = ChunkCodec.readVarint(input);
+            histogram.total += histogram.counts[(int)(index)];
+        }
+
+        return histogram;
+    }
+
+    @NonNull
+    @Override
+    public String toString()
+    {
+        return BasicUtils.combined("resolution: ", this.resolution, ", highest: ", this.highest, ", digits: ", this.digits,
+                                   ", buckets: ", this.counts.length, ", count: ", this.getCount());
+    }
+
+    private long getLowerUnits(int index)
+    {
+        if (index < this.subBucketCount)
+            return index;
+
+        final int half = this.subBucketCount >> 1, shift = (index - this.subBucketCount) / half + 1;
+        return (long)((index - this.subBucketCount) % half + half) << shift;
+    }
+
+    private long getWidth(int index)
+    {
+        return (index < this.subBucketCount) ? 1 : 1L << ((index - this.subBucketCount) / (this.subBucketCount >> 1) + 1);
+    }
+
+    private double getMiddle(int index)
+    {
+        return (this.getLowerUnits(index) + (this.getWidth(index) - 1) / 2.0) * this.resolution;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,367 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ */
+
+package com.wangdi.onesec.data;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+
+import com.wangdi.onesec.interfaces.SyncTask;
+import com.wangdi.onesec.utils.BasicUtils;
+
+/**
+ * <p>
+ * A WindowSummary holds the best and worst result of every rolling window family (MO3, AO5, AO12 and AO100)
+ * among the windows which end in a range of serials. Summaries of neighbouring ranges can be merged, so the
+ * best and worst of all the windows are found again from the summaries after a past record is changed,
+ * only the summaries of the data files which contain the changed windows are computed again.
+ * </p>
+ *
+ * <p>
+ * The summaries of the sealed data files of a recorder are stored in a sidecar file next to the
+ * {@link ChunkSummary} file, one fixed-width entry of {@link #ENTRY_SIZE} bytes per data file.
+ * </p>
+ *
+ * @see ChunkSummary
+ * @see StreamingAggregator
+ * @author Di Wang
+ * @version 1.0
+ */
+
+public final class WindowSummary
+{
+    public static final int MO3 = 0;
+    public static final int AO5 = 1;
+    public static final int AO12 = 2;
+    public static final int AO100 = 3;
+
+    // the number of records in a window of every family
+    private static final int[] WINDOW_SIZES = {3, 5, 12, 100};
+
+    public static final int FAMILY_COUNT = WINDOW_SIZES.length;
+    public static final int MAX_WINDOW_SIZE = 100;
+    public static final int ENTRY_SIZE = Double.BYTES * 2 * FAMILY_COUNT;
+
+    public static final WindowSummary EMPTY = new Builder().build();
+
+    // the best and worst result of every family, DNF and -DNF if no window is valid
+    private final double[] mins;
+    private final double[] maxs;
+
+    public WindowSummary(final double[] mins, final double[] maxs)
+    {
+        this.mins = mins;
+        this.maxs = maxs;
+    }
+
+    /**
+     * Returns the number of records in a window of the given family.
+     *
+     * @param family            {@link #MO3}, {@link #AO5}, {@link #AO12} or {@link #AO100}
+     * @return                  the window size
+     */
+    public static int getWindowSize(int family)
+    {
+        return WINDOW_SIZES[family];
+    }
+
+    /**
+     * Creates an empty rolling window of the given family.
+     *
+     * @param family            {@link #MO3}, {@link #AO5}, {@link #AO12} or {@link #AO100}
+     * @return                  the rolling window
+     */
+    public static StreamingAggregator<Double> newWindow(int family)
+    {
+        return (family == MO3) ? new StreamingAggregator.MO(WINDOW_SIZES[family]) : new StreamingAggregator.AO(WINDOW_SIZES[family]);
+    }
+
+    /**
+     * Computes the summary of the windows which end at the records from the given position of the given chunk.
+     * The records before the position only fill the windows, at most {@link #MAX_WINDOW_SIZE} - 1 of them are needed.
+     *
+     * @param records           continuous records in serial order
+     * @param from              the position of the first record whose windows are summarised
+     * @return                  the summary of the windows
+     */
+    public static WindowSummary of(final Chunk records, int from)
+    {
+        final Builder builder = new Builder();
+
+        for (int i = 0; i < records.size; i++)
+        {
+            final double time = records.isValid(i) ? Math.abs(records.times[i]) : Data.DNF;
+
+            if (i < from)
+                builder.skip(time);
+            else
+                builder.add(time);
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Merges this summary with the summary of another range.
+     *
+     * @param other             the summary of the other range
+     * @return                  the summary of both ranges
+     */
+    public WindowSummary merge(final WindowSummary other)
+    {
+        final double[] mins = new double[FAMILY_COUNT], maxs = new double[FAMILY_COUNT];
+
+        for (int i = 0; i < FAMILY_COUNT; i++)
+        {
+            mins[i] = Math.min(this.mins[i], other.mins[i]);
+            maxs[i] = Math.max(this.maxs[i], other.maxs[i]);
+        }
+
+        return new WindowSummary(mins, maxs);
+    }
+
+    /**
+     * Returns the best result of the windows of the given family.
+     *
+     * @param family            {@link #MO3}, {@link #AO5}, {@link #AO12} or {@link #AO100}
+     * @return                  the best result, null if no window is valid
+     */
+    public Double getBest(int family)
+    {
+        return (this.mins[family] == Data.DNF) ? null : this.mins[family];
+    }
+
+    /**
+     * Returns the worst result of the windows of the given family.
+     *
+     * @param family            {@link #MO3}, {@link #AO5}, {@link #AO12} or {@link #AO100}
+     * @return                  the worst result, null if no window is valid
+     */
+    public Double getWorst(int family)
+    {
+        return (this.maxs[family] == -Data.DNF) ? null : this.maxs[family];
+    }
+
+    /**
+     * Reads all the summaries in the given sidecar file, a torn entry at the end is ignored.
+     *
+     * @param file              target sidecar file
+     * @return                  the summaries in data file order, empty if the file does not exist
+     *
+     * @throws Exception        if error occurs, for example permission denied
+     */
+    @SyncTask
+    public static List<WindowSummary> readAll(final File file) throws Exception
+    {
+        final int count = (int)(file.length() / ENTRY_SIZE);
+        final List<WindowSummary> summaries = new ArrayList<>(count);
+
+        if (count == 0)
+            return summaries;
+
+        final byte[] bytes = new byte[count * ENTRY_SIZE];
+
+        try (final RandomAccessFile input = new RandomAccessFile(file, "r"))
+        {
+            input.readFully(bytes);
+        }
+
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+        for (int i = 0; i < count; i++)
+        {
+            final double[] mins = new double[FAMILY_COUNT], maxs = new double[FAMILY_COUNT];
+
+            for (int j = 0; j < FAMILY_COUNT; j++)
+            {
+                mins[j] = buffer.getDouble();
+                maxs[j] = buffer.getDouble();
+            }
+
+            summaries.add(new WindowSummary(mins, maxs));
+        }
+
+        return summaries;
+    }
+
+    /**
+     * Appends the given summary to the end of the sidecar file.
+     *
+     * @param file              target sidecar file
+     * @param summary           the summary to append
+     *
+     * @throws Exception        if error occurs, for example permission denied
+     */
+    @SyncTask
+    public static void append(final File file, final WindowSummary summary) throws Exception
+    {
+        try (final FileOutputStream output = new FileOutputStream(file, true))
+        {
+            output.write(summary.toBytes());
+        }
+    }
+
+    /**
+     * Overwrites the summary at the given index of the sidecar file.
+     *
+     * @param file              target sidecar file
+     * @param index             the index of the data file
+     * @param summary           the new summary of the data file
+     *
+     * @throws Exception        if the index is out of range or error occurs, for example permission denied
+     */
+    @SyncTask
+    public static void set(final File file, int index, final WindowSummary summary) throws Exception
+    {
+        if (index < 0 || (long)(index + 1) * ENTRY_SIZE > file.length())
+            throw new IOException(BasicUtils.combined("Summary: ", index, " is not in sidecar file: ", file.getAbsolutePath()));
+
+        try (final RandomAccessFile access = new RandomAccessFile(file, "rw"))
+        {
+            access.seek((long)(index) * ENTRY_SIZE);
+            access.write(summary.toBytes());
+        }
+    }
+
+    /**
+     * Truncates the sidecar file to the given number of summaries.
+     *
+     * @param file              target sidecar file
+     * @param count             the number of summaries to keep
+     *
+     * @throws Exception        if error occurs, for example permission denied
+     */
+    @SyncTask
+    public static void truncate(final File file, int count) throws Exception
+    {
+        final long length = (long)(count) * ENTRY_SIZE;
+
+        if (file.length() <= length)
+            return;
+
+        try (final RandomAccessFile access = new RandomAccessFile(file, "rw"))
+        {
+            access.setLength(length);
+        }
+    }
+
+    private byte[] toBytes()
+    {
+        final ByteBuffer buffer = ByteBuffer.allocate(ENTRY_SIZE);
+
+        for (int i = 0; i < FAMILY_COUNT; i++)
+            buffer.putDouble(this.mins[i]).putDouble(this.maxs[i]);
+
+        return buffer.array();
+    }
+
+    @NonNull
+    @Override
+    public String toString()
+    {
+        return BasicUtils.combined("MO3: ", this.getBest(MO3), " - ", this.getWorst(MO3), ", AO5: ", this.getBest(AO5), " - ", this.getWorst(AO5),
+                                   ", AO12: ", this.getBest(AO12), " - ", this.getWorst(AO12), ", AO100: ", this.getBest(AO100), " - ", this.getWorst(AO100));
+    }
+
+    /**
+     * Builder feeds records in serial order through a rolling window of every family, and collects the best
+     * and worst results of the windows which end at the added records. The windows are kept by {@link #build()},
+     * so the summaries of consecutive data files are built by one pass.
+     */
+    public static final class Builder
+    {
+        private final List<StreamingAggregator<Double>> windows;
+        private final double[] mins;
+        private final double[] maxs;
+
+        public Builder()
+        {
+            this.windows = new ArrayList<>(FAMILY_COUNT);
+            this.mins = new double[FAMILY_COUNT];
+            this.maxs = new double[FAMILY_COUNT];
+
+            for (int i = 0; i < FAMILY_COUNT; i++)
+                this.windows.add(newWindow(i));
+
+            this.reset();
+        }
+
+        /**
+         * Adds the next record, the results of the windows which end at it are summarised.
+         *
+         * @param time          the absolute time of the record, {@link Data#DNF} for an attempt not finished
+         */
+        public void add(double time)
+        {
+            for (int i = 0; i < FAMILY_COUNT; i++)
+            {
+                final Double result = this.windows.get(i).add(time);
+
+                if (result == null || result == Data.DNF)
+                    continue;
+
+                this.mins[i] = Math.min(this.mins[i], result);
+                this.maxs[i] = Math.max(this.maxs[i], result);
+            }
+        }
+
+        /**
+         * Adds the next record only to fill the windows, the results of the windows which end at it are ignored.
+         *
+         * @param time          the absolute time of the record, {@link Data#DNF} for an attempt not finished
+         */
+        public void skip(double time)
+        {
+            for (final StreamingAggregator<Double> window : this.windows)
+                window.add(time);
+        }
+
+        /**
+         * Returns the summary of the windows added since the last build, then starts the next summary.
+         *
+         * @return              the summary of the windows
+         */
+        public WindowSummary build()
+        {
+            final WindowSummary summary = new WindowSummary(this.mins.clone(), this.maxs.clone());
+            this.reset();
+            return summary;
+        }
+
+        private void reset()
+        {
+            Arrays.fill(this.mins, Data.DNF);
+            Arrays.fill(this.maxs, -Data.DNF);
+        }
+    }
+}
\ No newline at end of file
@@ -129,7 +129,7 @@ public final class BasicUtils
      * @param e                the exception whose stack trace is to be returned
      * @return                 the stack trace of the exception as a string
      */
-    public static String getStackTraceAsString(Exception e)
+    public static String getStackTraceAsString(Throwable e)
     {
         final StringWriter sw = new StringWriter();
         final PrintWriter pw = new PrintWriter(sw);
@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ * 
+ */
+
+package com.wangdi.onesec.utils;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.wangdi.onesec.interfaces.AsyncTask;
+import com.wangdi.onesec.interfaces.SyncTask;
+
+/**
+ * <p>
+ * Scheduler is the only thread pool of the application, all the I / O work of recorders, config managers,
+ * loggers and activities is submitted to it with a lane. A free thread always takes the queued task of the
+ * most important lane first, and the tasks of the same lane run in the order they are submitted.
+ * </p>
+ *
+ * <ul>
+ *     <li>{@link #READ} - reads the user is waiting for, for example loading a screen</li>
+ *     <li>{@link #PERSIST} - saving attempts and configs</li>
+ *     <li>{@link #BACKGROUND} - logging, packing and other work nobody is waiting for</li>
+ * </ul>
+ *
+ * <p>
+ * At most {@link #getThreadCount()} - 1 background tasks run at the same time, so a burst of log writes
+ * always leaves one thread to save an attempt.
+ * </p>
+ *
+ * @author Di Wang
+ * @version 1.0
+ */
+
+public final class Scheduler
+{
+    public static final byte READ = 0;
+    public static final byte PERSIST = 1;
+    public static final byte BACKGROUND = 2;
+
+    private static final int THREAD_COUNT = Math.max(Math.min(Runtime.getRuntime().availableProcessors(), 4), 2);
+    private static final int MAX_BACKGROUND_RUNNING = THREAD_COUNT - 1;
+    private static final long KEEP_ALIVE_SECONDS = 30L;
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    private static final AtomicInteger THREAD_INDEX = new AtomicInteger();
+    private static final AtomicInteger[] QUEUE_DEPTHS = {new AtomicInteger(), new AtomicInteger(), new AtomicInteger()};
+
+    // background tasks waiting for a background slot, they are not in the pool's queue yet
+    private static final Queue<Task<?>> DEFERRED = new ArrayDeque<>();
+    private static int backgroundRunning = 0;
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+        new PriorityBlockingQueue<>(), runnable -> {
+            final Thread thread = new Thread(runnable, BasicUtils.combined("scheduler-", THREAD_INDEX.getAndIncrement()));
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    static
+    {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() ->
+        {
+            shutdown();
+
+            try
+            {
+                if (!EXECUTOR.awaitTermination(5, TimeUnit.SECONDS))
+                    EXECUTOR.shutdownNow();
+
+            }
+            catch (InterruptedException e)
+            {
+                EXECUTOR.shutdownNow();
+            }
+        }));
+    }
+
+    /**
+     * Submits the given task to the given lane.
+     *
+     * @param lane              the lane of the task, {@link #READ}, {@link #PERSIST} or {@link #BACKGROUND}
+     * @param task              the task to run
+     * @return                  the future of the task
+     */
+    @AsyncTask
+    public static <T> Future<T> submit(byte lane, final Callable<T> task)
+    {
+        final Task<T> scheduled = new Task<>(checkLane(lane), task);
+        QUEUE_DEPTHS[lane].incrementAndGet();
+
+        if (lane == BACKGROUND)
+        {
+            synchronized (DEFERRED)
+            {
+                if (backgroundRunning >= MAX_BACKGROUND_RUNNING)
+                {
+                    DEFERRED.add(scheduled);
+                    return scheduled;
+                }
+
+                backgroundRunning++;
+            }
+        }
+
+        EXECUTOR.execute(scheduled);
+        return scheduled;
+    }
+
+    /**
+     * Submits the given task to the given lane, the result of the task is not needed.
+     *
+     * @param lane              the lane of the task, {@link #READ}, {@link #PERSIST} or {@link #BACKGROUND}
+     * @param task              the task to run
+     * @return                  the future of the task
+     */
+    @AsyncTask
+    public static Future<Void> execute(byte lane, final Runnable task)
+    {
+        return submit(lane, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Returns the number of tasks of the given lane which are submitted but not started yet.
+     *
+     * @param lane              the lane, {@link #READ}, {@link #PERSIST} or {@link #BACKGROUND}
+     * @return                  the number of queued tasks of the lane
+     */
+    public static int getQueueDepth(byte lane)
+    {
+        return QUEUE_DEPTHS[checkLane(lane)].get();
+    }
+
+    /**
+     * Returns the number of tasks of all the lanes which are submitted but not started yet.
+     *
+     * @return                  the number of queued tasks
+     */
+    public static int getQueueDepth()
+    {
+        int depth = 0;
+
+        for (AtomicInteger lane : QUEUE_DEPTHS)
+            depth += lane.get();
+
+        return depth;
+    }
+
+    /**
+     * Returns the maximum number of tasks running at the same time.
+     *
+     * @return                  the number of threads of the scheduler
+     */
+    public static int getThreadCount()
+    {
+        return THREAD_COUNT;
+    }
+
+    /**
+     * Shuts down the scheduler, the submitted tasks are still run but no new task is accepted.
+     *
+     * <p>
+     * This method is intended to be called in the main thread, before the application is
+     * exited.
+     * </p>
+     */
+    @SyncTask
+    public static void shutdown()
+    {
+        EXECUTOR.shutdown();
+    }
+
+    private static byte checkLane(byte lane)
+    {
+        if (lane < READ || lane > BACKGROUND)
+            throw new IllegalArgumentException(BasicUtils.combined("Unknown scheduler lane: ", lane));
+
+        return lane;
+    }
+
+    /**
+     * Releases the background slot of a finished background task, and hands it to the next deferred one.
+     */
+    private static void releaseBackground()
+    {
+        final Task<?> next;
+
+        synchronized (DEFERRED)
+        {
+            next = DEFERRED.poll();
+
+            if (next == null)
+            {
+                backgroundRunning--;
+                return;
+            }
+        }
+
+        EXECUTOR.execute(next);
+    }
+
+    private Scheduler()
+    {
+
+    }
+
+    /**
+     * A task queued in the scheduler, ordered by its lane first and then by the order it is submitted.
+     */
+    private static final class Task<T> extends FutureTask<T> implements Comparable<Task<?>>
+    {
+        private final byte lane;
+        private final long sequence;
+
+        private Task(byte lane, final Callable<T> task)
+        {
+            super(task);
+            this.lane = lane;
+            this.sequence = SEQUENCE.getAndIncrement();
+        }
+
+        @Override
+        public void run()
+        {
+            QUEUE_DEPTHS[this.lane].decrementAndGet();
+
+            try
+            {
+                super.run();
+            }
+            finally
+            {
+                if (this.lane == BACKGROUND)
+                    releaseBackground();
+            }
+        }
+
+        @Override
+        public int compareTo(final Task<?> other)
+        {
+            return (this.lane != other.lane) ? Byte.compare(this.lane, other.lane) : Long.compare(this.sequence, other.sequence);
+        }
+    }
+}
\ No newline at end of file
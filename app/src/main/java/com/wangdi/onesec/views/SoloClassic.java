@@ -158,10 +158,11 @@ public class SoloClassic extends BasicActivity
         final double absDifference = Math.abs(difference);
         final String temp = difference < 0 ? String.format("+%.4f", absDifference) : String.format("-%.4f", absDifference);
 
-        new Thread(() ->
+        // the attempt is saved by the write queue of the recorder, the ui is updated after it is saved
+        ((Recorder.NumberResponse)(this.classicalRecorder)).enqueueData(difference).whenComplete((serial, e) ->
         {
-            try {((Recorder.NumberResponse)(this.classicalRecorder)).addData(difference);} catch (Exception e)
-            {this.logger.error(BasicUtils.getStackTraceAsString(e));}
+            if (e != null)
+                this.logger.error(BasicUtils.getStackTraceAsString(e));
 
             this.aim = this.rand.nextInt(50001) / 10000.0;
 
@@ -178,7 +179,7 @@ public class SoloClassic extends BasicActivity
 
                 updateData();
             });
-        }).start();
+        });
     }
 
     /**
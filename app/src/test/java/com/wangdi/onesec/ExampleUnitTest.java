@@ -12,6 +12,8 @@ import java.io.File;
 import java.util.List;
 import java.util.Random;
 
+import static org.junit.Assert.assertEquals;
+
 
 /**
  * Example local unit test, which will execute on the development machine (host).
@@ -55,8 +57,11 @@ public class ExampleUnitTest
         // test recorder
         final Recorder r = Recorder.auto(new File("C:\\Users\\wd200\\Desktop\\root"), 10, Data.NUMBER_RESPONSE_TYPE);
 
-        for (Double d : data)
-            ((Recorder.NumberResponse)(r)).addData(d);
+        // the future is completed with the serial of the first appended record
+        final Recorder.NumberResponse numberResponse = (Recorder.NumberResponse)(r);
+        final int size = numberResponse.getSize();
+        assertEquals(size, (int)(numberResponse.enqueueAll(data.stream().mapToDouble(Double::doubleValue).toArray()).get()));
+        assertEquals(size + data.size(), numberResponse.getSize());
 
         System.out.println(((Recorder.NumberResponse)(r)).all.average);
 
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ */
+
+package com.wangdi.onesec.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+
+
+/**
+ * Tests of appending many attempts of {@link Recorder.NumberResponse} in one batch.
+ */
+public class BatchIngestionTest extends RecorderTestBase
+{
+    @Test
+    public void testBatchMatchesSingleAppends() throws Exception
+    {
+        final double[] times = createTimes(237, 3);
+        final Recorder.NumberResponse single = this.create(GROUP_SIZE, Recorder.BINARY_STORAGE);
+        final Recorder.NumberResponse batch = this.create(GROUP_SIZE, Recorder.BINARY_STORAGE);
+
+        for (final double time : times)
+            single.enqueueData(time).get();
+
+        // the future of a batch is completed with the serial of its first record
+        assertEquals(0, (int)(batch.enqueueAll(Arrays.copyOf(times, 53)).get()));
+        assertEquals(53, (int)(batch.enqueueAll(Arrays.copyOfRange(times, 53, times.length)).get()));
+        assertEquals(times.length, (int)(batch.enqueueAll(new double[0]).get()));
+
+        assertHistory(times, single);
+        assertHistory(times, batch);
+        assertHistory(times, load(batch.rootDirectory));
+        assertEquals(single.getChunkSummaries().size(), batch.getChunkSummaries().size());
+    }
+
+    @Test
+    public void testQueuedWritesKeepTheirOrder() throws Exception
+    {
+        final double[] times = createTimes(120, 13);
+        final Recorder.NumberResponse recorder = this.create(GROUP_SIZE, Recorder.COLUMNAR_STORAGE);
+        final List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        final List<Integer> serials = new ArrayList<>();
+
+        // single records and batches are queued without waiting, every write gets the serials after the ones before
+        for (int i = 0; i < times.length; )
+        {
+            final int count = (i % 3 == 0) ? 1 : Math.min(7, times.length - i);
+            futures.add((count == 1) ? recorder.enqueueData(times[i]) : recorder.enqueueAll(Arrays.copyOfRange(times, i, i + count)));
+            serials.add(i);
+            i += count;
+        }
+
+        for (int i = 0; i < futures.size(); i++)
+            assertEquals(serials.get(i), futures.get(i).get());
+
+        assertHistory(times, recorder);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ */
+
+package com.wangdi.onesec.data;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests of the memory-mapped columnar storage of {@link Recorder.NumberResponse}.
+ */
+public class ColumnarStorageTest extends RecorderTestBase
+{
+    @Test
+    public void testColumnarRecorder() throws Exception
+    {
+        final double[] times = createTimes(95, 4);
+        final Recorder.NumberResponse recorder = this.create(GROUP_SIZE, Recorder.COLUMNAR_STORAGE);
+        append(recorder, times);
+
+        final File root = recorder.rootDirectory;
+
+        for (int i = 0; i < 10; i++)
+            assertTrue(new File(root, "data" + i + ".col").exists());
+
+        // a single record is read from the mapped columns without decoding the data file
+        for (final int serial : new int[]{0, 9, 10, 57, 94})
+        {
+            final Data.NumberResponse data = (Data.NumberResponse)(recorder.getDataSync(serial));
+            assertEquals(serial, data.getSerial());
+            assertEquals(times[serial], data.getTime(), 0.0);
+        }
+
+        assertHistory(times, recorder);
+        assertHistory(times, load(root));
+    }
+
+    @Test
+    public void testColumnStoreRoundTrip() throws Exception
+    {
+        final double[] times = createTimes(8, 14);
+        final File file = this.folder.newFile();
+        ColumnStore.create(file, times.length);
+
+        final ColumnStore columns = ColumnStore.open(file, true);
+
+        for (int i = 0; i < times.length; i++)
+            columns.append(i, times[i], RecordLog.getFlags(times[i]));
+
+        columns.set(3, 1.25, RecordLog.getFlags(1.25));
+        columns.truncate(6);
+        columns.force();
+        times[3] = 1.25;
+
+        final Chunk chunk = ColumnStore.read(file);
+        assertEquals(6, chunk.size);
+        assertEquals(times.length, ColumnStore.open(file, false).getCapacity());
+        assertArrayEquals(Arrays.copyOf(times, 6), chunk.times, 0.0);
+    }
+}
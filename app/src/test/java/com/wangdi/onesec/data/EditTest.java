@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ */
+
+package com.wangdi.onesec.data;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests of editing the attempts of {@link Recorder.NumberResponse}, the statistics are updated to the same
+ * values as a recorder which has the edited times from the beginning.
+ */
+public class EditTest extends RecorderTestBase
+{
+    @Test
+    public void testEditMatchesRecompute() throws Exception
+    {
+        for (final byte storage : new byte[]{Recorder.BINARY_STORAGE, Recorder.JSON_STORAGE, Recorder.COLUMNAR_STORAGE})
+        {
+            final double[] times = createTimes(230, 6);
+            final Recorder.NumberResponse recorder = this.create(GROUP_SIZE, storage);
+            append(recorder, times);
+            recorder.setPacking(Recorder.PACK_VARINT);
+            assertTrue(recorder.packSealedDataFiles() > 0);
+            recorder.setPacking(Recorder.PACK_NONE);
+
+            final int best = ((Data.NumberResponse)(recorder.all.best)).getSerial();
+            final int[] serials = {3, 57, best, 229, 200, 0, 120};
+            final double[] edits = {Data.DNF, 0.0001, 4.9, Data.DNF, 0.25, 0.1, 2.5};
+
+            for (int i = 0; i < serials.length; i++)
+            {
+                recorder.enqueueEdit(serials[i], edits[i]).get();
+                times[serials[i]] = edits[i];
+                assertHistory(times, recorder);
+            }
+
+            assertHistory(times, load(recorder.rootDirectory));
+        }
+    }
+
+    @Test
+    public void testEditBeforeRemoveLast() throws Exception
+    {
+        for (final byte storage : new byte[]{Recorder.BINARY_STORAGE, Recorder.JSON_STORAGE, Recorder.COLUMNAR_STORAGE})
+        {
+            final double[] times = createTimes(213, 6);
+            final Recorder.NumberResponse recorder = this.create(GROUP_SIZE, storage);
+            append(recorder, times);
+
+            // the edited attempt is kept, only the attempt after it is removed
+            assertEquals(213, (int)(recorder.enqueueData(1.25).get()));
+            recorder.enqueueEdit(212, Data.DNF).get();
+            assertEquals(213, (int)(recorder.enqueueRemoveLast(1).get()));
+            times[212] = Data.DNF;
+
+            assertHistory(times, recorder);
+            assertHistory(times, load(recorder.rootDirectory));
+        }
+    }
+}
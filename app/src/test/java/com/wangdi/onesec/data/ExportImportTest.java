@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ */
+
+package com.wangdi.onesec.data;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests of exporting the history of {@link Recorder.NumberResponse} and importing it again.
+ */
+public class ExportImportTest extends RecorderTestBase
+{
+    @Test
+    public void testStreamedExportMatchesJson() throws Exception
+    {
+        final double[] times = createTimes(143, 16);
+        final Recorder.NumberResponse recorder = this.create(GROUP_SIZE, Recorder.BINARY_STORAGE);
+        append(recorder, times);
+
+        final ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        final File compressed = this.folder.newFile();
+        recorder.export(plain, false);
+        recorder.export(compressed, true);
+
+        // the streamed document is the same as the document built in memory
+        final JSONObject document = new JSONObject(plain.toString("UTF-8"));
+        assertTrue(document.similar(new JSONObject(recorder.toJson().toString())));
+
+        final JSONArray records = document.getJSONArray(Recorder.RECORDS_KEY);
+        assertEquals(times.length, records.length());
+
+        for (int i = 0; i < times.length; i++)
+            assertEquals(i, records.getJSONObject(i).getInt(Data.NUMBER_RESPONSE_SERIAL));
+
+        try (final InputStream input = new GZIPInputStream(new FileInputStream(compressed)))
+        {
+            final ByteArrayOutputStream unzipped = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+
+            for (int read; (read = input.read(buffer)) != -1; )
+                unzipped.write(buffer, 0, read);
+
+            assertArrayEquals(plain.toByteArray(), unzipped.toByteArray());
+        }
+    }
+
+    @Test
+    public void testExportImportRoundTrip() throws Exception
+    {
+        final double[] times = createTimes(260, 5);
+        final Recorder.NumberResponse source = this.create(GROUP_SIZE, Recorder.COLUMNAR_STORAGE);
+        append(source, times);
+
+        final ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        final File compressed = this.folder.newFile();
+        source.export(plain, false);
+        source.export(compressed, true);
+
+        final Recorder.NumberResponse fromJson = this.create(GROUP_SIZE, Recorder.JSON_STORAGE);
+        assertEquals(times.length, fromJson.importHistory(new ByteArrayInputStream(plain.toByteArray()), HistoryReader.JSON_FORMAT).count);
+        assertHistory(times, fromJson);
+        assertHistory(times, load(fromJson.rootDirectory));
+
+        final Recorder.NumberResponse fromGzip = this.create(GROUP_SIZE, Recorder.BINARY_STORAGE);
+        fromGzip.importHistory(compressed, HistoryReader.JSON_FORMAT);
+        assertHistory(times, fromGzip);
+
+        final StringBuilder csv = new StringBuilder("serial,time\n");
+
+        for (int i = 0; i < times.length; i++)
+            csv.append(i).append(',').append(times[i] == Data.DNF ? "DNF" : String.valueOf(times[i])).append('\n');
+
+        final Recorder.NumberResponse fromCsv = this.create(GROUP_SIZE, Recorder.COLUMNAR_STORAGE);
+        fromCsv.importHistory(new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)), HistoryReader.CSV_FORMAT);
+        assertHistory(times, fromCsv);
+
+        final ByteArrayOutputStream again = new ByteArrayOutputStream();
+        fromCsv.export(again, false);
+        assertEquals(plain.toString("UTF-8"), again.toString("UTF-8"));
+    }
+
+    @Test
+    public void testImportBinaryRecords() throws Exception
+    {
+        final double[] times = createTimes(75, 17);
+        final File records = this.folder.newFile();
+
+        for (int i = 0; i < times.length; i++)
+            RecordLog.append(records, i, times[i], RecordLog.getFlags(times[i]));
+
+        // the imported records are appended after the records which are already in the recorder
+        final Recorder.NumberResponse recorder = this.create(GROUP_SIZE, Recorder.JSON_STORAGE);
+        append(recorder, new double[]{1.0, 2.0});
+        assertEquals(times.length, recorder.importHistory(records, HistoryReader.BINARY_FORMAT).count);
+
+        final double[] history = new double[times.length + 2];
+        history[0] = 1.0;
+        history[1] = 2.0;
+        System.arraycopy(times, 0, history, 2, times.length);
+        assertHistory(history, recorder);
+        assertHistory(history, load(recorder.rootDirectory));
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ */
+
+package com.wangdi.onesec.data;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+
+/**
+ * Tests of the journal and the periodic checkpoints of {@link Recorder.NumberResponse}.
+ */
+public class JournalTest extends RecorderTestBase
+{
+    @Test
+    public void testJournalReplayAfterCrash() throws Exception
+    {
+        final double[] times = createTimes(138, 2);
+        final Recorder.NumberResponse recorder = this.create(GROUP_SIZE, Recorder.BINARY_STORAGE);
+        recorder.setCheckpointInterval(1000);
+        append(recorder, Arrays.copyOf(times, 100));
+
+        for (int i = 100; i < 137; i++)
+            recorder.enqueueData(times[i]).get();
+
+        // the recorder is dropped without a checkpoint, the last attempt only reached the journal
+        final File root = recorder.rootDirectory;
+        assertEquals(37, RecordLog.count(new File(root, "journal.bin")));
+        RecordLog.append(new File(root, "journal.bin"), 137, times[137], RecordLog.getFlags(times[137]));
+
+        final Recorder.NumberResponse loaded = load(root);
+        assertHistory(times, loaded);
+
+        assertEquals(times.length, (int)(loaded.enqueueData(1.5).get()));
+        final double[] next = Arrays.copyOf(times, times.length + 1);
+        next[times.length] = 1.5;
+        assertHistory(next, load(root));
+    }
+
+    @Test
+    public void testCheckpointClearsJournal() throws Exception
+    {
+        final double[] times = createTimes(25, 12);
+        final Recorder.NumberResponse recorder = this.create(GROUP_SIZE, Recorder.BINARY_STORAGE);
+        recorder.setCheckpointInterval(10);
+
+        for (final double time : times)
+            recorder.enqueueData(time).get();
+
+        // a checkpoint is written after every 10 attempts, the journal keeps only the attempts after it
+        final File journal = new File(recorder.rootDirectory, "journal.bin");
+        assertEquals(times.length % 10, RecordLog.count(journal));
+
+        recorder.checkpoint();
+        assertEquals(0, RecordLog.count(journal));
+        assertHistory(times, load(recorder.rootDirectory));
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ */
+
+package com.wangdi.onesec.data;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests of the order statistics of {@link Recorder.NumberResponse}, they are checked against the sorted times
+ * of a history which is appended in batches and one by one, edited and removed.
+ */
+public class OrderStatisticsTest extends RecorderTestBase
+{
+    private static final int HISTORY_SIZE = 480;
+
+    @Test
+    public void testRank() throws Exception
+    {
+        final Recorder.NumberResponse recorder = this.createHistory();
+        final double[] sorted = sortHistory();
+        final int[] buckets = new int[sorted.length];
+
+        for (int i = 0; i < sorted.length; i++)
+            buckets[i] = RankIndex.getBucket(sorted[i]);
+
+        for (final Recorder.NumberResponse target : new Recorder.NumberResponse[]{recorder, load(recorder.rootDirectory)})
+        {
+            // the quantiles are rebuilt in the background, it must finish before the folder is deleted
+            target.awaitQuantiles().get();
+
+            // the rank counts the times in better buckets, the buckets are sorted as the times
+            assertEquals(sorted.length, target.getRankedSize());
+            assertNull(target.getRank(Data.DNF));
+
+            for (final double time : new double[]{sorted[0], sorted[sorted.length / 2], sorted[sorted.length - 1], 0.1, 3.33335, 100.0})
+            {
+                final int bucket = RankIndex.getBucket(time);
+                int better = 0;
+
+                while (better < buckets.length && buckets[better] < bucket)
+                    better++;
+
+                assertEquals(Integer.valueOf(better + 1), target.getRank(time));
+            }
+        }
+    }
+
+    @Test
+    public void testQuantiles() throws Exception
+    {
+        final Recorder.NumberResponse recorder = this.createHistory();
+        final double[] sorted = sortHistory();
+
+        for (final Recorder.NumberResponse target : new Recorder.NumberResponse[]{recorder, load(recorder.rootDirectory)})
+        {
+            final QuantileSketch quantiles = target.awaitQuantiles().get();
+            assertEquals(sorted.length, quantiles.getCount());
+            assertEquals(sorted[0], target.getQuantile(0.0), 0.0);
+            assertEquals(sorted[sorted.length - 1], target.getQuantile(1.0), 0.0);
+
+            for (final double quantile : new double[]{0.1, 0.25, 0.5, 0.75, 0.9, 0.99})
+            {
+                final Double value = target.getQuantile(quantile);
+                assertNotNull(value);
+
+                final int position = Arrays.binarySearch(sorted, value);
+                assertTrue(position >= 0);
+                assertEquals(quantile, (double)(position) / sorted.length, 0.02);
+            }
+        }
+    }
+
+    @Test
+    public void testHistogram() throws Exception
+    {
+        final Recorder.NumberResponse recorder = this.createHistory();
+        final double[] history = createTimes();
+        final double[] sorted = sortHistory();
+        int inRange = 0;
+
+        for (int i = 100; i < 300; i++)
+            inRange += history[i] == Data.DNF ? 0 : 1;
+
+        for (final Recorder.NumberResponse target : new Recorder.NumberResponse[]{recorder, load(recorder.rootDirectory)})
+        {
+            // the quantiles are rebuilt in the background, it must finish before the folder is deleted
+            target.awaitQuantiles().get();
+
+            final TimingHistogram histogram = target.getHistogram();
+            assertEquals(sorted.length, histogram.getCount());
+
+            for (final double percentile : new double[]{1, 10, 50, 90, 99, 100})
+            {
+                final double expected = sorted[(int)(Math.max(Math.ceil(percentile / 100.0 * sorted.length), 1)) - 1];
+                final int index = histogram.getIndex(expected);
+                final double value = histogram.getValueAtPercentile(percentile);
+                assertTrue(value >= histogram.getLowerBound(index) && value <= histogram.getUpperBound(index));
+            }
+
+            assertEquals(inRange, target.getHistogram(100, 300).getCount());
+        }
+    }
+
+    /**
+     * Returns the times of the history created by {@link #createHistory()}.
+     */
+    private static double[] createTimes()
+    {
+        final double[] times = createTimes(500, 7);
+        times[10] = 0.75;
+        times[11] = Data.DNF;
+        return Arrays.copyOf(times, HISTORY_SIZE);
+    }
+
+    /**
+     * Returns the finished times of the history created by {@link #createHistory()} in ascending order.
+     */
+    private static double[] sortHistory()
+    {
+        return Arrays.stream(createTimes()).filter(time -> time != Data.DNF).sorted().toArray();
+    }
+
+    /**
+     * Creates a recorder which appends 500 times in a batch and one by one, edits two of them and removes the last 20.
+     */
+    private Recorder.NumberResponse createHistory() throws Exception
+    {
+        final double[] times = createTimes(500, 7);
+        final Recorder.NumberResponse recorder = this.create(GROUP_SIZE, Recorder.BINARY_STORAGE);
+        append(recorder, Arrays.copyOf(times, 400));
+
+        for (int i = 400; i < times.length; i++)
+            assertEquals(i, (int)(recorder.enqueueData(times[i]).get()));
+
+        recorder.enqueueEdit(10, 0.75).get();
+        recorder.enqueueEdit(11, Data.DNF).get();
+        assertEquals(HISTORY_SIZE, (int)(recorder.enqueueRemoveLast(times.length - HISTORY_SIZE).get()));
+        return recorder;
+    }
+}
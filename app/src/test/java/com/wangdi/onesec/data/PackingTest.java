@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ */
+
+package com.wangdi.onesec.data;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests of packing the full data files of {@link Recorder.NumberResponse}.
+ */
+public class PackingTest extends RecorderTestBase
+{
+    @Test
+    public void testPackAndUnpack() throws Exception
+    {
+        final double[] times = createTimes(125, 3);
+        final Recorder.NumberResponse recorder = this.create(GROUP_SIZE, Recorder.JSON_STORAGE);
+        append(recorder, times);
+        recorder.checkpoint();
+        recorder.setPacking(Recorder.PACK_DEFLATE);
+
+        assertTrue(recorder.packSealedDataFiles() > 0);
+        // the loaded recorders read the packing from the manifest written by the checkpoint
+        recorder.setPacking(Recorder.PACK_NONE);
+        recorder.checkpoint();
+
+        final File root = recorder.rootDirectory;
+        assertTrue(new File(root, "data0.pak").exists());
+        assertFalse(new File(root, "data0.json").exists());
+        assertTrue(new File(root, "data12.json").exists());
+        assertHistory(times, recorder);
+        assertHistory(times, load(root));
+
+        // removing into a packed data file unpacks it first
+        final Recorder.NumberResponse loaded = load(root);
+        assertEquals(95, (int)(loaded.enqueueRemoveLast(30).get()));
+        final double[] left = Arrays.copyOf(times, 95);
+        assertFalse(new File(root, "data9.pak").exists());
+        assertHistory(left, loaded);
+        assertHistory(left, load(root));
+    }
+
+    @Test
+    public void testChunkCodecRoundTrip() throws Exception
+    {
+        final double[] times = createTimes(GROUP_SIZE * 3, 10);
+        final Recorder.NumberResponse recorder = this.create(GROUP_SIZE, Recorder.BINARY_STORAGE);
+        append(recorder, times);
+        recorder.setPacking(Recorder.PACK_VARINT);
+        assertEquals(2, recorder.packSealedDataFiles());
+
+        // a packed data file is written again with and without deflate
+        final Chunk chunk = ChunkCodec.read(new File(recorder.rootDirectory, "data0.pak"));
+
+        for (final boolean deflate : new boolean[]{false, true})
+        {
+            final File copy = this.folder.newFile();
+            ChunkCodec.write(copy, chunk, deflate);
+            assertArrayEquals(Arrays.copyOf(times, GROUP_SIZE), ChunkCodec.read(copy).times, 0.0);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ */
+
+package com.wangdi.onesec.data;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests of rechunking the data files of {@link Recorder.NumberResponse} while it is read and appended.
+ */
+public class RechunkTest extends RecorderTestBase
+{
+    @Test
+    public void testRechunkCommitAndRecovery() throws Exception
+    {
+        final double[] times = createTimes(95, 4);
+        final Recorder.NumberResponse recorder = this.create(GROUP_SIZE, Recorder.BINARY_STORAGE);
+        append(recorder, times);
+        recorder.rechunk(7);
+
+        assertEquals((times.length - 1) / 7, recorder.getChunkSummaries().size());
+        assertHistory(times, recorder);
+        assertEquals((times.length - 1) / 7, load(recorder.rootDirectory).getChunkSummaries().size());
+
+        // the old layout is in the root directory and the new one is staged
+        final Recorder.NumberResponse old = this.create(5, Recorder.BINARY_STORAGE);
+        final Recorder.NumberResponse staged = this.create(7, Recorder.BINARY_STORAGE);
+        append(old, times);
+        append(staged, times);
+        old.awaitIndexes().get();
+        staged.awaitIndexes().get();
+
+        final File root = old.rootDirectory;
+        final File staging = new File(root, "rechunk");
+        final List<String> names = new ArrayList<>();
+        assertTrue(staging.mkdirs());
+
+        for (final File file : staged.rootDirectory.listFiles())
+        {
+            Files.copy(file.toPath(), new File(staging, file.getName()).toPath());
+            names.add(file.getName());
+        }
+
+        // interrupted before the commit marker: the staged files are discarded
+        Recorder.NumberResponse loaded = load(root);
+        assertFalse(staging.exists());
+        assertEquals((times.length - 1) / 5, loaded.getChunkSummaries().size());
+        assertHistory(times, loaded);
+
+        // interrupted after the commit marker: the staged files replace the old ones
+        assertTrue(staging.mkdirs());
+
+        for (final File file : staged.rootDirectory.listFiles())
+            Files.copy(file.toPath(), new File(staging, file.getName()).toPath());
+
+        Files.write(new File(root, "rechunk.commit").toPath(), String.join("\n", names).getBytes(StandardCharsets.UTF_8));
+        loaded = load(root);
+        assertFalse(staging.exists());
+        assertFalse(new File(root, "rechunk.commit").exists());
+        assertFalse(new File(root, "data18.bin").exists());
+        assertEquals(14, listDataFiles(root).size());
+        assertEquals((times.length - 1) / 7, loaded.getChunkSummaries().size());
+        assertHistory(times, loaded);
+    }
+
+    @Test
+    public void testAppendWhileRechunking() throws Exception
+    {
+        final double[] times = createTimes(400, 15);
+        final Recorder.NumberResponse recorder = this.create(GROUP_SIZE, Recorder.COLUMNAR_STORAGE);
+        append(recorder, Arrays.copyOf(times, 300));
+
+        // the records appended while the full data files are copied are copied again before the swap
+        final CompletableFuture<Void> rechunk = CompletableFuture.runAsync(() -> {
+            try {recorder.rechunk(13);}
+            catch (Exception e) {throw new CompletionException(e);}
+        });
+
+        for (int i = 300; i < times.length; i++)
+            recorder.enqueueData(times[i]).get();
+
+        rechunk.get();
+        assertEquals((times.length - 1) / 13, recorder.getChunkSummaries().size());
+        assertHistory(times, recorder);
+        assertHistory(times, load(recorder.rootDirectory));
+    }
+}
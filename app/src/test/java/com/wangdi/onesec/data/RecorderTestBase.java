@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ */
+
+package com.wangdi.onesec.data;
+
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Base of the tests of {@link Recorder.NumberResponse}, every recorder is checked against the same history
+ * recomputed from scratch by a new recorder which appends it in one batch.
+ */
+public abstract class RecorderTestBase
+{
+    protected static final double DELTA = 1e-9;
+    protected static final int GROUP_SIZE = 10;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Returns the history of attempts, about one in fifteen is a DNF.
+     *
+     * @param count             the number of attempts
+     * @param seed              the seed of the random times
+     * @return                  the times in seconds with 4 decimal places
+     */
+    protected static double[] createTimes(int count, long seed)
+    {
+        final Random random = new Random(seed);
+        final double[] times = new double[count];
+
+        for (int i = 0; i < count; i++)
+            times[i] = random.nextInt(15) == 0 ? Data.DNF : Math.round(random.nextDouble() * 40000) / 10000.0 + 0.5;
+
+        return times;
+    }
+
+    /**
+     * Creates a recorder in a new temporary directory, packing in background is disabled, so no data file is
+     * written after the test is finished.
+     */
+    protected Recorder.NumberResponse create(int groupSize, byte storage) throws Exception
+    {
+        final Recorder.NumberResponse recorder = (Recorder.NumberResponse)(Recorder.createSync(this.folder.newFolder(), groupSize, Data.NUMBER_RESPONSE_TYPE, storage));
+        recorder.setPacking(Recorder.PACK_NONE);
+        return recorder;
+    }
+
+    protected static Recorder.NumberResponse load(final File rootDirectory) throws Exception
+    {
+        return (Recorder.NumberResponse)(Recorder.load(rootDirectory, Data.NUMBER_RESPONSE_TYPE));
+    }
+
+    /**
+     * Appends the given times in one batch and waits until they are saved.
+     */
+    protected static void append(final Recorder.NumberResponse recorder, final double[] times) throws Exception
+    {
+        final int size = recorder.getSize();
+        assertEquals(size, (int)(recorder.enqueueAll(times).get()));
+    }
+
+    /**
+     * Builds a recorder which appends all the given times in one batch, it is the expected result of a recorder
+     * which reaches the same history in another way.
+     */
+    protected Recorder.NumberResponse recompute(final double[] times, int groupSize) throws Exception
+    {
+        final Recorder.NumberResponse recorder = this.create(groupSize, Recorder.BINARY_STORAGE);
+        append(recorder, times);
+        return recorder;
+    }
+
+    protected static void assertStatics(final String name, final Data.Statics<?> expected, final Data.Statics<?> actual)
+    {
+        assertValue(name + " current", expected.current, actual.current);
+        assertValue(name + " best", expected.best, actual.best);
+        assertValue(name + " worst", expected.worst, actual.worst);
+        assertValue(name + " average", expected.average, actual.average);
+    }
+
+    /**
+     * Checks a value of the statistics, an average is compared with a tolerance because it is kept by running sums,
+     * a DNF average is either null or infinite.
+     */
+    private static void assertValue(final String name, final Object expected, final Object actual)
+    {
+        if (isDNF(expected) || isDNF(actual))
+            assertTrue(name, isDNF(expected) && isDNF(actual));
+        else if (expected instanceof Double && actual instanceof Double)
+            assertEquals(name, (Double)(expected), (Double)(actual), DELTA);
+        else
+            assertEquals(name, String.valueOf(expected), String.valueOf(actual));
+    }
+
+    private static boolean isDNF(final Object value)
+    {
+        return value == null || (value instanceof Double && ((Double)(value)).isInfinite());
+    }
+
+    /**
+     * Checks that the recorder has exactly the given history, in its records, statistics and range summaries.
+     */
+    protected void assertHistory(final double[] times, final Recorder.NumberResponse recorder) throws Exception
+    {
+        final Recorder.NumberResponse expected = this.recompute(times, GROUP_SIZE);
+        final Chunk chunk = recorder.getRangeSync(0, times.length);
+
+        assertEquals(times.length, recorder.getSize());
+        assertArrayEquals(times, chunk.times, 0.0);
+
+        for (int i = 0; i < chunk.size; i++)
+            assertEquals(i, chunk.serials[i]);
+
+        assertEquals(times.length, recorder.getAllDataSync().size());
+        assertStatics("all", expected.all, recorder.all);
+        assertStatics("mo3", expected.MO3, recorder.MO3);
+        assertStatics("ao5", expected.AO5, recorder.AO5);
+        assertStatics("ao12", expected.AO12, recorder.AO12);
+        assertStatics("ao100", expected.AO100, recorder.AO100);
+
+        final ChunkSummary summary = recorder.getSummarySync(0, times.length);
+        final ChunkSummary expectedSummary = expected.getSummarySync(0, times.length);
+        assertEquals(expectedSummary.validCount, summary.validCount);
+        assertEquals(expectedSummary.dnfCount, summary.dnfCount);
+        assertEquals(expectedSummary.sum, summary.sum, DELTA);
+        assertEquals(expectedSummary.min, summary.min, 0.0);
+        assertEquals(expectedSummary.max, summary.max, 0.0);
+    }
+
+    protected static List<String> listDataFiles(final File rootDirectory)
+    {
+        final List<String> names = new ArrayList<>();
+
+        for (final String name : rootDirectory.list())
+        {
+            if (name.matches("data\\d+\\..+"))
+                names.add(name);
+        }
+
+        return names;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ */
+
+package com.wangdi.onesec.data;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Tests of removing the last attempts of {@link Recorder.NumberResponse}, the statistics are rolled back
+ * to the same values as a recorder which never had the removed attempts.
+ */
+public class RemoveLastTest extends RecorderTestBase
+{
+    @Test
+    public void testRemoveLastMatchesRecompute() throws Exception
+    {
+        for (final byte storage : new byte[]{Recorder.BINARY_STORAGE, Recorder.JSON_STORAGE, Recorder.COLUMNAR_STORAGE})
+        {
+            final double[] times = createTimes(230, 8);
+            final Recorder.NumberResponse recorder = this.create(GROUP_SIZE, storage);
+            append(recorder, times);
+            recorder.setPacking(Recorder.PACK_VARINT);
+            assertTrue(recorder.packSealedDataFiles() > 0);
+            recorder.setPacking(Recorder.PACK_NONE);
+
+            // the future is completed with the size after removing
+            assertEquals(213, (int)(recorder.enqueueRemoveLast(17).get()));
+            assertHistory(Arrays.copyOf(times, 213), recorder);
+
+            assertEquals(213, (int)(recorder.enqueueData(1.25).get()));
+            assertEquals(213, (int)(recorder.enqueueRemoveLast(1).get()));
+            assertEquals(200, (int)(recorder.enqueueRemoveLast(13).get()));
+            assertHistory(Arrays.copyOf(times, 200), recorder);
+            assertHistory(Arrays.copyOf(times, 200), load(recorder.rootDirectory));
+        }
+    }
+
+    @Test
+    public void testRemoveMoreThanUndoable() throws Exception
+    {
+        final double[] times = createTimes(Recorder.UNDO_DEPTH + 20, 9);
+        final Recorder.NumberResponse recorder = this.create(GROUP_SIZE, Recorder.BINARY_STORAGE);
+        append(recorder, times);
+        assertEquals(Recorder.UNDO_DEPTH, recorder.getUndoableCount());
+
+        try
+        {
+            recorder.enqueueRemoveLast(Recorder.UNDO_DEPTH + 1).get();
+            fail("removing more attempts than the undo depth must fail");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+
+        // nothing is removed by the failed call
+        assertHistory(times, recorder);
+        assertEquals(20, (int)(recorder.enqueueRemoveLast(Recorder.UNDO_DEPTH).get()));
+        assertHistory(Arrays.copyOf(times, 20), recorder);
+    }
+}
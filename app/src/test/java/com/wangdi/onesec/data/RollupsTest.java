@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ */
+
+package com.wangdi.onesec.data;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.SortedMap;
+
+import static org.junit.Assert.assertEquals;
+
+
+/**
+ * Tests of the daily and weekly rollups of {@link Recorder.NumberResponse}, every row is checked against
+ * the summary of the attempts added in its period.
+ */
+public class RollupsTest extends RecorderTestBase
+{
+    // 2025-03-01 12:00 UTC
+    private static final long START = 1740830400000L;
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    @Test
+    public void testDailyRollups() throws Exception
+    {
+        final double[] times = createTimes(60, 10);
+        final Recorder.NumberResponse recorder = this.create(GROUP_SIZE, Recorder.BINARY_STORAGE);
+
+        // the first 25 attempts are added on the first day and the others on the next day
+        for (int i = 0; i < times.length; i++)
+            assertEquals(i, (int)(recorder.enqueueData(times[i], START + (i < 25 ? 0 : DAY) + i * 1000L).get()));
+
+        final int first = Rollups.getDayKey(START);
+        final int second = Rollups.getDayKey(START + DAY);
+        assertRows(times, first, second, recorder);
+
+        times[3] = 0.0001;
+        times[40] = Data.DNF;
+        recorder.enqueueEdit(3, times[3]).get();
+        recorder.enqueueEdit(40, times[40]).get();
+        assertRows(times, first, second, recorder);
+
+        assertEquals(50, (int)(recorder.enqueueRemoveLast(10).get()));
+        final double[] left = Arrays.copyOf(times, 50);
+        assertRows(left, first, second, recorder);
+        assertRows(left, first, second, load(recorder.rootDirectory));
+
+        // both days are in the same ISO week
+        final SortedMap<Integer, ChunkSummary> weeks = recorder.getRollups(Rollups.WEEK, Rollups.getWeekKey(START), Rollups.getWeekKey(START) + 1);
+        assertEquals(1, weeks.size());
+        assertEquals(left.length, weeks.get(Rollups.getWeekKey(START)).count);
+    }
+
+    /**
+     * Checks the rows of the two days against the summaries of the times added on each of them.
+     */
+    private static void assertRows(final double[] times, int first, int second, final Recorder.NumberResponse recorder) throws Exception
+    {
+        final SortedMap<Integer, ChunkSummary> rows = recorder.getRollups(Rollups.DAY, first, second + 1);
+        assertEquals(2, rows.size());
+        assertSummary(times, 0, 25, rows.get(first));
+        assertSummary(times, 25, times.length, rows.get(second));
+    }
+
+    private static void assertSummary(final double[] times, int from, int to, final ChunkSummary summary)
+    {
+        int valid = 0;
+        double sum = 0.0;
+        double min = Data.DNF;
+
+        for (int i = from; i < to; i++)
+        {
+            if (times[i] == Data.DNF)
+                continue;
+
+            valid++;
+            sum += times[i];
+            min = Math.min(min, times[i]);
+        }
+
+        assertEquals(to - from, summary.count);
+        assertEquals(valid, summary.validCount);
+        assertEquals(to - from - valid, summary.dnfCount);
+        assertEquals(sum, summary.sum, DELTA);
+        assertEquals(min, summary.min, 0.0);
+        assertEquals(from, summary.firstSerial);
+        assertEquals(to - 1, summary.lastSerial);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ */
+
+package com.wangdi.onesec.data;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests of the append-only binary segment storage of {@link Recorder.NumberResponse}.
+ */
+public class SegmentStorageTest extends RecorderTestBase
+{
+    @Test
+    public void testSegmentRollover() throws Exception
+    {
+        final double[] times = createTimes(95, 1);
+        final Recorder.NumberResponse recorder = this.create(GROUP_SIZE, Recorder.BINARY_STORAGE);
+
+        for (int i = 0; i < times.length; i++)
+            assertEquals(i, (int)(recorder.enqueueData(times[i]).get()));
+
+        // data file n holds the records from n * groupSize, the last one is not full
+        final File root = recorder.rootDirectory;
+        assertEquals(10, listDataFiles(root).size());
+
+        for (int i = 0; i < 10; i++)
+            assertTrue(new File(root, "data" + i + ".bin").exists());
+
+        assertEquals((times.length - 1) / GROUP_SIZE, recorder.getChunkSummaries().size());
+        assertHistory(times, recorder);
+        assertHistory(times, load(root));
+    }
+
+    @Test
+    public void testRecordLogRoundTrip() throws Exception
+    {
+        final double[] times = createTimes(30, 11);
+        final File file = this.folder.newFile();
+
+        for (int i = 0; i < times.length; i++)
+            RecordLog.append(file, i, times[i], RecordLog.getFlags(times[i]));
+
+        final Chunk chunk = RecordLog.read(file);
+        assertEquals(times.length, RecordLog.count(file));
+        assertArrayEquals(times, chunk.times, 0.0);
+
+        // every record has a fixed width, so a range is read without the records before it
+        final Chunk range = RecordLog.read(file, 10, 20);
+        assertEquals(10, range.size);
+        assertEquals(10, range.serials[0]);
+        assertArrayEquals(Arrays.copyOfRange(times, 10, 20), range.times, 0.0);
+    }
+}
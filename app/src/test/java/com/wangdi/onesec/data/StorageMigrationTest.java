@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ */
+
+package com.wangdi.onesec.data;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests of migrating the data files of {@link Recorder.NumberResponse} between storages, the history is kept
+ * and the recorder can be appended and reloaded after the migration.
+ */
+public class StorageMigrationTest extends RecorderTestBase
+{
+    @Test
+    public void testMigrateStorage() throws Exception
+    {
+        final byte[][] migrations = {
+                {Recorder.BINARY_STORAGE, Recorder.COLUMNAR_STORAGE},
+                {Recorder.COLUMNAR_STORAGE, Recorder.JSON_STORAGE},
+                {Recorder.JSON_STORAGE, Recorder.BINARY_STORAGE}};
+
+        for (final byte[] migration : migrations)
+        {
+            final double[] times = createTimes(120, 11);
+            final Recorder.NumberResponse recorder = this.create(GROUP_SIZE, migration[0]);
+            append(recorder, Arrays.copyOf(times, 95));
+
+            recorder.migrateStorage(migration[1]);
+            assertNull(recorder.getMigrationProgress());
+            assertHistory(Arrays.copyOf(times, 95), recorder);
+
+            final String extension = Recorder.getDataFileExtension(migration[1]);
+
+            for (final String name : listDataFiles(recorder.rootDirectory))
+                assertTrue(name, name.endsWith(extension));
+
+            // the appended records are written in the new storage
+            for (int i = 95; i < times.length; i++)
+                assertEquals(i, (int)(recorder.enqueueData(times[i]).get()));
+
+            assertHistory(times, recorder);
+            assertHistory(times, load(recorder.rootDirectory));
+        }
+    }
+}
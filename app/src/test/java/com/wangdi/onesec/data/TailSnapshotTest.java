@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2025, [1Sec team]. All rights reserved.
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ */
+
+package com.wangdi.onesec.data;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests of loading {@link Recorder.NumberResponse} from the tail snapshot written by every checkpoint.
+ */
+public class TailSnapshotTest extends RecorderTestBase
+{
+    @Test
+    public void testLoadFromTailAndJournal() throws Exception
+    {
+        final double[] times = createTimes(155, 18);
+        final Recorder.NumberResponse recorder = this.create(GROUP_SIZE, Recorder.BINARY_STORAGE);
+        recorder.setCheckpointInterval(1000);
+        append(recorder, Arrays.copyOf(times, 150));
+
+        final File root = recorder.rootDirectory;
+        assertTrue(new File(root, "tail.bin").exists());
+
+        // the attempts after the checkpoint are replayed from the journal on top of the snapshot
+        for (int i = 150; i < times.length; i++)
+            recorder.enqueueData(times[i]).get();
+
+        final Recorder.NumberResponse loaded = load(root);
+        assertHistory(times, loaded);
+
+        // the last attempts can still be removed after loading, their steps are kept in the snapshot
+        loaded.checkpoint();
+        assertEquals(140, (int)(load(root).enqueueRemoveLast(15).get()));
+        assertHistory(Arrays.copyOf(times, 140), load(root));
+    }
+
+    @Test
+    public void testStaleTailIsIgnored() throws Exception
+    {
+        final double[] times = createTimes(60, 19);
+        final Recorder.NumberResponse recorder = this.create(GROUP_SIZE, Recorder.COLUMNAR_STORAGE);
+        append(recorder, times);
+
+        // a snapshot which does not agree with the manifest is rebuilt from the data files
+        final File tail = new File(recorder.rootDirectory, "tail.bin");
+        final File stale = this.folder.newFile();
+        assertTrue(tail.renameTo(stale));
+        append(load(recorder.rootDirectory), new double[]{1.5});
+        assertTrue(tail.delete());
+        assertTrue(stale.renameTo(tail));
+
+        final double[] history = Arrays.copyOf(times, times.length + 1);
+        history[times.length] = 1.5;
+        assertHistory(history, load(recorder.rootDirectory));
+    }
+}